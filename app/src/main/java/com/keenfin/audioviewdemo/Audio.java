@@ -1,25 +0,0 @@
-/*
- *           Copyright © 2018 Stanislav Petriakov
- *  Distributed under the Boost Software License, Version 1.0.
- *     (See accompanying file LICENSE_1_0.txt or copy at
- *           http://www.boost.org/LICENSE_1_0.txt)
- */
-
-package com.keenfin.audioviewdemo;
-
-public class Audio {
-    private String mTitle, mPath;
-
-    public Audio(String title, String path) {
-        mTitle = title;
-        mPath = path;
-    }
-
-    public String getTitle() {
-        return mTitle;
-    }
-
-    public String getPath() {
-        return mPath;
-    }
-}
\ No newline at end of file
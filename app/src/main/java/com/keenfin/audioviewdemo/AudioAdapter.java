@@ -14,19 +14,20 @@ import android.view.View;
 import android.view.ViewGroup;
 import android.widget.TextView;
 import com.keenfin.audioview.AudioView2;
+import com.keenfin.audioview.Playlist;
+import com.keenfin.audioview.PlaylistProvider;
+import com.keenfin.audioview.Track;
 
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.List;
 
 public class AudioAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolder> {
-    private List<Audio> mObjects;
+    private PlaylistProvider mPlaylist;
 
-    AudioAdapter(List<Audio> objects) {
-        if (objects != null)
-            mObjects = objects;
+    AudioAdapter(PlaylistProvider playlist) {
+        if (playlist != null)
+            mPlaylist = playlist;
         else
-            mObjects = new ArrayList<>();
+            mPlaylist = Playlist.EMPTY;
     }
 
     @NonNull
@@ -44,7 +45,7 @@ public class AudioAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolder>
 
     @Override
     public int getItemCount() {
-        return mObjects.size();
+        return mPlaylist.getCount();
     }
 
     class AudioHolder extends RecyclerView.ViewHolder {
@@ -53,15 +54,15 @@ public class AudioAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolder>
         }
 
         void bind(int position) {
-            Audio object = mObjects.get(position);
+            Track track = mPlaylist.getTrack(position);
             TextView order = itemView.findViewById(R.id.order);
-            order.setText(object.getTitle());
+            order.setText(track.toString());
             AudioView2 audio = itemView.findViewById(R.id.audioview);
             audio.setTag(position);
             if (!audio.attached())
                 audio.setUpControls();
             try {
-                audio.setDataSource(object.getPath());
+                audio.setDataSource((String) track.getSource());
             } catch (IOException ignored) {
             }
         }
@@ -20,20 +20,24 @@ import android.support.v7.app.AppCompatActivity;
 import android.support.v7.widget.LinearLayoutManager;
 import android.support.v7.widget.RecyclerView;
 import com.keenfin.audioview.AudioService;
-
-import java.util.ArrayList;
+import com.keenfin.audioview.AudioStatusBus;
+import com.keenfin.audioview.CompositePlaylistProvider;
+import com.keenfin.audioview.CursorPlaylistProvider;
+import com.keenfin.audioview.Playlist;
+import com.keenfin.audioview.PlaylistProvider;
+import com.keenfin.audioview.Track;
 
 import static com.keenfin.audioviewdemo.MainActivity.URL;
 
 public class ListActivity extends AppCompatActivity {
-    private ArrayList<Audio> mObjects;
+    private Cursor mCursor, mListCursor;
+    private PlaylistProvider mPlaylist;
     private AudioService mAudioService;
     private ServiceConnection mServiceConnection = new ServiceConnection() {
         @Override
         public void onServiceConnected(ComponentName componentName, IBinder iBinder) {
             mAudioService = ((AudioService.AudioServiceBinder) iBinder).getService();
-            for (Audio item : mObjects)
-                mAudioService.addToPlaylist(item.getPath());
+            mAudioService.setPlaylist(mPlaylist);
         }
 
         @Override
@@ -66,11 +70,12 @@ public class ListActivity extends AppCompatActivity {
 //        startService(audioService);
 //        stopService(audioService);
 
-        mObjects = new ArrayList<>();
-        mObjects.add(new Audio(URL, URL));
-        searchForAudio(mObjects);
+        // service reads its playlist on player thread, so list gets its own cursor
+        mCursor = searchForAudio();
+        mListCursor = searchForAudio();
+        mPlaylist = createPlaylist(mCursor);
 
-        AudioAdapter adapter = new AudioAdapter(mObjects);
+        AudioAdapter adapter = new AudioAdapter(createPlaylist(mListCursor));
         RecyclerView recycler = findViewById(R.id.recycler);
         recycler.setAdapter(adapter);
 
@@ -89,28 +94,48 @@ public class ListActivity extends AppCompatActivity {
     protected void onDestroy() {
         super.onDestroy();
         unbindAudioService();
+        if (mListCursor != null)
+            mListCursor.close();
+        // player thread may still read service playlist, so its cursor is closed once service is stopped
+        if (mCursor != null) {
+            if (AudioService.SERVICE_RUNNING)
+                closeWhenServiceStopped(mCursor);
+            else
+                mCursor.close();
+        }
         Intent audioService = new Intent(this, AudioService.class);
         stopService(audioService);
     }
 
-    private void searchForAudio(ArrayList<Audio> objects) {
+    private static void closeWhenServiceStopped(final Cursor cursor) {
+        final AudioStatusBus bus = AudioStatusBus.getInstance();
+        bus.subscribeAll(new AudioStatusBus.OnAudioStatusListener() {
+            @Override
+            public void onAudioStatus(int status, int tag) {
+                if (status != AudioService.AUDIO_SERVICE_STOPPED)
+                    return;
+
+                bus.unsubscribeAll(this);
+                cursor.close();
+            }
+        });
+    }
+
+    private PlaylistProvider createPlaylist(Cursor cursor) {
+        Playlist pinned = Playlist.EMPTY.add(new Track(0, URL, URL, Track.UNKNOWN_DURATION));
+        if (cursor == null)
+            return pinned;
+
+        return new CompositePlaylistProvider(pinned, new CursorPlaylistProvider(cursor,
+                MediaStore.Audio.Media._ID, MediaStore.Audio.Media.DATA,
+                MediaStore.Audio.Media.DISPLAY_NAME, MediaStore.Audio.Media.DURATION));
+    }
+
+    private Cursor searchForAudio() {
         ContentResolver resolver = getContentResolver();
         Uri uri = MediaStore.Audio.Media.EXTERNAL_CONTENT_URI;
         String selection = MediaStore.Audio.Media.IS_MUSIC + "!= 0";
         String sortOrder = MediaStore.Audio.Media.TITLE + " ASC";
-        Cursor cursor = resolver.query(uri, null, selection, null, sortOrder);
-        int count;
-
-        if (cursor != null) {
-            count = cursor.getCount();
-            if (count > 0 && cursor.moveToFirst()) {
-                do {
-                    String data = cursor.getString(cursor.getColumnIndex(MediaStore.Audio.Media.DATA));
-                    String title = cursor.getString(cursor.getColumnIndex(MediaStore.Audio.Media.DISPLAY_NAME));
-                    objects.add(new Audio(title, data));
-                } while (cursor.moveToNext());
-            }
-            cursor.close();
-        }
+        return resolver.query(uri, null, selection, null, sortOrder);
     }
 }
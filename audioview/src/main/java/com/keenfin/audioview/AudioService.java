@@ -9,21 +9,32 @@ package com.keenfin.audioview;
 
 import android.annotation.TargetApi;
 import android.app.*;
+import android.content.BroadcastReceiver;
 import android.content.Context;
 import android.content.Intent;
-import android.media.MediaPlayer;
+import android.content.IntentFilter;
 import android.net.Uri;
 import android.os.Binder;
 import android.os.Build;
+import android.os.Handler;
+import android.os.HandlerThread;
 import android.os.IBinder;
+import android.os.Looper;
+import android.os.Message;
+import android.os.Process;
 import android.support.annotation.Nullable;
 import android.support.v4.app.NotificationCompat;
+import android.util.SparseArray;
+import android.text.TextUtils;
 import android.view.View;
 import android.widget.RemoteViews;
 
+import java.io.File;
 import java.io.FileDescriptor;
 import java.io.IOException;
-import java.util.ArrayList;
+import java.io.PrintWriter;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
 
 public class AudioService extends Service {
@@ -40,39 +51,117 @@ public class AudioService extends Service {
     public static final String AUDIO_NOTIFICATION_ICON_RES = "AUDIO_NOTIFICATION_ICON_RES";
     public static final String AUDIO_NOTIFICATION_SHOW_CLOSE = "AUDIO_NOTIFICATION_SHOW_CLOSE";
     public static final String AUDIO_NOTIFICATION_MINIFIED = "AUDIO_NOTIFICATION_MINIFIED";
+    public static final String AUDIO_NOTIFICATION_UPDATE_INTERVAL = "AUDIO_NOTIFICATION_UPDATE_INTERVAL";
+    public static final String AUDIO_PLAYER_ENGINE = "AUDIO_PLAYER_ENGINE";
 
     public static final int AUDIO_SERVICE_NOTIFICATION = 4;
 
-    public static final int AUDIO_PREPARED = 0;
-    public static final int AUDIO_STARTED = 1;
-    public static final int AUDIO_PAUSED = 2;
-    public static final int AUDIO_STOPPED = 3;
-    public static final int AUDIO_PROGRESS_UPDATED = 4;
-    public static final int AUDIO_COMPLETED = 5;
-    public static final int AUDIO_TRACK_CHANGED = 6;
-    public static final int AUDIO_SERVICE_STARTED = 7;
-    public static final int AUDIO_SERVICE_STOPPED = 8;
+    public static final int AUDIO_PREPARED = AudioStatusBus.AUDIO_PREPARED;
+    public static final int AUDIO_STARTED = AudioStatusBus.AUDIO_STARTED;
+    public static final int AUDIO_PAUSED = AudioStatusBus.AUDIO_PAUSED;
+    public static final int AUDIO_STOPPED = AudioStatusBus.AUDIO_STOPPED;
+    public static final int AUDIO_PROGRESS_UPDATED = AudioStatusBus.AUDIO_PROGRESS_UPDATED;
+    public static final int AUDIO_COMPLETED = AudioStatusBus.AUDIO_COMPLETED;
+    public static final int AUDIO_TRACK_CHANGED = AudioStatusBus.AUDIO_TRACK_CHANGED;
+    public static final int AUDIO_SERVICE_STARTED = AudioStatusBus.AUDIO_SERVICE_STARTED;
+    public static final int AUDIO_SERVICE_STOPPED = AudioStatusBus.AUDIO_SERVICE_STOPPED;
+    public static final int AUDIO_TITLE_RESOLVED = AudioStatusBus.AUDIO_TITLE_RESOLVED;
 
     public static boolean SERVICE_RUNNING = false;
 
-    private Thread mUiThread;
-    private long mProgressDelay = 1000;
-
-    private MediaPlayer mMediaPlayer;
-    private boolean mIsPrepared = false;
-    private int mAttachedTag = Integer.MIN_VALUE;
-
-    private ArrayList<Object> mTracks;
-    private Object mCurrentSource;
+    public static final long MIN_PROGRESS_DELAY = 16;
+    public static final long MAX_PROGRESS_DELAY = 1000;
+    /**
+     * How many tracks before and after the current one are kept resolved.
+     */
+    public static final int TRACK_WINDOW = 2;
+    /**
+     * How often playback position is saved while playing, in milliseconds.
+     */
+    public static final long SNAPSHOT_INTERVAL = 5000;
+
+    /**
+     * Default time to wait for another next/previous command before the track is prepared.
+     */
+    public static final long DEFAULT_SKIP_DELAY = 250;
+
+    private static final String SNAPSHOT_FILE = "audioview.state";
+
+    private static final int CMD_INIT = 0;
+    private static final int CMD_START = 1;
+    private static final int CMD_PAUSE = 2;
+    private static final int CMD_STOP = 3;
+    private static final int CMD_CONTROL = 4;
+    private static final int CMD_NEXT = 5;
+    private static final int CMD_PREVIOUS = 6;
+    private static final int CMD_SEEK = 7;
+    private static final int CMD_OPEN = 8;
+    private static final int CMD_SET_PLAYLIST = 9;
+    private static final int CMD_PLAY_PLAYLIST = 10;
+    private static final int CMD_APPEND = 11;
+    private static final int CMD_REPEAT_MODE = 12;
+    private static final int CMD_SHUFFLE = 13;
+    private static final int CMD_GAPLESS = 14;
+    private static final int CMD_PLAYER_ENGINE = 15;
+    private static final int CMD_ATTACH_TAG = 16;
+    private static final int CMD_RESET = 17;
+    private static final int CMD_ADD_OBSERVER = 18;
+    private static final int CMD_REMOVE_OBSERVER = 19;
+    private static final int CMD_UPDATE_TICKER = 20;
+    private static final int CMD_RESTORE = 21;
+    private static final int CMD_RELEASE = 22;
+    private static final int CMD_QUIT = 23;
+    private static final int CMD_SCRUB_START = 24;
+    private static final int CMD_SCRUB = 25;
+    private static final int CMD_SCRUB_STOP = 26;
+
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+    private HandlerThread mPlayerThread;
+    private Handler mPlayerHandler;
+    private SeekScrubber mScrubber;
+
+    private final HashMap<Object, Integer> mProgressObservers = new HashMap<>();
+    private volatile int mProgressObserverCount = 0;
+    private long mProgressDelay = MAX_PROGRESS_DELAY;
+    private boolean mIsTicking = false;
+    private volatile boolean mScreenOn = true;
+
+    private volatile PlayerEngine mEngine;
+    private PlayerEngine mNextEngine;
+    private String mEngineClass;
+    private volatile boolean mIsPrepared = false;
+    private boolean mIsNextPrepared = false;
+    private volatile boolean mGapless = false;
+    private volatile int mAttachedTag = Integer.MIN_VALUE;
+
+    private volatile PlaylistProvider mPlaylist = Playlist.EMPTY;
+    private final SparseArray<Track> mTrackWindow = new SparseArray<>();
+    private volatile Object mCurrentSource;
+    private Track mCurrentItem;
+    private Track mNextItem;
+    private volatile String mTrackTitle;
+    private volatile boolean mNotificationPlaying;
+    private volatile long mSkipDelay = DEFAULT_SKIP_DELAY;
+    private final PlaybackMetrics mMetrics = new PlaybackMetrics();
+    private final PlaybackTimer mTimer = new PlaybackTimer(mMetrics);
+    private boolean mIsSkipPending = false;
+    private boolean mSkipWasPlaying;
     private int mCurrentTrack = 0;
+    private int mNextTrack = -1;
     private boolean mWasPlaying;
+    private int mResumePosition = 0;
+    private PlaybackSnapshot mSnapshot;
+    private boolean mIsSnapshotScheduled = false;
 
-    private boolean mLoop = false;
+    private final PlaybackOrder mOrder = new PlaybackOrder();
+    private volatile boolean mBroadcastProgress = false;
 
     private AudioServiceBinder mBinder = new AudioServiceBinder();
     private NotificationManager mNotificationManager;
     private NotificationCompat.Builder mBuilder;
-    private RemoteViews mContentView, mContentViewMin;
+    private NotificationRenderer mNotificationRenderer;
+    private long mNotificationUpdateInterval = NotificationRenderer.DEFAULT_MIN_INTERVAL;
+    private boolean mNotificationShowClose, mNotificationMinified;
 
     @Nullable
     @Override
@@ -89,27 +178,183 @@ public class AudioService extends Service {
     @Override
     public void onCreate() {
         super.onCreate();
-        initMediaPlayer();
+        IntentFilter screenFilter = new IntentFilter(Intent.ACTION_SCREEN_ON);
+        screenFilter.addAction(Intent.ACTION_SCREEN_OFF);
+        registerReceiver(mScreenReceiver, screenFilter);
+        mSnapshot = new PlaybackSnapshot(new File(getFilesDir(), SNAPSHOT_FILE));
         mNotificationManager = (NotificationManager) getSystemService(Context.NOTIFICATION_SERVICE);
+
+        mPlayerThread = new HandlerThread("AudioView-Player", Process.THREAD_PRIORITY_AUDIO);
+        mPlayerThread.start();
+        mPlayerHandler = new Handler(mPlayerThread.getLooper(), mPlayerCallback);
+        mScrubber = new SeekScrubber(mPlayerHandler, mMetrics);
+        send(CMD_INIT);
         SERVICE_RUNNING = true;
     }
 
     @Override
     public void onLowMemory() {
         super.onLowMemory();
-        broadcast(AUDIO_STOPPED);
-        release();
+        SERVICE_RUNNING = false;
+        send(CMD_RELEASE);
     }
 
     @Override
     public void onDestroy() {
-        broadcast(AUDIO_STOPPED);
-        broadcast(AUDIO_SERVICE_STOPPED);
-        release();
+        if (mNotificationRenderer != null)
+            mNotificationRenderer.cancel();
+        mHandler.removeCallbacks(mNotificationTask);
+        try {
+            unregisterReceiver(mScreenReceiver);
+        } catch (IllegalArgumentException ignored) {
+        }
+        SERVICE_RUNNING = false;
+        send(CMD_QUIT);
         stopSelf();
         super.onDestroy();
     }
 
+    /**
+     * Player control runs on its own audio priority thread. Public methods only queue commands,
+     * so callers never wait for native player calls and commands from several callers are
+     * applied one by one in order. Status changes are delivered back through
+     * {@link AudioStatusBus} and broadcasts.
+     */
+    private final Handler.Callback mPlayerCallback = new Handler.Callback() {
+        @Override
+        public boolean handleMessage(Message msg) {
+            switch (msg.what) {
+                case CMD_INIT:
+                    createEngine();
+                    break;
+                case CMD_START:
+                    handleStart();
+                    break;
+                case CMD_PAUSE:
+                    handlePause();
+                    break;
+                case CMD_STOP:
+                    handleStop(mAttachedTag);
+                    break;
+                case CMD_CONTROL:
+                    if (mIsPrepared && isPlaying())
+                        handlePause();
+                    else
+                        handleStart();
+                    break;
+                case CMD_NEXT:
+                    handleNextTrack();
+                    break;
+                case CMD_PREVIOUS:
+                    handlePreviousTrack();
+                    break;
+                case CMD_SEEK:
+                    handleSeekTo(msg.arg1);
+                    break;
+                case CMD_SCRUB_START:
+                    if (mIsPrepared)
+                        mScrubber.start(mEngine, mCurrentSource);
+                    break;
+                case CMD_SCRUB:
+                    mScrubber.scrubTo(msg.arg1);
+                    break;
+                case CMD_SCRUB_STOP:
+                    if (mScrubber.isScrubbing())
+                        mScrubber.stop(msg.arg1);
+                    else if (mIsPrepared && msg.arg1 >= 0)
+                        mEngine.seekTo(msg.arg1); // touched before track was prepared
+                    saveState();
+                    break;
+                case CMD_OPEN:
+                    try {
+                        open((Track) msg.obj);
+                    } catch (IOException | IllegalArgumentException | SecurityException ignored) {
+                    }
+                    break;
+                case CMD_SET_PLAYLIST:
+                    handleSetPlaylist((PlaylistProvider) msg.obj);
+                    break;
+                case CMD_PLAY_PLAYLIST:
+                    handleSetPlaylist((PlaylistProvider) msg.obj);
+                    selectTrack();
+                    break;
+                case CMD_APPEND:
+                    handleAppend((Playlist) msg.obj);
+                    break;
+                case CMD_REPEAT_MODE:
+                    mOrder.setRepeatMode(msg.arg1);
+                    prepareNextTrack();
+                    saveState();
+                    break;
+                case CMD_SHUFFLE:
+                    mOrder.setShuffle(msg.arg1 != 0);
+                    prepareNextTrack();
+                    saveState();
+                    break;
+                case CMD_GAPLESS:
+                    if (mGapless)
+                        prepareNextTrack();
+                    else
+                        dropNextTrack();
+                    break;
+                case CMD_PLAYER_ENGINE:
+                    handleSetPlayerEngine((String) msg.obj);
+                    break;
+                case CMD_ATTACH_TAG:
+                    // previous tag is told playback is stopped
+                    handleStop(msg.arg1);
+                    break;
+                case CMD_RESET:
+                    handleReset();
+                    break;
+                case CMD_ADD_OBSERVER:
+                    mProgressObservers.put(msg.obj, msg.arg1);
+                    mProgressObserverCount = mProgressObservers.size();
+                    updateProgressDelay();
+                    updateProgressTicker();
+                    break;
+                case CMD_REMOVE_OBSERVER:
+                    if (mProgressObservers.remove(msg.obj) == null)
+                        break;
+                    mProgressObserverCount = mProgressObservers.size();
+                    updateProgressDelay();
+                    updateProgressTicker();
+                    break;
+                case CMD_UPDATE_TICKER:
+                    updateProgressTicker();
+                    break;
+                case CMD_RESTORE:
+                    restoreState();
+                    break;
+                case CMD_RELEASE:
+                    broadcast(AUDIO_STOPPED);
+                    release();
+                    break;
+                case CMD_QUIT:
+                    broadcast(AUDIO_STOPPED);
+                    broadcast(AUDIO_SERVICE_STOPPED);
+                    mPlayerHandler.removeCallbacksAndMessages(null);
+                    mSnapshot.close();
+                    release();
+                    mPlayerThread.quit();
+                    break;
+            }
+            return true;
+        }
+    };
+
+    private void send(int command) {
+        mPlayerHandler.obtainMessage(command).sendToTarget();
+    }
+
+    private void send(int command, int arg) {
+        mPlayerHandler.obtainMessage(command, arg, 0).sendToTarget();
+    }
+
+    private void send(int command, Object obj) {
+        mPlayerHandler.obtainMessage(command, obj).sendToTarget();
+    }
+
     @Override
     public int onStartCommand(Intent intent, int flags, int startId) {
         String action = "";
@@ -149,11 +394,15 @@ public class AudioService extends Service {
                     icon = intent.getIntExtra(AUDIO_NOTIFICATION_ICON_RES, icon);
                     showClose = intent.getBooleanExtra(AUDIO_NOTIFICATION_SHOW_CLOSE, true);
                     minified = intent.getBooleanExtra(AUDIO_NOTIFICATION_MINIFIED, false);
-                    mAttachedTag = intent.getIntExtra("tag", Integer.MIN_VALUE);
+                    setNotificationUpdateInterval(intent.getLongExtra(AUDIO_NOTIFICATION_UPDATE_INTERVAL, mNotificationUpdateInterval));
+                    if (intent.hasExtra(AUDIO_PLAYER_ENGINE))
+                        send(CMD_PLAYER_ENGINE, intent.getStringExtra(AUDIO_PLAYER_ENGINE));
                 }
                 addNotification(id, icon, showClose, minified);
-                broadcast(AUDIO_SERVICE_STARTED);
-                mAttachedTag = Integer.MIN_VALUE;
+                broadcast(AUDIO_SERVICE_STARTED, intent != null ? intent.getIntExtra("tag", Integer.MIN_VALUE) : Integer.MIN_VALUE);
+                // restarted after process was killed
+                if (intent == null)
+                    send(CMD_RESTORE);
                 break;
         }
         return START_STICKY;
@@ -169,49 +418,79 @@ public class AudioService extends Service {
     }
 
     private void addNotification(int channelId, int icon, boolean showClose, boolean minified) {
-        mContentView = new RemoteViews(getPackageName(), R.layout.audio_notification);
-        mContentViewMin = new RemoteViews(getPackageName(), R.layout.audio_notification_minified);
-//        mContentView.setTextViewText(R.id.artist, getString(R.string.no_artist));
-        mContentView.setTextViewText(R.id.title, getString(R.string.no_title));
-        mContentViewMin.setTextViewText(R.id.title, getString(R.string.no_title));
-
-        Intent intent = new Intent(this, AudioService.class);
-        intent.setAction(ACTION_CONTROL_AUDIO);
-        PendingIntent pendingIntent = getPendingIntent(94, intent);
-        mContentView.setOnClickPendingIntent(R.id.play, pendingIntent);
-
-        if (!minified) {
-            intent.setAction(ACTION_PREVIOUS_AUDIO);
-            pendingIntent = getPendingIntent(73, intent);
-            mContentView.setOnClickPendingIntent(R.id.rewind, pendingIntent);
-            intent.setAction(ACTION_NEXT_AUDIO);
-            pendingIntent = getPendingIntent(68, intent);
-            mContentView.setOnClickPendingIntent(R.id.forward, pendingIntent);
-        } else {
-            mContentView.setViewVisibility(R.id.title, View.GONE);
-            mContentView.setViewVisibility(R.id.rewind, View.GONE);
-            mContentView.setViewVisibility(R.id.forward, View.GONE);
-        }
-
-        if (showClose) {
-            intent.setAction(ACTION_DESTROY_SERVICE);
-            pendingIntent = getPendingIntent(34, intent);
-            mContentView.setOnClickPendingIntent(R.id.close, pendingIntent);
-        } else
-            mContentView.setViewVisibility(R.id.close, View.GONE);
-
+        mNotificationShowClose = showClose;
+        mNotificationMinified = minified;
         mBuilder = createBuilder(this, channelId)
                 .setAutoCancel(false)
                 .setOngoing(true)
                 .setSmallIcon(icon)
-                .setContent(mContentView)
-                .setCustomContentView(mContentViewMin)
-                .setCustomBigContentView(mContentView)
                 .setStyle(new NotificationCompat.DecoratedCustomViewStyle()) // TODO androidx.media.app.NotificationCompat.DecoratedMediaCustomViewStyle
                 // https://developer.android.com/reference/androidx/media/app/NotificationCompat.DecoratedMediaCustomViewStyle.html
                 .setWhen(System.currentTimeMillis());
 
-        startForeground(AUDIO_SERVICE_NOTIFICATION, mBuilder.build());
+        if (mNotificationRenderer != null)
+            mNotificationRenderer.cancel();
+        mNotificationRenderer = new NotificationRenderer(mNotificationManager, AUDIO_SERVICE_NOTIFICATION, mNotificationFactory);
+        mNotificationRenderer.setMinInterval(mNotificationUpdateInterval);
+        mNotificationRenderer.update(isPlaying(), mTrackTitle);
+        startForeground(AUDIO_SERVICE_NOTIFICATION, mNotificationRenderer.render());
+    }
+
+    /**
+     * RemoteViews are created from scratch for each post, so their action lists do not grow with
+     * every play/pause toggle.
+     */
+    private NotificationRenderer.NotificationFactory mNotificationFactory = new NotificationRenderer.NotificationFactory() {
+        @Override
+        public Notification createNotification(boolean playing, CharSequence title) {
+            RemoteViews contentView = new RemoteViews(getPackageName(), R.layout.audio_notification);
+            RemoteViews contentViewMin = new RemoteViews(getPackageName(), R.layout.audio_notification_minified);
+            if (title == null || title.length() == 0)
+                title = getString(R.string.no_title);
+//            contentView.setTextViewText(R.id.artist, getString(R.string.no_artist));
+            contentView.setTextViewText(R.id.title, title);
+            contentViewMin.setTextViewText(R.id.title, title);
+            contentView.setImageViewResource(R.id.play, playing ? R.drawable.ic_pause_white_24dp : R.drawable.ic_play_arrow_white_24dp);
+
+            Intent intent = new Intent(AudioService.this, AudioService.class);
+            intent.setAction(ACTION_CONTROL_AUDIO);
+            PendingIntent pendingIntent = getPendingIntent(94, intent);
+            contentView.setOnClickPendingIntent(R.id.play, pendingIntent);
+
+            if (!mNotificationMinified) {
+                intent.setAction(ACTION_PREVIOUS_AUDIO);
+                pendingIntent = getPendingIntent(73, intent);
+                contentView.setOnClickPendingIntent(R.id.rewind, pendingIntent);
+                intent.setAction(ACTION_NEXT_AUDIO);
+                pendingIntent = getPendingIntent(68, intent);
+                contentView.setOnClickPendingIntent(R.id.forward, pendingIntent);
+            } else {
+                contentView.setViewVisibility(R.id.title, View.GONE);
+                contentView.setViewVisibility(R.id.rewind, View.GONE);
+                contentView.setViewVisibility(R.id.forward, View.GONE);
+            }
+
+            if (mNotificationShowClose) {
+                intent.setAction(ACTION_DESTROY_SERVICE);
+                pendingIntent = getPendingIntent(34, intent);
+                contentView.setOnClickPendingIntent(R.id.close, pendingIntent);
+            } else
+                contentView.setViewVisibility(R.id.close, View.GONE);
+
+            return mBuilder.setContent(contentView)
+                    .setCustomContentView(contentViewMin)
+                    .setCustomBigContentView(contentView)
+                    .build();
+        }
+    };
+
+    /**
+     * Minimal time between notification updates, in milliseconds.
+     */
+    public void setNotificationUpdateInterval(long interval) {
+        mNotificationUpdateInterval = interval;
+        if (mNotificationRenderer != null)
+            mNotificationRenderer.setMinInterval(interval);
     }
 
     @SuppressWarnings("deprecation")
@@ -233,160 +512,507 @@ public class AudioService extends Service {
         return new NotificationCompat.Builder(context, channelId);
     }
 
-    private void initMediaPlayer() {
-        mTracks = new ArrayList<>();
-        mMediaPlayer = new MediaPlayer();
-        mMediaPlayer.setOnCompletionListener(new MediaPlayer.OnCompletionListener() {
-            @Override
-            public void onCompletion(MediaPlayer mp) {
-                if (!mIsPrepared)
-                    return;
-                if (isCorrectTrack(mCurrentTrack + 1)) {
-                    mCurrentTrack++;
-                    selectTrack(true);
-                } else {
-                    if (!mLoop) {
-                        broadcast(AUDIO_COMPLETED);
-                        setDataSource(mCurrentSource);
-                        return;
-                    }
+    private void createEngine() {
+        mEngine = Util.createPlayerEngineOrDefault(this, mEngineClass);
+        mEngine.setListener(mEngineListener);
+    }
 
-                    if (isCorrectTrack(0)) {
-                        mCurrentTrack = 0;
-                        selectTrack(true);
-                    } else {
-                        pause();
-                        broadcast(AUDIO_TRACK_CHANGED);
-                        start();
-                    }
-                }
+    /**
+     * Use custom {@link PlayerEngine} for playback, current track is stopped.
+     *
+     * @param className engine class name, null for {@link MediaPlayerEngine}
+     * @throws IllegalArgumentException if class is not found or is not a {@link PlayerEngine}
+     */
+    public void setPlayerEngine(String className) {
+        Util.checkPlayerEngine(className);
+        send(CMD_PLAYER_ENGINE, className);
+    }
+
+    private void handleSetPlayerEngine(String className) {
+        if (TextUtils.isEmpty(className))
+            className = null;
+        if (TextUtils.equals(className, mEngineClass))
+            return;
+
+        mEngineClass = className;
+        if (mEngine == null)
+            return;
+
+        handleStop(mAttachedTag);
+        dropNextTrack();
+        mScrubber.cancel();
+        mEngine.release();
+        if (mNextEngine != null)
+            mNextEngine.release();
+        mNextEngine = null;
+        mIsPrepared = false;
+        createEngine();
+        updateProgressTicker();
+    }
+
+    private PlayerEngine.Listener mEngineListener = new PlayerEngine.Listener() {
+        @Override
+        public void onPrepared(PlayerEngine engine) {
+            if (engine != mEngine)
+                return;
+            mIsPrepared = true;
+            mTimer.onPrepared();
+            updateProgressDelay();
+            if (mResumePosition > 0) {
+                engine.seekTo(mResumePosition);
+                mResumePosition = 0;
             }
-        });
-
-        mMediaPlayer.setOnPreparedListener(new MediaPlayer.OnPreparedListener() {
-            @Override
-            public void onPrepared(MediaPlayer mp) {
-                mIsPrepared = true;
-                int duration = mp.getDuration();
-                if (duration > 0) {
-                    mProgressDelay = mp.getDuration() / 100;
-                    if (mProgressDelay < 1000) {
-                        if (mProgressDelay < 100)
-                            mProgressDelay = 100;
-                    } else
-                        mProgressDelay = 1000;
-                }
 
-                if (mWasPlaying) {
-                    mp.start();
-                    mWasPlaying = false;
-                }
+            if (mWasPlaying) {
+                engine.start();
+                mTimer.onStarted();
+                mWasPlaying = false;
+                updateProgressTicker();
+            }
+
+            resolveTrackTitle();
+            broadcast(AUDIO_PREPARED);
+            prepareNextTrack();
+        }
 
-                mContentView.setTextViewText(R.id.title, getTrackTitle());
-                mContentViewMin.setTextViewText(R.id.title, getTrackTitle());
-                mNotificationManager.notify(AUDIO_SERVICE_NOTIFICATION, mBuilder.build());
-                broadcast(AUDIO_PREPARED);
+        @Override
+        public void onCompletion(PlayerEngine engine) {
+            if (!mIsPrepared || engine != mEngine)
+                return;
+            if (mIsNextPrepared) {
+                switchToNextTrack();
+                return;
             }
-        });
-    }
 
-    private void startUpdateThread() {
-        if (mUiThread == null || mUiThread.isInterrupted() || mUiThread.isAlive() || mUiThread.getState() != Thread.State.NEW) {
-            mUiThread = new Thread() {
+            int next = mOrder.next(false);
+            if (next < 0) {
+                broadcast(AUDIO_COMPLETED);
+                try {
+                    open(mCurrentItem);
+                } catch (IOException | IllegalArgumentException | SecurityException ignored) {
+                }
+            } else if (next == mCurrentTrack) {
+                handlePause();
+                broadcast(AUDIO_TRACK_CHANGED);
+                handleStart();
+            } else {
+                mCurrentTrack = next;
+                selectTrack(true);
+            }
+        }
+
+        @Override
+        public boolean onError(PlayerEngine engine, int what, int extra) {
+            return false;
+        }
+
+        @Override
+        public void onSeekComplete(PlayerEngine engine) {
+            if (engine != mEngine)
+                return;
+            mTimer.onSeekComplete();
+            mScrubber.onSeekComplete(engine);
+        }
+
+        @Override
+        public void onBuffering(PlayerEngine engine, boolean buffering) {
+            if (engine == mEngine)
+                mTimer.onBuffering(buffering);
+        }
+    };
+
+    private MetadataResolver.OnMetadataResolvedListener mOnTitleResolvedListener = new MetadataResolver.OnMetadataResolvedListener() {
+        @Override
+        public void onMetadataResolved(final Object source, final String title) {
+            mPlayerHandler.post(new Runnable() {
                 @Override
                 public void run() {
-                    while (!isInterrupted()) {
-                        try {
-                            Thread.sleep(mProgressDelay);
-                            if (mIsPrepared && isPlaying())
-                                broadcast(AUDIO_PROGRESS_UPDATED);
-                        } catch (InterruptedException | IllegalStateException ignored) {
-                        }
-                    }
+                    if (source != mCurrentSource)
+                        return;
+
+                    mTrackTitle = title;
+                    updateNotification();
+                    broadcast(AUDIO_TITLE_RESOLVED);
                 }
-            };
+            });
         }
+    };
+
+    private void resolveTrackTitle() {
+        mTrackTitle = mCurrentItem != null ? mCurrentItem.getTitle() : null;
+        if (mTrackTitle != null) {
+            updateNotification();
+        } else if (mCurrentSource != null)
+            MetadataResolver.getInstance(this).resolve(mCurrentSource, mOnTitleResolvedListener);
+    }
 
+    /**
+     * Listener of the engine preparing next track. Engines swap listeners with each gapless switch.
+     */
+    private PlayerEngine.Listener mNextEngineListener = new PlayerEngine.Listener() {
+        @Override
+        public void onPrepared(PlayerEngine engine) {
+            if (engine != mNextEngine || !mIsPrepared)
+                return;
+            mIsNextPrepared = mEngine.setNextEngine(engine);
+        }
+
+        @Override
+        public void onCompletion(PlayerEngine engine) {
+        }
+
+        @Override
+        public boolean onError(PlayerEngine engine, int what, int extra) {
+            if (engine == mNextEngine)
+                dropNextTrack();
+            return true;
+        }
+
+        @Override
+        public void onSeekComplete(PlayerEngine engine) {
+        }
+
+        @Override
+        public void onBuffering(PlayerEngine engine, boolean buffering) {
+        }
+    };
+
+    /**
+     * Pick tick interval so that each update moves the widest observed SeekBar by at least one
+     * pixel, but keep at least one update per second for time labels.
+     */
+    private void updateProgressDelay() {
+        int duration = getTotalDuration();
+        int width = 0;
+        for (Integer observerWidth : mProgressObservers.values())
+            if (observerWidth > width)
+                width = observerWidth;
+
+        if (duration <= 0)
+            mProgressDelay = MAX_PROGRESS_DELAY;
+        else if (width > 0)
+            mProgressDelay = duration / width;
+        else
+            mProgressDelay = duration / 100;
+
+        if (mProgressDelay < MIN_PROGRESS_DELAY)
+            mProgressDelay = MIN_PROGRESS_DELAY;
+        else if (mProgressDelay > MAX_PROGRESS_DELAY)
+            mProgressDelay = MAX_PROGRESS_DELAY;
+    }
+
+    private int getNextTrackPosition() {
+        int next = mOrder.peekNext(false);
+        return next != mCurrentTrack ? next : -1;
+    }
+
+    private void prepareNextTrack() {
+        if (!mGapless || Build.VERSION.SDK_INT < Build.VERSION_CODES.JELLY_BEAN || !mIsPrepared)
+            return;
+
+        int next = getNextTrackPosition();
+        if (next == mNextTrack)
+            return;
+        dropNextTrack();
+        if (next < 0)
+            return;
+
+        if (mNextEngine == null) {
+            mNextEngine = Util.createPlayerEngineOrDefault(this, mEngineClass);
+            mNextEngine.setListener(mNextEngineListener);
+        }
+
+        Track track = getTrack(next);
         try {
-            mUiThread.start();
-        } catch (IllegalThreadStateException ignored) {
+            mNextEngine.setDataSource(this, Util.getPlaybackSource(this, track));
+            mNextEngine.prepareAsync();
+            mNextTrack = next;
+            mNextItem = track;
+        } catch (IOException | IllegalArgumentException | SecurityException ignored) {
+            dropNextTrack();
+        }
+    }
+
+    private void dropNextTrack() {
+        if (mIsNextPrepared)
+            mEngine.setNextEngine(null);
+
+        mIsNextPrepared = false;
+        mNextTrack = -1;
+        mNextItem = null;
+        if (mNextEngine != null)
+            mNextEngine.reset();
+    }
+
+    private void switchToNextTrack() {
+        mScrubber.cancel();
+        PlayerEngine finished = mEngine;
+        mEngine = mNextEngine;
+        mEngine.setListener(mEngineListener);
+        mNextEngine = finished;
+        mNextEngine.setListener(mNextEngineListener);
+        mOrder.next(false);
+        mCurrentTrack = mNextTrack;
+        mCurrentItem = mNextItem;
+        mCurrentSource = mNextItem.getSource();
+        mTimer.onSwitched(mCurrentSource);
+        mIsNextPrepared = false;
+        mNextTrack = -1;
+        mNextItem = null;
+        finished.reset();
+
+        updateProgressDelay();
+        resolveTrackTitle();
+        broadcast(AUDIO_TRACK_CHANGED);
+        broadcast(AUDIO_PREPARED);
+        broadcast(AUDIO_STARTED);
+        updateProgressTicker();
+        prepareNextTrack();
+    }
+
+    private final Runnable mProgressTask = new Runnable() {
+        @Override
+        public void run() {
+            if (mIsPrepared && isPlaying()) {
+                broadcast(AUDIO_PROGRESS_UPDATED);
+                mPlayerHandler.postDelayed(this, mProgressDelay);
+            } else
+                mIsTicking = false;
+        }
+    };
+
+    private final BroadcastReceiver mScreenReceiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            mScreenOn = Intent.ACTION_SCREEN_ON.equals(intent.getAction());
+            send(CMD_UPDATE_TICKER);
+        }
+    };
+
+    /**
+     * Run progress updates only while playing, screen is on and someone is watching.
+     */
+    private void updateProgressTicker() {
+        boolean observed = mBroadcastProgress || !mProgressObservers.isEmpty();
+        boolean run = mScreenOn && observed && mIsPrepared && isPlaying();
+        if (run && !mIsTicking) {
+            mIsTicking = true;
+            mPlayerHandler.post(mProgressTask);
+        } else if (!run && mIsTicking) {
+            mIsTicking = false;
+            mPlayerHandler.removeCallbacks(mProgressTask);
         }
     }
 
+    /**
+     * Register visible progress observer.
+     *
+     * @param observer observer key, usually a view
+     * @param width    width of observing SeekBar in pixels, 0 if unknown
+     */
+    public void addProgressObserver(Object observer, int width) {
+        mPlayerHandler.obtainMessage(CMD_ADD_OBSERVER, width, 0, observer).sendToTarget();
+    }
+
+    public void removeProgressObserver(Object observer) {
+        send(CMD_REMOVE_OBSERVER, observer);
+    }
+
+    public int getProgressObserverCount() {
+        return mProgressObserverCount;
+    }
+
     public int getAttachedTag() {
         return mAttachedTag;
     }
 
+    /**
+     * Tag is attached at once, so following calls from the attaching view already see it.
+     */
     public void attachTag(int tag) {
 //        Log.d("AudioView", "attaching " + tag);
-        stop();
+        int previous = mAttachedTag;
         mAttachedTag = tag;
+        send(CMD_ATTACH_TAG, previous);
     }
 
     private void broadcast(int type) {
-//        Log.d("AudioView", "broadcast: " + type + " tag: " + mAttachedTag);
+        broadcast(type, mAttachedTag);
+    }
+
+    private void broadcast(int type, int tag) {
+//        Log.d("AudioView", "broadcast: " + type + " tag: " + tag);
+        if (type == AUDIO_SERVICE_STOPPED)
+            AudioStatusBus.getInstance().postAll(type, tag);
+        else
+            AudioStatusBus.getInstance().post(type, tag);
+
+        // playback state changed, progress is saved by its own timer
+        if (type <= AUDIO_TRACK_CHANGED && type != AUDIO_PROGRESS_UPDATED)
+            saveState();
+
+        if (type == AUDIO_PROGRESS_UPDATED && !mBroadcastProgress)
+            return;
+
         Intent broadcast = new Intent(ACTION_STATUS_AUDIO);
         broadcast.putExtra("status", type);
-        broadcast.putExtra("tag", mAttachedTag);
+        broadcast.putExtra("tag", tag);
         sendBroadcast(broadcast);
     }
 
+    /**
+     * Also send AUDIO_PROGRESS_UPDATED as a system broadcast. Off by default, in-process
+     * listeners should subscribe to {@link AudioStatusBus} instead.
+     */
+    public void setBroadcastProgress(boolean broadcastProgress) {
+        mBroadcastProgress = broadcastProgress;
+        send(CMD_UPDATE_TICKER);
+    }
+
+    public Object getCurrentSource() {
+        return mCurrentSource;
+    }
+
     public boolean isPrepared() {
         return mIsPrepared;
     }
 
     public boolean isPlaying() {
-        try {
-            return mMediaPlayer.isPlaying();
-        } catch (IllegalStateException ignored) {
-            return false;
-        }
+        return mEngine != null && mEngine.isPlaying();
     }
 
     public int getCurrentPosition() {
-        try {
-            return mMediaPlayer.getCurrentPosition();
-        } catch (IllegalStateException ignored) {
-            return 0;
-        }
+        return mEngine != null ? mEngine.getCurrentPosition() : 0;
     }
 
     public int getTotalDuration() {
-        try {
-            return mMediaPlayer.getDuration();
-        } catch (IllegalStateException | NullPointerException ignored) {
-            return 0;
-        }
+        return mEngine != null ? mEngine.getDuration() : 0;
     }
 
     public void controlAudio() {
-        if (mIsPrepared && isPlaying()) {
-            pause();
-        } else {
-            start();
-        }
+        send(CMD_CONTROL);
     }
 
     public void previousTrack() {
-        if (isCorrectTrack(mCurrentTrack - 1))
-            mCurrentTrack--;
-        else
+        send(CMD_PREVIOUS);
+    }
+
+    public void nextTrack() {
+        send(CMD_NEXT);
+    }
+
+    private void handlePreviousTrack() {
+        int previous = mOrder.previous();
+        if (previous >= 0)
+            skipTo(previous);
+    }
+
+    private void handleNextTrack() {
+        int next = mOrder.next(true);
+        if (next >= 0)
+            skipTo(next);
+    }
+
+    private final Runnable mSkipTask = new Runnable() {
+        @Override
+        public void run() {
+            mIsSkipPending = false;
+            mWasPlaying = mSkipWasPlaying;
+            try {
+                open(mCurrentItem);
+            } catch (IOException | IllegalArgumentException | SecurityException ignored) {
+            }
+        }
+    };
+
+    /**
+     * Announce chosen track at once, prepare it only if no other skip comes within skip delay,
+     * so skipping through several tracks opens only the last one. Current playback and prepare
+     * in flight are cancelled right away.
+     */
+    private void skipTo(int position) {
+        if (mSkipDelay <= 0) {
+            mCurrentTrack = position;
+            selectTrack();
             return;
+        }
+
+        if (!mIsSkipPending)
+            mSkipWasPlaying = isPlaying() || mWasPlaying && !mIsPrepared;
+        handleReset();
+        mCurrentTrack = position;
+        Track track = getTrack(position);
+        mCurrentItem = track;
+        mCurrentSource = track.getSource();
+        mTrackTitle = track.getTitle();
+        updateNotification();
+        broadcast(AUDIO_TRACK_CHANGED);
+        if (mTrackTitle != null)
+            broadcast(AUDIO_TITLE_RESOLVED);
 
-        selectTrack();
+        mIsSkipPending = true;
+        mPlayerHandler.removeCallbacks(mSkipTask);
+        mPlayerHandler.postDelayed(mSkipTask, mSkipDelay);
     }
 
-    public void nextTrack() {
-        if (isCorrectTrack(mCurrentTrack + 1))
-            mCurrentTrack++;
-        else
+    /**
+     * Rapid next/previous commands are merged: track changes at once, but only the last chosen
+     * one is prepared when no other command comes within the delay.
+     *
+     * @param delay milliseconds, 0 to prepare every chosen track immediately
+     */
+    public void setSkipDelay(long delay) {
+        mSkipDelay = delay < 0 ? 0 : delay;
+    }
+
+    /**
+     * Latency histograms of this service's player, printed with {@link PlaybackEventLog} by
+     * {@code adb shell dumpsys activity service com.keenfin.audioview.AudioService}.
+     */
+    public PlaybackMetrics getMetrics() {
+        return mMetrics;
+    }
+
+    /**
+     * Pass {@code trace on} or {@code trace off} after the service name to switch
+     * {@link PlaybackTrace} sections.
+     */
+    @Override
+    protected void dump(FileDescriptor fd, PrintWriter writer, String[] args) {
+        if (args != null && args.length == 2 && "trace".equals(args[0])) {
+            PlaybackTrace.setEnabled("on".equals(args[1]));
+            writer.println("Trace sections " + (PlaybackTrace.isEnabled() ? "enabled" : "disabled"));
             return;
+        }
 
-        selectTrack();
+        writer.println("AudioService prepared=" + mIsPrepared + " source=" + mCurrentSource);
+        writer.println("Playback metrics:");
+        mMetrics.dump(writer);
+        writer.println("Recent player events:");
+        PlaybackEventLog.getInstance().dump(writer);
     }
 
     private boolean isCorrectTrack(int trackPosition) {
-        return mTracks.size() > 0 && trackPosition >= 0 && trackPosition < mTracks.size();
+        return trackPosition >= 0 && trackPosition < mPlaylist.getCount();
+    }
+
+    /**
+     * Resolve track through the window, tracks far from the current one are dropped so memory
+     * does not depend on playlist size.
+     */
+    private Track getTrack(int position) {
+        Track track = mTrackWindow.get(position);
+        if (track != null)
+            return track;
+
+        for (int i = mTrackWindow.size() - 1; i >= 0; i--)
+            if (Math.abs(mTrackWindow.keyAt(i) - mCurrentTrack) > TRACK_WINDOW)
+                mTrackWindow.removeAt(i);
+
+        track = mPlaylist.getTrack(position);
+        if (Math.abs(position - mCurrentTrack) <= TRACK_WINDOW)
+            mTrackWindow.put(position, track);
+        return track;
     }
 
     private void selectTrack() {
@@ -395,194 +1021,374 @@ public class AudioService extends Service {
     }
 
     private void selectTrack(boolean wasPlaying) {
-        if (mTracks.size() < 1)
+        if (!isCorrectTrack(mCurrentTrack))
             return;
 
         mWasPlaying = wasPlaying;
-        Object track = mTracks.get(mCurrentTrack);
-
         try {
-            if (track.getClass() == String.class) {
-                setDataSource((String) track);
-            } else if (track.getClass() == Uri.class) {
-                setDataSource((Uri) track);
-            } else if (track.getClass() == FileDescriptor.class) {
-                setDataSource((FileDescriptor) track);
-            }
-        } catch (IOException ignored) {
+            open(getTrack(mCurrentTrack));
+        } catch (IOException | IllegalArgumentException | SecurityException ignored) {
         }
 
         broadcast(AUDIO_TRACK_CHANGED);
     }
 
+    /**
+     * @param dataSource String, Uri, FileDescriptor, Track, List of them or PlaylistProvider
+     */
     public void setDataSource(Object dataSource) {
-        try {
-            if (dataSource.getClass() == String.class) {
-                setDataSource((String) dataSource);
-            } else if (dataSource.getClass() == Uri.class) {
-                setDataSource((Uri) dataSource);
-            } else if (dataSource.getClass() == FileDescriptor.class) {
-                setDataSource((FileDescriptor) dataSource);
-            } else if (dataSource.getClass() == List.class) {
-                setDataSource((List) dataSource);
-            } else
-                throw new IllegalArgumentException("AudioView supports only String, Uri, FileDescriptor data sources now.");
-        } catch (IOException ignored) {
-            throw new IllegalArgumentException("AudioView supports only String, Uri, FileDescriptor data sources now.");
+        if (dataSource instanceof PlaylistProvider) {
+            setDataSource((PlaylistProvider) dataSource);
+        } else if (dataSource instanceof List) {
+            setDataSource((List) dataSource);
+        } else {
+            send(CMD_OPEN, Track.of(dataSource));
         }
     }
 
+    /**
+     * Items are validated on the calling thread, then appended on the player thread.
+     */
     public void addToPlaylist(Object item) throws RuntimeException {
-        if (mTracks == null)
+        checkAppendable();
+        send(CMD_APPEND, Playlist.EMPTY.add(item));
+    }
+
+    /**
+     * Append all items at once, every item is validated before any is added.
+     */
+    public void addToPlaylist(Collection<?> items) throws RuntimeException {
+        checkAppendable();
+        send(CMD_APPEND, Playlist.of(items));
+    }
+
+    public void addToPlaylist(Playlist playlist) {
+        checkAppendable();
+        send(CMD_APPEND, playlist);
+    }
+
+    private void checkAppendable() {
+        if (!(mPlaylist instanceof Playlist))
+            throw new IllegalStateException("Can't add tracks to PlaylistProvider, use setPlaylist instead.");
+    }
+
+    private void handleAppend(Playlist tracks) {
+        // playlist could be replaced by a command queued in between
+        if (!(mPlaylist instanceof Playlist))
             return;
-        if (item.getClass() == String.class) {
-            mTracks.add(item);
-        } else if (item.getClass() == Uri.class) {
-            mTracks.add(item);
-        } else if (item.getClass() == FileDescriptor.class) {
-            mTracks.add(item);
-        } else if (item.getClass() == List.class) {
-            mTracks.add(item);
-        } else
-            throw new IllegalArgumentException("AudioView supports only String, Uri, FileDescriptor data sources now.");
+
+        mPlaylist = ((Playlist) mPlaylist).addAll(tracks);
+        mOrder.setCount(mPlaylist.getCount());
+        prepareNextTrack();
     }
 
     public void setDataSource(List tracks) throws RuntimeException {
-        if (tracks.size() > 0) {
-            Object itemClass = tracks.get(0);
-            boolean isCorrectClass = itemClass instanceof String || itemClass instanceof Uri || itemClass instanceof FileDescriptor;
+        setDataSource(Playlist.of(tracks));
+    }
 
-            if (!isCorrectClass)
-                throw new RuntimeException("AudioView supports only String, Uri, FileDescriptor data sources now.");
+    /**
+     * Play the playlist from the first track, or from a random one in shuffle mode. Playlist is
+     * shared, not copied.
+     */
+    public void setDataSource(PlaylistProvider playlist) {
+        if (playlist.getCount() < 1)
+            return;
 
-            //noinspection unchecked
-            mTracks = new ArrayList(tracks);
-            mCurrentTrack = 0;
-            selectTrack();
-        }
+        send(CMD_PLAY_PLAYLIST, playlist);
+    }
+
+    /**
+     * Replace playlist without touching current playback. Next/previous navigate from the start
+     * of the new playlist.
+     */
+    public void setPlaylist(PlaylistProvider playlist) {
+        send(CMD_SET_PLAYLIST, playlist);
+    }
+
+    private void handleSetPlaylist(PlaylistProvider playlist) {
+        dropNextTrack();
+        mPlaylist = playlist;
+        mTrackWindow.clear();
+        mOrder.reset(playlist.getCount());
+        mCurrentTrack = mOrder.getCurrent();
+    }
+
+    public PlaylistProvider getPlaylist() {
+        return mPlaylist;
     }
 
     public void setDataSource(String path) throws IOException {
-        reset();
-        try {
-            mMediaPlayer.setDataSource(path);
-            prepare(path);
-        } catch (IllegalStateException e) {
-            initMediaPlayer();
-        }
+        send(CMD_OPEN, new Track(path));
     }
 
     public void setDataSource(Uri uri) throws IOException {
-        reset();
-        try {
-            mMediaPlayer.setDataSource(this, uri);
-            prepare(uri);
-        } catch (IllegalStateException e) {
-            initMediaPlayer();
-        }
+        send(CMD_OPEN, new Track(uri));
     }
 
     public void setDataSource(FileDescriptor fd) throws IOException {
-        reset();
-        try {
-            mMediaPlayer.setDataSource(fd);
-            prepare(fd);
-        } catch (IllegalStateException e) {
-            initMediaPlayer();
-        }
+        send(CMD_OPEN, new Track(fd));
+    }
+
+    private void open(Track track) throws IOException {
+        mPlayerHandler.removeCallbacks(mSkipTask);
+        mIsSkipPending = false;
+        mResumePosition = 0;
+        handleReset();
+        mEngine.setDataSource(this, Util.getPlaybackSource(this, track));
+        mTimer.onDataSource(track.getSource(), mWasPlaying);
+        mEngine.prepareAsync();
+        mCurrentItem = track;
+        mCurrentSource = track.getSource();
     }
 
     private void release() {
         mAttachedTag = Integer.MIN_VALUE;
-        try {
+        mScrubber.cancel();
+        if (mEngine != null) {
             if (mIsPrepared)
-                mMediaPlayer.stop();
-            mMediaPlayer.release();
-        } catch (Exception ignored) {
+                mEngine.stop();
+            mEngine.release();
         }
+        if (mNextEngine != null)
+            mNextEngine.release();
+        mEngine = null;
+        mNextEngine = null;
+        mIsNextPrepared = false;
+        mNextTrack = -1;
         mIsPrepared = false;
-        SERVICE_RUNNING = false;
+        updateProgressTicker();
     }
 
     public void reset() {
+        send(CMD_RESET);
+    }
+
+    private void handleReset() {
+        mScrubber.cancel();
+        dropNextTrack();
         mIsPrepared = false;
-        try {
-            mMediaPlayer.reset();
-        } catch (Exception ignored) {
+        if (mEngine == null)
+            createEngine();
+        else
+            mEngine.reset();
+        updateProgressTicker();
+    }
+
+    public void start() {
+        send(CMD_START);
+    }
+
+    public void pause() {
+        send(CMD_PAUSE);
+    }
+
+    public void stop() {
+        send(CMD_STOP);
+    }
+
+    public void seekTo(Integer progress) {
+        send(CMD_SEEK, progress.intValue());
+    }
+
+    private void handleStart() {
+        mNotificationPlaying = true;
+        updateNotification();
+        mSkipWasPlaying = true;
+        mTimer.onPlayRequested();
+        if (mIsPrepared) {
+            mEngine.start();
+            mTimer.onStarted();
+            broadcast(AUDIO_STARTED);
+            updateProgressTicker();
         }
-        if (mUiThread != null)
-            mUiThread.interrupt();
     }
 
-    private void prepare(Object source) {
-        try {
-            mMediaPlayer.prepareAsync();
-            mCurrentSource = source;
-        } catch (IllegalStateException e) {
-            e.printStackTrace();
+    private void handlePause() {
+        mNotificationPlaying = false;
+        updateNotification();
+        mSkipWasPlaying = false;
+        mTimer.onPlayCancelled();
+        if (mIsPrepared && mEngine.isPlaying())
+            mEngine.pause();
+
+        updateProgressTicker();
+        broadcast(AUDIO_PAUSED);
+    }
+
+    private void handleStop(int tag) {
+        mNotificationPlaying = false;
+        updateNotification();
+        mTimer.onPlayCancelled();
+        if (mIsPrepared)
+            mEngine.stop();
+
+        updateProgressTicker();
+        broadcast(AUDIO_STOPPED, tag);
+    }
+
+    /**
+     * SeekBar is touched, following {@link #scrubTo(int)} calls are coalesced into preview seeks to
+     * sync frames, playback goes on meanwhile.
+     */
+    public void startScrub() {
+        send(CMD_SCRUB_START);
+    }
+
+    public void scrubTo(int progress) {
+        send(CMD_SCRUB, progress);
+    }
+
+    /**
+     * SeekBar is released, seek precisely to the final position.
+     *
+     * @param progress final position, negative to keep position reached by previews
+     */
+    public void stopScrub(int progress) {
+        send(CMD_SCRUB_STOP, progress);
+    }
+
+    private void handleSeekTo(int progress) {
+        if (mEngine != null) {
+            mTimer.onSeekRequested();
+            mEngine.seekTo(progress);
         }
+        saveState();
     }
 
-    public void start() {
-        mContentView.setImageViewResource(R.id.play, R.drawable.ic_pause_white_24dp);
-        mNotificationManager.notify(AUDIO_SERVICE_NOTIFICATION, mBuilder.build());
-        if (mIsPrepared) {
+    private final Runnable mNotificationTask = new Runnable() {
+        @Override
+        public void run() {
+            if (mNotificationRenderer == null)
+                return;
+            boolean traced = PlaybackTrace.begin(PlaybackTrace.SECTION_NOTIFICATION);
             try {
-                mMediaPlayer.start();
-                broadcast(AUDIO_STARTED);
-                startUpdateThread();
-            } catch (IllegalStateException ignored) {
+                mNotificationRenderer.update(mNotificationPlaying, mTrackTitle);
+            } finally {
+                PlaybackTrace.end(traced);
             }
         }
+    };
+
+    /**
+     * Notification is rendered on the main thread.
+     */
+    private void updateNotification() {
+        mHandler.removeCallbacks(mNotificationTask);
+        mHandler.post(mNotificationTask);
     }
 
-    public void pause() {
-        mContentView.setImageViewResource(R.id.play, R.drawable.ic_play_arrow_white_24dp);
-        mNotificationManager.notify(AUDIO_SERVICE_NOTIFICATION, mBuilder.build());
-        try {
-            if (mIsPrepared && mMediaPlayer.isPlaying())
-                mMediaPlayer.pause();
-        } catch (IllegalStateException ignored) {
+    private final Runnable mSnapshotTask = new Runnable() {
+        @Override
+        public void run() {
+            mIsSnapshotScheduled = false;
+            saveState();
         }
+    };
+
+    /**
+     * Schedule state snapshot to be written in background. Position is saved periodically while
+     * playing. Playlists other than {@link Playlist} are not saved, only the current track is.
+     */
+    private void saveState() {
+        if (mSnapshot == null)
+            return;
 
-        if (mUiThread != null)
-            mUiThread.interrupt();
-        broadcast(AUDIO_PAUSED);
-    }
+        Playlist playlist = Playlist.EMPTY;
+        int current = 0;
+        if (mPlaylist instanceof Playlist && isCorrectTrack(mCurrentTrack) && ((Playlist) mPlaylist).get(mCurrentTrack) == mCurrentItem) {
+            playlist = (Playlist) mPlaylist;
+            current = mCurrentTrack;
+        } else if (mCurrentItem != null)
+            playlist = Playlist.EMPTY.add(mCurrentItem);
 
-    public void stop() {
-        mContentView.setImageViewResource(R.id.play, R.drawable.ic_play_arrow_white_24dp);
-        mNotificationManager.notify(AUDIO_SERVICE_NOTIFICATION, mBuilder.build());
-        try {
-            if (mIsPrepared)
-                mMediaPlayer.stop();
-        } catch (IllegalStateException ignored) {
-        }
+        int position = mIsPrepared ? getCurrentPosition() : mResumePosition;
+        mSnapshot.save(new PlaybackSnapshot.State(mAttachedTag, current, position, mOrder.getRepeatMode(), mOrder.isShuffle(), playlist));
 
-        if (mUiThread != null)
-            mUiThread.interrupt();
-        broadcast(AUDIO_STOPPED);
+        if (isPlaying() && !mIsSnapshotScheduled) {
+            mIsSnapshotScheduled = true;
+            mPlayerHandler.postDelayed(mSnapshotTask, SNAPSHOT_INTERVAL);
+        }
     }
 
-    public void seekTo(Integer progress) {
+    /**
+     * Bring back playlist, modes and attached tag from snapshot and prepare current track at
+     * saved position, paused.
+     */
+    private void restoreState() {
+        PlaybackSnapshot.State state = mSnapshot.read();
+        if (state == null || state.playlist.isEmpty())
+            return;
+
+        mAttachedTag = state.tag;
+        mOrder.setRepeatMode(state.repeatMode);
+        handleSetPlaylist(state.playlist);
+        mOrder.setCurrent(state.current);
+        mOrder.setShuffle(state.shuffle);
+        mCurrentTrack = state.current;
+
+        mWasPlaying = false;
         try {
-            mMediaPlayer.seekTo(progress);
-        } catch (IllegalStateException ignored) {
+            open(getTrack(mCurrentTrack));
+        } catch (IOException | IllegalArgumentException | SecurityException ignored) {
+            return;
         }
+        mResumePosition = state.position;
+        broadcast(AUDIO_TRACK_CHANGED);
     }
 
     public void setLoop(boolean loop) {
-        mLoop = loop;
+        setRepeatMode(loop ? PlaybackOrder.REPEAT_ALL : PlaybackOrder.REPEAT_OFF);
+    }
+
+    /**
+     * @param repeatMode {@link PlaybackOrder#REPEAT_OFF}, {@link PlaybackOrder#REPEAT_ONE} or
+     *                   {@link PlaybackOrder#REPEAT_ALL}
+     */
+    public void setRepeatMode(int repeatMode) {
+        send(CMD_REPEAT_MODE, repeatMode);
+    }
+
+    public int getRepeatMode() {
+        return mOrder.getRepeatMode();
+    }
+
+    /**
+     * Shuffle playlist order starting from the current track. Playlist itself is not changed.
+     */
+    public void setShuffle(boolean shuffle) {
+        send(CMD_SHUFFLE, shuffle ? 1 : 0);
     }
 
+    public boolean isShuffle() {
+        return mOrder.isShuffle();
+    }
+
+    public void setGapless(boolean gapless) {
+        mGapless = gapless;
+        send(CMD_GAPLESS);
+    }
+
+    public boolean isGapless() {
+        return mGapless;
+    }
+
+    /**
+     * Title of the current track. Empty until {@link #AUDIO_TITLE_RESOLVED} is broadcast.
+     */
     public String getTrackTitle() {
-        return Util.getTrackTitle(this, mCurrentSource);
+        return mTrackTitle != null ? mTrackTitle : "";
     }
 
+    /**
+     * May be called from any thread, formats into buffer of the calling thread.
+     */
     public String formatTime(boolean full) {
+        TimeFormatter formatter = Util.getTimeFormatter();
         int current = getCurrentPosition();
         if (full)
-            return Util.formatTime(current) + " / " + Util.formatTime(getTotalDuration());
-        return Util.formatTime(current);
+            formatter.formatTime(current, getTotalDuration());
+        else
+            formatter.formatTime(current);
+        return formatter.toString();
     }
 }
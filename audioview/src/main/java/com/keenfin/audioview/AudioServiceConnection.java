@@ -0,0 +1,157 @@
+/*
+ *           Copyright © 2019 Stanislav Petriakov
+ *  Distributed under the Boost Software License, Version 1.0.
+ *     (See accompanying file LICENSE_1_0.txt or copy at
+ *           http://www.boost.org/LICENSE_1_0.txt)
+ */
+
+package com.keenfin.audioview;
+
+import android.content.ComponentName;
+import android.content.Context;
+import android.content.Intent;
+import android.content.ServiceConnection;
+import android.os.Handler;
+import android.os.IBinder;
+import android.os.Looper;
+import android.util.Log;
+
+import java.util.ArrayList;
+
+import static com.keenfin.audioview.AudioService.AUDIO_SERVICE_STOPPED;
+
+/**
+ * Process-wide binding to AudioService shared by all subscribers. The service is bound once for
+ * the first subscriber and unbound shortly after the last one leaves, so views scrolling in and
+ * out of a list do not rebind on every attach. Must be used from the main thread.
+ */
+public final class AudioServiceConnection {
+    public interface OnServiceConnectionListener {
+        void onServiceConnected(AudioService service);
+
+        void onServiceDisconnected();
+    }
+
+    public static final long UNBIND_DELAY = 1000;
+
+    private static AudioServiceConnection sInstance;
+
+    private final Context mContext;
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+    private final ArrayList<OnServiceConnectionListener> mListeners = new ArrayList<>();
+    private AudioService mService;
+    private boolean mIsBound = false;
+    private int mBindCount = 0;
+
+    private final ServiceConnection mServiceConnection = new ServiceConnection() {
+        @Override
+        public void onServiceConnected(ComponentName componentName, IBinder iBinder) {
+            mService = ((AudioService.AudioServiceBinder) iBinder).getService();
+            for (int i = mListeners.size() - 1; i >= 0; i--)
+                if (i < mListeners.size())
+                    mListeners.get(i).onServiceConnected(mService);
+        }
+
+        @Override
+        public void onServiceDisconnected(ComponentName componentName) {
+            notifyDisconnected();
+        }
+    };
+
+    private final AudioStatusBus.OnAudioStatusListener mStatusListener = new AudioStatusBus.OnAudioStatusListener() {
+        @Override
+        public void onAudioStatus(int status, int tag) {
+            // binding with no flags survives service restart and will be connected again
+            if (status == AUDIO_SERVICE_STOPPED)
+                notifyDisconnected();
+        }
+    };
+
+    private final Runnable mUnbindTask = new Runnable() {
+        @Override
+        public void run() {
+            if (mListeners.isEmpty())
+                unbind();
+        }
+    };
+
+    private AudioServiceConnection(Context context) {
+        mContext = context.getApplicationContext();
+        AudioStatusBus.getInstance().subscribeAll(mStatusListener);
+    }
+
+    public static synchronized AudioServiceConnection getInstance(Context context) {
+        if (sInstance == null)
+            sInstance = new AudioServiceConnection(context);
+        return sInstance;
+    }
+
+    /**
+     * Add subscriber and bind to service if needed. If service is already connected listener is
+     * notified immediately. Subscribing twice has no effect.
+     */
+    public void subscribe(OnServiceConnectionListener listener) {
+        mHandler.removeCallbacks(mUnbindTask);
+        if (mListeners.contains(listener))
+            return;
+
+        mListeners.add(listener);
+        if (!mIsBound)
+            bind();
+        else if (mService != null)
+            listener.onServiceConnected(mService);
+    }
+
+    public void unsubscribe(OnServiceConnectionListener listener) {
+        if (!mListeners.remove(listener))
+            return;
+        if (mListeners.isEmpty())
+            mHandler.postDelayed(mUnbindTask, UNBIND_DELAY);
+    }
+
+    public AudioService getService() {
+        return mService;
+    }
+
+    public boolean isBound() {
+        return mIsBound;
+    }
+
+    public int getSubscriberCount() {
+        return mListeners.size();
+    }
+
+    /**
+     * Total number of bindService calls issued by this process.
+     */
+    public int getBindCount() {
+        return mBindCount;
+    }
+
+    private void bind() {
+        Intent intent = new Intent(mContext, AudioService.class);
+        mIsBound = mContext.bindService(intent, mServiceConnection, 0);
+        mBindCount++;
+    }
+
+    private void unbind() {
+        if (!mIsBound)
+            return;
+        try {
+            mContext.unbindService(mServiceConnection);
+        } catch (Exception e) {
+            Log.d("AudioView", e.getLocalizedMessage());
+        }
+        mIsBound = false;
+        mService = null;
+    }
+
+    private void notifyDisconnected() {
+        if (mService == null)
+            return;
+        mService = null;
+        for (int i = mListeners.size() - 1; i >= 0; i--)
+            if (i < mListeners.size())
+                mListeners.get(i).onServiceDisconnected();
+    }
+}
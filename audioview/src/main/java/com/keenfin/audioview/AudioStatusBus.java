@@ -0,0 +1,160 @@
+/*
+ *           Copyright © 2019 Stanislav Petriakov
+ *  Distributed under the Boost Software License, Version 1.0.
+ *     (See accompanying file LICENSE_1_0.txt or copy at
+ *           http://www.boost.org/LICENSE_1_0.txt)
+ */
+
+package com.keenfin.audioview;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Message;
+import android.util.SparseArray;
+
+import java.util.ArrayList;
+
+/**
+ * In-process channel for AudioService status events. Events are delivered on the main thread
+ * only to listeners subscribed for the event tag (plus listeners subscribed for all tags).
+ * Posting reuses pooled Messages, so there is no allocation per event.
+ * Subscription methods must be called on the main thread.
+ */
+public final class AudioStatusBus {
+    // Statuses posted by AudioService, also available as AudioService constants
+    public static final int AUDIO_PREPARED = 0;
+    public static final int AUDIO_STARTED = 1;
+    public static final int AUDIO_PAUSED = 2;
+    public static final int AUDIO_STOPPED = 3;
+    public static final int AUDIO_PROGRESS_UPDATED = 4;
+    public static final int AUDIO_COMPLETED = 5;
+    public static final int AUDIO_TRACK_CHANGED = 6;
+    public static final int AUDIO_SERVICE_STARTED = 7;
+    public static final int AUDIO_SERVICE_STOPPED = 8;
+    public static final int AUDIO_TITLE_RESOLVED = 9;
+
+    public interface OnAudioStatusListener {
+        void onAudioStatus(int status, int tag);
+    }
+
+    private static final int MSG_TAG = 0;
+    private static final int MSG_ALL = 1;
+
+    private static AudioStatusBus sInstance;
+
+    private final SparseArray<ArrayList<OnAudioStatusListener>> mListeners = new SparseArray<>();
+    private final ArrayList<OnAudioStatusListener> mGlobalListeners = new ArrayList<>();
+    private OnAudioStatusListener[] mDispatch = new OnAudioStatusListener[4];
+    private long mDeliveredCount = 0;
+
+    private final Handler mHandler = new Handler(Looper.getMainLooper(), new Handler.Callback() {
+        @Override
+        public boolean handleMessage(Message msg) {
+            dispatch(msg.arg1, msg.arg2, msg.what == MSG_ALL);
+            return true;
+        }
+    });
+
+    private AudioStatusBus() {
+    }
+
+    public static synchronized AudioStatusBus getInstance() {
+        if (sInstance == null)
+            sInstance = new AudioStatusBus();
+        return sInstance;
+    }
+
+    public void subscribe(int tag, OnAudioStatusListener listener) {
+        ArrayList<OnAudioStatusListener> listeners = mListeners.get(tag);
+        if (listeners == null) {
+            listeners = new ArrayList<>(1);
+            mListeners.put(tag, listeners);
+        }
+        if (!listeners.contains(listener))
+            listeners.add(listener);
+    }
+
+    public void unsubscribe(int tag, OnAudioStatusListener listener) {
+        ArrayList<OnAudioStatusListener> listeners = mListeners.get(tag);
+        if (listeners == null)
+            return;
+        listeners.remove(listener);
+        if (listeners.isEmpty())
+            mListeners.remove(tag);
+    }
+
+    public void subscribeAll(OnAudioStatusListener listener) {
+        if (!mGlobalListeners.contains(listener))
+            mGlobalListeners.add(listener);
+    }
+
+    public void unsubscribeAll(OnAudioStatusListener listener) {
+        mGlobalListeners.remove(listener);
+    }
+
+    public int getSubscriberCount() {
+        int count = mGlobalListeners.size();
+        for (int i = 0; i < mListeners.size(); i++)
+            count += mListeners.valueAt(i).size();
+        return count;
+    }
+
+    /**
+     * Total number of listener calls made so far.
+     */
+    public long getDeliveredCount() {
+        return mDeliveredCount;
+    }
+
+    /**
+     * Deliver status to listeners of the tag. Safe to call from any thread.
+     */
+    public void post(int status, int tag) {
+        mHandler.obtainMessage(MSG_TAG, status, tag).sendToTarget();
+    }
+
+    /**
+     * Deliver status to every subscribed listener regardless of its tag.
+     */
+    public void postAll(int status, int tag) {
+        mHandler.obtainMessage(MSG_ALL, status, tag).sendToTarget();
+    }
+
+    private void dispatch(int status, int tag, boolean all) {
+        int count = 0;
+        if (all) {
+            for (int i = 0; i < mListeners.size(); i++)
+                count = collect(mListeners.valueAt(i), count);
+        } else {
+            ArrayList<OnAudioStatusListener> listeners = mListeners.get(tag);
+            if (listeners != null)
+                count = collect(listeners, count);
+        }
+        count = collect(mGlobalListeners, count);
+        mDeliveredCount += count;
+
+        // listeners may (un)subscribe while being notified, so iterate over a snapshot
+        boolean traced = PlaybackTrace.begin(PlaybackTrace.SECTION_DISPATCH);
+        try {
+            for (int i = 0; i < count; i++) {
+                OnAudioStatusListener listener = mDispatch[i];
+                mDispatch[i] = null;
+                listener.onAudioStatus(status, tag);
+            }
+        } finally {
+            PlaybackTrace.end(traced);
+        }
+    }
+
+    private int collect(ArrayList<OnAudioStatusListener> listeners, int offset) {
+        int size = listeners.size();
+        if (offset + size > mDispatch.length) {
+            OnAudioStatusListener[] dispatch = new OnAudioStatusListener[Math.max(mDispatch.length * 2, offset + size)];
+            System.arraycopy(mDispatch, 0, dispatch, 0, offset);
+            mDispatch = dispatch;
+        }
+        for (int i = 0; i < size; i++)
+            mDispatch[offset + i] = listeners.get(i);
+        return offset + size;
+    }
+}
@@ -8,10 +8,10 @@
 package com.keenfin.audioview;
 
 import android.content.Context;
-import android.media.MediaPlayer;
 import android.net.Uri;
 import android.os.Handler;
-import android.os.Message;
+import android.os.Looper;
+import android.text.TextUtils;
 import android.support.annotation.Nullable;
 import android.util.AttributeSet;
 import android.view.View;
@@ -19,26 +19,33 @@ import android.widget.SeekBar;
 
 import java.io.FileDescriptor;
 import java.io.IOException;
-import java.util.ArrayList;
 import java.util.List;
 
 import static com.keenfin.audioview.Util.formatTime;
-import static com.keenfin.audioview.Util.getTrackTitle;
 
 public class AudioView extends BaseAudioView implements View.OnClickListener {
-    enum SEEKBAR_STATE {STICK, UNSTICK, PROGRESS}
+    protected static final long RESAMPLE_INTERVAL = 500 * 1000000L;
 
-    protected MediaPlayer mMediaPlayer;
-    protected ArrayList<Object> mTracks;
+    protected PlayerEngine mEngine;
+    protected Playlist mPlaylist = Playlist.EMPTY;
+    protected Track mCurrentItem;
     protected Object mCurrentSource;
 
+    protected final PlaybackOrder mOrder = new PlaybackOrder();
     protected int mCurrentTrack = 0;
     protected boolean mIsPrepared = false;
     protected boolean mIsAttached = false;
     protected boolean mWasPlaying;
+    protected boolean mIsSkipPending = false;
+    protected boolean mSkipWasPlaying;
 
-    protected long mProgressDelay;
-    protected Handler mHandler;
+    protected int mResumePosition = 0;
+    protected int mSamplePosition;
+    protected long mSampleTime;
+    protected int mShownSeconds = -1;
+    protected final TimeFormatter mTimeFormatter = new TimeFormatter();
+    private final PlaybackTimer mTimer = new PlaybackTimer(PlaybackMetrics.getInstance());
+    private final SeekScrubber mScrubber = new SeekScrubber(new Handler(Looper.getMainLooper()), PlaybackMetrics.getInstance());
 
     public AudioView(Context context) {
         super(context);
@@ -58,183 +65,298 @@ public class AudioView extends BaseAudioView implements View.OnClickListener {
         if (isInEditMode())
             return;
 
-        mTracks = new ArrayList<>();
-        initMediaPlayer();
-        createUpdateHandler();
-
         mProgress.setOnSeekBarChangeListener(new SeekBar.OnSeekBarChangeListener() {
             @Override
             public void onProgressChanged(SeekBar seekBar, int progress, boolean fromUser) {
-                if (!mIsPrepared)
+                if (!mIsPrepared || mEngine == null)
                     return;
                 if (fromUser) {
-                    try {
-                        mMediaPlayer.seekTo(progress);
-                    } catch (IllegalStateException ignored) {
+                    if (mScrubber.isScrubbing())
+                        mScrubber.scrubTo(progress);
+                    else {
+                        mTimer.onSeekRequested();
+                        mEngine.seekTo(progress);
                     }
+                    samplePosition(progress);
+                    updateTime(progress);
                 }
             }
 
             @Override
             public void onStartTrackingTouch(SeekBar seekBar) {
-                try {
-                    seekBar.setTag(isPlaying());
-                    if (isPlaying())
-                        mMediaPlayer.pause();
-                } catch (IllegalStateException ignored) {
-                }
+                if (mIsPrepared && mEngine != null)
+                    mScrubber.start(mEngine, mCurrentSource);
             }
 
             @Override
             public void onStopTrackingTouch(SeekBar seekBar) {
-                try {
-                    if ((boolean) seekBar.getTag())
-                        mMediaPlayer.start();
-                } catch (IllegalStateException ignored) {
-                }
+                mScrubber.stop(seekBar.getProgress());
+                samplePosition(seekBar.getProgress());
             }
         });
     }
 
-    private void createUpdateHandler() {
-        final Runnable seekBarUpdateTask = new Runnable() {
-            @Override
-            public void run() {
-                mHandler.sendEmptyMessage(SEEKBAR_STATE.PROGRESS.ordinal());
-                mHandler.postDelayed(this, mProgressDelay);
+    private ProgressScheduler.OnFrameListener mFrameListener = new ProgressScheduler.OnFrameListener() {
+        @Override
+        public void onFrame(long frameTimeNanos) {
+            updateProgress(frameTimeNanos);
+        }
+    };
+
+    /**
+     * Estimate position from last sampled one and monotonic clock, ask engine only once in
+     * {@link #RESAMPLE_INTERVAL}.
+     */
+    protected void updateProgress(long frameTimeNanos) {
+        if (!mIsPrepared || mScrubber.isScrubbing())
+            return;
+
+        int current;
+        long elapsed = frameTimeNanos - mSampleTime;
+        if (elapsed >= RESAMPLE_INTERVAL) {
+            current = getCurrentPosition();
+            samplePosition(current);
+        } else
+            current = mSamplePosition + (elapsed > 0 ? (int) (elapsed / 1000000L) : 0);
+
+        int max = mProgress.getMax();
+        if (max > 0 && current > max)
+            current = max;
+
+        if (mProgress.getProgress() < current) {
+            mProgress.setProgress(current);
+            updateTime(current);
+        }
+    }
+
+    protected void samplePosition(int position) {
+        mSamplePosition = position;
+        mSampleTime = System.nanoTime();
+    }
+
+    protected void updateTime(int position) {
+        if (mTime == null)
+            return;
+
+        int seconds = position / 1000;
+        if (seconds == mShownSeconds)
+            return;
+
+        mShownSeconds = seconds;
+        int length;
+        if (mTotalTime != null)
+            length = mTimeFormatter.formatTime(position);
+        else
+            length = mTimeFormatter.formatTime(position, getTotalDuration());
+        mTime.setText(mTimeFormatter.getBuffer(), 0, length);
+    }
+
+    protected void startProgressUpdates() {
+        samplePosition(getCurrentPosition());
+        mProgress.setProgress(mSamplePosition);
+        ProgressScheduler.getInstance().add(mFrameListener);
+    }
+
+    protected void stopProgressUpdates() {
+        ProgressScheduler.getInstance().remove(mFrameListener);
+    }
+
+    private MetadataResolver.OnMetadataResolvedListener mOnTitleResolvedListener = new MetadataResolver.OnMetadataResolvedListener() {
+        @Override
+        public void onMetadataResolved(Object source, String title) {
+            if (mIsAttached && source == mCurrentSource)
+                mTitle.setText(title);
+        }
+    };
+
+    private PlayerEngine.Listener mEngineListener = new PlayerEngine.Listener() {
+        @Override
+        public void onPrepared(PlayerEngine engine) {
+            if (!mIsAttached || engine != mEngine)
+                return;
+            mIsPrepared = true;
+            mTimer.onPrepared();
+            showTitle();
+            setDuration(engine.getDuration());
+            mShownSeconds = -1;
+            loadWaveform(mCurrentSource);
+            if (mResumePosition > 0) {
+                engine.seekTo(mResumePosition);
+                mProgress.setProgress(mResumePosition);
             }
-        };
 
-        mHandler = new Handler(getContext().getMainLooper(), new Handler.Callback() {
-            Thread mUiThread;
+            if (mAudioViewListener != null)
+                mAudioViewListener.onPrepared();
+
+            if (mWasPlaying) {
+                mEngine.start();
+                mTimer.onStarted();
+                startProgressUpdates();
+                setPauseIcon();
+            } else {
+                MediaPlayerPool.getInstance().park(mEngine);
+                setPlayIcon();
+            }
+        }
 
-            @Override
-            public boolean handleMessage(Message msg) {
-                if (msg.what == SEEKBAR_STATE.UNSTICK.ordinal()) {
-                    if (mUiThread != null && !mUiThread.isInterrupted())
-                        mUiThread.interrupt();
-                    return true;
-                } else if (msg.what == SEEKBAR_STATE.STICK.ordinal()) {
-                    mUiThread = new Thread(seekBarUpdateTask);
-                    mUiThread.start();
-                    mProgress.setProgress(getCurrentPosition());
-                    return true;
-                } else if (msg.what == SEEKBAR_STATE.PROGRESS.ordinal()) {
-                    if (mIsPrepared) {
-                        int current = getCurrentPosition();
-                        if (mProgress.getProgress() < current) {
-                            mProgress.setProgress(current);
-                            if (mTotalTime != null && mTime != null)
-                                mTime.setText(formatTime(getCurrentPosition()));
-                            else if (mTime != null)
-                                mTime.setText(getTrackTime());
-                        }
-                    }
-                    return true;
-                }
-                return false;
+        @Override
+        public void onCompletion(PlayerEngine engine) {
+            if (engine != mEngine)
+                return;
+            int next = mOrder.next(false);
+            if (next < 0) {
+                pause();
+                mProgress.setProgress(getTotalDuration());
+                if (mAudioViewListener != null)
+                    mAudioViewListener.onCompletion();
+            } else if (next == mCurrentTrack) {
+                pause();
+                start();
+            } else {
+                mCurrentTrack = next;
+                selectTrack(true);
             }
-        });
+        }
+
+        @Override
+        public boolean onError(PlayerEngine engine, int what, int extra) {
+            return false;
+        }
+
+        @Override
+        public void onSeekComplete(PlayerEngine engine) {
+            if (engine != mEngine)
+                return;
+            mTimer.onSeekComplete();
+            mScrubber.onSeekComplete(engine);
+        }
+
+        @Override
+        public void onBuffering(PlayerEngine engine, boolean buffering) {
+            if (engine == mEngine)
+                mTimer.onBuffering(buffering);
+        }
+    };
+
+    private MediaPlayerPool.OnReclaimListener mOnReclaimListener = new MediaPlayerPool.OnReclaimListener() {
+        @Override
+        public void onReclaim(PlayerEngine player) {
+            if (player != mEngine)
+                return;
+            if (mIsPrepared)
+                mResumePosition = getCurrentPosition();
+            stopProgressUpdates();
+            mScrubber.cancel();
+            mEngine = null;
+            mIsPrepared = false;
+            setPlayIcon();
+        }
+    };
+
+    private void acquireEngine() {
+        if (mEngine != null) {
+            MediaPlayerPool.getInstance().unpark(mEngine);
+            return;
+        }
+
+        mEngine = MediaPlayerPool.getInstance().acquire(getContext(), mEngineClass, mOnReclaimListener);
+        mEngine.setListener(mEngineListener);
     }
 
-    private void initMediaPlayer() {
-        mMediaPlayer = new MediaPlayer();
+    private void releaseEngine() {
+        stopProgressUpdates();
+        mScrubber.cancel();
+        MediaPlayerPool.getInstance().release(mEngine);
+        mEngine = null;
+        mIsPrepared = false;
+    }
 
-        mMediaPlayer.setOnCompletionListener(new MediaPlayer.OnCompletionListener() {
-            @Override
-            public void onCompletion(MediaPlayer mp) {
-                if (isCorrectTrack(mCurrentTrack + 1)) {
-                    mCurrentTrack++;
-                    selectTrack(true);
-                } else {
-                    if (!mLoop) {
-                        pause();
-                        mProgress.setProgress(getTotalDuration());
-                        if (mAudioViewListener != null)
-                            mAudioViewListener.onCompletion();
-                        return;
-                    }
+    /**
+     * Use custom {@link PlayerEngine} for playback. Current track is prepared again with the new
+     * engine, playback position is kept.
+     *
+     * @param className engine class name, null for {@link MediaPlayerEngine}
+     * @throws IllegalArgumentException if class is not found or is not a {@link PlayerEngine}
+     */
+    public void setPlayerEngine(String className) {
+        Util.checkPlayerEngine(className);
+        if (TextUtils.equals(className, mEngineClass))
+            return;
 
-                    if (isCorrectTrack(0)) {
-                        mCurrentTrack = 0;
-                        selectTrack(true);
-                    } else {
-                        pause();
-                        start();
-                    }
-                }
-            }
-        });
+        mEngineClass = className;
+        if (mEngine == null)
+            return;
 
-        mMediaPlayer.setOnPreparedListener(new MediaPlayer.OnPreparedListener() {
-            @Override
-            public void onPrepared(MediaPlayer mp) {
-                if (!mIsAttached)
-                    return;
-                mIsPrepared = true;
-                if (mShowTitle) {
-                    try {
-                        mTitle.setText(getTrackTitle(getContext(), mCurrentSource));
-                    } catch (Exception ignored) {
-                    }
-                }
+        boolean wasPlaying = isPlaying();
+        if (mIsPrepared)
+            mResumePosition = getCurrentPosition();
+        releaseEngine();
+        if (wasPlaying)
+            start();
+    }
 
-                int duration = mp.getDuration();
-                setDuration(duration);
-                if (duration > 0) {
-                    mProgressDelay = mp.getDuration() / 100;
-                    if (mProgressDelay < 1000) {
-                        if (mProgressDelay < 100)
-                            mProgressDelay = 100;
-                    } else
-                        mProgressDelay = 1000;
-                }
+    /**
+     * Lease a player and prepare current track, playback starts once prepared if requested.
+     */
+    private void initEngine() {
+        if (mCurrentItem == null)
+            return;
 
-                if (mAudioViewListener != null)
-                    mAudioViewListener.onPrepared();
+        try {
+            open(mCurrentItem);
+        } catch (IOException | IllegalArgumentException | SecurityException ignored) {
+        }
+    }
 
-                if (mWasPlaying) {
-                    try {
-                        mMediaPlayer.start();
-                    } catch (IllegalStateException ignored) {
-                    }
-                    setPauseIcon();
-                } else
-                    setPlayIcon();
-            }
-        });
+    private void showTitle() {
+        if (!mShowTitle || mTitle == null || mCurrentItem == null)
+            return;
 
-        boolean fix = mCurrentSource != null && mTracks.size() == 0;
-        if (fix)
-            mTracks.add(mCurrentSource);
-        if (mTracks.size() > 0)
-            selectTrack(false);
-        if (fix)
-            mTracks.remove(0);
+        if (mCurrentItem.getTitle() != null)
+            mTitle.setText(mCurrentItem.getTitle());
+        else
+            MetadataResolver.getInstance(getContext()).resolve(mCurrentSource, mOnTitleResolvedListener);
+    }
+
+    /**
+     * Show title, known duration and waveform of a track which is not prepared yet.
+     */
+    private void showMetadata() {
+        if (mCurrentItem == null)
+            return;
+
+        showTitle();
+        if (mCurrentItem.getDuration() > 0) {
+            setDuration(mCurrentItem.getDuration());
+            mShownSeconds = -1;
+            mProgress.setProgress(mResumePosition);
+        }
+        loadWaveform(mCurrentSource);
     }
 
     @Override
     protected void onAttachedToWindow() {
         super.onAttachedToWindow();
         mIsAttached = true;
+        // player is leased on play, rows scrolled by only show metadata
         if (!mIsPrepared)
-            initMediaPlayer();
+            showMetadata();
     }
 
     @Override
     protected void onDetachedFromWindow() {
         super.onDetachedFromWindow();
         mIsAttached = false;
-        mMediaPlayer.release();
-        mIsPrepared = false;
+        mWasPlaying = false;
+        removeCallbacks(mSkipTask);
+        mIsSkipPending = false;
+        if (mIsPrepared)
+            mResumePosition = getCurrentPosition();
+        releaseEngine();
     }
 
     public boolean isPlaying() {
-        try {
-            return mMediaPlayer.isPlaying();
-        } catch (IllegalStateException ignored) {
-        }
-        return false;
+        return mEngine != null && mEngine.isPlaying();
     }
 
     @Override
@@ -251,26 +373,67 @@ public class AudioView extends BaseAudioView implements View.OnClickListener {
 
     @Override
     public void previousTrack() {
-        if (isCorrectTrack(mCurrentTrack - 1))
-            mCurrentTrack--;
-        else
-            return;
-
-        selectTrack(false);
+        int previous = mOrder.previous();
+        if (previous >= 0)
+            skipTo(previous);
     }
 
     @Override
     public void nextTrack() {
-        if (isCorrectTrack(mCurrentTrack + 1))
-            mCurrentTrack++;
-        else
+        int next = mOrder.next(true);
+        if (next >= 0)
+            skipTo(next);
+    }
+
+    private final Runnable mSkipTask = new Runnable() {
+        @Override
+        public void run() {
+            mIsSkipPending = false;
+            selectTrack(mSkipWasPlaying);
+        }
+    };
+
+    /**
+     * Show chosen track at once, prepare it only if no other skip comes within skip delay.
+     * Current playback and prepare in flight are cancelled right away.
+     */
+    protected void skipTo(int position) {
+        mCurrentTrack = position;
+        if (mSkipDelay <= 0 || !mIsAttached) {
+            selectTrack(false);
             return;
+        }
 
-        selectTrack(false);
+        if (!mIsSkipPending)
+            mSkipWasPlaying = isPlaying() || mWasPlaying && !mIsPrepared;
+        if (mEngine != null)
+            reset();
+
+        Track track = mPlaylist.get(position);
+        setSource(track);
+        mProgress.setProgress(0);
+        if (mShowTitle && mTitle != null)
+            mTitle.setText(track.getTitle() != null ? track.getTitle() : "");
+
+        mIsSkipPending = true;
+        removeCallbacks(mSkipTask);
+        postDelayed(mSkipTask, mSkipDelay);
+    }
+
+    @Override
+    public void setRepeatMode(int repeatMode) {
+        super.setRepeatMode(repeatMode);
+        mOrder.setRepeatMode(repeatMode);
+    }
+
+    @Override
+    public void setShuffle(boolean shuffle) {
+        super.setShuffle(shuffle);
+        mOrder.setShuffle(shuffle);
     }
 
     protected boolean isCorrectTrack(int trackPosition) {
-        return mTracks.size() > 0 && trackPosition >= 0 && trackPosition < mTracks.size();
+        return mPlaylist.isCorrectPosition(trackPosition);
     }
 
     protected void controlAudio() {
@@ -282,131 +445,165 @@ public class AudioView extends BaseAudioView implements View.OnClickListener {
     }
 
     protected void selectTrack(boolean play) {
-        if (mTracks.size() < 1)
+        if (mPlaylist.isEmpty())
             return;
 
-        Object track = mTracks.get(mCurrentTrack);
         mWasPlaying = isPlaying() || play;
-
         try {
-            if (track.getClass() == String.class) {
-                setDataSource((String) track);
-            } else if (track.getClass() == Uri.class) {
-                setDataSource((Uri) track);
-            } else if (track.getClass() == FileDescriptor.class) {
-                setDataSource((FileDescriptor) track);
-            }
-        } catch (IOException ignored) {
+            open(mPlaylist.get(mCurrentTrack));
+        } catch (IOException | IllegalArgumentException | SecurityException ignored) {
         }
     }
 
     @Override
     public void setDataSource(List tracks) throws RuntimeException {
-        if (tracks.size() > 0) {
-            Object itemClass = tracks.get(0);
-            boolean isCorrectClass = itemClass instanceof String || itemClass instanceof Uri || itemClass instanceof FileDescriptor;
+        setDataSource(Playlist.of(tracks));
+    }
 
-            if (!isCorrectClass)
-                throw new RuntimeException("AudioView supports only String, Uri, FileDescriptor data sources now.");
+    /**
+     * Play the playlist from the first track, or from a random one in shuffle mode. Playlist is
+     * shared, not copied.
+     */
+    @Override
+    public void setDataSource(Playlist playlist) {
+        if (playlist.isEmpty())
+            return;
 
-            //noinspection unchecked
-            mTracks = new ArrayList(tracks);
-            mCurrentTrack = 0;
-            selectTrack(false);
-        }
+        mPlaylist = playlist;
+        mOrder.reset(playlist.size());
+        mCurrentTrack = mOrder.getCurrent();
+        selectTrack(false);
+    }
+
+    public Playlist getPlaylist() {
+        return mPlaylist;
     }
 
     @Override
     public void setDataSource(String path) throws IOException {
-        reset();
-        try {
-            mMediaPlayer.setDataSource(path);
-            prepare(path);
-        } catch (IllegalStateException ignored) {
-        }
+        open(new Track(path));
     }
 
     @Override
     public void setDataSource(Uri uri) throws IOException {
-        reset();
-        try {
-            mMediaPlayer.setDataSource(getContext(), uri);
-            prepare(uri);
-        } catch (IllegalStateException ignored) {
-        }
+        open(new Track(uri));
     }
 
     @Override
     public void setDataSource(FileDescriptor fd) throws IOException {
+        open(new Track(fd));
+    }
+
+    /**
+     * Prepare the track if playback is requested or the view already holds a player, otherwise
+     * only remember and show it.
+     */
+    protected void open(Track track) throws IOException {
+        removeCallbacks(mSkipTask);
+        mIsSkipPending = false;
+        if (!mIsAttached || mEngine == null && !mWasPlaying) {
+            setSource(track);
+            if (mIsAttached)
+                showMetadata();
+            return;
+        }
+
         reset();
         try {
-            mMediaPlayer.setDataSource(fd);
-            prepare(fd);
-        } catch (IllegalStateException ignored) {
+            mEngine.setDataSource(getContext(), Util.getPlaybackSource(getContext(), track));
+        } catch (IOException | IllegalArgumentException | SecurityException e) {
+            // bad or revoked source, show it as not playing
+            releaseEngine();
+            mWasPlaying = false;
+            setSource(track);
+            setPlayIcon();
+            showMetadata();
+            throw e;
         }
+        mTimer.onDataSource(track.getSource(), mWasPlaying);
+        prepare(track);
     }
 
     protected void reset() {
+        stopProgressUpdates();
+        mScrubber.cancel();
         mIsPrepared = false;
-        mMediaPlayer.reset();
+        acquireEngine();
+        mEngine.reset();
+    }
+
+    protected void prepare(Track track) {
+        mEngine.prepareAsync();
+        setSource(track);
     }
 
-    protected void prepare(Object source) {
-        mMediaPlayer.prepareAsync();
-        mCurrentSource = source;
+    /**
+     * Remember track to prepare it later, playback position is kept only for the same source.
+     */
+    protected void setSource(Track track) {
+        if (track.getSource() != mCurrentSource)
+            mResumePosition = 0;
+        mCurrentItem = track;
+        mCurrentSource = track.getSource();
     }
 
     @Override
     public void start() {
-        if (mIsPrepared) {
-            try {
-                mMediaPlayer.start();
-            } catch (IllegalStateException ignored) {
-            }
+        if (mIsSkipPending) {
+            mSkipWasPlaying = true;
+            mTimer.onPlayRequested();
+            setPauseIcon();
+        } else if (mIsPrepared) {
+            mTimer.onPlayRequested();
+            MediaPlayerPool.getInstance().unpark(mEngine);
+            mEngine.start();
+            mTimer.onStarted();
 
             setPauseIcon();
-            mHandler.sendEmptyMessage(SEEKBAR_STATE.STICK.ordinal());
-        }
+            startProgressUpdates();
+        } else if (mEngine == null && mIsAttached && mCurrentSource != null) {
+            // no player yet or it was returned to pool, prepare and resume from saved position
+            mWasPlaying = true;
+            mTimer.onPlayRequested();
+            initEngine();
+        } else if (mEngine != null)
+            mWasPlaying = true;
     }
 
     @Override
     public void pause() {
-        try {
-            if (mIsPrepared && mMediaPlayer.isPlaying())
-                mMediaPlayer.pause();
-        } catch (IllegalStateException ignored) {
-        }
+        mWasPlaying = false;
+        mSkipWasPlaying = false;
+        mTimer.onPlayCancelled();
+        if (mIsPrepared && mEngine.isPlaying())
+            mEngine.pause();
 
         setPlayIcon();
-        mHandler.sendEmptyMessage(SEEKBAR_STATE.UNSTICK.ordinal());
+        stopProgressUpdates();
+        if (mIsPrepared)
+            MediaPlayerPool.getInstance().park(mEngine);
     }
 
     @Override
     public void stop() {
-        try {
-            if (mIsPrepared && mMediaPlayer.isPlaying())
-                mMediaPlayer.stop();
-        } catch (IllegalStateException ignored) {
-        }
+        if (mIsPrepared && mEngine.isPlaying())
+            mEngine.stop();
 
         setPlayIcon();
-        mHandler.sendEmptyMessage(SEEKBAR_STATE.UNSTICK.ordinal());
+        // stopped player has to be prepared again anyway
+        mResumePosition = 0;
+        if (mEngine != null)
+            releaseEngine();
     }
 
     public int getCurrentPosition() {
-        try {
-            return mMediaPlayer.getCurrentPosition();
-        } catch (IllegalStateException ignored) {
-        }
-        return 0;
+        return mEngine != null ? mEngine.getCurrentPosition() : 0;
     }
 
     public int getTotalDuration() {
-        try {
-            return mMediaPlayer.getDuration();
-        } catch (IllegalStateException ignored) {
-        }
-        return 0;
+        if (mEngine != null)
+            return mEngine.getDuration();
+        return mCurrentItem != null && mCurrentItem.getDuration() > 0 ? mCurrentItem.getDuration() : 0;
     }
 
     protected String getTrackTime() {
@@ -10,10 +10,8 @@ package com.keenfin.audioview;
 import android.app.ActivityManager;
 import android.content.*;
 import android.net.Uri;
-import android.os.IBinder;
 import android.support.annotation.Nullable;
 import android.util.AttributeSet;
-import android.util.Log;
 import android.view.View;
 import android.widget.SeekBar;
 
@@ -33,19 +31,22 @@ public class AudioView2 extends BaseAudioView implements View.OnClickListener {
     private boolean mServiceNotificationShowClose = true;
     private boolean mServiceNotificationMinified = false;
     protected Object mDataSource;
-    private AudioService.AudioServiceBinder mServiceBinder = null;
+    private AudioService mService = null;
     private View mClickedView;
     private boolean mFixPlayback;
+    private boolean mIsAttachedToWindow;
+    private final TimeFormatter mTimeFormatter = new TimeFormatter();
 
     private AudioService getService() {
-        return mServiceBinder != null ? mServiceBinder.getService() : null;
+        return mService;
     }
 
-    private ServiceConnection mServiceConnection = new ServiceConnection() {
+    private AudioServiceConnection.OnServiceConnectionListener mServiceConnectionListener = new AudioServiceConnection.OnServiceConnectionListener() {
         @Override
-        public void onServiceConnected(ComponentName componentName, IBinder iBinder) {
+        public void onServiceConnected(AudioService service) {
 //            Log.d("AudioView", "connected");
-            mServiceBinder = ((AudioService.AudioServiceBinder) iBinder);
+            mService = service;
+            updateProgressObserver();
 
             if (mFixPlayback) {
                 onClick(findViewById(R.id.play));
@@ -54,35 +55,36 @@ public class AudioView2 extends BaseAudioView implements View.OnClickListener {
         }
 
         @Override
-        public void onServiceDisconnected(ComponentName componentName) {
-            mServiceBinder = null;
-            try {
-                getContext().unregisterReceiver(mAudioReceiver);
-            } catch (Exception ignored) {
-            }
+        public void onServiceDisconnected() {
+            mService = null;
         }
     };
 
-    private BroadcastReceiver mAudioReceiver = new BroadcastReceiver() {
+    private AudioStatusBus.OnAudioStatusListener mAudioStatusListener = new AudioStatusBus.OnAudioStatusListener() {
         @Override
-        public void onReceive(Context context, Intent intent) {
-            int status = intent.getIntExtra("status", -1);
+        public void onAudioStatus(int status, int tag) {
 //            Log.d("AudioView", "got: " + status + " tag: " + mTag);
             switch (status) {
                 case AUDIO_STOPPED:
+                    // also sent to the tag detached by another view
+                    updateProgressObserver();
+                    setPlayIcon();
+                    break;
                 case AUDIO_PAUSED:
                     setPlayIcon();
                     break;
                 case AUDIO_SERVICE_STARTED:
-                    if (mAutoStartService && intent.getIntExtra("tag", Integer.MIN_VALUE) == mTag)
-                        if (mServiceBinder != null)
+                    if (mAutoStartService && tag == mTag)
+                        if (mService != null)
                             onClick(findViewById(R.id.play));
                         else
                             mFixPlayback = true;
                     break;
                 case AUDIO_SERVICE_STOPPED:
-                    unbindAudioService();
-                    mServiceBinder = null;
+                    if (mService != null)
+                        mService.removeProgressObserver(AudioView2.this);
+                    mService = null;
+                    setPlayIcon();
                     mProgress.setProgress(0);
                     if (mTime != null)
                         mTime.setText("");
@@ -102,6 +104,7 @@ public class AudioView2 extends BaseAudioView implements View.OnClickListener {
                     }
 
                     setDuration(getService().getTotalDuration());
+                    loadWaveform(getService().getCurrentSource());
 
                     if (mAudioViewListener != null)
                         mAudioViewListener.onPrepared();
@@ -126,7 +129,7 @@ public class AudioView2 extends BaseAudioView implements View.OnClickListener {
                                 setPauseIcon();
                             }
                             if (mTime != null)
-                                mTime.setText(getService().formatTime(mTotalTime == null));
+                                updateTime();
                         } else {
                             mProgress.setProgress(current);
                         }
@@ -141,6 +144,10 @@ public class AudioView2 extends BaseAudioView implements View.OnClickListener {
                 case AUDIO_TRACK_CHANGED:
                     mProgress.setProgress(0);
                     break;
+                case AUDIO_TITLE_RESOLVED:
+                    if (mShowTitle && mTitle != null)
+                        mTitle.setText(getService().getTrackTitle());
+                    break;
             }
         }
     };
@@ -168,24 +175,29 @@ public class AudioView2 extends BaseAudioView implements View.OnClickListener {
                 if (getService() == null || !attached())
                     return;
 
-                if (fromUser)
+                if (fromUser) {
                     mSeekTo = progress;
+                    if (mFrozen)
+                        getService().scrubTo(progress);
+                }
 
                 if (mTime != null)
-                    mTime.setText(getService().formatTime(mTotalTime == null));
+                    updateTime();
             }
 
             @Override
             public void onStartTrackingTouch(SeekBar seekBar) {
                 mFrozen = true;
+                if (getService() != null && getService().isPrepared() && attached())
+                    getService().startScrub();
             }
 
             @Override
             public void onStopTrackingTouch(SeekBar seekBar) {
-                if (getService() != null && getService().isPrepared() && attached()) {
-                    getService().seekTo(mSeekTo);
+                if (getService() != null && attached()) {
+                    getService().stopScrub(mSeekTo);
                     if (mTime != null)
-                        mTime.setText(getService().formatTime(mTotalTime == null));
+                        updateTime();
                 }
                 mSeekTo = -1;
                 mFrozen = false;
@@ -194,25 +206,20 @@ public class AudioView2 extends BaseAudioView implements View.OnClickListener {
     }
 
     private void bindAudioService() {
-        Intent intent = new Intent(getContext(), AudioService.class);
-        boolean b = getContext().getApplicationContext().bindService(intent, mServiceConnection, 0);
-//        Log.d("AudioView", "binded " + b);
+        AudioServiceConnection.getInstance(getContext()).subscribe(mServiceConnectionListener);
     }
 
     private void unbindAudioService() {
-        try {
-            getContext().getApplicationContext().unbindService(mServiceConnection);
-        } catch (Exception ignored) {
-            Log.d("AudioView", ignored.getLocalizedMessage());
-        }
+        AudioServiceConnection.getInstance(getContext()).unsubscribe(mServiceConnectionListener);
+        mService = null;
     }
 
     @Override
     protected void onAttachedToWindow() {
         super.onAttachedToWindow();
+        mIsAttachedToWindow = true;
         bindAudioService();
-        IntentFilter filter = new IntentFilter(ACTION_STATUS_AUDIO);
-        getContext().registerReceiver(mAudioReceiver, filter);
+        AudioStatusBus.getInstance().subscribe(mTag, mAudioStatusListener);
         if (!attached() || attached() && !getService().isPlaying())
             setPlayIcon();
     }
@@ -220,9 +227,53 @@ public class AudioView2 extends BaseAudioView implements View.OnClickListener {
     @Override
     protected void onDetachedFromWindow() {
         super.onDetachedFromWindow();
+        mIsAttachedToWindow = false;
+        updateProgressObserver();
+        AudioStatusBus.getInstance().unsubscribe(mTag, mAudioStatusListener);
         unbindAudioService();
     }
 
+    @Override
+    protected void onWindowVisibilityChanged(int visibility) {
+        super.onWindowVisibilityChanged(visibility);
+        updateProgressObserver();
+    }
+
+    @Override
+    protected void onSizeChanged(int w, int h, int oldw, int oldh) {
+        super.onSizeChanged(w, h, oldw, oldh);
+        updateProgressObserver();
+    }
+
+    private void updateTime() {
+        AudioService service = getService();
+        if (mTime == null || service == null)
+            return;
+
+        int length;
+        if (mTotalTime == null)
+            length = mTimeFormatter.formatTime(service.getCurrentPosition(), service.getTotalDuration());
+        else
+            length = mTimeFormatter.formatTime(service.getCurrentPosition());
+        mTime.setText(mTimeFormatter.getBuffer(), 0, length);
+    }
+
+    /**
+     * Only visible view attached to the service track observes progress, other rows do not keep
+     * the ticker running or widen its interval.
+     */
+    private void updateProgressObserver() {
+        AudioService service = getService();
+        if (service == null || mProgress == null)
+            return;
+
+        if (mIsAttachedToWindow && getWindowVisibility() == VISIBLE && attached()) {
+            int width = mProgress.getWidth() - mProgress.getPaddingLeft() - mProgress.getPaddingRight();
+            service.addProgressObserver(this, width);
+        } else
+            service.removeProgressObserver(this);
+    }
+
     @Override
     public void onClick(View view) {
         if (mAutoStartService && !SERVICE_RUNNING) {
@@ -232,6 +283,8 @@ public class AudioView2 extends BaseAudioView implements View.OnClickListener {
             audioService.putExtra(AUDIO_NOTIFICATION_MINIFIED,  mServiceNotificationMinified);
             audioService.putExtra(AUDIO_NOTIFICATION_CHANNEL_ID,  mServiceNotificationId);
             audioService.putExtra(AUDIO_NOTIFICATION_ICON_RES,  mServiceNotificationIcon);
+            if (mEngineClass != null)
+                audioService.putExtra(AUDIO_PLAYER_ENGINE, mEngineClass);
             getContext().getApplicationContext().startService(audioService);
         }
 
@@ -242,7 +295,10 @@ public class AudioView2 extends BaseAudioView implements View.OnClickListener {
 
         if (!attached()) {
             getService().attachTag(mTag);
-            setLoop(mLoop);
+            updateProgressObserver();
+            setRepeatMode(mRepeatMode);
+            setShuffle(mShuffle);
+            setSkipDelay(mSkipDelay);
             setDataSource(mDataSource);
             mClickedView = view;
             return;
@@ -259,26 +315,36 @@ public class AudioView2 extends BaseAudioView implements View.OnClickListener {
     }
 
     private void setDataSource(Object dataSource) {
+        if (dataSource == null || getService() == null)
+            return;
         try {
-            if (dataSource.getClass() == String.class) {
-                setDataSource((String) dataSource);
-            } else if (dataSource.getClass() == Uri.class) {
-                setDataSource((Uri) dataSource);
-            } else if (dataSource.getClass() == FileDescriptor.class) {
-                setDataSource((FileDescriptor) dataSource);
-            } else if (dataSource.getClass() == List.class) {
-                setDataSource((List) dataSource);
-            }
-        } catch (IOException | NullPointerException ignored) {
+            getService().setDataSource(dataSource);
+        } catch (IllegalArgumentException ignored) {
         }
     }
 
     @Override
-    public void setLoop(boolean loop) {
-        super.setLoop(loop);
+    public void setRepeatMode(int repeatMode) {
+        super.setRepeatMode(repeatMode);
         if (getService() == null || !attached())
             return;
-        getService().setLoop(loop);
+        getService().setRepeatMode(repeatMode);
+    }
+
+    @Override
+    public void setShuffle(boolean shuffle) {
+        super.setShuffle(shuffle);
+        if (getService() == null || !attached())
+            return;
+        getService().setShuffle(shuffle);
+    }
+
+    @Override
+    public void setSkipDelay(long delay) {
+        super.setSkipDelay(delay);
+        if (getService() == null || !attached())
+            return;
+        getService().setSkipDelay(mSkipDelay);
     }
 
     @Override
@@ -289,6 +355,14 @@ public class AudioView2 extends BaseAudioView implements View.OnClickListener {
         getService().setDataSource(tracks);
     }
 
+    @Override
+    public void setDataSource(Playlist playlist) {
+        mDataSource = playlist;
+        if (getService() == null || !attached())
+            return;
+        getService().setDataSource(playlist);
+    }
+
     @Override
     public void setDataSource(String path) throws IOException {
         mDataSource = path;
@@ -346,7 +420,12 @@ public class AudioView2 extends BaseAudioView implements View.OnClickListener {
     }
 
     public void setTag(int tag) {
+        if (mIsAttachedToWindow && tag != mTag) {
+            AudioStatusBus.getInstance().unsubscribe(mTag, mAudioStatusListener);
+            AudioStatusBus.getInstance().subscribe(tag, mAudioStatusListener);
+        }
         mTag = tag;
+        updateProgressObserver();
     }
 
     public void setAutoStartService(boolean autostart) {
@@ -369,6 +448,16 @@ public class AudioView2 extends BaseAudioView implements View.OnClickListener {
         mServiceNotificationMinified = minified;
     }
 
+    /**
+     * {@link PlayerEngine} class name for the service to use when this view starts it.
+     *
+     * @throws IllegalArgumentException if class is not found or is not a {@link PlayerEngine}
+     */
+    public void setServicePlayerEngine(String className) {
+        Util.checkPlayerEngine(className);
+        mEngineClass = className;
+    }
+
     public boolean attached() {
         return getService() != null && getService().getAttachedTag() == mTag;
     }
@@ -0,0 +1,718 @@
+/*
+ *           Copyright © 2019 Stanislav Petriakov
+ *  Distributed under the Boost Software License, Version 1.0.
+ *     (See accompanying file LICENSE_1_0.txt or copy at
+ *           http://www.boost.org/LICENSE_1_0.txt)
+ */
+
+package com.keenfin.audioview;
+
+import android.content.Context;
+import android.content.res.TypedArray;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Path;
+import android.graphics.RectF;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.support.annotation.ColorInt;
+import android.support.annotation.Nullable;
+import android.text.TextUtils;
+import android.util.AttributeSet;
+import android.util.TypedValue;
+import android.view.MotionEvent;
+import android.view.View;
+import android.view.ViewConfiguration;
+import android.view.ViewParent;
+
+import java.io.FileDescriptor;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Single View player for dense lists, e.g. voice messages in a chat. Play/pause button, progress
+ * track, thumb and time are drawn on canvas, so there is nothing to inflate and measure besides
+ * the view itself. Tap the button to play or pause, tap or drag the track to seek.
+ * <p>
+ * API follows {@link BaseAudioView}. Like {@link AudioView} the track is prepared only when
+ * playback is requested, so rows scrolled by do not touch the player at all. Players come from
+ * {@link MediaPlayerPool}. Supported attributes are primaryColor and playerEngine.
+ */
+public class AudioViewLite extends View {
+    protected static final long RESAMPLE_INTERVAL = 500 * 1000000L;
+    private static final int DEFAULT_HEIGHT_DP = 48;
+    private static final int DEFAULT_WIDTH_DP = 240;
+    private static final int DEFAULT_PRIMARY_COLOR = 0xFF009688;
+    private static final int[] ACCENT_ATTR = {R.attr.colorAccent};
+    private static final int[] TEXT_COLOR_ATTR = {android.R.attr.textColorSecondary};
+
+    protected PlayerEngine mEngine;
+    protected Playlist mPlaylist = Playlist.EMPTY;
+    protected Track mCurrentItem;
+    protected Object mCurrentSource;
+    protected String mEngineClass;
+    protected AudioViewListener mAudioViewListener;
+
+    protected final PlaybackOrder mOrder = new PlaybackOrder();
+    protected int mCurrentTrack = 0;
+    protected boolean mIsPrepared = false;
+    protected boolean mIsAttached = false;
+    protected boolean mWasPlaying;
+    protected int mResumePosition = 0;
+    protected int mDuration = Track.UNKNOWN_DURATION;
+    protected int mPosition = 0;
+    protected int mSamplePosition;
+    protected long mSampleTime;
+
+    private final PlaybackTimer mTimer = new PlaybackTimer(PlaybackMetrics.getInstance());
+    private final SeekScrubber mScrubber = new SeekScrubber(new Handler(Looper.getMainLooper()), PlaybackMetrics.getInstance());
+    private final TimeFormatter mTimeFormatter = new TimeFormatter();
+    private int mTextLength = 0;
+    private int mShownSeconds = -1;
+    private float mShownThumbX = -1;
+
+    private final Paint mButtonPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final Paint mIconPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final Paint mTrackPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final Paint mProgressPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final Paint mTextPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final Path mPlayIcon = new Path();
+    private final RectF mSpinner = new RectF();
+    private float mButtonX, mButtonY, mButtonRadius;
+    private float mTrackLeft, mTrackRight, mTrackY;
+    private float mThumbRadius, mTextX, mTextY;
+
+    private int mTouchSlop;
+    private float mDownX, mDownY;
+    private boolean mIsButtonPressed = false;
+    private boolean mIsTrackPressed = false;
+    private boolean mIsTrackDown = false;
+
+    public AudioViewLite(Context context) {
+        super(context);
+        init(context, null);
+    }
+
+    public AudioViewLite(Context context, AttributeSet attrs) {
+        super(context, attrs);
+        init(context, attrs);
+    }
+
+    public AudioViewLite(Context context, AttributeSet attrs, int defStyleAttr) {
+        super(context, attrs, defStyleAttr);
+        init(context, attrs);
+    }
+
+    protected void init(Context context, @Nullable AttributeSet attrs) {
+        int primaryColor = getThemeColor(context, ACCENT_ATTR, DEFAULT_PRIMARY_COLOR);
+        if (attrs != null) {
+            TypedArray styleable = context.obtainStyledAttributes(attrs, R.styleable.BaseAudioView, 0, 0);
+            primaryColor = styleable.getColor(R.styleable.BaseAudioView_primaryColor, primaryColor);
+            mEngineClass = styleable.getString(R.styleable.BaseAudioView_playerEngine);
+            styleable.recycle();
+        }
+
+        mIconPaint.setColor(0xFFFFFFFF);
+        mIconPaint.setStrokeCap(Paint.Cap.ROUND);
+        mTrackPaint.setStrokeCap(Paint.Cap.ROUND);
+        mProgressPaint.setStrokeCap(Paint.Cap.ROUND);
+        mTextPaint.setColor(getThemeColor(context, TEXT_COLOR_ATTR, 0x8A000000));
+        mTextPaint.setTextAlign(Paint.Align.RIGHT);
+        mTextPaint.setTextSize(TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_SP, 12, getResources().getDisplayMetrics()));
+        setPrimaryColor(primaryColor);
+
+        mTouchSlop = ViewConfiguration.get(context).getScaledTouchSlop();
+        setClickable(true);
+        if (isInEditMode())
+            mDuration = 60000;
+        updateText();
+    }
+
+    private static int getThemeColor(Context context, int[] attr, int defaultColor) {
+        TypedArray values = context.obtainStyledAttributes(attr);
+        int color = values.getColor(0, defaultColor);
+        values.recycle();
+        return color;
+    }
+
+    public void setPrimaryColor(@ColorInt int color) {
+        mButtonPaint.setColor(color);
+        mProgressPaint.setColor(color);
+        mTrackPaint.setColor(color & 0x40FFFFFF);
+        invalidate();
+    }
+
+    private float dp(float value) {
+        return value * getResources().getDisplayMetrics().density;
+    }
+
+    @Override
+    protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
+        int width = resolveSize((int) dp(DEFAULT_WIDTH_DP) + getPaddingLeft() + getPaddingRight(), widthMeasureSpec);
+        int height = resolveSize((int) dp(DEFAULT_HEIGHT_DP) + getPaddingTop() + getPaddingBottom(), heightMeasureSpec);
+        setMeasuredDimension(width, height);
+    }
+
+    @Override
+    protected void onSizeChanged(int w, int h, int oldw, int oldh) {
+        super.onSizeChanged(w, h, oldw, oldh);
+        float top = getPaddingTop(), bottom = h - getPaddingBottom();
+        float size = bottom - top;
+        mButtonRadius = size / 2 - dp(4);
+        mButtonX = getPaddingLeft() + size / 2;
+        mButtonY = top + size / 2;
+
+        float r = mButtonRadius;
+        mPlayIcon.reset();
+        mPlayIcon.moveTo(mButtonX - r * 0.3f, mButtonY - r * 0.45f);
+        mPlayIcon.lineTo(mButtonX + r * 0.45f, mButtonY);
+        mPlayIcon.lineTo(mButtonX - r * 0.3f, mButtonY + r * 0.45f);
+        mPlayIcon.close();
+        mSpinner.set(mButtonX - r * 0.5f, mButtonY - r * 0.5f, mButtonX + r * 0.5f, mButtonY + r * 0.5f);
+        mIconPaint.setStrokeWidth(r * 0.12f);
+
+        // widest text is "hh:mm:ss", keep room for it so the track does not jump
+        mTextX = w - getPaddingRight();
+        mTextY = mButtonY - (mTextPaint.descent() + mTextPaint.ascent()) / 2;
+        float textWidth = mTextPaint.measureText("00:00:00");
+        mThumbRadius = dp(6);
+        mTrackLeft = mButtonX + size / 2 + dp(4) + mThumbRadius;
+        mTrackRight = mTextX - textWidth - dp(8) - mThumbRadius;
+        mTrackY = mButtonY;
+        mTrackPaint.setStrokeWidth(dp(3));
+        mProgressPaint.setStrokeWidth(dp(3));
+        mShownThumbX = getThumbX();
+    }
+
+    @Override
+    protected void onDraw(Canvas canvas) {
+        canvas.drawCircle(mButtonX, mButtonY, mButtonRadius, mButtonPaint);
+        boolean playing = isPlaying() || mWasPlaying;
+        if (mEngine != null && !mIsPrepared && mWasPlaying) {
+            // preparing, a quarter arc makes one turn per second
+            mIconPaint.setStyle(Paint.Style.STROKE);
+            float angle = (System.nanoTime() / 1000000 % 1000) * 0.36f;
+            canvas.drawArc(mSpinner, angle, 90, false, mIconPaint);
+        } else if (playing) {
+            mIconPaint.setStyle(Paint.Style.FILL);
+            float r = mButtonRadius;
+            canvas.drawRect(mButtonX - r * 0.35f, mButtonY - r * 0.4f, mButtonX - r * 0.1f, mButtonY + r * 0.4f, mIconPaint);
+            canvas.drawRect(mButtonX + r * 0.1f, mButtonY - r * 0.4f, mButtonX + r * 0.35f, mButtonY + r * 0.4f, mIconPaint);
+        } else {
+            mIconPaint.setStyle(Paint.Style.FILL);
+            canvas.drawPath(mPlayIcon, mIconPaint);
+        }
+
+        float thumbX = getThumbX();
+        mShownThumbX = thumbX;
+        canvas.drawLine(mTrackLeft, mTrackY, mTrackRight, mTrackY, mTrackPaint);
+        if (thumbX > mTrackLeft)
+            canvas.drawLine(mTrackLeft, mTrackY, thumbX, mTrackY, mProgressPaint);
+        canvas.drawCircle(thumbX, mTrackY, mIsTrackPressed ? mThumbRadius * 1.5f : mThumbRadius, mProgressPaint);
+
+        if (mTextLength > 0)
+            canvas.drawText(mTimeFormatter.getBuffer(), 0, mTextLength, mTextX, mTextY, mTextPaint);
+    }
+
+    private float getThumbX() {
+        if (mDuration <= 0)
+            return mTrackLeft;
+        float fraction = Math.min(1f, Math.max(0f, (float) mPosition / mDuration));
+        return mTrackLeft + (mTrackRight - mTrackLeft) * fraction;
+    }
+
+    private int getPosition(float x) {
+        float fraction = (x - mTrackLeft) / (mTrackRight - mTrackLeft);
+        return (int) (Math.min(1f, Math.max(0f, fraction)) * mDuration);
+    }
+
+    /**
+     * Current position while playing or scrubbing, duration before the track is played.
+     */
+    private void updateText() {
+        if (mIsPrepared || mPosition > 0)
+            mTextLength = mTimeFormatter.formatTime(mPosition);
+        else if (mDuration > 0)
+            mTextLength = mTimeFormatter.formatDuration(mDuration);
+        else
+            mTextLength = 0;
+        mShownSeconds = mPosition / 1000;
+    }
+
+    /**
+     * Redraw only when thumb moves by a pixel or displayed second changes.
+     */
+    private void setPosition(int position) {
+        mPosition = position;
+        if (position / 1000 != mShownSeconds) {
+            updateText();
+            invalidate();
+        } else if (Math.abs(getThumbX() - mShownThumbX) >= 1)
+            invalidate();
+    }
+
+    @Override
+    public boolean onTouchEvent(MotionEvent event) {
+        if (!isEnabled())
+            return false;
+
+        float x = event.getX(), y = event.getY();
+        switch (event.getActionMasked()) {
+            case MotionEvent.ACTION_DOWN:
+                mDownX = x;
+                mDownY = y;
+                mIsButtonPressed = x < mButtonX + mButtonRadius + dp(4);
+                mIsTrackDown = !mIsButtonPressed && x >= mTrackLeft - mThumbRadius && x <= mTrackRight + mThumbRadius
+                        && mIsPrepared && mDuration > 0;
+                if (!mIsButtonPressed && !mIsTrackDown)
+                    return false;
+                setPressed(mIsButtonPressed);
+                return true;
+            case MotionEvent.ACTION_MOVE:
+                if (mIsButtonPressed) {
+                    if (Math.abs(x - mDownX) > mTouchSlop || Math.abs(y - mDownY) > mTouchSlop) {
+                        mIsButtonPressed = false;
+                        setPressed(false);
+                    }
+                } else if (mIsTrackPressed) {
+                    scrubTo(x);
+                } else if (mIsTrackDown) {
+                    // let vertical list scroll, start dragging only on horizontal move
+                    float dx = Math.abs(x - mDownX);
+                    if (dx > mTouchSlop && dx > Math.abs(y - mDownY) && startScrub())
+                        scrubTo(x);
+                }
+                return true;
+            case MotionEvent.ACTION_UP:
+                if (mIsButtonPressed) {
+                    setPressed(false);
+                    mIsButtonPressed = false;
+                    performClick();
+                } else if (mIsTrackDown) {
+                    // tap on the track seeks precisely without previews
+                    if (!mIsTrackPressed)
+                        startScrub();
+                    stopScrub(getPosition(x));
+                }
+                mIsTrackDown = false;
+                return true;
+            case MotionEvent.ACTION_CANCEL:
+                setPressed(false);
+                mIsButtonPressed = false;
+                mIsTrackDown = false;
+                if (mIsTrackPressed)
+                    stopScrub(-1);
+                return true;
+        }
+        return false;
+    }
+
+    @Override
+    public boolean performClick() {
+        super.performClick();
+        controlAudio();
+        return true;
+    }
+
+    private boolean startScrub() {
+        if (!mIsPrepared || mEngine == null)
+            return false;
+        mIsTrackPressed = true;
+        ViewParent parent = getParent();
+        if (parent != null)
+            parent.requestDisallowInterceptTouchEvent(true);
+        mScrubber.start(mEngine, mCurrentSource);
+        return true;
+    }
+
+    private void scrubTo(float x) {
+        int position = getPosition(x);
+        mScrubber.scrubTo(position);
+        setPosition(position);
+    }
+
+    private void stopScrub(int position) {
+        if (!mIsTrackPressed)
+            return;
+        mIsTrackPressed = false;
+        mScrubber.stop(position);
+        if (position >= 0) {
+            samplePosition(position);
+            setPosition(position);
+        }
+        invalidate();
+    }
+
+    private final ProgressScheduler.OnFrameListener mFrameListener = new ProgressScheduler.OnFrameListener() {
+        @Override
+        public void onFrame(long frameTimeNanos) {
+            if (!mIsPrepared) {
+                invalidate(); // spinner
+                return;
+            }
+            if (mIsTrackPressed)
+                return;
+
+            int current;
+            long elapsed = frameTimeNanos - mSampleTime;
+            if (elapsed >= RESAMPLE_INTERVAL) {
+                current = getCurrentPosition();
+                samplePosition(current);
+            } else
+                current = mSamplePosition + (elapsed > 0 ? (int) (elapsed / 1000000L) : 0);
+            if (mDuration > 0 && current > mDuration)
+                current = mDuration;
+            if (current > mPosition)
+                setPosition(current);
+        }
+    };
+
+    private void samplePosition(int position) {
+        mSamplePosition = position;
+        mSampleTime = System.nanoTime();
+    }
+
+    private void startFrames() {
+        samplePosition(getCurrentPosition());
+        if (mIsPrepared)
+            setPosition(mSamplePosition);
+        ProgressScheduler.getInstance().add(mFrameListener);
+    }
+
+    private void stopFrames() {
+        ProgressScheduler.getInstance().remove(mFrameListener);
+    }
+
+    private final PlayerEngine.Listener mEngineListener = new PlayerEngine.Listener() {
+        @Override
+        public void onPrepared(PlayerEngine engine) {
+            if (!mIsAttached || engine != mEngine)
+                return;
+            mIsPrepared = true;
+            mTimer.onPrepared();
+            mDuration = engine.getDuration();
+            if (mResumePosition > 0) {
+                engine.seekTo(mResumePosition);
+                mPosition = mResumePosition;
+                mResumePosition = 0;
+            }
+            updateText();
+            invalidate();
+
+            if (mAudioViewListener != null)
+                mAudioViewListener.onPrepared();
+
+            if (mWasPlaying) {
+                mWasPlaying = false;
+                engine.start();
+                mTimer.onStarted();
+                startFrames();
+            } else {
+                stopFrames();
+                MediaPlayerPool.getInstance().park(engine);
+            }
+        }
+
+        @Override
+        public void onCompletion(PlayerEngine engine) {
+            if (engine != mEngine)
+                return;
+            int next = mOrder.next(false);
+            if (next < 0) {
+                pause();
+                setPosition(mDuration);
+                if (mAudioViewListener != null)
+                    mAudioViewListener.onCompletion();
+            } else if (next == mCurrentTrack) {
+                pause();
+                start();
+            } else {
+                mCurrentTrack = next;
+                selectTrack(true);
+            }
+        }
+
+        @Override
+        public boolean onError(PlayerEngine engine, int what, int extra) {
+            return false;
+        }
+
+        @Override
+        public void onSeekComplete(PlayerEngine engine) {
+            if (engine != mEngine)
+                return;
+            mTimer.onSeekComplete();
+            mScrubber.onSeekComplete(engine);
+        }
+
+        @Override
+        public void onBuffering(PlayerEngine engine, boolean buffering) {
+            if (engine == mEngine)
+                mTimer.onBuffering(buffering);
+        }
+    };
+
+    private final MediaPlayerPool.OnReclaimListener mOnReclaimListener = new MediaPlayerPool.OnReclaimListener() {
+        @Override
+        public void onReclaim(PlayerEngine player) {
+            if (player != mEngine)
+                return;
+            if (mIsPrepared)
+                mResumePosition = getCurrentPosition();
+            stopFrames();
+            mScrubber.cancel();
+            mEngine = null;
+            mIsPrepared = false;
+            invalidate();
+        }
+    };
+
+    /**
+     * Acquire a player and prepare current track, playback starts once prepared if requested.
+     */
+    private void prepare() {
+        if (mCurrentItem == null || !mIsAttached)
+            return;
+
+        mScrubber.cancel();
+        mIsPrepared = false;
+        if (mEngine == null) {
+            mEngine = MediaPlayerPool.getInstance().acquire(getContext(), mEngineClass, mOnReclaimListener);
+            mEngine.setListener(mEngineListener);
+        } else {
+            MediaPlayerPool.getInstance().unpark(mEngine);
+            mEngine.reset();
+        }
+
+        try {
+            mEngine.setDataSource(getContext(), Util.getPlaybackSource(getContext(), mCurrentItem));
+        } catch (IOException | IllegalArgumentException | SecurityException e) {
+            // bad or revoked source, show it as not playing
+            releaseEngine();
+            mWasPlaying = false;
+            invalidate();
+            return;
+        }
+        mTimer.onDataSource(mCurrentSource, mWasPlaying);
+        mEngine.prepareAsync();
+        startFrames();
+        invalidate();
+    }
+
+    private void releaseEngine() {
+        stopFrames();
+        mScrubber.cancel();
+        MediaPlayerPool.getInstance().release(mEngine);
+        mEngine = null;
+        mIsPrepared = false;
+    }
+
+    /**
+     * Show track, it is prepared on play. Playback position is kept only for the same source.
+     */
+    protected void open(Track track) {
+        boolean wasPlaying = isPlaying() || mWasPlaying;
+        if (mEngine != null)
+            releaseEngine();
+        if (track.getSource() != mCurrentSource) {
+            mResumePosition = 0;
+            mPosition = 0;
+        }
+        mCurrentItem = track;
+        mCurrentSource = track.getSource();
+        mDuration = track.getDuration();
+        mWasPlaying = false;
+        updateText();
+        invalidate();
+        if (wasPlaying)
+            start();
+    }
+
+    protected void selectTrack(boolean play) {
+        if (mPlaylist.isEmpty())
+            return;
+        boolean wasPlaying = isPlaying() || mWasPlaying;
+        open(mPlaylist.get(mCurrentTrack));
+        if (play && !wasPlaying)
+            start();
+    }
+
+    public void setDataSource(List tracks) throws RuntimeException {
+        setDataSource(Playlist.of(tracks));
+    }
+
+    /**
+     * Show the first track of the playlist, or a random one in shuffle mode. Playlist is shared,
+     * not copied.
+     */
+    public void setDataSource(Playlist playlist) {
+        if (playlist.isEmpty())
+            return;
+
+        mPlaylist = playlist;
+        mOrder.reset(playlist.size());
+        mCurrentTrack = mOrder.getCurrent();
+        selectTrack(false);
+    }
+
+    public Playlist getPlaylist() {
+        return mPlaylist;
+    }
+
+    public void setDataSource(String path) throws IOException {
+        open(new Track(path));
+    }
+
+    public void setDataSource(Uri uri) throws IOException {
+        open(new Track(uri));
+    }
+
+    public void setDataSource(FileDescriptor fd) throws IOException {
+        open(new Track(fd));
+    }
+
+    /**
+     * Use custom {@link PlayerEngine} for playback, it is created on the next prepare.
+     *
+     * @param className engine class name, null for {@link MediaPlayerEngine}
+     * @throws IllegalArgumentException if class is not found or is not a {@link PlayerEngine}
+     */
+    public void setPlayerEngine(String className) {
+        Util.checkPlayerEngine(className);
+        if (TextUtils.equals(className, mEngineClass))
+            return;
+
+        mEngineClass = className;
+        if (mEngine == null)
+            return;
+
+        boolean wasPlaying = isPlaying();
+        if (mIsPrepared)
+            mResumePosition = getCurrentPosition();
+        releaseEngine();
+        if (wasPlaying)
+            start();
+        else
+            invalidate();
+    }
+
+    public void start() {
+        mTimer.onPlayRequested();
+        if (mIsPrepared) {
+            MediaPlayerPool.getInstance().unpark(mEngine);
+            mEngine.start();
+            mTimer.onStarted();
+            startFrames();
+            invalidate();
+        } else if (mEngine == null) {
+            if (mResumePosition == 0)
+                mResumePosition = mPosition;
+            mWasPlaying = true;
+            prepare();
+        } else
+            mWasPlaying = true;
+    }
+
+    public void pause() {
+        mWasPlaying = false;
+        mTimer.onPlayCancelled();
+        if (mIsPrepared && mEngine.isPlaying())
+            mEngine.pause();
+
+        stopFrames();
+        if (mIsPrepared)
+            MediaPlayerPool.getInstance().park(mEngine);
+        invalidate();
+    }
+
+    public void stop() {
+        mWasPlaying = false;
+        if (mIsPrepared && mEngine.isPlaying())
+            mEngine.stop();
+
+        mResumePosition = 0;
+        if (mEngine != null)
+            releaseEngine();
+        setPosition(0);
+        updateText();
+        invalidate();
+    }
+
+    public void nextTrack() {
+        int next = mOrder.next(true);
+        if (next >= 0) {
+            mCurrentTrack = next;
+            selectTrack(false);
+        }
+    }
+
+    public void previousTrack() {
+        int previous = mOrder.previous();
+        if (previous >= 0) {
+            mCurrentTrack = previous;
+            selectTrack(false);
+        }
+    }
+
+    protected void controlAudio() {
+        if (isPlaying() || mWasPlaying)
+            pause();
+        else
+            start();
+    }
+
+    public boolean isPlaying() {
+        return mIsPrepared && mEngine.isPlaying();
+    }
+
+    public int getCurrentPosition() {
+        return mIsPrepared ? mEngine.getCurrentPosition() : mPosition;
+    }
+
+    public int getTotalDuration() {
+        return mDuration > 0 ? mDuration : 0;
+    }
+
+    public void setOnAudioViewListener(AudioViewListener audioViewListener) {
+        mAudioViewListener = audioViewListener;
+    }
+
+    public void setLoop(boolean loop) {
+        setRepeatMode(loop ? PlaybackOrder.REPEAT_ALL : PlaybackOrder.REPEAT_OFF);
+    }
+
+    /**
+     * @param repeatMode {@link PlaybackOrder#REPEAT_OFF}, {@link PlaybackOrder#REPEAT_ONE} or
+     *                   {@link PlaybackOrder#REPEAT_ALL}
+     */
+    public void setRepeatMode(int repeatMode) {
+        mOrder.setRepeatMode(repeatMode);
+    }
+
+    public void setShuffle(boolean shuffle) {
+        mOrder.setShuffle(shuffle);
+    }
+
+    @Override
+    protected void onAttachedToWindow() {
+        super.onAttachedToWindow();
+        mIsAttached = true;
+        // played before being attached
+        if (mWasPlaying && mEngine == null)
+            prepare();
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        super.onDetachedFromWindow();
+        mIsAttached = false;
+        mWasPlaying = false;
+        if (mIsPrepared)
+            mResumePosition = getCurrentPosition();
+        if (mEngine != null)
+            releaseEngine();
+        mIsTrackDown = false;
+        mIsTrackPressed = false;
+    }
+}
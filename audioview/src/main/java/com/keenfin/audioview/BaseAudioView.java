@@ -23,15 +23,22 @@ import android.support.v4.content.ContextCompat;
 import android.text.method.ScrollingMovementMethod;
 import android.util.AttributeSet;
 import android.view.View;
+import android.view.ViewGroup;
 import android.widget.*;
 
 import java.io.FileDescriptor;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.List;
 
 import static com.keenfin.audioview.Util.formatDuration;
 
 public abstract class BaseAudioView extends FrameLayout implements View.OnClickListener {
+    /**
+     * Default time to wait for another next/previous tap before the track is prepared.
+     */
+    public static final long DEFAULT_SKIP_DELAY = 250;
+
     protected ImageButton mPlay;
     protected View mRewind, mForward;
     protected TextView mTitle, mTime, mTotalTime;
@@ -41,7 +48,16 @@ public abstract class BaseAudioView extends FrameLayout implements View.OnClickL
     protected boolean mShowTitle = true;
     protected boolean mSelectControls = true;
     protected boolean mMinified = false;
+    protected int mRepeatMode = PlaybackOrder.REPEAT_OFF;
+    /**
+     * @deprecated kept in sync with {@link #mRepeatMode}, set it with {@link #setRepeatMode} instead
+     */
+    @Deprecated
     protected boolean mLoop = false;
+    protected boolean mShuffle = false;
+    protected long mSkipDelay = DEFAULT_SKIP_DELAY;
+    protected boolean mWaveform = false;
+    protected String mEngineClass;
     protected int mPrimaryColor = 0;
     protected int mCustomLayoutRes = 0;
     protected int mCustomPlayIconRes = 0;
@@ -73,6 +89,8 @@ public abstract class BaseAudioView extends FrameLayout implements View.OnClickL
             mShowTitle = styleable.getBoolean(R.styleable.BaseAudioView_showTitle, true);
             mSelectControls = styleable.getBoolean(R.styleable.BaseAudioView_selectControls, true);
             mMinified = styleable.getBoolean(R.styleable.BaseAudioView_minified, false);
+            mWaveform = styleable.getBoolean(R.styleable.BaseAudioView_waveform, false);
+            mEngineClass = styleable.getString(R.styleable.BaseAudioView_playerEngine);
             mCustomLayoutRes = styleable.getResourceId(R.styleable.BaseAudioView_customLayout, 0);
             mCustomPlayIconRes = styleable.getResourceId(R.styleable.BaseAudioView_customPlayIcon,
                     R.drawable.ic_play_arrow_white_24dp);
@@ -108,6 +126,8 @@ public abstract class BaseAudioView extends FrameLayout implements View.OnClickL
                 mForward.setVisibility(GONE);
         }
         mProgress = findViewById(R.id.progress);
+        if (mWaveform && !(mProgress instanceof WaveformSeekBar))
+            replaceWithWaveform();
         mIndeterminate = findViewById(R.id.indeterminate);
         mTitle = findViewById(R.id.title);
         if (mTitle != null) {
@@ -137,6 +157,9 @@ public abstract class BaseAudioView extends FrameLayout implements View.OnClickL
                 }
             }
 
+            if (mProgress instanceof WaveformSeekBar)
+                ((WaveformSeekBar) mProgress).setWaveformColors(mPrimaryColor, mPrimaryColor & 0x40FFFFFF);
+
             if (mPlay instanceof FloatingActionButton) {
                 FloatingActionButton mPlayFloating = (FloatingActionButton) mPlay;
                 mPlayFloating.setBackgroundTintList(ColorStateList.valueOf(mPrimaryColor));
@@ -145,6 +168,26 @@ public abstract class BaseAudioView extends FrameLayout implements View.OnClickL
         }
     }
 
+    private void replaceWithWaveform() {
+        ViewGroup parent = (ViewGroup) mProgress.getParent();
+        int index = parent.indexOfChild(mProgress);
+        WaveformSeekBar waveform = new WaveformSeekBar(getContext());
+        waveform.setId(mProgress.getId());
+        waveform.setPadding(mProgress.getPaddingLeft(), mProgress.getPaddingTop(), mProgress.getPaddingRight(), mProgress.getPaddingBottom());
+        waveform.setVisibility(mProgress.getVisibility());
+        parent.removeViewAt(index);
+        parent.addView(waveform, index, mProgress.getLayoutParams());
+        mProgress = waveform;
+    }
+
+    /**
+     * Show waveform of the source if waveform SeekBar is used.
+     */
+    protected void loadWaveform(Object source) {
+        if (mProgress instanceof WaveformSeekBar && (source instanceof String || source instanceof Uri || source instanceof FileDescriptor))
+            ((WaveformSeekBar) mProgress).setSource(source);
+    }
+
     public void setUpControls() {
         mProgress.setProgress(0);
         mProgress.setVisibility(VISIBLE);
@@ -191,6 +234,16 @@ public abstract class BaseAudioView extends FrameLayout implements View.OnClickL
 
     public abstract void setDataSource(List tracks) throws RuntimeException;
 
+    /**
+     * Views without playlist support get the tracks as a list.
+     */
+    public void setDataSource(Playlist playlist) {
+        List<Track> tracks = new ArrayList<>(playlist.size());
+        for (Track track : playlist)
+            tracks.add(track);
+        setDataSource(tracks);
+    }
+
     public abstract void setDataSource(String path) throws IOException;
 
     public abstract void setDataSource(Uri uri) throws IOException;
@@ -212,7 +265,30 @@ public abstract class BaseAudioView extends FrameLayout implements View.OnClickL
     }
 
     public void setLoop(boolean loop) {
-        mLoop = loop;
+        setRepeatMode(loop ? PlaybackOrder.REPEAT_ALL : PlaybackOrder.REPEAT_OFF);
+    }
+
+    /**
+     * @param repeatMode {@link PlaybackOrder#REPEAT_OFF}, {@link PlaybackOrder#REPEAT_ONE} or
+     *                   {@link PlaybackOrder#REPEAT_ALL}
+     */
+    public void setRepeatMode(int repeatMode) {
+        mRepeatMode = repeatMode;
+        mLoop = repeatMode != PlaybackOrder.REPEAT_OFF;
+    }
+
+    public void setShuffle(boolean shuffle) {
+        mShuffle = shuffle;
+    }
+
+    /**
+     * Rapid next/previous taps are merged: title and position change at once, but only the last
+     * chosen track is prepared when no other tap comes within the delay.
+     *
+     * @param delay milliseconds, 0 to prepare every chosen track immediately
+     */
+    public void setSkipDelay(long delay) {
+        mSkipDelay = delay < 0 ? 0 : delay;
     }
 
     protected void setPauseIcon() {
@@ -0,0 +1,144 @@
+/*
+ *           Copyright © 2019 Stanislav Petriakov
+ *  Distributed under the Boost Software License, Version 1.0.
+ *     (See accompanying file LICENSE_1_0.txt or copy at
+ *           http://www.boost.org/LICENSE_1_0.txt)
+ */
+
+package com.keenfin.audioview;
+
+/**
+ * Sorted set of disjoint byte ranges [start, end) kept as pairs in a primitive array. Adjacent
+ * and overlapping ranges are merged, so the set stays as small as the number of holes in it.
+ * Not thread-safe.
+ */
+final class ByteRanges {
+    // start0, end0, start1, end1, ...
+    private long[] mBounds;
+    private int mCount = 0;
+    private long mTotal = 0;
+
+    ByteRanges() {
+        mBounds = new long[8];
+    }
+
+    /**
+     * @param bounds start and end pairs as returned by {@link #toArray()}
+     */
+    ByteRanges(long[] bounds) {
+        mBounds = new long[Math.max(8, bounds.length)];
+        for (int i = 0; i + 1 < bounds.length; i += 2)
+            add(bounds[i], bounds[i + 1]);
+    }
+
+    /**
+     * @return number of bytes added, not counting ones already in the set
+     */
+    long add(long start, long end) {
+        if (start >= end)
+            return 0;
+
+        // first range ending at or after start and first one starting after end
+        int first = 0;
+        while (first < mCount && mBounds[first * 2 + 1] < start)
+            first++;
+        int last = first;
+        long covered = 0;
+        while (last < mCount && mBounds[last * 2] <= end) {
+            covered += mBounds[last * 2 + 1] - mBounds[last * 2];
+            last++;
+        }
+
+        if (first < last) {
+            start = Math.min(start, mBounds[first * 2]);
+            end = Math.max(end, mBounds[(last - 1) * 2 + 1]);
+        }
+
+        int removed = last - first;
+        if (removed == 0) {
+            ensureCapacity(mCount + 1);
+            System.arraycopy(mBounds, first * 2, mBounds, first * 2 + 2, (mCount - first) * 2);
+            mCount++;
+        } else if (removed > 1) {
+            System.arraycopy(mBounds, last * 2, mBounds, first * 2 + 2, (mCount - last) * 2);
+            mCount -= removed - 1;
+        }
+        mBounds[first * 2] = start;
+        mBounds[first * 2 + 1] = end;
+
+        long added = end - start - covered;
+        mTotal += added;
+        return added;
+    }
+
+    /**
+     * @return number of bytes removed
+     */
+    long clear() {
+        long total = mTotal;
+        mCount = 0;
+        mTotal = 0;
+        return total;
+    }
+
+    /**
+     * @return end of the range containing position or position itself if it is not in the set
+     */
+    long getEnd(long position) {
+        int index = find(position);
+        return index >= 0 ? mBounds[index * 2 + 1] : position;
+    }
+
+    /**
+     * @return start of the first range after position or Long.MAX_VALUE if there is none
+     */
+    long getNextStart(long position) {
+        for (int i = 0; i < mCount; i++)
+            if (mBounds[i * 2] > position)
+                return mBounds[i * 2];
+        return Long.MAX_VALUE;
+    }
+
+    boolean contains(long start, long end) {
+        return start >= end || getEnd(start) >= end;
+    }
+
+    /**
+     * @return total number of bytes in the set
+     */
+    long getTotal() {
+        return mTotal;
+    }
+
+    int getCount() {
+        return mCount;
+    }
+
+    long[] toArray() {
+        long[] bounds = new long[mCount * 2];
+        System.arraycopy(mBounds, 0, bounds, 0, bounds.length);
+        return bounds;
+    }
+
+    private int find(long position) {
+        int low = 0, high = mCount - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            if (mBounds[middle * 2 + 1] <= position)
+                low = middle + 1;
+            else if (mBounds[middle * 2] > position)
+                high = middle - 1;
+            else
+                return middle;
+        }
+        return -1;
+    }
+
+    private void ensureCapacity(int count) {
+        if (mBounds.length < count * 2) {
+            long[] bounds = new long[Math.max(count * 2, mBounds.length + (mBounds.length >> 1))];
+            System.arraycopy(mBounds, 0, bounds, 0, mCount * 2);
+            mBounds = bounds;
+        }
+    }
+}
@@ -0,0 +1,41 @@
+/*
+ *           Copyright © 2019 Stanislav Petriakov
+ *  Distributed under the Boost Software License, Version 1.0.
+ *     (See accompanying file LICENSE_1_0.txt or copy at
+ *           http://www.boost.org/LICENSE_1_0.txt)
+ */
+
+package com.keenfin.audioview;
+
+/**
+ * Plays several providers one after another, e.g. a few pinned tracks followed by the library.
+ */
+public class CompositePlaylistProvider implements PlaylistProvider {
+    private final PlaylistProvider[] mProviders;
+
+    public CompositePlaylistProvider(PlaylistProvider... providers) {
+        mProviders = providers.clone();
+    }
+
+    @Override
+    public int getCount() {
+        int count = 0;
+        for (PlaylistProvider provider : mProviders)
+            count += provider.getCount();
+        return count;
+    }
+
+    @Override
+    public Track getTrack(int position) {
+        if (position >= 0) {
+            int offset = position;
+            for (PlaylistProvider provider : mProviders) {
+                int count = provider.getCount();
+                if (offset < count)
+                    return provider.getTrack(offset);
+                offset -= count;
+            }
+        }
+        throw new IndexOutOfBoundsException("Position " + position + ", size " + getCount());
+    }
+}
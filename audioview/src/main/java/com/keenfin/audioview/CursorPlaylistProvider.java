@@ -0,0 +1,68 @@
+/*
+ *           Copyright © 2019 Stanislav Petriakov
+ *  Distributed under the Boost Software License, Version 1.0.
+ *     (See accompanying file LICENSE_1_0.txt or copy at
+ *           http://www.boost.org/LICENSE_1_0.txt)
+ */
+
+package com.keenfin.audioview;
+
+import android.database.Cursor;
+import android.provider.MediaStore;
+
+/**
+ * {@link PlaylistProvider} reading tracks straight from a Cursor row by row. Nothing is copied,
+ * the cursor has to stay open while the provider is in use. Reads are synchronized on the provider
+ * as they move the cursor, other code should not move it concurrently.
+ */
+public class CursorPlaylistProvider implements PlaylistProvider {
+    private final Cursor mCursor;
+    private final int mIdColumn, mSourceColumn, mTitleColumn, mDurationColumn;
+
+    /**
+     * @param idColumn       column with stable id or null to derive it from source
+     * @param sourceColumn   column with path or url
+     * @param titleColumn    column with known title or null to read it from file metadata
+     * @param durationColumn column with duration in ms or null if unknown
+     */
+    public CursorPlaylistProvider(Cursor cursor, String idColumn, String sourceColumn, String titleColumn, String durationColumn) {
+        mCursor = cursor;
+        mIdColumn = idColumn == null ? -1 : cursor.getColumnIndexOrThrow(idColumn);
+        mSourceColumn = cursor.getColumnIndexOrThrow(sourceColumn);
+        mTitleColumn = titleColumn == null ? -1 : cursor.getColumnIndexOrThrow(titleColumn);
+        mDurationColumn = durationColumn == null ? -1 : cursor.getColumnIndexOrThrow(durationColumn);
+    }
+
+    /**
+     * Provider for a MediaStore.Audio.Media query. Titles are left to file metadata, as
+     * MediaStore title lacks artist.
+     */
+    public static CursorPlaylistProvider forMediaStore(Cursor cursor) {
+        return new CursorPlaylistProvider(cursor, MediaStore.Audio.Media._ID, MediaStore.Audio.Media.DATA,
+                null, MediaStore.Audio.Media.DURATION);
+    }
+
+    @Override
+    public synchronized int getCount() {
+        return mCursor.isClosed() ? 0 : mCursor.getCount();
+    }
+
+    @Override
+    public synchronized Track getTrack(int position) {
+        if (mCursor.isClosed() || !mCursor.moveToPosition(position))
+            throw new IndexOutOfBoundsException("Position " + position + ", size " + getCount());
+
+        String source = mCursor.getString(mSourceColumn);
+        if (mIdColumn < 0 && mTitleColumn < 0 && mDurationColumn < 0)
+            return new Track(source);
+
+        long id = mIdColumn < 0 ? new Track(source).getId() : mCursor.getLong(mIdColumn);
+        String title = mTitleColumn < 0 ? null : mCursor.getString(mTitleColumn);
+        int duration = mDurationColumn < 0 || mCursor.isNull(mDurationColumn) ? Track.UNKNOWN_DURATION : mCursor.getInt(mDurationColumn);
+        return new Track(id, source, title, duration);
+    }
+
+    public Cursor getCursor() {
+        return mCursor;
+    }
+}
@@ -0,0 +1,154 @@
+/*
+ *           Copyright © 2019 Stanislav Petriakov
+ *  Distributed under the Boost Software License, Version 1.0.
+ *     (See accompanying file LICENSE_1_0.txt or copy at
+ *           http://www.boost.org/LICENSE_1_0.txt)
+ */
+
+package com.keenfin.audioview;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Offline copy of a track being downloaded by {@link DownloadManager}, with its progress and
+ * throughput. Getters may be called from any thread.
+ */
+public final class Download {
+    public static final int STATE_QUEUED = 0;
+    public static final int STATE_RUNNING = 1;
+    public static final int STATE_PAUSED = 2;
+    public static final int STATE_COMPLETED = 3;
+    public static final int STATE_FAILED = 4;
+
+    private final Track mTrack;
+    private final String mUrl;
+    private final File mFile;
+    final File partFile;
+    final File stateFile;
+
+    // not started yet
+    private volatile int mState = STATE_PAUSED;
+    private volatile long mLength = -1;
+    // guarded by this
+    SegmentBitmap bitmap;
+    RandomAccessFile output;
+
+    final AtomicLong downloaded = new AtomicLong();
+    final AtomicLong sessionBytes = new AtomicLong();
+    final AtomicInteger connections = new AtomicInteger();
+    // bumped by each start, tasks of older starts stop on change
+    final AtomicInteger session = new AtomicInteger();
+    private volatile long mStartTime;
+    private volatile long mEndTime;
+
+    Download(Track track, String url, File file) {
+        mTrack = track;
+        mUrl = url;
+        mFile = file;
+        partFile = new File(file.getPath() + ".part");
+        stateFile = new File(file.getPath() + ".state");
+    }
+
+    public Track getTrack() {
+        return mTrack;
+    }
+
+    public String getUrl() {
+        return mUrl;
+    }
+
+    /**
+     * @return local file, exists once download is completed
+     */
+    public File getFile() {
+        return mFile;
+    }
+
+    public int getState() {
+        return mState;
+    }
+
+    /**
+     * @return file length or -1 if not known yet
+     */
+    public long getLength() {
+        return mLength;
+    }
+
+    /**
+     * @return bytes downloaded in total, including ones from interrupted sessions
+     */
+    public long getDownloadedBytes() {
+        return downloaded.get();
+    }
+
+    /**
+     * @return downloaded part from 0 to 1 or -1 if length is not known
+     */
+    public float getProgress() {
+        long length = mLength;
+        return length > 0 ? (float) downloaded.get() / length : mState == STATE_COMPLETED ? 1 : -1;
+    }
+
+    /**
+     * @return average bytes per second fetched since download was (re)started
+     */
+    public long getThroughput() {
+        long start = mStartTime;
+        if (start == 0)
+            return 0;
+        long end = mEndTime != 0 ? mEndTime : System.nanoTime();
+        long elapsed = Math.max(1, (end - start) / 1000000);
+        return sessionBytes.get() * 1000 / elapsed;
+    }
+
+    /**
+     * @return connections currently fetching segments of this download
+     */
+    public int getActiveConnections() {
+        return connections.get();
+    }
+
+    public synchronized int getSegmentCount() {
+        return bitmap != null ? bitmap.getCount() : 0;
+    }
+
+    public synchronized int getCompletedSegmentCount() {
+        return bitmap != null ? bitmap.getSetCount() : 0;
+    }
+
+    boolean isActive() {
+        return mState == STATE_QUEUED || mState == STATE_RUNNING;
+    }
+
+    /**
+     * @return true if download is active and was not restarted since given session began
+     */
+    boolean isActive(int session) {
+        return isActive() && this.session.get() == session;
+    }
+
+    void setState(int state) {
+        mState = state;
+        if (state == STATE_RUNNING) {
+            mStartTime = System.nanoTime();
+            mEndTime = 0;
+            sessionBytes.set(0);
+        } else if (state != STATE_QUEUED && mStartTime != 0 && mEndTime == 0) {
+            mEndTime = System.nanoTime();
+        }
+    }
+
+    void setLength(long length) {
+        mLength = length;
+    }
+
+    @Override
+    public String toString() {
+        return "Download{" + mUrl + ", state " + mState + ", " + downloaded.get() + "/" + mLength
+                + " bytes, " + getThroughput() + " B/s}";
+    }
+}
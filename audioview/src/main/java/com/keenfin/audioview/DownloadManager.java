@@ -0,0 +1,594 @@
+/*
+ *           Copyright © 2019 Stanislav Petriakov
+ *  Distributed under the Boost Software License, Version 1.0.
+ *     (See accompanying file LICENSE_1_0.txt or copy at
+ *           http://www.boost.org/LICENSE_1_0.txt)
+ */
+
+package com.keenfin.audioview;
+
+import android.content.Context;
+import android.net.Uri;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Downloads http(s) tracks for offline playback. Each file is split into fixed-size segments
+ * fetched in parallel with range requests over a bounded pool of connections shared by all
+ * downloads. Downloaded segments are recorded in a persisted {@link SegmentBitmap}, so paused,
+ * failed or killed downloads resume with the missing segments only. Servers without range
+ * support are downloaded in one piece and start over when interrupted.
+ * <p>
+ * Completed tracks are played from disk by AudioView and AudioService, see
+ * {@link #getOfflineTrack(Track)}. Listeners are called on download threads.
+ */
+public final class DownloadManager {
+    public interface OnDownloadListener {
+        /**
+         * Called each time a segment is downloaded.
+         */
+        void onDownloadProgress(Download download);
+
+        void onDownloadCompleted(Download download);
+
+        void onDownloadFailed(Download download, IOException error);
+    }
+
+    public static final int DEFAULT_MAX_CONNECTIONS = 4;
+    public static final int DEFAULT_SEGMENT_SIZE = 512 * 1024;
+
+    static final String DOWNLOAD_DIR = "audioview-downloads";
+
+    private static final int BUFFER_SIZE = 16 * 1024;
+    private static final int TIMEOUT = 15000;
+    private static final int MAX_ATTEMPTS = 3;
+
+    private static DownloadManager sInstance;
+
+    private final File mDir;
+    private final int mSegmentSize;
+    private final ThreadPoolExecutor mExecutor;
+    private final HashMap<String, Download> mDownloads = new HashMap<>();
+    private final CopyOnWriteArrayList<OnDownloadListener> mListeners = new CopyOnWriteArrayList<>();
+    // playback looks up downloaded files on the main thread, so it is answered from memory
+    private final ConcurrentHashMap<String, File> mFiles = new ConcurrentHashMap<>();
+    private final Set<String> mCompleted = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+    private volatile boolean mIsListed = false;
+
+    DownloadManager(File dir, int maxConnections, int segmentSize) {
+        mDir = dir;
+        mSegmentSize = segmentSize;
+        mExecutor = new ThreadPoolExecutor(maxConnections, maxConnections, 30, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "AudioView-Download");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        mExecutor.allowCoreThreadTimeOut(true);
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                listCompleted();
+            }
+        });
+    }
+
+    public static synchronized DownloadManager getInstance(Context context) {
+        if (sInstance == null)
+            sInstance = new DownloadManager(new File(context.getApplicationContext().getFilesDir(), DOWNLOAD_DIR),
+                    DEFAULT_MAX_CONNECTIONS, DEFAULT_SEGMENT_SIZE);
+        return sInstance;
+    }
+
+    /**
+     * Connections shared by all downloads, segments wait in queue when all are busy.
+     */
+    public synchronized void setMaxConnections(int maxConnections) {
+        maxConnections = maxConnections < 1 ? 1 : maxConnections;
+        if (maxConnections > mExecutor.getMaximumPoolSize()) {
+            mExecutor.setMaximumPoolSize(maxConnections);
+            mExecutor.setCorePoolSize(maxConnections);
+        } else {
+            mExecutor.setCorePoolSize(maxConnections);
+            mExecutor.setMaximumPoolSize(maxConnections);
+        }
+    }
+
+    public int getMaxConnections() {
+        return mExecutor.getMaximumPoolSize();
+    }
+
+    public void addListener(OnDownloadListener listener) {
+        mListeners.addIfAbsent(listener);
+    }
+
+    public void removeListener(OnDownloadListener listener) {
+        mListeners.remove(listener);
+    }
+
+    /**
+     * Start or resume download of a track. Already running or completed downloads are returned
+     * as is.
+     *
+     * @throws IllegalArgumentException if track is not an http(s) url
+     */
+    public synchronized Download enqueue(Track track) {
+        Download download = getOrCreate(track);
+        if (download == null)
+            throw new IllegalArgumentException("Only http(s) tracks can be downloaded");
+        if (download.isActive() || download.getState() == Download.STATE_COMPLETED)
+            return download;
+
+        download.setState(Download.STATE_QUEUED);
+        start(download);
+        return download;
+    }
+
+    /**
+     * Enqueue all http(s) tracks of a playlist, other tracks are skipped.
+     */
+    public List<Download> enqueue(Playlist playlist) {
+        ArrayList<Download> downloads = new ArrayList<>();
+        for (int i = 0; i < playlist.size(); i++)
+            if (getUrl(playlist.get(i).getSource()) != null)
+                downloads.add(enqueue(playlist.get(i)));
+        return downloads;
+    }
+
+    /**
+     * @return download of a track or null if it was never started
+     */
+    public synchronized Download getDownload(Track track) {
+        String url = getUrl(track.getSource());
+        if (url == null)
+            return null;
+        Download download = mDownloads.get(url);
+        return download != null || !getFile(url).exists() ? download : getOrCreate(track);
+    }
+
+    /**
+     * Stop download keeping downloaded segments, {@link #enqueue(Track)} resumes it.
+     */
+    public void pause(Download download) {
+        synchronized (download) {
+            if (!download.isActive())
+                return;
+            download.setState(Download.STATE_PAUSED);
+            closeOutput(download);
+        }
+    }
+
+    /**
+     * Stop download or remove downloaded track.
+     */
+    public void delete(Track track) {
+        String url = getUrl(track.getSource());
+        if (url == null)
+            return;
+
+        Download download;
+        synchronized (this) {
+            download = mDownloads.remove(url);
+        }
+        if (download != null) {
+            synchronized (download) {
+                download.setState(Download.STATE_PAUSED);
+                closeOutput(download);
+                download.bitmap = null;
+            }
+        }
+
+        File file = getFile(url);
+        synchronized (mCompleted) {
+            file.delete();
+            mCompleted.remove(file.getName());
+        }
+        new File(file.getPath() + ".part").delete();
+        new File(file.getPath() + ".state").delete();
+    }
+
+    public boolean isDownloaded(Track track) {
+        return getLocalSource(track.getSource()) != null;
+    }
+
+    /**
+     * @return track playing downloaded file with the same id and metadata or the track itself if
+     * it is not downloaded
+     */
+    public Track getOfflineTrack(Track track) {
+        String path = getLocalSource(track.getSource());
+        return path != null ? new Track(track.getId(), path, track.getTitle(), track.getDuration()) : track;
+    }
+
+    /**
+     * Files are checked on disk only until completed downloads are listed at start.
+     *
+     * @return path of downloaded file for http(s) source or null
+     */
+    String getLocalSource(Object source) {
+        String url = getUrl(source);
+        if (url == null)
+            return null;
+        File file = getFile(url);
+        boolean completed = mIsListed ? mCompleted.contains(file.getName()) : file.exists();
+        return completed ? file.getPath() : null;
+    }
+
+    private void listCompleted() {
+        synchronized (mCompleted) {
+            String[] names = mDir.list();
+            if (names != null)
+                for (String name : names)
+                    if (!name.endsWith(".part") && !name.endsWith(".state"))
+                        mCompleted.add(name);
+            mIsListed = true;
+        }
+    }
+
+    private Download getOrCreate(Track track) {
+        String url = getUrl(track.getSource());
+        if (url == null)
+            return null;
+
+        Download download = mDownloads.get(url);
+        if (download == null) {
+            download = new Download(track, url, getFile(url));
+            mDownloads.put(url, download);
+            if (download.getFile().exists()) {
+                long length = download.getFile().length();
+                download.setLength(length);
+                download.downloaded.set(length);
+                download.setState(Download.STATE_COMPLETED);
+            }
+        }
+        return download;
+    }
+
+    private static String getUrl(Object source) {
+        if (!(source instanceof String) && !(source instanceof Uri))
+            return null;
+        String url = source.toString();
+        String lower = url.toLowerCase(Locale.US);
+        return lower.startsWith("http://") || lower.startsWith("https://") ? url : null;
+    }
+
+    private File getFile(String url) {
+        File file = mFiles.get(url);
+        if (file != null)
+            return file;
+
+        int query = url.indexOf('?');
+        String path = query < 0 ? url : url.substring(0, query);
+        int dot = path.lastIndexOf('.');
+        String extension = dot > path.lastIndexOf('/') && path.length() - dot <= 5 ? path.substring(dot) : "";
+        file = new File(mDir, HttpCache.hash(url) + extension);
+        mFiles.put(url, file);
+        return file;
+    }
+
+    private void start(final Download download) {
+        final int session = download.session.incrementAndGet();
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                if (!download.isActive(session))
+                    return;
+
+                download.setState(Download.STATE_RUNNING);
+                try {
+                    SegmentBitmap bitmap;
+                    synchronized (download) {
+                        bitmap = download.bitmap;
+                    }
+                    if (bitmap == null && download.partFile.exists())
+                        bitmap = SegmentBitmap.read(download.stateFile);
+
+                    if (bitmap != null) {
+                        open(download, bitmap);
+                        submitMissing(download, session);
+                    } else {
+                        probe(download, session);
+                    }
+                } catch (IOException e) {
+                    fail(download, session, e);
+                }
+            }
+        });
+    }
+
+    /**
+     * Learn file length with the first segment request, then fetch the rest in parallel.
+     */
+    private void probe(Download download, int session) throws IOException {
+        HttpURLConnection connection = connect(download.getUrl(), 0, mSegmentSize - 1);
+        download.connections.incrementAndGet();
+        try {
+            int status = connection.getResponseCode();
+            if (status == HttpURLConnection.HTTP_PARTIAL) {
+                long length = getTotalLength(connection.getHeaderField("Content-Range"));
+                if (length <= 0)
+                    throw new IOException("Unknown length of " + download.getUrl());
+
+                SegmentBitmap bitmap = new SegmentBitmap(length, mSegmentSize);
+                open(download, bitmap);
+                try {
+                    if (copy(download, session, connection.getInputStream(), 0, bitmap.getEnd(0)))
+                        onSegmentCompleted(download, 0);
+                } catch (IOException ignored) {
+                    // first segment is fetched again with the others
+                }
+            } else if (status == HttpURLConnection.HTTP_OK) {
+                String contentLength = connection.getHeaderField("Content-Length");
+                fetchWhole(download, session, connection.getInputStream(), contentLength != null ? Long.parseLong(contentLength.trim()) : -1);
+                return;
+            } else {
+                throw new IOException("Server responded " + status + " for " + download.getUrl());
+            }
+        } catch (NumberFormatException e) {
+            throw new IOException("Malformed response for " + download.getUrl());
+        } finally {
+            download.connections.decrementAndGet();
+            connection.disconnect();
+        }
+        submitMissing(download, session);
+    }
+
+    private void open(Download download, SegmentBitmap bitmap) throws IOException {
+        synchronized (download) {
+            if (!mDir.exists() && !mDir.mkdirs())
+                throw new IOException("Can't create download dir " + mDir);
+
+            closeOutput(download);
+            download.output = new RandomAccessFile(download.partFile, "rw");
+            if (download.output.length() != bitmap.getLength())
+                download.output.setLength(bitmap.getLength());
+            download.bitmap = bitmap;
+            download.setLength(bitmap.getLength());
+            download.downloaded.set(bitmap.getSetBytes());
+            bitmap.write(download.stateFile);
+        }
+    }
+
+    private void submitMissing(final Download download, final int session) {
+        ArrayList<Integer> missing = new ArrayList<>();
+        synchronized (download) {
+            SegmentBitmap bitmap = download.bitmap;
+            if (bitmap == null || !download.isActive(session))
+                return;
+            for (int i = 0; i < bitmap.getCount(); i++)
+                if (!bitmap.isSet(i))
+                    missing.add(i);
+        }
+
+        if (missing.isEmpty()) {
+            finish(download);
+            return;
+        }
+
+        for (final int segment : missing)
+            mExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    for (int attempt = 1; download.isActive(session); attempt++) {
+                        try {
+                            fetchSegment(download, session, segment);
+                            return;
+                        } catch (IOException e) {
+                            if (attempt >= MAX_ATTEMPTS) {
+                                fail(download, session, e);
+                                return;
+                            }
+                        }
+                    }
+                }
+            });
+    }
+
+    private void fetchSegment(Download download, int session, int segment) throws IOException {
+        long start, end;
+        synchronized (download) {
+            // may be completed by a task of previous session meanwhile
+            if (download.bitmap == null || download.bitmap.isSet(segment))
+                return;
+            start = download.bitmap.getStart(segment);
+            end = download.bitmap.getEnd(segment);
+        }
+
+        HttpURLConnection connection = connect(download.getUrl(), start, end - 1);
+        download.connections.incrementAndGet();
+        try {
+            int status = connection.getResponseCode();
+            if (status != HttpURLConnection.HTTP_PARTIAL)
+                throw new IOException("Server responded " + status + " for " + download.getUrl());
+            if (copy(download, session, connection.getInputStream(), start, end))
+                onSegmentCompleted(download, segment);
+        } finally {
+            download.connections.decrementAndGet();
+            connection.disconnect();
+        }
+    }
+
+    /**
+     * Write response body to part file at [position, end).
+     *
+     * @return false if download was stopped or restarted meanwhile
+     */
+    private static boolean copy(Download download, int session, InputStream input, long position, long end) throws IOException {
+        byte[] buffer = new byte[BUFFER_SIZE];
+        long written = 0;
+        try {
+            while (position < end) {
+                if (!download.isActive(session)) {
+                    download.downloaded.addAndGet(-written);
+                    return false;
+                }
+
+                int read = input.read(buffer, 0, (int) Math.min(buffer.length, end - position));
+                if (read < 0)
+                    throw new IOException("Connection closed before segment end");
+
+                RandomAccessFile output;
+                synchronized (download) {
+                    output = download.output;
+                }
+                if (output == null)
+                    return false;
+                ByteBuffer bytes = ByteBuffer.wrap(buffer, 0, read);
+                while (bytes.hasRemaining())
+                    output.getChannel().write(bytes, position + bytes.position());
+
+                position += read;
+                written += read;
+                download.downloaded.addAndGet(read);
+                download.sessionBytes.addAndGet(read);
+            }
+            return true;
+        } catch (IOException e) {
+            // segment is fetched again from its start
+            download.downloaded.addAndGet(-written);
+            throw e;
+        }
+    }
+
+    /**
+     * Server does not support ranges, stream file in one piece.
+     */
+    private void fetchWhole(Download download, int session, InputStream input, long length) throws IOException {
+        if (!mDir.exists() && !mDir.mkdirs())
+            throw new IOException("Can't create download dir " + mDir);
+
+        RandomAccessFile output = new RandomAccessFile(download.partFile, "rw");
+        synchronized (download) {
+            closeOutput(download);
+            output.setLength(0);
+            download.output = output;
+            download.setLength(length);
+            download.downloaded.set(0);
+        }
+
+        byte[] buffer = new byte[BUFFER_SIZE];
+        int read;
+        while ((read = input.read(buffer)) >= 0) {
+            if (!download.isActive(session))
+                return;
+            output.write(buffer, 0, read);
+            download.downloaded.addAndGet(read);
+            download.sessionBytes.addAndGet(read);
+        }
+
+        if (length >= 0 && download.downloaded.get() != length)
+            throw new IOException("Connection closed before file end");
+        download.setLength(download.downloaded.get());
+        finish(download);
+    }
+
+    private void onSegmentCompleted(Download download, int segment) {
+        boolean isComplete;
+        synchronized (download) {
+            // segment is complete on disk even if download was stopped meanwhile
+            SegmentBitmap bitmap = download.bitmap;
+            if (bitmap == null)
+                return;
+
+            bitmap.set(segment);
+            try {
+                bitmap.write(download.stateFile);
+            } catch (IOException ignored) {
+                // segment is fetched again only if download is interrupted
+            }
+            isComplete = bitmap.isComplete();
+        }
+
+        for (OnDownloadListener listener : mListeners)
+            listener.onDownloadProgress(download);
+        if (isComplete)
+            finish(download);
+    }
+
+    private void finish(Download download) {
+        synchronized (download) {
+            if (!download.isActive())
+                return;
+
+            closeOutput(download);
+            if (!download.partFile.renameTo(download.getFile())) {
+                download.setState(Download.STATE_FAILED);
+                notifyFailed(download, new IOException("Can't move " + download.partFile));
+                return;
+            }
+            download.stateFile.delete();
+            mCompleted.add(download.getFile().getName());
+            download.setState(Download.STATE_COMPLETED);
+        }
+
+        for (OnDownloadListener listener : mListeners)
+            listener.onDownloadCompleted(download);
+    }
+
+    private void fail(Download download, int session, IOException error) {
+        synchronized (download) {
+            if (!download.isActive(session))
+                return;
+
+            download.setState(Download.STATE_FAILED);
+            closeOutput(download);
+        }
+        notifyFailed(download, error);
+    }
+
+    private void notifyFailed(Download download, IOException error) {
+        for (OnDownloadListener listener : mListeners)
+            listener.onDownloadFailed(download, error);
+    }
+
+    private static void closeOutput(Download download) {
+        if (download.output == null)
+            return;
+        try {
+            download.output.close();
+        } catch (IOException ignored) {
+        }
+        download.output = null;
+    }
+
+    private static HttpURLConnection connect(String url, long start, long end) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+        connection.setConnectTimeout(TIMEOUT);
+        connection.setReadTimeout(TIMEOUT);
+        connection.setRequestProperty("Accept-Encoding", "identity");
+        connection.setRequestProperty("Range", "bytes=" + start + "-" + end);
+        return connection;
+    }
+
+    /**
+     * @param range Content-Range header, bytes a-b/total
+     * @return total or -1 if unknown
+     */
+    private static long getTotalLength(String range) {
+        if (range == null)
+            return -1;
+        String total = range.substring(range.indexOf('/') + 1).trim();
+        return "*".equals(total) ? -1 : Long.parseLong(total);
+    }
+}
@@ -0,0 +1,333 @@
+/*
+ *           Copyright © 2019 Stanislav Petriakov
+ *  Distributed under the Boost Software License, Version 1.0.
+ *     (See accompanying file LICENSE_1_0.txt or copy at
+ *           http://www.boost.org/LICENSE_1_0.txt)
+ */
+
+package com.keenfin.audioview;
+
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Size-bounded on-disk LRU cache of http resources fetched in pieces. Each entry is a sparse data
+ * file with bytes at their offsets in the resource and a small meta file with url, total length,
+ * content type and ranges already downloaded. Meta is written when the last user closes the entry,
+ * so a crash loses only ranges of entries being played. Entries in use are never evicted, cache
+ * may temporarily grow over its limit and shrinks back as they are closed.
+ */
+final class HttpCache {
+    static final int MAGIC = 0x41564843; // AVHC
+    static final int VERSION = 1;
+
+    static final class Entry {
+        final String url;
+        final File data;
+        final File meta;
+        private final ByteRanges mRanges;
+        private long mLength;
+        private String mContentType;
+        private RandomAccessFile mFile;
+        // guarded by cache
+        private int mUsers = 0;
+
+        private Entry(String url, File data, File meta, long length, String contentType, ByteRanges ranges) {
+            this.url = url;
+            this.data = data;
+            this.meta = meta;
+            mLength = length;
+            mContentType = contentType;
+            mRanges = ranges;
+        }
+
+        /**
+         * @return total length of resource or -1 if not known yet
+         */
+        synchronized long getLength() {
+            return mLength;
+        }
+
+        synchronized String getContentType() {
+            return mContentType;
+        }
+
+        /**
+         * @return number of cached bytes dropped because resource has changed on server
+         */
+        synchronized long setInfo(long length, String contentType) {
+            long dropped = 0;
+            if (mLength != length) {
+                if (mLength >= 0)
+                    dropped = mRanges.clear();
+                mLength = length;
+            }
+            if (contentType != null)
+                mContentType = contentType;
+            return dropped;
+        }
+
+        /**
+         * @return end of cached bytes starting at position or position itself if it is not cached
+         */
+        synchronized long getCachedEnd(long position) {
+            return mRanges.getEnd(position);
+        }
+
+        /**
+         * @return start of the next cached bytes after position or Long.MAX_VALUE if there are none
+         */
+        synchronized long getNextCachedStart(long position) {
+            return mRanges.getNextStart(position);
+        }
+
+        synchronized long getCachedSize() {
+            return mRanges.getTotal();
+        }
+
+        synchronized int read(long position, byte[] buffer, int offset, int count) throws IOException {
+            mFile.seek(position);
+            return mFile.read(buffer, offset, count);
+        }
+
+        /**
+         * @return number of bytes newly cached
+         */
+        synchronized long write(long position, byte[] buffer, int offset, int count) throws IOException {
+            mFile.seek(position);
+            mFile.write(buffer, offset, count);
+            return mRanges.add(position, position + count);
+        }
+
+        private synchronized void openFile() throws IOException {
+            if (mFile == null)
+                mFile = new RandomAccessFile(data, "rw");
+        }
+
+        private synchronized void closeFile() {
+            close(mFile);
+            mFile = null;
+        }
+
+        private synchronized void writeMeta() {
+            File temp = new File(meta.getPath() + ".tmp");
+            DataOutputStream output = null;
+            try {
+                output = new DataOutputStream(new FileOutputStream(temp));
+                output.writeInt(MAGIC);
+                output.writeInt(VERSION);
+                output.writeUTF(url);
+                output.writeLong(mLength);
+                output.writeUTF(mContentType != null ? mContentType : "");
+                long[] bounds = mRanges.toArray();
+                output.writeInt(bounds.length);
+                for (long bound : bounds)
+                    output.writeLong(bound);
+                output.close();
+                output = null;
+                if (!temp.renameTo(meta))
+                    temp.delete();
+            } catch (IOException e) {
+                temp.delete();
+            } finally {
+                close(output);
+            }
+        }
+    }
+
+    private final File mDir;
+    private final LinkedHashMap<String, Entry> mEntries = new LinkedHashMap<>(16, 0.75f, true);
+    private long mMaxSize;
+    private long mSize = 0;
+    private boolean mIsLoaded = false;
+
+    HttpCache(File dir, long maxSize) {
+        mDir = dir;
+        mMaxSize = maxSize;
+    }
+
+    synchronized void setMaxSize(long maxSize) {
+        mMaxSize = maxSize;
+        trim();
+    }
+
+    synchronized long getMaxSize() {
+        return mMaxSize;
+    }
+
+    /**
+     * @return bytes cached on disk
+     */
+    synchronized long getSize() {
+        load();
+        return mSize;
+    }
+
+    /**
+     * Open entry for reading and writing, it is not evicted until closed.
+     */
+    synchronized Entry open(String url) throws IOException {
+        load();
+        String key = hash(url);
+        Entry entry = mEntries.get(key);
+        if (entry == null || !entry.url.equals(url)) {
+            if (entry != null)
+                remove(key, entry);
+            if (!mDir.exists() && !mDir.mkdirs())
+                throw new IOException("Can't create cache dir " + mDir);
+            entry = new Entry(url, new File(mDir, key + ".data"), new File(mDir, key + ".meta"), -1, null, new ByteRanges());
+            mEntries.put(key, entry);
+        }
+
+        entry.openFile();
+        entry.mUsers++;
+        return entry;
+    }
+
+    synchronized void close(Entry entry) {
+        if (--entry.mUsers > 0)
+            return;
+
+        entry.closeFile();
+        if (mEntries.get(hash(entry.url)) == entry)
+            entry.writeMeta();
+        trim();
+    }
+
+    /**
+     * Account bytes newly written to entry.
+     */
+    synchronized void onWritten(long bytes) {
+        mSize += bytes;
+        trim();
+    }
+
+    private void trim() {
+        Iterator<Map.Entry<String, Entry>> iterator = mEntries.entrySet().iterator();
+        while (mSize > mMaxSize && iterator.hasNext()) {
+            Entry entry = iterator.next().getValue();
+            if (entry.mUsers > 0)
+                continue;
+
+            iterator.remove();
+            delete(entry);
+        }
+    }
+
+    private void remove(String key, Entry entry) {
+        mEntries.remove(key);
+        if (entry.mUsers == 0)
+            delete(entry);
+    }
+
+    private void delete(Entry entry) {
+        mSize -= entry.getCachedSize();
+        entry.data.delete();
+        entry.meta.delete();
+    }
+
+    /**
+     * Read meta files left by previous processes, least recently used first.
+     */
+    private void load() {
+        if (mIsLoaded)
+            return;
+        mIsLoaded = true;
+
+        File[] files = mDir.listFiles();
+        if (files == null)
+            return;
+
+        ArrayList<File> metas = new ArrayList<>();
+        for (File file : files)
+            if (file.getName().endsWith(".meta"))
+                metas.add(file);
+            else if (file.getName().endsWith(".tmp"))
+                file.delete();
+
+        File[] sorted = metas.toArray(new File[0]);
+        Arrays.sort(sorted, new Comparator<File>() {
+            @Override
+            public int compare(File a, File b) {
+                long difference = a.lastModified() - b.lastModified();
+                return difference < 0 ? -1 : difference > 0 ? 1 : 0;
+            }
+        });
+
+        for (File meta : sorted) {
+            String name = meta.getName();
+            String key = name.substring(0, name.length() - ".meta".length());
+            File data = new File(mDir, key + ".data");
+            Entry entry = readMeta(meta, data);
+            if (entry == null) {
+                meta.delete();
+                data.delete();
+                continue;
+            }
+
+            mEntries.put(key, entry);
+            mSize += entry.getCachedSize();
+        }
+        trim();
+    }
+
+    private static Entry readMeta(File meta, File data) {
+        DataInputStream input = null;
+        try {
+            input = new DataInputStream(new FileInputStream(meta));
+            if (input.readInt() != MAGIC || input.readInt() != VERSION)
+                return null;
+
+            String url = input.readUTF();
+            long length = input.readLong();
+            String contentType = input.readUTF();
+            long[] bounds = new long[input.readInt()];
+            for (int i = 0; i < bounds.length; i++)
+                bounds[i] = input.readLong();
+
+            // data file must hold all ranges meta claims
+            if (bounds.length > 0 && data.length() < bounds[bounds.length - 1])
+                return null;
+            return new Entry(url, data, meta, length, contentType.isEmpty() ? null : contentType, new ByteRanges(bounds));
+        } catch (IOException | RuntimeException e) {
+            return null;
+        } finally {
+            close(input);
+        }
+    }
+
+    static String hash(String key) {
+        try {
+            byte[] digest = MessageDigest.getInstance("MD5").digest(key.getBytes("UTF-8"));
+            StringBuilder result = new StringBuilder(digest.length * 2);
+            for (byte b : digest)
+                result.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            return result.toString();
+        } catch (NoSuchAlgorithmException | IOException e) {
+            return Integer.toHexString(key.hashCode());
+        }
+    }
+
+    private static void close(Closeable closeable) {
+        if (closeable == null)
+            return;
+        try {
+            closeable.close();
+        } catch (IOException ignored) {
+        }
+    }
+}
@@ -0,0 +1,513 @@
+/*
+ *           Copyright © 2019 Stanislav Petriakov
+ *  Distributed under the Boost Software License, Version 1.0.
+ *     (See accompanying file LICENSE_1_0.txt or copy at
+ *           http://www.boost.org/LICENSE_1_0.txt)
+ */
+
+package com.keenfin.audioview;
+
+import android.content.Context;
+import android.net.Uri;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.math.BigInteger;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.URL;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.security.SecureRandom;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Local loopback http proxy which caches streamed audio on disk. AudioView and AudioService
+ * rewrite http(s) sources through it when it is enabled, so replays and re-prepares are served
+ * from disk. Bytes are streamed to the player while being written to {@link HttpCache}, range
+ * requests are served from cached parts and only missing parts are fetched from the origin.
+ * <p>
+ * Disabled by default. Apps targeting API 28+ have to permit cleartext traffic to 127.0.0.1 in
+ * their network security config. HLS and DASH manifests are never proxied.
+ */
+public final class HttpCacheProxy {
+    public static final long DEFAULT_MAX_CACHE_SIZE = 64 * 1024 * 1024;
+
+    static final String CACHE_DIR = "audioview-http";
+
+    private static final int BUFFER_SIZE = 16 * 1024;
+    private static final int MAX_HEADER_SIZE = 8 * 1024;
+    private static final int TIMEOUT = 15000;
+
+    private static HttpCacheProxy sInstance;
+
+    private final HttpCache mCache;
+    private final ExecutorService mExecutor = Executors.newCachedThreadPool(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "AudioView-Proxy");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+    // random per process, other apps can't use the proxy without it
+    private final String mPathPrefix = "/" + new BigInteger(128, new SecureRandom()).toString(36) + "/";
+    private volatile boolean mIsEnabled = false;
+    private ServerSocket mServer;
+
+    HttpCacheProxy(File dir, long maxCacheSize) {
+        mCache = new HttpCache(dir, maxCacheSize);
+    }
+
+    public static synchronized HttpCacheProxy getInstance(Context context) {
+        if (sInstance == null)
+            sInstance = new HttpCacheProxy(new File(context.getApplicationContext().getCacheDir(), CACHE_DIR), DEFAULT_MAX_CACHE_SIZE);
+        return sInstance;
+    }
+
+    public void setEnabled(boolean enabled) {
+        mIsEnabled = enabled;
+    }
+
+    public boolean isEnabled() {
+        return mIsEnabled;
+    }
+
+    /**
+     * Least recently used tracks are evicted when cache grows over this size.
+     */
+    public void setMaxCacheSize(long maxSize) {
+        mCache.setMaxSize(maxSize < 0 ? 0 : maxSize);
+    }
+
+    public long getMaxCacheSize() {
+        return mCache.getMaxSize();
+    }
+
+    /**
+     * @return bytes cached on disk
+     */
+    public long getCacheSize() {
+        return mCache.getSize();
+    }
+
+    /**
+     * @return url to play given http(s) url through the proxy or the url itself if it can't be
+     * proxied, proxy is started on demand
+     */
+    public String getProxyUrl(String url) {
+        if (!isProxiable(url))
+            return url;
+
+        int port = start();
+        if (port < 0)
+            return url;
+        String prefix = "http://127.0.0.1:" + port + mPathPrefix;
+        if (url.startsWith(prefix))
+            return url;
+        try {
+            return prefix + URLEncoder.encode(url, "UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            return url;
+        }
+    }
+
+    /**
+     * @param source String, Uri or FileDescriptor
+     * @return source to give to the player: proxied http(s) source if proxy is enabled, otherwise
+     * the source itself
+     */
+    Object rewrite(Object source) {
+        if (!mIsEnabled)
+            return source;
+        if (source instanceof String)
+            return getProxyUrl((String) source);
+        if (source instanceof Uri) {
+            String url = source.toString();
+            String proxied = getProxyUrl(url);
+            return proxied.equals(url) ? source : Uri.parse(proxied);
+        }
+        return source;
+    }
+
+    /**
+     * Stop accepting connections. Cache is kept, proxy starts again when next url is requested.
+     */
+    public synchronized void stop() {
+        close(mServer);
+        mServer = null;
+    }
+
+    private static boolean isProxiable(String url) {
+        String lower = url.toLowerCase(Locale.US);
+        if (!lower.startsWith("http://") && !lower.startsWith("https://"))
+            return false;
+        int end = lower.indexOf('?');
+        String path = end < 0 ? lower : lower.substring(0, end);
+        return !path.endsWith(".m3u8") && !path.endsWith(".m3u") && !path.endsWith(".mpd");
+    }
+
+    /**
+     * @return port proxy listens on or -1 if it can't be started
+     */
+    private synchronized int start() {
+        if (mServer != null && !mServer.isClosed())
+            return mServer.getLocalPort();
+
+        try {
+            final ServerSocket server = new ServerSocket(0, 16, InetAddress.getByName("127.0.0.1"));
+            mServer = server;
+            mExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    accept(server);
+                }
+            });
+            return server.getLocalPort();
+        } catch (IOException e) {
+            return -1;
+        }
+    }
+
+    private void accept(ServerSocket server) {
+        while (!server.isClosed()) {
+            try {
+                final Socket socket = server.accept();
+                mExecutor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            serve(socket);
+                        } catch (IOException ignored) {
+                            // player closed connection or origin failed after response started
+                        } finally {
+                            close(socket);
+                        }
+                    }
+                });
+            } catch (IOException ignored) {
+                // closed by stop
+            }
+        }
+    }
+
+    private void serve(Socket socket) throws IOException {
+        socket.setSoTimeout(TIMEOUT);
+        InputStream input = socket.getInputStream();
+        OutputStream output = socket.getOutputStream();
+        Request request = Request.read(input, mPathPrefix);
+        if (request == null) {
+            writeStatus(output, 400, "Bad Request", null);
+            return;
+        }
+        if (request.url == null) {
+            writeStatus(output, 403, "Forbidden", null);
+            return;
+        }
+
+        HttpCache.Entry entry = mCache.open(request.url);
+        Origin origin = null;
+        try {
+            long length = entry.getLength();
+            long first = request.suffix > 0 ? 0 : Math.max(request.start, 0);
+            if (length < 0 || request.suffix < 0 && entry.getCachedEnd(first) == first) {
+                // open origin before responding when something has to be fetched anyway, so
+                // errors are passed to the player and unknown length is learned
+                long last = request.suffix > 0 ? -1 : request.end;
+                long next = entry.getNextCachedStart(first);
+                if (next != Long.MAX_VALUE && (last < 0 || next <= last))
+                    last = next - 1;
+                try {
+                    origin = Origin.open(request.url, first, last);
+                } catch (IOException e) {
+                    writeStatus(output, 502, "Bad Gateway", null);
+                    return;
+                }
+                if (!origin.isSuccessful()) {
+                    writeStatus(output, origin.status, "Origin Error", null);
+                    return;
+                }
+                if (origin.length >= 0) {
+                    mCache.onWritten(-entry.setInfo(origin.length, origin.contentType));
+                    length = origin.length;
+                }
+            }
+
+            if (length < 0) {
+                // unknown length, e.g. chunked response, is passed through without caching
+                writeHeaders(output, 200, "OK", origin.contentType, -1, null);
+                if (!request.isHead)
+                    copy(origin.input, output);
+                return;
+            }
+
+            long start = request.start;
+            long end = request.end >= 0 ? Math.min(request.end + 1, length) : length;
+            if (request.suffix > 0) {
+                start = Math.max(0, length - request.suffix);
+                end = length;
+            }
+            if (start >= length) {
+                writeStatus(output, 416, "Range Not Satisfiable", "Content-Range: bytes */" + length);
+                return;
+            }
+
+            String type = entry.getContentType() != null ? entry.getContentType() : "application/octet-stream";
+            if (start < 0)
+                writeHeaders(output, 200, "OK", type, length, null);
+            else
+                writeHeaders(output, 206, "Partial Content", type, end - start, "Content-Range: bytes " + start + "-" + (end - 1) + "/" + length);
+            if (!request.isHead)
+                transfer(entry, origin, output, start < 0 ? 0 : start, end);
+        } finally {
+            if (origin != null)
+                origin.close();
+            mCache.close(entry);
+        }
+    }
+
+    /**
+     * Send bytes [position, end) taking cached parts from disk and fetching holes from origin.
+     */
+    private void transfer(HttpCache.Entry entry, Origin origin, OutputStream output, long position, long end) throws IOException {
+        byte[] buffer = new byte[BUFFER_SIZE];
+        try {
+            while (position < end) {
+                long cachedEnd = Math.min(entry.getCachedEnd(position), end);
+                if (cachedEnd > position) {
+                    int read = entry.read(position, buffer, 0, (int) Math.min(buffer.length, cachedEnd - position));
+                    if (read < 0)
+                        throw new IOException("Cache file is truncated");
+                    output.write(buffer, 0, read);
+                    position += read;
+                    continue;
+                }
+
+                long holeEnd = Math.min(entry.getNextCachedStart(position), end);
+                if (origin == null || origin.position != position) {
+                    if (origin != null)
+                        origin.close();
+                    origin = null;
+                    origin = Origin.open(entry.url, position, holeEnd - 1);
+                    if (!origin.isSuccessful())
+                        throw new IOException("Origin responded " + origin.status);
+                }
+
+                int read = origin.input.read(buffer, 0, (int) Math.min(buffer.length, holeEnd - position));
+                if (read < 0)
+                    throw new IOException("Origin closed connection");
+                origin.position += read;
+                mCache.onWritten(entry.write(position, buffer, 0, read));
+                output.write(buffer, 0, read);
+                position += read;
+            }
+            output.flush();
+        } finally {
+            if (origin != null)
+                origin.close();
+        }
+    }
+
+    private static void copy(InputStream input, OutputStream output) throws IOException {
+        byte[] buffer = new byte[BUFFER_SIZE];
+        int read;
+        while ((read = input.read(buffer)) >= 0)
+            output.write(buffer, 0, read);
+        output.flush();
+    }
+
+    private static void writeStatus(OutputStream output, int code, String reason, String header) throws IOException {
+        writeHeaders(output, code, reason, null, 0, header);
+        output.flush();
+    }
+
+    private static void writeHeaders(OutputStream output, int code, String reason, String type, long length, String header) throws IOException {
+        StringBuilder headers = new StringBuilder(256);
+        headers.append("HTTP/1.1 ").append(code).append(' ').append(reason).append("\r\n");
+        headers.append("Accept-Ranges: bytes\r\n");
+        if (type != null)
+            headers.append("Content-Type: ").append(type).append("\r\n");
+        if (length >= 0)
+            headers.append("Content-Length: ").append(length).append("\r\n");
+        if (header != null)
+            headers.append(header).append("\r\n");
+        headers.append("Connection: close\r\n\r\n");
+        output.write(headers.toString().getBytes("US-ASCII"));
+    }
+
+    private static void close(Closeable closeable) {
+        if (closeable == null)
+            return;
+        try {
+            closeable.close();
+        } catch (IOException ignored) {
+        }
+    }
+
+    // sockets are not Closeable before API 19
+    private static void close(Socket socket) {
+        try {
+            socket.close();
+        } catch (IOException ignored) {
+        }
+    }
+
+    private static void close(ServerSocket server) {
+        if (server == null)
+            return;
+        try {
+            server.close();
+        } catch (IOException ignored) {
+        }
+    }
+
+    /**
+     * Player request: origin url, HEAD or GET, requested range if any. Url is null if path
+     * doesn't start with the proxy prefix.
+     */
+    private static final class Request {
+        String url;
+        boolean isHead;
+        long start = -1;
+        long end = -1;
+        long suffix = -1;
+
+        static Request read(InputStream input, String prefix) throws IOException {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(512);
+            int matched = 0, value;
+            // read until empty line
+            while (matched < 4) {
+                value = input.read();
+                if (value < 0 || bytes.size() >= MAX_HEADER_SIZE)
+                    return null;
+                bytes.write(value);
+                matched = value == (matched % 2 == 0 ? '\r' : '\n') ? matched + 1 : value == '\r' ? 1 : 0;
+            }
+
+            String[] lines = bytes.toString("US-ASCII").split("\r\n");
+            String[] requestLine = lines[0].split(" ");
+            if (requestLine.length < 2)
+                return null;
+
+            Request request = new Request();
+            request.isHead = "HEAD".equals(requestLine[0]);
+            if (!request.isHead && !"GET".equals(requestLine[0]))
+                return null;
+            if (requestLine[1].startsWith(prefix))
+                request.url = URLDecoder.decode(requestLine[1].substring(prefix.length()), "UTF-8");
+
+            for (int i = 1; i < lines.length; i++) {
+                String line = lines[i];
+                int colon = line.indexOf(':');
+                if (colon > 0 && "range".equalsIgnoreCase(line.substring(0, colon).trim()))
+                    request.parseRange(line.substring(colon + 1).trim());
+            }
+            return request;
+        }
+
+        /**
+         * Single range only: bytes=a-, bytes=a-b or bytes=-n. Others are served as full response.
+         */
+        private void parseRange(String range) {
+            if (!range.startsWith("bytes=") || range.indexOf(',') >= 0)
+                return;
+
+            int dash = range.indexOf('-');
+            try {
+                String first = range.substring("bytes=".length(), dash).trim();
+                String last = range.substring(dash + 1).trim();
+                if (first.isEmpty()) {
+                    suffix = Long.parseLong(last);
+                    start = 0;
+                    return;
+                }
+                start = Long.parseLong(first);
+                end = last.isEmpty() ? -1 : Long.parseLong(last);
+                if (end >= 0 && end < start)
+                    start = end = -1;
+            } catch (RuntimeException e) {
+                start = end = suffix = -1;
+            }
+        }
+    }
+
+    /**
+     * Origin response body positioned at requested offset.
+     */
+    private static final class Origin {
+        HttpURLConnection connection;
+        InputStream input;
+        int status;
+        long position;
+        long length = -1;
+        String contentType;
+
+        /**
+         * @param end last byte to fetch inclusive or -1 for the rest of resource
+         */
+        static Origin open(String url, long start, long end) throws IOException {
+            Origin origin = new Origin();
+            HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+            origin.connection = connection;
+            connection.setConnectTimeout(TIMEOUT);
+            connection.setReadTimeout(TIMEOUT);
+            // cached bytes must be exactly the ones on server
+            connection.setRequestProperty("Accept-Encoding", "identity");
+            if (start > 0 || end >= 0)
+                connection.setRequestProperty("Range", "bytes=" + start + "-" + (end >= 0 ? end : ""));
+
+            try {
+                origin.status = connection.getResponseCode();
+                if (!origin.isSuccessful())
+                    return origin;
+
+                origin.contentType = connection.getContentType();
+                long offset = 0;
+                String range = connection.getHeaderField("Content-Range");
+                if (origin.status == 206 && range != null) {
+                    // bytes a-b/total
+                    int dash = range.indexOf('-'), slash = range.indexOf('/');
+                    offset = Long.parseLong(range.substring(range.indexOf(' ') + 1, dash).trim());
+                    String total = range.substring(slash + 1).trim();
+                    origin.length = "*".equals(total) ? -1 : Long.parseLong(total);
+                } else {
+                    String contentLength = connection.getHeaderField("Content-Length");
+                    origin.length = contentLength != null ? Long.parseLong(contentLength.trim()) : -1;
+                }
+
+                origin.input = connection.getInputStream();
+                origin.position = offset;
+                // server ignored range, skip to requested bytes
+                while (origin.position < start) {
+                    long skipped = origin.input.skip(start - origin.position);
+                    if (skipped <= 0)
+                        throw new IOException("Origin response is shorter than requested range");
+                    origin.position += skipped;
+                }
+                return origin;
+            } catch (IOException | RuntimeException e) {
+                origin.close();
+                throw e instanceof IOException ? (IOException) e : new IOException(e.getMessage());
+            }
+        }
+
+        boolean isSuccessful() {
+            return status == HttpURLConnection.HTTP_OK || status == HttpURLConnection.HTTP_PARTIAL;
+        }
+
+        void close() {
+            HttpCacheProxy.close(input);
+            connection.disconnect();
+        }
+    }
+}
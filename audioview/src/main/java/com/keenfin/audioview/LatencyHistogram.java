@@ -0,0 +1,105 @@
+/*
+ *           Copyright © 2019 Stanislav Petriakov
+ *  Distributed under the Boost Software License, Version 1.0.
+ *     (See accompanying file LICENSE_1_0.txt or copy at
+ *           http://www.boost.org/LICENSE_1_0.txt)
+ */
+
+package com.keenfin.audioview;
+
+import java.io.PrintWriter;
+
+/**
+ * Histogram of latencies in milliseconds over fixed buckets. Buckets are preallocated, so
+ * recording neither allocates nor depends on the number of samples. Percentiles are approximated
+ * by the upper bound of the bucket they fall into.
+ */
+public final class LatencyHistogram {
+    /**
+     * Upper bounds of buckets in ms, inclusive. One more bucket holds everything slower.
+     */
+    private static final long[] BOUNDS = {5, 10, 25, 50, 100, 250, 500, 1000, 2500, 5000, 10000};
+
+    private final long[] mCounts = new long[BOUNDS.length + 1];
+    private long mCount = 0;
+    private long mSum = 0;
+    private long mMax = 0;
+
+    public synchronized void record(long millis) {
+        if (millis < 0)
+            millis = 0;
+        int bucket = 0;
+        while (bucket < BOUNDS.length && millis > BOUNDS[bucket])
+            bucket++;
+
+        mCounts[bucket]++;
+        mCount++;
+        mSum += millis;
+        if (millis > mMax)
+            mMax = millis;
+    }
+
+    public synchronized long getCount() {
+        return mCount;
+    }
+
+    public synchronized long getMean() {
+        return mCount > 0 ? mSum / mCount : 0;
+    }
+
+    public synchronized long getMax() {
+        return mMax;
+    }
+
+    /**
+     * @param fraction from 0 to 1, e.g. 0.95
+     * @return upper bound of the bucket holding given fraction of samples, but not more than max,
+     * or 0 if there are no samples
+     */
+    public synchronized long getPercentile(double fraction) {
+        if (mCount == 0)
+            return 0;
+
+        long target = Math.max(1, (long) Math.ceil(fraction * mCount));
+        long count = 0;
+        for (int i = 0; i < BOUNDS.length; i++) {
+            count += mCounts[i];
+            if (count >= target)
+                return Math.min(BOUNDS[i], mMax);
+        }
+        return mMax;
+    }
+
+    public static int getBucketCount() {
+        return BOUNDS.length + 1;
+    }
+
+    /**
+     * @return upper bound of bucket in ms, Long.MAX_VALUE for the last one
+     */
+    public static long getBucketBound(int bucket) {
+        return bucket < BOUNDS.length ? BOUNDS[bucket] : Long.MAX_VALUE;
+    }
+
+    public synchronized long getBucketSamples(int bucket) {
+        return mCounts[bucket];
+    }
+
+    public synchronized void reset() {
+        for (int i = 0; i < mCounts.length; i++)
+            mCounts[i] = 0;
+        mCount = mSum = mMax = 0;
+    }
+
+    /**
+     * Print summary and non-empty buckets on one line.
+     */
+    synchronized void dump(PrintWriter writer) {
+        writer.print("count=" + mCount + " mean=" + getMean() + "ms p50=" + getPercentile(0.5)
+                + "ms p95=" + getPercentile(0.95) + "ms p99=" + getPercentile(0.99) + "ms max=" + mMax + "ms");
+        for (int i = 0; i < mCounts.length; i++)
+            if (mCounts[i] > 0)
+                writer.print((i < BOUNDS.length ? " <=" + BOUNDS[i] : " >" + BOUNDS[BOUNDS.length - 1]) + ":" + mCounts[i]);
+        writer.println();
+    }
+}
@@ -0,0 +1,260 @@
+/*
+ *           Copyright © 2019 Stanislav Petriakov
+ *  Distributed under the Boost Software License, Version 1.0.
+ *     (See accompanying file LICENSE_1_0.txt or copy at
+ *           http://www.boost.org/LICENSE_1_0.txt)
+ */
+
+package com.keenfin.audioview;
+
+import android.annotation.TargetApi;
+import android.content.Context;
+import android.media.MediaPlayer;
+import android.net.Uri;
+import android.os.Build;
+
+import java.io.FileDescriptor;
+import java.io.IOException;
+
+/**
+ * Default {@link PlayerEngine} backed by android.media.MediaPlayer.
+ */
+public class MediaPlayerEngine implements PlayerEngine {
+    private final MediaPlayer mMediaPlayer = new MediaPlayer();
+    private final PlaybackEventLog mLog = PlaybackEventLog.getInstance();
+    private Listener mListener;
+
+    private final MediaPlayer.OnPreparedListener mOnPreparedListener = new MediaPlayer.OnPreparedListener() {
+        @Override
+        public void onPrepared(MediaPlayer mp) {
+            mLog.record(PlaybackEventLog.EVENT_PREPARED, MediaPlayerEngine.this, getDuration(), 0);
+            if (mListener != null)
+                mListener.onPrepared(MediaPlayerEngine.this);
+        }
+    };
+
+    private final MediaPlayer.OnCompletionListener mOnCompletionListener = new MediaPlayer.OnCompletionListener() {
+        @Override
+        public void onCompletion(MediaPlayer mp) {
+            mLog.record(PlaybackEventLog.EVENT_COMPLETION, MediaPlayerEngine.this, 0, 0);
+            if (mListener != null)
+                mListener.onCompletion(MediaPlayerEngine.this);
+        }
+    };
+
+    private final MediaPlayer.OnErrorListener mOnErrorListener = new MediaPlayer.OnErrorListener() {
+        @Override
+        public boolean onError(MediaPlayer mp, int what, int extra) {
+            mLog.record(PlaybackEventLog.EVENT_ERROR, MediaPlayerEngine.this, what, extra);
+            return mListener != null && mListener.onError(MediaPlayerEngine.this, what, extra);
+        }
+    };
+
+    private final MediaPlayer.OnSeekCompleteListener mOnSeekCompleteListener = new MediaPlayer.OnSeekCompleteListener() {
+        @Override
+        public void onSeekComplete(MediaPlayer mp) {
+            mLog.record(PlaybackEventLog.EVENT_SEEK_COMPLETE, MediaPlayerEngine.this, getCurrentPosition(), 0);
+            if (mListener != null)
+                mListener.onSeekComplete(MediaPlayerEngine.this);
+        }
+    };
+
+    private final MediaPlayer.OnInfoListener mOnInfoListener = new MediaPlayer.OnInfoListener() {
+        @Override
+        public boolean onInfo(MediaPlayer mp, int what, int extra) {
+            boolean buffering;
+            if (what == MediaPlayer.MEDIA_INFO_BUFFERING_START)
+                buffering = true;
+            else if (what == MediaPlayer.MEDIA_INFO_BUFFERING_END)
+                buffering = false;
+            else
+                return false;
+
+            mLog.record(buffering ? PlaybackEventLog.EVENT_BUFFERING_START : PlaybackEventLog.EVENT_BUFFERING_END, MediaPlayerEngine.this, 0, 0);
+            if (mListener == null)
+                return false;
+            mListener.onBuffering(MediaPlayerEngine.this, buffering);
+            return true;
+        }
+    };
+
+    public MediaPlayerEngine() {
+        mMediaPlayer.setOnPreparedListener(mOnPreparedListener);
+        mMediaPlayer.setOnCompletionListener(mOnCompletionListener);
+        mMediaPlayer.setOnErrorListener(mOnErrorListener);
+        mMediaPlayer.setOnSeekCompleteListener(mOnSeekCompleteListener);
+        mMediaPlayer.setOnInfoListener(mOnInfoListener);
+    }
+
+    public MediaPlayerEngine(Context context) {
+        this();
+    }
+
+    @Override
+    public void setListener(Listener listener) {
+        mListener = listener;
+    }
+
+    /**
+     * Player left in a wrong state is reset and tried once more. If it still refuses the source,
+     * e.g. after being released, IOException is thrown instead of failing on the next prepare.
+     */
+    @Override
+    public void setDataSource(Context context, Object source) throws IOException {
+        mLog.record(PlaybackEventLog.EVENT_SET_DATA_SOURCE, this, PlaybackMetrics.getScheme(source), 0);
+        boolean traced = PlaybackTrace.begin(PlaybackTrace.SECTION_SET_DATA_SOURCE);
+        try {
+            try {
+                setMediaPlayerSource(context, source);
+            } catch (IllegalStateException e) {
+                mMediaPlayer.reset();
+                setMediaPlayerSource(context, source);
+            }
+        } catch (IllegalStateException e) {
+            throw new IOException("MediaPlayer can't take data source in its state", e);
+        } finally {
+            PlaybackTrace.end(traced);
+        }
+    }
+
+    private void setMediaPlayerSource(Context context, Object source) throws IOException {
+        if (source instanceof String)
+            mMediaPlayer.setDataSource((String) source);
+        else if (source instanceof Uri)
+            mMediaPlayer.setDataSource(context, (Uri) source);
+        else if (source instanceof FileDescriptor)
+            mMediaPlayer.setDataSource((FileDescriptor) source);
+        else
+            throw new IllegalArgumentException("AudioView supports only String, Uri, FileDescriptor data sources now.");
+    }
+
+    @Override
+    public void prepareAsync() {
+        mLog.record(PlaybackEventLog.EVENT_PREPARE, this, 0, 0);
+        boolean traced = PlaybackTrace.begin(PlaybackTrace.SECTION_PREPARE);
+        try {
+            mMediaPlayer.prepareAsync();
+        } catch (IllegalStateException ignored) {
+        } finally {
+            PlaybackTrace.end(traced);
+        }
+    }
+
+    @Override
+    public void start() {
+        mLog.record(PlaybackEventLog.EVENT_START, this, getCurrentPosition(), 0);
+        try {
+            mMediaPlayer.start();
+        } catch (IllegalStateException ignored) {
+        }
+    }
+
+    @Override
+    public void pause() {
+        mLog.record(PlaybackEventLog.EVENT_PAUSE, this, getCurrentPosition(), 0);
+        try {
+            mMediaPlayer.pause();
+        } catch (IllegalStateException ignored) {
+        }
+    }
+
+    @Override
+    public void stop() {
+        mLog.record(PlaybackEventLog.EVENT_STOP, this, getCurrentPosition(), 0);
+        try {
+            mMediaPlayer.stop();
+        } catch (IllegalStateException ignored) {
+        }
+    }
+
+    @Override
+    public void seekTo(int position) {
+        mLog.record(PlaybackEventLog.EVENT_SEEK, this, position, 0);
+        try {
+            mMediaPlayer.seekTo(position);
+        } catch (IllegalStateException ignored) {
+        }
+    }
+
+    @Override
+    @TargetApi(Build.VERSION_CODES.O)
+    public void fastSeekTo(int position) {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.O) {
+            seekTo(position);
+            return;
+        }
+
+        mLog.record(PlaybackEventLog.EVENT_SEEK, this, position, 1);
+        try {
+            mMediaPlayer.seekTo(position, MediaPlayer.SEEK_CLOSEST_SYNC);
+        } catch (IllegalStateException ignored) {
+        }
+    }
+
+    @Override
+    public void reset() {
+        mLog.record(PlaybackEventLog.EVENT_RESET, this, 0, 0);
+        boolean traced = PlaybackTrace.begin(PlaybackTrace.SECTION_RESET);
+        try {
+            mMediaPlayer.reset();
+        } catch (IllegalStateException ignored) {
+        } finally {
+            PlaybackTrace.end(traced);
+        }
+    }
+
+    @Override
+    public void release() {
+        mListener = null;
+        mLog.record(PlaybackEventLog.EVENT_RELEASE, this, 0, 0);
+        boolean traced = PlaybackTrace.begin(PlaybackTrace.SECTION_RELEASE);
+        try {
+            mMediaPlayer.release();
+        } finally {
+            PlaybackTrace.end(traced);
+        }
+    }
+
+    @Override
+    public boolean isPlaying() {
+        try {
+            return mMediaPlayer.isPlaying();
+        } catch (IllegalStateException ignored) {
+            return false;
+        }
+    }
+
+    @Override
+    public int getCurrentPosition() {
+        try {
+            return mMediaPlayer.getCurrentPosition();
+        } catch (IllegalStateException ignored) {
+            return 0;
+        }
+    }
+
+    @Override
+    public int getDuration() {
+        try {
+            return mMediaPlayer.getDuration();
+        } catch (IllegalStateException ignored) {
+            return 0;
+        }
+    }
+
+    @Override
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+    public boolean setNextEngine(PlayerEngine next) {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.JELLY_BEAN)
+            return false;
+        if (next != null && !(next instanceof MediaPlayerEngine))
+            return false;
+
+        try {
+            mMediaPlayer.setNextMediaPlayer(next == null ? null : ((MediaPlayerEngine) next).mMediaPlayer);
+            return true;
+        } catch (IllegalStateException | IllegalArgumentException ignored) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,178 @@
+/*
+ *           Copyright © 2019 Stanislav Petriakov
+ *  Distributed under the Boost Software License, Version 1.0.
+ *     (See accompanying file LICENSE_1_0.txt or copy at
+ *           http://www.boost.org/LICENSE_1_0.txt)
+ */
+
+package com.keenfin.audioview;
+
+import android.content.Context;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * Process-wide pool of {@link PlayerEngine}s shared by standalone AudioViews. Must be used from
+ * the main thread. Idle engines are reused only for owners asking for the same engine class.
+ * <p>
+ * Owners acquire a player to prepare and play, park it while paused and release it on detach.
+ * Released players are reset and reused. When the pool is full, idle players of other engine
+ * classes are released first, then the least recently parked player is reclaimed from its owner. Players which are preparing or playing are never taken
+ * away, so the pool may temporarily grow over its cap and shrinks back as they are released.
+ */
+public final class MediaPlayerPool {
+    public interface OnReclaimListener {
+        /**
+         * Called right before the player is reset and handed to another owner.
+         */
+        void onReclaim(PlayerEngine player);
+    }
+
+    public static final int DEFAULT_MAX_SIZE = 4;
+
+    private static MediaPlayerPool sInstance;
+
+    private final HashMap<PlayerEngine, OnReclaimListener> mOwners = new HashMap<>();
+    private final ArrayList<PlayerEngine> mParked = new ArrayList<>();
+    private final ArrayList<PlayerEngine> mIdle = new ArrayList<>();
+    private int mMaxSize = DEFAULT_MAX_SIZE;
+    private int mCreatedCount = 0;
+
+    MediaPlayerPool() {
+    }
+
+    public static MediaPlayerPool getInstance() {
+        if (sInstance == null)
+            sInstance = new MediaPlayerPool();
+        return sInstance;
+    }
+
+    public void setMaxSize(int maxSize) {
+        mMaxSize = maxSize < 1 ? 1 : maxSize;
+        trim();
+    }
+
+    public int getMaxSize() {
+        return mMaxSize;
+    }
+
+    /**
+     * Players currently owned or kept idle.
+     */
+    public int getSize() {
+        return mOwners.size() + mIdle.size();
+    }
+
+    public int getIdleCount() {
+        return mIdle.size();
+    }
+
+    public int getParkedCount() {
+        return mParked.size();
+    }
+
+    /**
+     * Total number of engines ever created by this pool.
+     */
+    public int getCreatedCount() {
+        return mCreatedCount;
+    }
+
+    /**
+     * Lease a {@link MediaPlayerEngine} in idle state.
+     */
+    public PlayerEngine acquire(OnReclaimListener owner) {
+        return acquire(null, null, owner);
+    }
+
+    /**
+     * Lease a player in idle state. The owner must set its own listener.
+     *
+     * @param engineClass {@link PlayerEngine} class name, null for {@link MediaPlayerEngine}
+     */
+    public PlayerEngine acquire(Context context, String engineClass, OnReclaimListener owner) {
+        PlayerEngine player = null;
+        for (int i = mIdle.size() - 1; i >= 0 && player == null; i--)
+            if (Util.isPlayerEngine(mIdle.get(i), engineClass))
+                player = mIdle.remove(i);
+
+        // idle players left are of other classes, they go before owners lose prepared tracks
+        while (player == null && getSize() >= mMaxSize && !mIdle.isEmpty())
+            mIdle.remove(0).release();
+
+        if (player == null && getSize() >= mMaxSize && !mParked.isEmpty()) {
+            PlayerEngine reclaimed = mParked.remove(0);
+            OnReclaimListener previous = mOwners.remove(reclaimed);
+            if (previous != null)
+                previous.onReclaim(reclaimed);
+            if (Util.isPlayerEngine(reclaimed, engineClass)) {
+                reset(reclaimed);
+                player = reclaimed;
+            } else
+                reclaimed.release();
+        }
+
+        if (player == null) {
+            player = Util.createPlayerEngineOrDefault(context, engineClass);
+            mCreatedCount++;
+        }
+
+        mOwners.put(player, owner);
+        return player;
+    }
+
+    /**
+     * Mark owned player as reclaimable, e.g. when it is paused or prepared but not started.
+     * Parking again moves the player to the end of reclaim queue.
+     */
+    public void park(PlayerEngine player) {
+        if (player == null || !mOwners.containsKey(player))
+            return;
+        mParked.remove(player);
+        mParked.add(player);
+    }
+
+    /**
+     * Protect owned player from being reclaimed, e.g. when it is preparing or playing.
+     */
+    public void unpark(PlayerEngine player) {
+        mParked.remove(player);
+    }
+
+    /**
+     * Return player to the pool.
+     */
+    public void release(PlayerEngine player) {
+        if (player == null || mOwners.remove(player) == null)
+            return;
+        mParked.remove(player);
+
+        if (getSize() >= mMaxSize) {
+            player.release();
+            return;
+        }
+
+        reset(player);
+        mIdle.add(player);
+    }
+
+    /**
+     * Release all idle players, e.g. on low memory.
+     */
+    public void clear() {
+        for (PlayerEngine player : mIdle)
+            player.release();
+        mIdle.clear();
+    }
+
+    private void trim() {
+        while (!mIdle.isEmpty() && getSize() > mMaxSize)
+            mIdle.remove(0).release();
+    }
+
+    private void reset(PlayerEngine player) {
+        player.setListener(null);
+        player.reset();
+    }
+}
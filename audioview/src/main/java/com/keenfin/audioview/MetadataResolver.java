@@ -0,0 +1,203 @@
+/*
+ *           Copyright © 2019 Stanislav Petriakov
+ *  Distributed under the Boost Software License, Version 1.0.
+ *     (See accompanying file LICENSE_1_0.txt or copy at
+ *           http://www.boost.org/LICENSE_1_0.txt)
+ */
+
+package com.keenfin.audioview;
+
+import android.content.Context;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+import android.support.annotation.Nullable;
+
+import java.io.FileDescriptor;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Resolves track titles off the main thread. Results are cached in a bounded LRU keyed by
+ * normalized source, see {@link #getSourceKey(Object)}, and delivered on the main thread.
+ * Concurrent requests for equal sources share a single MediaMetadataRetriever pass, each listener
+ * still receives the source instance it asked for. Sources that fail to open, e.g. on a network
+ * error, resolve to no title without being cached, so the next request retries them.
+ */
+public final class MetadataResolver {
+    public interface OnMetadataResolvedListener {
+        void onMetadataResolved(Object source, String title);
+    }
+
+    public static final int DEFAULT_CACHE_SIZE = 64;
+
+    private static MetadataResolver sInstance;
+
+    private final Context mContext;
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+    private final ExecutorService mExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "AudioView-Metadata");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+    private final Map<Object, List<Request>> mPending = new HashMap<>();
+    private final LruCache mCache = new LruCache();
+    private int mCacheSize = DEFAULT_CACHE_SIZE;
+
+    private MetadataResolver(Context context) {
+        mContext = context.getApplicationContext();
+    }
+
+    public static synchronized MetadataResolver getInstance(Context context) {
+        if (sInstance == null)
+            sInstance = new MetadataResolver(context);
+        return sInstance;
+    }
+
+    /**
+     * Normalized cache key for String path, Uri and FileDescriptor sources. File descriptors have
+     * no stable textual form, so they are keyed by identity.
+     */
+    static Object getSourceKey(Object source) {
+        if (source instanceof String)
+            return source;
+        if (source instanceof Uri) {
+            Uri uri = (Uri) source;
+            if (uri.getScheme() == null || "file".equalsIgnoreCase(uri.getScheme()))
+                return uri.getPath();
+            return uri.toString();
+        }
+        if (source instanceof FileDescriptor)
+            return source;
+        return null;
+    }
+
+    public synchronized void setCacheSize(int size) {
+        mCacheSize = size < 1 ? 1 : size;
+        mCache.trim();
+    }
+
+    @Nullable
+    public synchronized String getCached(Object source) {
+        Object key = getSourceKey(source);
+        return key != null ? mCache.get(key) : null;
+    }
+
+    public synchronized void invalidate(Object source) {
+        Object key = getSourceKey(source);
+        if (key != null)
+            mCache.remove(key);
+    }
+
+    public synchronized void clear() {
+        mCache.clear();
+    }
+
+    /**
+     * Resolve title for the source. The listener is called on the main thread, immediately if the
+     * title is already cached.
+     */
+    public void resolve(final Object source, final OnMetadataResolvedListener listener) {
+        final Object key = getSourceKey(source);
+        if (key == null)
+            return;
+
+        String cached;
+        synchronized (this) {
+            cached = mCache.get(key);
+            if (cached == null) {
+                List<Request> requests = mPending.get(key);
+                if (requests != null) {
+                    requests.add(new Request(source, listener));
+                    return;
+                }
+
+                requests = new ArrayList<>(1);
+                requests.add(new Request(source, listener));
+                mPending.put(key, requests);
+            }
+        }
+
+        if (cached != null) {
+            deliver(source, cached, listener);
+            return;
+        }
+
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                String title;
+                boolean isResolved;
+                try {
+                    title = Util.readTrackTitle(mContext, source);
+                    isResolved = true;
+                } catch (Exception e) {
+                    title = mContext.getString(R.string.no_title);
+                    isResolved = false;
+                }
+
+                final List<Request> requests;
+                synchronized (MetadataResolver.this) {
+                    if (isResolved)
+                        mCache.put(key, title);
+                    requests = mPending.remove(key);
+                }
+
+                if (requests != null)
+                    for (Request request : requests)
+                        deliver(request.source, title, request.listener);
+            }
+        });
+    }
+
+    private void deliver(final Object source, final String title, final OnMetadataResolvedListener listener) {
+        if (Looper.myLooper() == Looper.getMainLooper()) {
+            listener.onMetadataResolved(source, title);
+            return;
+        }
+
+        mMainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                listener.onMetadataResolved(source, title);
+            }
+        });
+    }
+
+    private static final class Request {
+        final Object source;
+        final OnMetadataResolvedListener listener;
+
+        Request(Object source, OnMetadataResolvedListener listener) {
+            this.source = source;
+            this.listener = listener;
+        }
+    }
+
+    private class LruCache extends LinkedHashMap<Object, String> {
+        LruCache() {
+            super(16, 0.75f, true);
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Object, String> eldest) {
+            return size() > mCacheSize;
+        }
+
+        void trim() {
+            while (size() > mCacheSize)
+                remove(keySet().iterator().next());
+        }
+    }
+}
@@ -0,0 +1,118 @@
+/*
+ *           Copyright © 2019 Stanislav Petriakov
+ *  Distributed under the Boost Software License, Version 1.0.
+ *     (See accompanying file LICENSE_1_0.txt or copy at
+ *           http://www.boost.org/LICENSE_1_0.txt)
+ */
+
+package com.keenfin.audioview;
+
+import android.app.Notification;
+import android.app.NotificationManager;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.text.TextUtils;
+
+/**
+ * Posts playback notification only when its visible state changes, at most once per interval.
+ * Rapid changes in between are merged into a single post of the latest state.
+ * Must be used from the main thread.
+ */
+final class NotificationRenderer {
+    interface NotificationFactory {
+        Notification createNotification(boolean playing, CharSequence title);
+    }
+
+    static final long DEFAULT_MIN_INTERVAL = 250;
+
+    private final NotificationManager mNotificationManager;
+    private final NotificationFactory mFactory;
+    private final int mNotificationId;
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+    private long mMinInterval = DEFAULT_MIN_INTERVAL;
+
+    private boolean mPlaying;
+    private CharSequence mTitle;
+    private boolean mRenderedPlaying;
+    private CharSequence mRenderedTitle;
+    private boolean mIsRendered = false;
+    private boolean mIsScheduled = false;
+    private long mLastPostTime;
+    private int mPostCount = 0;
+
+    private final Runnable mRenderTask = new Runnable() {
+        @Override
+        public void run() {
+            mIsScheduled = false;
+            if (isChanged())
+                mNotificationManager.notify(mNotificationId, render());
+        }
+    };
+
+    NotificationRenderer(NotificationManager manager, int notificationId, NotificationFactory factory) {
+        mNotificationManager = manager;
+        mNotificationId = notificationId;
+        mFactory = factory;
+    }
+
+    void setMinInterval(long minInterval) {
+        mMinInterval = minInterval < 0 ? 0 : minInterval;
+    }
+
+    /**
+     * Set the whole visible state at once, so a track change is a single post with both new
+     * playing state and new title.
+     */
+    void update(boolean playing, CharSequence title) {
+        mPlaying = playing;
+        mTitle = title;
+        invalidate();
+    }
+
+    /**
+     * Number of notifications posted so far.
+     */
+    int getPostCount() {
+        return mPostCount;
+    }
+
+    /**
+     * Build notification for current state right away, e.g. for startForeground.
+     */
+    Notification render() {
+        mHandler.removeCallbacks(mRenderTask);
+        mIsScheduled = false;
+        mRenderedPlaying = mPlaying;
+        mRenderedTitle = mTitle;
+        mIsRendered = true;
+        mLastPostTime = SystemClock.uptimeMillis();
+        mPostCount++;
+        return mFactory.createNotification(mPlaying, mTitle);
+    }
+
+    void cancel() {
+        mHandler.removeCallbacks(mRenderTask);
+        mIsScheduled = false;
+        mIsRendered = false;
+    }
+
+    private boolean isChanged() {
+        return !mIsRendered || mRenderedPlaying != mPlaying || !TextUtils.equals(mRenderedTitle, mTitle);
+    }
+
+    private void invalidate() {
+        if (!mIsRendered || mIsScheduled)
+            return;
+
+        if (!isChanged())
+            return;
+
+        long delay = mLastPostTime + mMinInterval - SystemClock.uptimeMillis();
+        mIsScheduled = true;
+        if (delay <= 0)
+            mRenderTask.run();
+        else
+            mHandler.postDelayed(mRenderTask, delay);
+    }
+}
@@ -0,0 +1,71 @@
+/*
+ *           Copyright © 2019 Stanislav Petriakov
+ *  Distributed under the Boost Software License, Version 1.0.
+ *     (See accompanying file LICENSE_1_0.txt or copy at
+ *           http://www.boost.org/LICENSE_1_0.txt)
+ */
+
+package com.keenfin.audioview;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * {@link PlaylistProvider} loading tracks in fixed size pages, e.g. from a database or a server.
+ * Only a few recently used pages are kept, so memory does not depend on playlist size. Page cache
+ * is guarded by the provider lock, loadPage is called under it.
+ */
+public abstract class PagedPlaylistProvider implements PlaylistProvider {
+    public static final int DEFAULT_PAGE_SIZE = 50;
+    public static final int DEFAULT_CACHED_PAGES = 3;
+
+    private final int mPageSize;
+    private final Map<Integer, List<Track>> mPages;
+
+    public PagedPlaylistProvider() {
+        this(DEFAULT_PAGE_SIZE, DEFAULT_CACHED_PAGES);
+    }
+
+    public PagedPlaylistProvider(int pageSize, final int cachedPages) {
+        if (pageSize < 1 || cachedPages < 1)
+            throw new IllegalArgumentException("Page size and cached pages count must be positive.");
+        mPageSize = pageSize;
+        mPages = new LinkedHashMap<Integer, List<Track>>(cachedPages + 1, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, List<Track>> eldest) {
+                return size() > cachedPages;
+            }
+        };
+    }
+
+    /**
+     * Load tracks [offset, offset + count), last page may be shorter.
+     */
+    protected abstract List<Track> loadPage(int offset, int count);
+
+    @Override
+    public synchronized Track getTrack(int position) {
+        if (position < 0 || position >= getCount())
+            throw new IndexOutOfBoundsException("Position " + position + ", size " + getCount());
+
+        int page = position / mPageSize;
+        List<Track> tracks = mPages.get(page);
+        if (tracks == null) {
+            tracks = loadPage(page * mPageSize, mPageSize);
+            mPages.put(page, tracks);
+        }
+
+        int index = position - page * mPageSize;
+        if (index >= tracks.size())
+            throw new IndexOutOfBoundsException("Position " + position + " is missing in loaded page");
+        return tracks.get(index);
+    }
+
+    /**
+     * Drop cached pages, e.g. when underlying data changes.
+     */
+    public synchronized void invalidate() {
+        mPages.clear();
+    }
+}
@@ -0,0 +1,186 @@
+/*
+ *           Copyright © 2019 Stanislav Petriakov
+ *  Distributed under the Boost Software License, Version 1.0.
+ *     (See accompanying file LICENSE_1_0.txt or copy at
+ *           http://www.boost.org/LICENSE_1_0.txt)
+ */
+
+package com.keenfin.audioview;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * On-disk cache of waveform peaks. Each entry is a small binary file: magic, version, bucket
+ * count followed by min/max byte pairs. Entries are memory-mapped on read. Least recently read
+ * entries are evicted when cache grows over max size, file modification time keeps the order
+ * between processes.
+ */
+final class PeakCache {
+    static final int MAGIC = 0x4156504B; // AVPK
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 12;
+    static final long DEFAULT_MAX_SIZE = 2 * 1024 * 1024;
+
+    private final File mDir;
+    private final LinkedHashMap<String, Long> mEntries = new LinkedHashMap<>(16, 0.75f, true);
+    private final long mMaxSize;
+    private long mSize = 0;
+    private boolean mIsLoaded = false;
+
+    PeakCache(File dir, long maxSize) {
+        mDir = dir;
+        mMaxSize = maxSize;
+    }
+
+    /**
+     * @return bytes cached on disk
+     */
+    synchronized long getSize() {
+        load();
+        return mSize;
+    }
+
+    File getFile(String key, int buckets) {
+        return new File(mDir, hash(key) + "_" + buckets + ".peaks");
+    }
+
+    /**
+     * @return read-only buffer with 2 * buckets bytes of peaks or null if not cached
+     */
+    synchronized ByteBuffer read(String key, int buckets) {
+        load();
+        File file = getFile(key, buckets);
+        if (mEntries.get(file.getName()) == null)
+            return null;
+        file.setLastModified(System.currentTimeMillis());
+
+        RandomAccessFile input = null;
+        try {
+            input = new RandomAccessFile(file, "r");
+            FileChannel channel = input.getChannel();
+            if (channel.size() != HEADER_SIZE + buckets * 2)
+                return null;
+
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION || buffer.getInt() != buckets)
+                return null;
+            return buffer.slice();
+        } catch (IOException e) {
+            return null;
+        } finally {
+            close(input);
+        }
+    }
+
+    synchronized void write(String key, int buckets, byte[] peaks) {
+        load();
+        if (!mDir.exists() && !mDir.mkdirs())
+            return;
+
+        File file = getFile(key, buckets);
+        File temp = new File(file.getPath() + ".tmp");
+        FileOutputStream output = null;
+        try {
+            output = new FileOutputStream(temp);
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            header.putInt(MAGIC).putInt(VERSION).putInt(buckets);
+            output.write(header.array());
+            output.write(peaks, 0, buckets * 2);
+            output.close();
+            output = null;
+            if (!temp.renameTo(file)) {
+                temp.delete();
+                return;
+            }
+
+            Long previous = mEntries.put(file.getName(), file.length());
+            mSize += file.length() - (previous != null ? previous : 0);
+            trim();
+        } catch (IOException e) {
+            temp.delete();
+        } finally {
+            close(output);
+        }
+    }
+
+    private void trim() {
+        Iterator<Map.Entry<String, Long>> iterator = mEntries.entrySet().iterator();
+        while (mSize > mMaxSize && iterator.hasNext()) {
+            Map.Entry<String, Long> entry = iterator.next();
+            iterator.remove();
+            mSize -= entry.getValue();
+            new File(mDir, entry.getKey()).delete();
+        }
+    }
+
+    /**
+     * List entries left by previous processes, least recently used first.
+     */
+    private void load() {
+        if (mIsLoaded)
+            return;
+        mIsLoaded = true;
+
+        File[] files = mDir.listFiles();
+        if (files == null)
+            return;
+
+        ArrayList<File> entries = new ArrayList<>();
+        for (File file : files)
+            if (file.getName().endsWith(".peaks"))
+                entries.add(file);
+            else if (file.getName().endsWith(".tmp"))
+                file.delete();
+
+        File[] sorted = entries.toArray(new File[0]);
+        Arrays.sort(sorted, new Comparator<File>() {
+            @Override
+            public int compare(File a, File b) {
+                long difference = a.lastModified() - b.lastModified();
+                return difference < 0 ? -1 : difference > 0 ? 1 : 0;
+            }
+        });
+
+        for (File file : sorted) {
+            mEntries.put(file.getName(), file.length());
+            mSize += file.length();
+        }
+        trim();
+    }
+
+    private static String hash(String key) {
+        try {
+            byte[] digest = MessageDigest.getInstance("MD5").digest(key.getBytes("UTF-8"));
+            StringBuilder result = new StringBuilder(digest.length * 2);
+            for (byte b : digest)
+                result.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            return result.toString();
+        } catch (NoSuchAlgorithmException | IOException e) {
+            return Integer.toHexString(key.hashCode());
+        }
+    }
+
+    private static void close(Closeable closeable) {
+        if (closeable == null)
+            return;
+        try {
+            closeable.close();
+        } catch (IOException ignored) {
+        }
+    }
+}
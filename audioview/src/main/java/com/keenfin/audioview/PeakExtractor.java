@@ -0,0 +1,264 @@
+/*
+ *           Copyright © 2019 Stanislav Petriakov
+ *  Distributed under the Boost Software License, Version 1.0.
+ *     (See accompanying file LICENSE_1_0.txt or copy at
+ *           http://www.boost.org/LICENSE_1_0.txt)
+ */
+
+package com.keenfin.audioview;
+
+import android.annotation.TargetApi;
+import android.content.Context;
+import android.media.MediaCodec;
+import android.media.MediaExtractor;
+import android.media.MediaFormat;
+import android.net.Uri;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+import android.os.SystemClock;
+
+import java.io.File;
+import java.io.FileDescriptor;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Decodes audio sources on a background thread and reduces them to waveform peaks. Results are
+ * stored in {@link PeakCache} and delivered on the main thread. Requires API 16+, older devices
+ * never get peaks.
+ */
+public final class PeakExtractor {
+    public interface OnPeaksListener {
+        void onPeaks(Object source, ByteBuffer peaks, int buckets);
+    }
+
+    private static final long TIMEOUT_US = 10000;
+    // codec giving no output for this long is stalled, decoding is given up
+    private static final long STALL_TIMEOUT = 5000;
+    private static final long MAX_DECODE_TIME = 120000;
+    private static final int MEMORY_CACHE_SIZE = 32;
+
+    private static PeakExtractor sInstance;
+
+    private final Context mContext;
+    private final PeakCache mDiskCache;
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+    private final Map<String, List<Request>> mPending = new HashMap<>();
+    private final Map<String, ByteBuffer> mMemoryCache = new LinkedHashMap<String, ByteBuffer>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, ByteBuffer> eldest) {
+            return size() > MEMORY_CACHE_SIZE;
+        }
+    };
+    private final ExecutorService mExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "AudioView-Peaks");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    private PeakExtractor(Context context) {
+        mContext = context.getApplicationContext();
+        mDiskCache = new PeakCache(new File(mContext.getCacheDir(), "audioview-peaks"), PeakCache.DEFAULT_MAX_SIZE);
+    }
+
+    public static synchronized PeakExtractor getInstance(Context context) {
+        if (sInstance == null)
+            sInstance = new PeakExtractor(context);
+        return sInstance;
+    }
+
+    /**
+     * Load peaks for the source. Cached peaks are delivered immediately, others are decoded in
+     * background. Requests for equal sources share one decode, each listener still receives the
+     * source instance it asked for. File descriptors are decoded but never cached.
+     */
+    public void extract(final Object source, final int buckets, OnPeaksListener listener) {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.JELLY_BEAN || source == null)
+            return;
+
+        Object sourceKey = MetadataResolver.getSourceKey(source);
+        final String key = sourceKey instanceof String ? sourceKey + "#" + buckets : null;
+        if (key != null) {
+            synchronized (this) {
+                ByteBuffer cached = mMemoryCache.get(key);
+                if (cached != null) {
+                    listener.onPeaks(source, cached.duplicate(), buckets);
+                    return;
+                }
+
+                List<Request> requests = mPending.get(key);
+                if (requests != null) {
+                    requests.add(new Request(source, listener));
+                    return;
+                }
+
+                requests = new ArrayList<>(1);
+                requests.add(new Request(source, listener));
+                mPending.put(key, requests);
+            }
+        }
+
+        final Request single = key == null ? new Request(source, listener) : null;
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                ByteBuffer peaks = key != null ? mDiskCache.read(key, buckets) : null;
+                if (peaks == null) {
+                    byte[] decoded = decode(source, buckets);
+                    if (decoded != null) {
+                        if (key != null)
+                            mDiskCache.write(key, buckets, decoded);
+                        peaks = ByteBuffer.wrap(decoded);
+                    }
+                }
+
+                final List<Request> requests;
+                if (key != null) {
+                    synchronized (PeakExtractor.this) {
+                        if (peaks != null)
+                            mMemoryCache.put(key, peaks);
+                        requests = mPending.remove(key);
+                    }
+                } else {
+                    requests = new ArrayList<>(1);
+                    requests.add(single);
+                }
+
+                if (peaks == null || requests == null)
+                    return;
+                for (Request request : requests)
+                    deliver(request.source, peaks.duplicate(), buckets, request.listener);
+            }
+        });
+    }
+
+    private void deliver(final Object source, final ByteBuffer peaks, final int buckets, final OnPeaksListener listener) {
+        mMainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                listener.onPeaks(source, peaks, buckets);
+            }
+        });
+    }
+
+    private static final class Request {
+        final Object source;
+        final OnPeaksListener listener;
+
+        Request(Object source, OnPeaksListener listener) {
+            this.source = source;
+            this.listener = listener;
+        }
+    }
+
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+    @SuppressWarnings("deprecation")
+    private byte[] decode(Object source, int buckets) {
+        MediaExtractor extractor = new MediaExtractor();
+        MediaCodec codec = null;
+        try {
+            if (source instanceof String)
+                extractor.setDataSource((String) source);
+            else if (source instanceof Uri)
+                extractor.setDataSource(mContext, (Uri) source, null);
+            else if (source instanceof FileDescriptor)
+                extractor.setDataSource((FileDescriptor) source);
+            else
+                return null;
+
+            MediaFormat format = null;
+            for (int i = 0; i < extractor.getTrackCount(); i++) {
+                MediaFormat trackFormat = extractor.getTrackFormat(i);
+                String mime = trackFormat.getString(MediaFormat.KEY_MIME);
+                if (mime != null && mime.startsWith("audio/")) {
+                    extractor.selectTrack(i);
+                    format = trackFormat;
+                    break;
+                }
+            }
+            if (format == null || !format.containsKey(MediaFormat.KEY_DURATION))
+                return null;
+
+            int sampleRate = format.getInteger(MediaFormat.KEY_SAMPLE_RATE);
+            int channels = format.getInteger(MediaFormat.KEY_CHANNEL_COUNT);
+            long totalFrames = format.getLong(MediaFormat.KEY_DURATION) * sampleRate / 1000000L;
+            PeakReducer reducer = new PeakReducer(buckets, totalFrames, channels);
+
+            codec = MediaCodec.createDecoderByType(format.getString(MediaFormat.KEY_MIME));
+            codec.configure(format, null, null, 0);
+            codec.start();
+            ByteBuffer[] inputBuffers = codec.getInputBuffers();
+            ByteBuffer[] outputBuffers = codec.getOutputBuffers();
+            MediaCodec.BufferInfo info = new MediaCodec.BufferInfo();
+            boolean inputDone = false;
+            long start = SystemClock.elapsedRealtime();
+            long lastOutput = start;
+
+            while (true) {
+                long now = SystemClock.elapsedRealtime();
+                if (now - lastOutput > STALL_TIMEOUT || now - start > MAX_DECODE_TIME)
+                    return null;
+
+                if (!inputDone) {
+                    int inputIndex = codec.dequeueInputBuffer(TIMEOUT_US);
+                    if (inputIndex >= 0) {
+                        int size = extractor.readSampleData(inputBuffers[inputIndex], 0);
+                        if (size < 0) {
+                            codec.queueInputBuffer(inputIndex, 0, 0, 0, MediaCodec.BUFFER_FLAG_END_OF_STREAM);
+                            inputDone = true;
+                        } else {
+                            codec.queueInputBuffer(inputIndex, 0, size, extractor.getSampleTime(), 0);
+                            extractor.advance();
+                        }
+                    }
+                }
+
+                int outputIndex = codec.dequeueOutputBuffer(info, TIMEOUT_US);
+                if (outputIndex >= 0) {
+                    lastOutput = SystemClock.elapsedRealtime();
+                    ByteBuffer output = outputBuffers[outputIndex];
+                    output.position(info.offset);
+                    output.limit(info.offset + info.size);
+                    reducer.feed(output.order(ByteOrder.LITTLE_ENDIAN).asShortBuffer());
+                    codec.releaseOutputBuffer(outputIndex, false);
+                    if ((info.flags & MediaCodec.BUFFER_FLAG_END_OF_STREAM) != 0)
+                        break;
+                } else if (outputIndex == MediaCodec.INFO_OUTPUT_BUFFERS_CHANGED) {
+                    outputBuffers = codec.getOutputBuffers();
+                } else if (outputIndex == MediaCodec.INFO_OUTPUT_FORMAT_CHANGED) {
+                    MediaFormat outputFormat = codec.getOutputFormat();
+                    if (outputFormat.containsKey(MediaFormat.KEY_CHANNEL_COUNT))
+                        reducer.setChannels(outputFormat.getInteger(MediaFormat.KEY_CHANNEL_COUNT));
+                }
+            }
+
+            return reducer.getPeaks();
+        } catch (IOException | RuntimeException e) {
+            return null;
+        } finally {
+            if (codec != null) {
+                try {
+                    codec.stop();
+                } catch (IllegalStateException ignored) {
+                }
+                codec.release();
+            }
+            extractor.release();
+        }
+    }
+}
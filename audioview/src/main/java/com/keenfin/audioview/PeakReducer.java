@@ -0,0 +1,97 @@
+/*
+ *           Copyright © 2019 Stanislav Petriakov
+ *  Distributed under the Boost Software License, Version 1.0.
+ *     (See accompanying file LICENSE_1_0.txt or copy at
+ *           http://www.boost.org/LICENSE_1_0.txt)
+ */
+
+package com.keenfin.audioview;
+
+import java.nio.ShortBuffer;
+
+/**
+ * Reduces interleaved 16-bit PCM to a fixed number of min/max buckets. PCM may be fed in chunks
+ * of any size as it is decoded. Peaks are stored as signed bytes, min and max for each bucket.
+ */
+public final class PeakReducer {
+    private final short[] mMin;
+    private final short[] mMax;
+    private final boolean[] mFilled;
+    private final long mTotalFrames;
+    private int mChannels;
+    private int mChannel = 0;
+    private long mFrame = 0;
+
+    /**
+     * @param buckets     number of buckets to reduce to
+     * @param totalFrames expected number of frames (samples per channel)
+     * @param channels    number of interleaved channels
+     */
+    public PeakReducer(int buckets, long totalFrames, int channels) {
+        if (buckets < 1)
+            throw new IllegalArgumentException("Buckets count must be positive.");
+        mMin = new short[buckets];
+        mMax = new short[buckets];
+        mFilled = new boolean[buckets];
+        mTotalFrames = totalFrames > 0 ? totalFrames : 1;
+        setChannels(channels);
+    }
+
+    /**
+     * Change channel count, e.g. when decoder reports output format change.
+     */
+    public void setChannels(int channels) {
+        mChannels = channels < 1 ? 1 : channels;
+        mChannel = 0;
+    }
+
+    public int getBucketCount() {
+        return mMin.length;
+    }
+
+    public long getFrameCount() {
+        return mFrame;
+    }
+
+    public void feed(short[] samples, int offset, int length) {
+        for (int i = offset; i < offset + length; i++)
+            add(samples[i]);
+    }
+
+    public void feed(ShortBuffer samples) {
+        while (samples.hasRemaining())
+            add(samples.get());
+    }
+
+    private void add(short sample) {
+        int bucket = (int) (mFrame * mMin.length / mTotalFrames);
+        if (bucket >= mMin.length)
+            bucket = mMin.length - 1;
+
+        if (!mFilled[bucket]) {
+            mFilled[bucket] = true;
+            mMin[bucket] = sample;
+            mMax[bucket] = sample;
+        } else if (sample < mMin[bucket])
+            mMin[bucket] = sample;
+        else if (sample > mMax[bucket])
+            mMax[bucket] = sample;
+
+        if (++mChannel >= mChannels) {
+            mChannel = 0;
+            mFrame++;
+        }
+    }
+
+    /**
+     * @return min and max for each bucket, scaled to signed bytes
+     */
+    public byte[] getPeaks() {
+        byte[] peaks = new byte[mMin.length * 2];
+        for (int i = 0; i < mMin.length; i++) {
+            peaks[i * 2] = (byte) (mMin[i] >> 8);
+            peaks[i * 2 + 1] = (byte) (mMax[i] >> 8);
+        }
+        return peaks;
+    }
+}
@@ -0,0 +1,144 @@
+/*
+ *           Copyright © 2019 Stanislav Petriakov
+ *  Distributed under the Boost Software License, Version 1.0.
+ *     (See accompanying file LICENSE_1_0.txt or copy at
+ *           http://www.boost.org/LICENSE_1_0.txt)
+ */
+
+package com.keenfin.audioview;
+
+import java.io.PrintWriter;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Fixed-size ring of recent player events with monotonic timestamps, for dumps and bug reports.
+ * Writers claim slots with one atomic increment and never block or allocate, the oldest events
+ * are overwritten. Readers skip slots being rewritten while they read, so a dump is a best-effort
+ * snapshot.
+ */
+public final class PlaybackEventLog {
+    public static final int DEFAULT_CAPACITY = 256;
+
+    public static final int EVENT_SET_DATA_SOURCE = 0;
+    public static final int EVENT_PREPARE = 1;
+    public static final int EVENT_PREPARED = 2;
+    public static final int EVENT_START = 3;
+    public static final int EVENT_PAUSE = 4;
+    public static final int EVENT_STOP = 5;
+    /**
+     * Position and 1 for fast seek to sync frame, 0 for precise one.
+     */
+    public static final int EVENT_SEEK = 6;
+    public static final int EVENT_SEEK_COMPLETE = 7;
+    public static final int EVENT_BUFFERING_START = 8;
+    public static final int EVENT_BUFFERING_END = 9;
+    public static final int EVENT_COMPLETION = 10;
+    public static final int EVENT_ERROR = 11;
+    public static final int EVENT_RESET = 12;
+    public static final int EVENT_RELEASE = 13;
+
+    private static final String[] EVENT_NAMES = {"setDataSource", "prepare", "prepared", "start", "pause",
+            "stop", "seek", "seekComplete", "bufferingStart", "bufferingEnd", "completion", "error", "reset", "release"};
+    private static final long WRITING = -1;
+
+    private static PlaybackEventLog sInstance;
+
+    private final int mMask;
+    private final AtomicLong mNext = new AtomicLong();
+    /**
+     * Sequence number of the event held by each slot, WRITING while it is being replaced.
+     */
+    private final AtomicLongArray mSequences;
+    private final AtomicLongArray mTimes;
+    private final AtomicIntegerArray mEvents;
+    private final AtomicIntegerArray mPlayers;
+    private final AtomicIntegerArray mArgs1;
+    private final AtomicIntegerArray mArgs2;
+
+    /**
+     * @param capacity number of kept events, rounded up to a power of two
+     */
+    public PlaybackEventLog(int capacity) {
+        int size = Integer.highestOneBit(Math.max(2, capacity) - 1) << 1;
+        mMask = size - 1;
+        mSequences = new AtomicLongArray(size);
+        mTimes = new AtomicLongArray(size);
+        mEvents = new AtomicIntegerArray(size);
+        mPlayers = new AtomicIntegerArray(size);
+        mArgs1 = new AtomicIntegerArray(size);
+        mArgs2 = new AtomicIntegerArray(size);
+        for (int i = 0; i < size; i++)
+            mSequences.set(i, WRITING);
+    }
+
+    public static synchronized PlaybackEventLog getInstance() {
+        if (sInstance == null)
+            sInstance = new PlaybackEventLog(DEFAULT_CAPACITY);
+        return sInstance;
+    }
+
+    public int getCapacity() {
+        return mMask + 1;
+    }
+
+    /**
+     * @return number of events recorded so far, including overwritten ones
+     */
+    public long getCount() {
+        return mNext.get();
+    }
+
+    /**
+     * @param event  one of EVENT_ constants
+     * @param player player the event belongs to, only its identity hash is kept
+     * @param arg1   event argument, e.g. position, duration or error what
+     * @param arg2   second argument, e.g. error extra
+     */
+    public void record(int event, Object player, int arg1, int arg2) {
+        long sequence = mNext.getAndIncrement();
+        int slot = (int) (sequence & mMask);
+        mSequences.set(slot, WRITING);
+        mTimes.set(slot, System.nanoTime());
+        mEvents.set(slot, event);
+        mPlayers.set(slot, System.identityHashCode(player));
+        mArgs1.set(slot, arg1);
+        mArgs2.set(slot, arg2);
+        mSequences.set(slot, sequence);
+    }
+
+    /**
+     * Print kept events from the oldest, one per line with age in ms, player and arguments.
+     */
+    public void dump(PrintWriter writer) {
+        long now = System.nanoTime();
+        long next = mNext.get();
+        int printed = 0;
+        for (long sequence = Math.max(0, next - getCapacity()); sequence < next; sequence++) {
+            int slot = (int) (sequence & mMask);
+            if (mSequences.get(slot) != sequence)
+                continue;
+            long time = mTimes.get(slot);
+            int event = mEvents.get(slot);
+            int player = mPlayers.get(slot);
+            int arg1 = mArgs1.get(slot);
+            int arg2 = mArgs2.get(slot);
+            if (mSequences.get(slot) != sequence)
+                continue;
+
+            String name = event >= 0 && event < EVENT_NAMES.length ? EVENT_NAMES[event] : Integer.toString(event);
+            writer.println("  #" + sequence + " -" + (now - time) / 1000000 + "ms " + name
+                    + " player=" + Integer.toHexString(player) + " " + arg1 + " " + arg2);
+            printed++;
+        }
+        if (printed == 0)
+            writer.println("  no events");
+    }
+
+    public void clear() {
+        long next = mNext.get();
+        for (long sequence = Math.max(0, next - getCapacity()); sequence < next; sequence++)
+            mSequences.compareAndSet((int) (sequence & mMask), sequence, WRITING);
+    }
+}
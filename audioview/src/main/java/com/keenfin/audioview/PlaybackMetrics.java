@@ -0,0 +1,129 @@
+/*
+ *           Copyright © 2019 Stanislav Petriakov
+ *  Distributed under the Boost Software License, Version 1.0.
+ *     (See accompanying file LICENSE_1_0.txt or copy at
+ *           http://www.boost.org/LICENSE_1_0.txt)
+ */
+
+package com.keenfin.audioview;
+
+import android.net.Uri;
+
+import java.io.FileDescriptor;
+import java.io.PrintWriter;
+import java.util.Locale;
+
+/**
+ * Latency histograms of playback per source scheme: time to first audio since play was requested,
+ * prepare, seek, scrubbing and buffering stalls. AudioService keeps its own metrics, see
+ * {@link AudioService#getMetrics()}, standalone AudioViews share {@link #getInstance()}.
+ * Histograms may be read from any thread.
+ */
+public final class PlaybackMetrics {
+    /**
+     * Play request (click, start or auto-advance) to the first start of prepared player.
+     */
+    public static final int METRIC_TIME_TO_FIRST_AUDIO = 0;
+    /**
+     * setDataSource to onPrepared.
+     */
+    public static final int METRIC_PREPARE = 1;
+    /**
+     * Seek request to seek complete, merged while seeks follow each other. Includes the precise
+     * seek on SeekBar release.
+     */
+    public static final int METRIC_SEEK = 2;
+    /**
+     * Playback stalled waiting for data.
+     */
+    public static final int METRIC_STALL = 3;
+    /**
+     * Preview seek to sync frame while SeekBar is dragged, to seek complete.
+     */
+    public static final int METRIC_SCRUB = 4;
+
+    public static final int SCHEME_FILE = 0;
+    public static final int SCHEME_CONTENT = 1;
+    public static final int SCHEME_HTTP = 2;
+    public static final int SCHEME_OTHER = 3;
+
+    static final int METRIC_COUNT = 5;
+    static final int SCHEME_COUNT = 4;
+
+    private static final String[] METRIC_NAMES = {"time to first audio", "prepare", "seek", "stall", "scrub"};
+    private static final String[] SCHEME_NAMES = {"file", "content", "http", "other"};
+
+    private static PlaybackMetrics sInstance;
+
+    private final LatencyHistogram[] mHistograms = new LatencyHistogram[METRIC_COUNT * SCHEME_COUNT];
+
+    public PlaybackMetrics() {
+        for (int i = 0; i < mHistograms.length; i++)
+            mHistograms[i] = new LatencyHistogram();
+    }
+
+    public static synchronized PlaybackMetrics getInstance() {
+        if (sInstance == null)
+            sInstance = new PlaybackMetrics();
+        return sInstance;
+    }
+
+    /**
+     * @param metric one of METRIC_ constants
+     * @param scheme one of SCHEME_ constants
+     */
+    public LatencyHistogram getHistogram(int metric, int scheme) {
+        return mHistograms[metric * SCHEME_COUNT + scheme];
+    }
+
+    void record(int metric, int scheme, long millis) {
+        mHistograms[metric * SCHEME_COUNT + scheme].record(millis);
+    }
+
+    public void reset() {
+        for (LatencyHistogram histogram : mHistograms)
+            histogram.reset();
+    }
+
+    /**
+     * Print non-empty histograms.
+     */
+    public void dump(PrintWriter writer) {
+        boolean isEmpty = true;
+        for (int metric = 0; metric < METRIC_COUNT; metric++)
+            for (int scheme = 0; scheme < SCHEME_COUNT; scheme++) {
+                LatencyHistogram histogram = getHistogram(metric, scheme);
+                if (histogram.getCount() == 0)
+                    continue;
+
+                isEmpty = false;
+                writer.print("  " + METRIC_NAMES[metric] + " [" + SCHEME_NAMES[scheme] + "]: ");
+                histogram.dump(writer);
+            }
+        if (isEmpty)
+            writer.println("  no samples");
+    }
+
+    /**
+     * @param source String path or url, Uri or FileDescriptor
+     * @return one of SCHEME_ constants
+     */
+    public static int getScheme(Object source) {
+        if (source instanceof FileDescriptor)
+            return SCHEME_FILE;
+        if (!(source instanceof String) && !(source instanceof Uri))
+            return SCHEME_OTHER;
+
+        String value = source.toString();
+        if (value.startsWith("/"))
+            return SCHEME_FILE;
+        String lower = value.toLowerCase(Locale.US);
+        if (lower.startsWith("file:"))
+            return SCHEME_FILE;
+        if (lower.startsWith("content:") || lower.startsWith("android.resource:"))
+            return SCHEME_CONTENT;
+        if (lower.startsWith("http:") || lower.startsWith("https:"))
+            return SCHEME_HTTP;
+        return SCHEME_OTHER;
+    }
+}
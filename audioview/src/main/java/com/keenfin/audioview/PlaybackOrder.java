@@ -0,0 +1,269 @@
+/*
+ *           Copyright © 2019 Stanislav Petriakov
+ *  Distributed under the Boost Software License, Version 1.0.
+ *     (See accompanying file LICENSE_1_0.txt or copy at
+ *           http://www.boost.org/LICENSE_1_0.txt)
+ */
+
+package com.keenfin.audioview;
+
+import java.util.Random;
+
+/**
+ * Order in which playlist positions are played: linear or shuffled, with repeat modes. Shuffle
+ * runs Fisher–Yates over a primitive array lazily, one step per track, so the playlist itself
+ * never moves and next/previous neither allocate nor depend on playlist size. Each new round of
+ * repeat-all continues shuffling the same array.
+ */
+public class PlaybackOrder {
+    public static final int REPEAT_OFF = 0;
+    public static final int REPEAT_ONE = 1;
+    public static final int REPEAT_ALL = 2;
+
+    /**
+     * How many played tracks are remembered to go back to in shuffle mode.
+     */
+    public static final int HISTORY_SIZE = 64;
+
+    private final Random mRandom;
+    private int mCount = 0;
+    private int mCurrent = 0;
+    private int mRepeatMode = REPEAT_OFF;
+    private boolean mShuffle = false;
+
+    // shuffled positions, mCursor points to the current track
+    private int[] mOrder;
+    private int mCursor = 0;
+    // number of order positions already drawn in this round
+    private int mDrawn = 0;
+    // first track of the next round is drawn in advance once asked for
+    private boolean mNextRoundDrawn = false;
+
+    private final int[] mHistory = new int[HISTORY_SIZE];
+    private int mHistoryStart = 0;
+    private int mHistorySize = 0;
+
+    public PlaybackOrder() {
+        this(new Random());
+    }
+
+    PlaybackOrder(Random random) {
+        mRandom = random;
+    }
+
+    /**
+     * Start over for a playlist of given size. In shuffle mode the first track is picked randomly.
+     */
+    public void reset(int count) {
+        mCount = count;
+        mCurrent = 0;
+        mHistorySize = 0;
+        if (mShuffle) {
+            startShuffle(-1);
+            mCurrent = count > 0 ? mOrder[0] : 0;
+        }
+    }
+
+    /**
+     * Playlist grew, tracks added to the end join the not yet played part of the order.
+     */
+    public void setCount(int count) {
+        if (count < mCount) {
+            reset(count);
+            return;
+        }
+
+        int old = mCount;
+        mCount = count;
+        if (!mShuffle || count == old)
+            return;
+
+        ensureCapacity(count);
+        for (int i = old; i < count; i++)
+            mOrder[i] = i;
+        // round is not over anymore, added tracks are still to be played in it
+        mNextRoundDrawn = false;
+    }
+
+    public int getCount() {
+        return mCount;
+    }
+
+    public int getCurrent() {
+        return mCurrent;
+    }
+
+    /**
+     * Jump to given position. In shuffle mode a new round starts from it, this is the only
+     * operation taking time proportional to playlist size.
+     */
+    public void setCurrent(int position) {
+        if (position < 0 || position >= mCount || position == mCurrent)
+            return;
+
+        pushHistory(mCurrent);
+        mCurrent = position;
+        if (mShuffle)
+            startShuffle(position);
+    }
+
+    public void setShuffle(boolean shuffle) {
+        if (mShuffle == shuffle)
+            return;
+
+        mShuffle = shuffle;
+        mHistorySize = 0;
+        if (shuffle)
+            startShuffle(mCurrent);
+    }
+
+    public boolean isShuffle() {
+        return mShuffle;
+    }
+
+    public void setRepeatMode(int repeatMode) {
+        mRepeatMode = repeatMode;
+    }
+
+    public int getRepeatMode() {
+        return mRepeatMode;
+    }
+
+    /**
+     * Same value as the following {@link #next} would return, without moving. Without a playlist,
+     * e.g. for a single opened source, repeat modes replay the current track.
+     *
+     * @param skip true when user skips the track, repeat-one is ignored then
+     * @return next position or -1 if playback should stop
+     */
+    public int peekNext(boolean skip) {
+        if (mCount == 0)
+            return skip || mRepeatMode == REPEAT_OFF ? -1 : mCurrent;
+        if (!skip && mRepeatMode == REPEAT_ONE)
+            return mCurrent;
+
+        if (!mShuffle) {
+            if (mCurrent + 1 < mCount)
+                return mCurrent + 1;
+            return mRepeatMode == REPEAT_OFF ? -1 : 0;
+        }
+
+        if (mCursor + 1 < mCount)
+            return draw(mCursor + 1);
+        if (mRepeatMode == REPEAT_OFF)
+            return -1;
+        if (!mNextRoundDrawn) {
+            // last position holds the current track, don't play it twice in a row
+            swap(0, mCount > 1 ? mRandom.nextInt(mCount - 1) : 0);
+            mNextRoundDrawn = true;
+        }
+        return mOrder[0];
+    }
+
+    /**
+     * @param skip true when user skips the track, repeat-one is ignored then
+     * @return new current position or -1 if playback should stop, current position is kept then
+     */
+    public int next(boolean skip) {
+        int next = peekNext(skip);
+        if (next < 0)
+            return -1;
+        if (mCount == 0 || !skip && mRepeatMode == REPEAT_ONE)
+            return mCurrent;
+
+        pushHistory(mCurrent);
+        if (mShuffle) {
+            if (mCursor + 1 < mCount) {
+                mCursor++;
+            } else {
+                mCursor = 0;
+                mDrawn = 1;
+                mNextRoundDrawn = false;
+            }
+        }
+        mCurrent = next;
+        return next;
+    }
+
+    /**
+     * @return new current position or -1 if there is nothing to go back to
+     */
+    public int previous() {
+        if (mCount == 0)
+            return -1;
+
+        if (!mShuffle) {
+            if (mCurrent > 0)
+                mCurrent--;
+            else if (mRepeatMode == REPEAT_ALL)
+                mCurrent = mCount - 1;
+            else
+                return -1;
+            return mCurrent;
+        }
+
+        if (mHistorySize == 0)
+            return -1;
+        mHistorySize--;
+        int previous = mHistory[(mHistoryStart + mHistorySize) % HISTORY_SIZE];
+        if (previous >= mCount)
+            return -1;
+
+        // track from the previous round or before a jump is replayed out of order
+        if (mCursor > 0 && mOrder[mCursor - 1] == previous)
+            mCursor--;
+        mCurrent = previous;
+        return previous;
+    }
+
+    /**
+     * Start a new shuffled round from given position or from a random one if it is negative.
+     */
+    private void startShuffle(int first) {
+        ensureCapacity(mCount);
+        for (int i = 0; i < mCount; i++)
+            mOrder[i] = i;
+        mCursor = 0;
+        mDrawn = 1;
+        mNextRoundDrawn = false;
+        if (mCount == 0)
+            return;
+
+        swap(0, first >= 0 ? first : mRandom.nextInt(mCount));
+    }
+
+    /**
+     * Fisher–Yates step: pick order position from the not yet shuffled part once.
+     */
+    private int draw(int position) {
+        if (position >= mDrawn) {
+            swap(position, position + mRandom.nextInt(mCount - position));
+            mDrawn = position + 1;
+        }
+        return mOrder[position];
+    }
+
+    private void swap(int i, int j) {
+        int value = mOrder[i];
+        mOrder[i] = mOrder[j];
+        mOrder[j] = value;
+    }
+
+    private void ensureCapacity(int count) {
+        if (mOrder == null || mOrder.length < count) {
+            int[] order = new int[Math.max(count, mOrder == null ? 0 : mOrder.length + (mOrder.length >> 1))];
+            if (mOrder != null)
+                System.arraycopy(mOrder, 0, order, 0, mOrder.length);
+            mOrder = order;
+        }
+    }
+
+    private void pushHistory(int position) {
+        if (mHistorySize == HISTORY_SIZE) {
+            mHistoryStart = (mHistoryStart + 1) % HISTORY_SIZE;
+            mHistorySize--;
+        }
+        mHistory[(mHistoryStart + mHistorySize) % HISTORY_SIZE] = position;
+        mHistorySize++;
+    }
+}
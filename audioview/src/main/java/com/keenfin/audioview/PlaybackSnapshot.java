@@ -0,0 +1,296 @@
+/*
+ *           Copyright © 2019 Stanislav Petriakov
+ *  Distributed under the Boost Software License, Version 1.0.
+ *     (See accompanying file LICENSE_1_0.txt or copy at
+ *           http://www.boost.org/LICENSE_1_0.txt)
+ */
+
+package com.keenfin.audioview;
+
+import android.net.Uri;
+import android.os.Process;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Binary snapshot of service playback state: fixed size header with attached tag, current
+ * position in playlist and in track, repeat and shuffle modes, followed by playlist tracks.
+ * Saves are merged and written on a background thread at most once per interval. Header is
+ * rewritten in place, tracks appended to the playlist are appended to the file, so the playlist
+ * is written in full, through a temporary file, only when it is replaced. Snapshot is
+ * memory-mapped on read.
+ */
+final class PlaybackSnapshot {
+    static final int MAGIC = 0x41565053; // AVPS
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 29;
+    static final long DEFAULT_WRITE_INTERVAL = 1000;
+    // type, id, duration and lengths of empty source and missing title
+    static final int MIN_TRACK_SIZE = 1 + 8 + 4 + 4 + 4;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    static final class State {
+        final int tag;
+        final int current;
+        final int position;
+        final int repeatMode;
+        final boolean shuffle;
+        final Playlist playlist;
+
+        State(int tag, int current, int position, int repeatMode, boolean shuffle, Playlist playlist) {
+            this.tag = tag;
+            this.current = current;
+            this.position = position;
+            this.repeatMode = repeatMode;
+            this.shuffle = shuffle;
+            this.playlist = playlist;
+        }
+    }
+
+    private final File mFile;
+    private final ScheduledExecutorService mExecutor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "AudioView-Snapshot");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+    private long mWriteInterval = DEFAULT_WRITE_INTERVAL;
+
+    // guarded by this
+    private State mPending;
+    private boolean mIsScheduled = false;
+    private long mLastWriteTime;
+
+    // used by writer thread only
+    private Playlist mWrittenPlaylist;
+    private long mWrittenEnd;
+
+    private final Runnable mWriteTask = new Runnable() {
+        @Override
+        public void run() {
+            Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+            State state;
+            synchronized (PlaybackSnapshot.this) {
+                state = mPending;
+                mPending = null;
+                mIsScheduled = false;
+                mLastWriteTime = System.currentTimeMillis();
+            }
+            if (state != null)
+                write(state);
+        }
+    };
+
+    PlaybackSnapshot(File file) {
+        mFile = file;
+    }
+
+    void setWriteInterval(long interval) {
+        mWriteInterval = interval < 0 ? 0 : interval;
+    }
+
+    /**
+     * Schedule state to be written. Only the latest state is written if saves come faster than
+     * write interval. Never blocks.
+     */
+    synchronized void save(State state) {
+        mPending = state;
+        if (mIsScheduled)
+            return;
+
+        mIsScheduled = true;
+        long delay = mLastWriteTime + mWriteInterval - System.currentTimeMillis();
+        mExecutor.schedule(mWriteTask, delay > 0 ? delay : 0, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Write pending state now and stop writer thread.
+     */
+    void close() {
+        mExecutor.execute(mWriteTask);
+        mExecutor.shutdown();
+    }
+
+    /**
+     * Write state synchronously. Playlist tracks are appended when the playlist is the one
+     * written before with tracks appended and header is rewritten last. Otherwise the whole snapshot is written to a
+     * temporary file which then replaces the old one. Either way interrupted write leaves
+     * previous state valid.
+     */
+    void write(State state) {
+        Playlist playlist = state.playlist != null ? state.playlist : Playlist.EMPTY;
+        try {
+            if (isAppended(playlist))
+                append(state, playlist);
+            else
+                rewrite(state, playlist);
+            mWrittenPlaylist = playlist;
+        } catch (IOException e) {
+            mWrittenPlaylist = null;
+        }
+    }
+
+    private void append(State state, Playlist playlist) throws IOException {
+        RandomAccessFile output = null;
+        try {
+            output = new RandomAccessFile(mFile, "rw");
+            int written = mWrittenPlaylist.size();
+            if (written < playlist.size()) {
+                ByteBuffer tracks = encode(playlist, written);
+                output.seek(mWrittenEnd);
+                output.write(tracks.array(), 0, tracks.limit());
+                mWrittenEnd += tracks.limit();
+            }
+
+            output.seek(0);
+            output.write(encodeHeader(state, playlist).array());
+        } finally {
+            close(output);
+        }
+    }
+
+    private void rewrite(State state, Playlist playlist) throws IOException {
+        ByteBuffer tracks = encode(playlist, 0);
+        File temp = new File(mFile.getPath() + ".tmp");
+        RandomAccessFile output = null;
+        try {
+            output = new RandomAccessFile(temp, "rw");
+            output.setLength(0);
+            output.write(encodeHeader(state, playlist).array());
+            output.write(tracks.array(), 0, tracks.limit());
+            output.close();
+            output = null;
+            if (!temp.renameTo(mFile))
+                throw new IOException("Can't write " + mFile);
+            mWrittenEnd = HEADER_SIZE + tracks.limit();
+        } finally {
+            close(output);
+        }
+    }
+
+    private static ByteBuffer encodeHeader(State state, Playlist playlist) {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(MAGIC).putInt(VERSION).putInt(state.tag).putInt(state.current)
+                .putInt(state.position).putInt(state.repeatMode).put((byte) (state.shuffle ? 1 : 0))
+                .putInt(playlist.size());
+        return header;
+    }
+
+    private boolean isAppended(Playlist playlist) {
+        return mWrittenPlaylist != null && playlist.startsWith(mWrittenPlaylist);
+    }
+
+    private static ByteBuffer encode(Playlist playlist, int from) {
+        int size = 0;
+        byte[][] strings = new byte[(playlist.size() - from) * 2][];
+        for (int i = from, s = 0; i < playlist.size(); i++) {
+            Track track = playlist.get(i);
+            strings[s] = track.getType() == Track.TYPE_FILE_DESCRIPTOR ? new byte[0] : track.getSource().toString().getBytes(UTF_8);
+            strings[s + 1] = track.getTitle() != null ? track.getTitle().getBytes(UTF_8) : null;
+            size += 1 + 8 + 4 + 4 + strings[s].length + 4 + (strings[s + 1] != null ? strings[s + 1].length : 0);
+            s += 2;
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+        for (int i = from, s = 0; i < playlist.size(); i++, s += 2) {
+            Track track = playlist.get(i);
+            buffer.put((byte) track.getType()).putLong(track.getId()).putInt(track.getDuration());
+            buffer.putInt(strings[s].length).put(strings[s]);
+            if (strings[s + 1] != null)
+                buffer.putInt(strings[s + 1].length).put(strings[s + 1]);
+            else
+                buffer.putInt(-1);
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    /**
+     * @return saved state or null if there is none or it can't be restored, e.g. playlist has
+     * FileDescriptors which are not valid in a new process
+     */
+    State read() {
+        if (!mFile.exists())
+            return null;
+
+        RandomAccessFile input = null;
+        try {
+            input = new RandomAccessFile(mFile, "r");
+            FileChannel channel = input.getChannel();
+            if (channel.size() < HEADER_SIZE)
+                return null;
+
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION)
+                return null;
+
+            int tag = buffer.getInt();
+            int current = buffer.getInt();
+            int position = buffer.getInt();
+            int repeatMode = buffer.getInt();
+            boolean shuffle = buffer.get() != 0;
+            int count = buffer.getInt();
+            if (count < 0 || count > buffer.remaining() / MIN_TRACK_SIZE)
+                return null;
+
+            Track[] tracks = new Track[count];
+            for (int i = 0; i < count; i++) {
+                int type = buffer.get();
+                long id = buffer.getLong();
+                int duration = buffer.getInt();
+                String source = readString(buffer);
+                String title = readString(buffer);
+                if (type == Track.TYPE_PATH)
+                    tracks[i] = new Track(id, source, title, duration);
+                else if (type == Track.TYPE_URI)
+                    tracks[i] = new Track(id, Uri.parse(source), title, duration);
+                else
+                    return null;
+            }
+
+            if (current < 0 || current >= count)
+                current = 0;
+            return new State(tag, current, position, repeatMode, shuffle, Playlist.of(Arrays.asList(tracks)));
+        } catch (IOException | RuntimeException e) {
+            return null;
+        } finally {
+            close(input);
+        }
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length < 0)
+            return null;
+        if (length > buffer.remaining())
+            throw new BufferUnderflowException();
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, UTF_8);
+    }
+
+    private static void close(Closeable closeable) {
+        if (closeable == null)
+            return;
+        try {
+            closeable.close();
+        } catch (IOException ignored) {
+        }
+    }
+}
@@ -0,0 +1,102 @@
+/*
+ *           Copyright © 2019 Stanislav Petriakov
+ *  Distributed under the Boost Software License, Version 1.0.
+ *     (See accompanying file LICENSE_1_0.txt or copy at
+ *           http://www.boost.org/LICENSE_1_0.txt)
+ */
+
+package com.keenfin.audioview;
+
+/**
+ * Timestamps of one player between play request, data source, prepare, start, seeks and stalls,
+ * recorded into {@link PlaybackMetrics} once each interval ends. Not thread-safe, used from the
+ * thread controlling the player.
+ */
+final class PlaybackTimer {
+    private static final long NONE = -1;
+
+    private final PlaybackMetrics mMetrics;
+    private int mScheme = PlaybackMetrics.SCHEME_OTHER;
+    private long mRequestTime = NONE;
+    private long mDataSourceTime = NONE;
+    private long mSeekTime = NONE;
+    private long mStallTime = NONE;
+
+    PlaybackTimer(PlaybackMetrics metrics) {
+        mMetrics = metrics;
+    }
+
+    /**
+     * User or playlist asked to play, first audio is awaited from now on unless it already is.
+     */
+    void onPlayRequested() {
+        if (mRequestTime == NONE)
+            mRequestTime = now();
+    }
+
+    /**
+     * Playback was paused or stopped before it started, request is dropped.
+     */
+    void onPlayCancelled() {
+        mRequestTime = NONE;
+    }
+
+    void onDataSource(Object source, boolean play) {
+        mScheme = PlaybackMetrics.getScheme(source);
+        mDataSourceTime = now();
+        mSeekTime = NONE;
+        mStallTime = NONE;
+        if (play)
+            onPlayRequested();
+        else
+            mRequestTime = NONE;
+    }
+
+    /**
+     * Next track started without a gap, there is no prepare or first audio to wait for.
+     */
+    void onSwitched(Object source) {
+        mScheme = PlaybackMetrics.getScheme(source);
+        mRequestTime = NONE;
+        mDataSourceTime = NONE;
+        mSeekTime = NONE;
+        mStallTime = NONE;
+    }
+
+    void onPrepared() {
+        if (mDataSourceTime != NONE)
+            mMetrics.record(PlaybackMetrics.METRIC_PREPARE, mScheme, now() - mDataSourceTime);
+        mDataSourceTime = NONE;
+    }
+
+    void onStarted() {
+        if (mRequestTime != NONE)
+            mMetrics.record(PlaybackMetrics.METRIC_TIME_TO_FIRST_AUDIO, mScheme, now() - mRequestTime);
+        mRequestTime = NONE;
+    }
+
+    void onSeekRequested() {
+        if (mSeekTime == NONE)
+            mSeekTime = now();
+    }
+
+    void onSeekComplete() {
+        if (mSeekTime != NONE)
+            mMetrics.record(PlaybackMetrics.METRIC_SEEK, mScheme, now() - mSeekTime);
+        mSeekTime = NONE;
+    }
+
+    void onBuffering(boolean buffering) {
+        if (buffering) {
+            if (mStallTime == NONE)
+                mStallTime = now();
+        } else if (mStallTime != NONE) {
+            mMetrics.record(PlaybackMetrics.METRIC_STALL, mScheme, now() - mStallTime);
+            mStallTime = NONE;
+        }
+    }
+
+    private static long now() {
+        return System.nanoTime() / 1000000;
+    }
+}
@@ -0,0 +1,65 @@
+/*
+ *           Copyright © 2019 Stanislav Petriakov
+ *  Distributed under the Boost Software License, Version 1.0.
+ *     (See accompanying file LICENSE_1_0.txt or copy at
+ *           http://www.boost.org/LICENSE_1_0.txt)
+ */
+
+package com.keenfin.audioview;
+
+import android.annotation.TargetApi;
+import android.os.Build;
+import android.os.Trace;
+
+/**
+ * android.os.Trace sections around player and notification calls, shown by systrace and
+ * Perfetto. Off by default and switchable at runtime, section names are constants, so tracing
+ * does not allocate. Sections need API 18, below that nothing is traced.
+ * <pre>
+ * boolean traced = PlaybackTrace.begin(PlaybackTrace.SECTION_PREPARE);
+ * try {
+ *     ...
+ * } finally {
+ *     PlaybackTrace.end(traced);
+ * }
+ * </pre>
+ */
+public final class PlaybackTrace {
+    public static final String SECTION_RESET = "AudioView.reset";
+    public static final String SECTION_SET_DATA_SOURCE = "AudioView.setDataSource";
+    public static final String SECTION_PREPARE = "AudioView.prepareAsync";
+    public static final String SECTION_RELEASE = "AudioView.release";
+    public static final String SECTION_NOTIFICATION = "AudioView.notification";
+    public static final String SECTION_DISPATCH = "AudioView.dispatchStatus";
+
+    private static volatile boolean sEnabled = false;
+
+    private PlaybackTrace() {
+    }
+
+    public static void setEnabled(boolean enabled) {
+        sEnabled = enabled;
+    }
+
+    public static boolean isEnabled() {
+        return sEnabled;
+    }
+
+    /**
+     * @return whether section was opened, pass it to {@link #end(boolean)} on the same thread,
+     * so sections stay balanced when tracing is switched in between
+     */
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN_MR2)
+    public static boolean begin(String section) {
+        if (!sEnabled || Build.VERSION.SDK_INT < Build.VERSION_CODES.JELLY_BEAN_MR2)
+            return false;
+        Trace.beginSection(section);
+        return true;
+    }
+
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN_MR2)
+    public static void end(boolean traced) {
+        if (traced)
+            Trace.endSection();
+    }
+}
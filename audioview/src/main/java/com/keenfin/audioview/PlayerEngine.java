@@ -0,0 +1,91 @@
+/*
+ *           Copyright © 2019 Stanislav Petriakov
+ *  Distributed under the Boost Software License, Version 1.0.
+ *     (See accompanying file LICENSE_1_0.txt or copy at
+ *           http://www.boost.org/LICENSE_1_0.txt)
+ */
+
+package com.keenfin.audioview;
+
+import android.content.Context;
+
+import java.io.IOException;
+
+/**
+ * Playback backend of AudioView and AudioService. {@link MediaPlayerEngine} is used by default.
+ * <p>
+ * Engines follow MediaPlayer state machine, but calls made in a wrong state must be ignored
+ * instead of throwing, and queries return 0 or false then. Listener is called on the thread that
+ * created the engine, i.e. the main thread for views and the player thread for AudioService.
+ * Custom engines are created by class name, so they need a public constructor taking Context or
+ * a public no-arg constructor.
+ */
+public interface PlayerEngine {
+    interface Listener {
+        void onPrepared(PlayerEngine engine);
+
+        void onCompletion(PlayerEngine engine);
+
+        /**
+         * @return true if error was handled, otherwise {@link #onCompletion} follows
+         */
+        boolean onError(PlayerEngine engine, int what, int extra);
+
+        /**
+         * Seek requested with {@link #seekTo} is done. Engines not reporting it leave seek
+         * latency unmeasured.
+         */
+        void onSeekComplete(PlayerEngine engine);
+
+        /**
+         * Playback stalled waiting for data or resumed after a stall.
+         */
+        void onBuffering(PlayerEngine engine, boolean buffering);
+    }
+
+    void setListener(Listener listener);
+
+    /**
+     * @param source String path or url, Uri or FileDescriptor
+     * @throws IOException              if source can't be opened
+     * @throws IllegalArgumentException if source type is not supported
+     */
+    void setDataSource(Context context, Object source) throws IOException;
+
+    void prepareAsync();
+
+    void start();
+
+    void pause();
+
+    void stop();
+
+    void seekTo(int position);
+
+    /**
+     * Seek to a sync frame near position, quicker but less precise than {@link #seekTo(int)}. Used
+     * for previews while scrubbing, engines without such seek may seek precisely.
+     */
+    void fastSeekTo(int position);
+
+    /**
+     * Return to idle state, ready for a new data source.
+     */
+    void reset();
+
+    void release();
+
+    boolean isPlaying();
+
+    int getCurrentPosition();
+
+    int getDuration();
+
+    /**
+     * Start prepared engine right after this one completes, without a gap.
+     *
+     * @param next prepared engine of the same type or null to cancel
+     * @return false if not supported, next track has to be started on completion then
+     */
+    boolean setNextEngine(PlayerEngine next);
+}
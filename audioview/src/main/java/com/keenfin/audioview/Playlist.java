@@ -0,0 +1,154 @@
+/*
+ *           Copyright © 2019 Stanislav Petriakov
+ *  Distributed under the Boost Software License, Version 1.0.
+ *     (See accompanying file LICENSE_1_0.txt or copy at
+ *           http://www.boost.org/LICENSE_1_0.txt)
+ */
+
+package com.keenfin.audioview;
+
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Immutable list of {@link Track}s, safe to share between views, service and threads without
+ * copying. {@link #add} and {@link #addAll} return a new playlist. Playlists derived from each
+ * other share one backing array: appending to the longest of them writes in place, so building a
+ * playlist item by item is amortized O(1) per item.
+ */
+public final class Playlist implements PlaylistProvider, Iterable<Track> {
+    public static final Playlist EMPTY = new Playlist(new Track[0], 0, new AtomicInteger());
+
+    private final Track[] mTracks;
+    private final int mSize;
+    // number of array slots taken by any playlist sharing the array
+    private final AtomicInteger mUsed;
+
+    private Playlist(Track[] tracks, int size, AtomicInteger used) {
+        mTracks = tracks;
+        mSize = size;
+        mUsed = used;
+    }
+
+    /**
+     * @param items Tracks, String paths, Uris or FileDescriptors
+     * @throws IllegalArgumentException if any item is not supported
+     */
+    public static Playlist of(Collection<?> items) {
+        return EMPTY.addAll(items);
+    }
+
+    public int size() {
+        return mSize;
+    }
+
+    public boolean isEmpty() {
+        return mSize == 0;
+    }
+
+    public Track get(int position) {
+        if (position < 0 || position >= mSize)
+            throw new IndexOutOfBoundsException("Position " + position + ", size " + mSize);
+        return mTracks[position];
+    }
+
+    @Override
+    public int getCount() {
+        return mSize;
+    }
+
+    @Override
+    public Track getTrack(int position) {
+        return get(position);
+    }
+
+    public boolean isCorrectPosition(int position) {
+        return position >= 0 && position < mSize;
+    }
+
+    /**
+     * @return true if this playlist is the other one with tracks appended, or equal to it
+     */
+    boolean startsWith(Playlist other) {
+        if (other.mSize > mSize)
+            return false;
+        // shared array is only written past the longest playlist using it
+        if (other.mTracks == mTracks)
+            return true;
+        for (int i = 0; i < other.mSize; i++)
+            if (mTracks[i] != other.mTracks[i])
+                return false;
+        return true;
+    }
+
+    public Playlist add(Object item) {
+        return append(new Track[]{Track.of(item)}, 1);
+    }
+
+    /**
+     * Validate all items in one pass and append them.
+     *
+     * @throws IllegalArgumentException if any item is not supported, nothing is added then
+     */
+    public Playlist addAll(Collection<?> items) {
+        Track[] tracks = new Track[items.size()];
+        int count = 0;
+        for (Object item : items) {
+            try {
+                tracks[count] = Track.of(item);
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException(Track.UNSUPPORTED_SOURCE + " Item " + count + " is " + item);
+            }
+            count++;
+        }
+        return append(tracks, count);
+    }
+
+    public Playlist addAll(Playlist playlist) {
+        if (mSize == 0)
+            return playlist;
+        return append(playlist.mTracks, playlist.mSize);
+    }
+
+    private Playlist append(Track[] tracks, int count) {
+        if (count == 0)
+            return this;
+
+        int size = mSize + count;
+        if (size <= mTracks.length && mUsed.compareAndSet(mSize, size)) {
+            System.arraycopy(tracks, 0, mTracks, mSize, count);
+            return new Playlist(mTracks, size, mUsed);
+        }
+
+        Track[] grown = new Track[Math.max(size, mSize + (mSize >> 1))];
+        System.arraycopy(mTracks, 0, grown, 0, mSize);
+        System.arraycopy(tracks, 0, grown, mSize, count);
+        return new Playlist(grown, size, new AtomicInteger(size));
+    }
+
+    @Override
+    public Iterator<Track> iterator() {
+        return new Iterator<Track>() {
+            private int mPosition = 0;
+
+            @Override
+            public boolean hasNext() {
+                return mPosition < mSize;
+            }
+
+            @Override
+            public Track next() {
+                if (mPosition >= mSize)
+                    throw new NoSuchElementException();
+                return mTracks[mPosition++];
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+}
@@ -0,0 +1,23 @@
+/*
+ *           Copyright © 2019 Stanislav Petriakov
+ *  Distributed under the Boost Software License, Version 1.0.
+ *     (See accompanying file LICENSE_1_0.txt or copy at
+ *           http://www.boost.org/LICENSE_1_0.txt)
+ */
+
+package com.keenfin.audioview;
+
+/**
+ * Random access source of tracks for AudioService. Only a few tracks around the current one are
+ * requested at a time, so implementations may keep the library in a Cursor or load it in pages
+ * instead of holding every track in memory. AudioService calls it on its player thread, so
+ * implementations shared with UI code have to be thread-safe.
+ */
+public interface PlaylistProvider {
+    int getCount();
+
+    /**
+     * @throws IndexOutOfBoundsException if position is not in [0, getCount())
+     */
+    Track getTrack(int position);
+}
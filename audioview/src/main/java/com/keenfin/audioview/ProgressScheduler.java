@@ -0,0 +1,104 @@
+/*
+ *           Copyright © 2019 Stanislav Petriakov
+ *  Distributed under the Boost Software License, Version 1.0.
+ *     (See accompanying file LICENSE_1_0.txt or copy at
+ *           http://www.boost.org/LICENSE_1_0.txt)
+ */
+
+package com.keenfin.audioview;
+
+import android.annotation.TargetApi;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.view.Choreographer;
+
+import java.util.ArrayList;
+
+/**
+ * Drives progress of all playing views from a single frame callback on the main thread.
+ * Uses Choreographer on API 16+ and a ~60 fps Handler loop on older devices.
+ */
+final class ProgressScheduler {
+    interface OnFrameListener {
+        void onFrame(long frameTimeNanos);
+    }
+
+    private static final long FALLBACK_FRAME_DELAY = 16;
+
+    private static ProgressScheduler sInstance;
+
+    private final ArrayList<OnFrameListener> mListeners = new ArrayList<>();
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+    private Object mFrameCallback;
+    private boolean mIsScheduled = false;
+
+    private final Runnable mFallbackFrame = new Runnable() {
+        @Override
+        public void run() {
+            mIsScheduled = false;
+            doFrame(System.nanoTime());
+        }
+    };
+
+    private ProgressScheduler() {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN)
+            mFrameCallback = createFrameCallback();
+    }
+
+    static ProgressScheduler getInstance() {
+        if (sInstance == null)
+            sInstance = new ProgressScheduler();
+        return sInstance;
+    }
+
+    void add(OnFrameListener listener) {
+        if (mListeners.contains(listener))
+            return;
+        mListeners.add(listener);
+        scheduleFrame();
+    }
+
+    void remove(OnFrameListener listener) {
+        mListeners.remove(listener);
+    }
+
+    int getListenerCount() {
+        return mListeners.size();
+    }
+
+    private void doFrame(long frameTimeNanos) {
+        // listeners may remove themselves while updating
+        for (int i = mListeners.size() - 1; i >= 0; i--)
+            if (i < mListeners.size())
+                mListeners.get(i).onFrame(frameTimeNanos);
+        scheduleFrame();
+    }
+
+    private void scheduleFrame() {
+        if (mIsScheduled || mListeners.isEmpty())
+            return;
+
+        mIsScheduled = true;
+        if (mFrameCallback != null)
+            postFrameCallback();
+        else
+            mHandler.postDelayed(mFallbackFrame, FALLBACK_FRAME_DELAY);
+    }
+
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+    private Object createFrameCallback() {
+        return new Choreographer.FrameCallback() {
+            @Override
+            public void doFrame(long frameTimeNanos) {
+                mIsScheduled = false;
+                ProgressScheduler.this.doFrame(frameTimeNanos);
+            }
+        };
+    }
+
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+    private void postFrameCallback() {
+        Choreographer.getInstance().postFrameCallback((Choreographer.FrameCallback) mFrameCallback);
+    }
+}
@@ -0,0 +1,162 @@
+/*
+ *           Copyright © 2019 Stanislav Petriakov
+ *  Distributed under the Boost Software License, Version 1.0.
+ *     (See accompanying file LICENSE_1_0.txt or copy at
+ *           http://www.boost.org/LICENSE_1_0.txt)
+ */
+
+package com.keenfin.audioview;
+
+import android.os.Handler;
+import android.os.SystemClock;
+
+/**
+ * Coalesces seeks while SeekBar is dragged. Previews go to the nearest sync frame, one at a time
+ * and not more often than the interval, positions chosen meanwhile replace each other so only the
+ * latest is sent. Release sends one precise seek after the preview in flight. Latencies are
+ * recorded as {@link PlaybackMetrics#METRIC_SCRUB} and {@link PlaybackMetrics#METRIC_SEEK}.
+ * <p>
+ * Not thread-safe, used from the thread of the handler, which controls the player and receives
+ * its seek completions.
+ */
+final class SeekScrubber {
+    static final long DEFAULT_INTERVAL = 100;
+    /**
+     * Seek in flight for longer is considered lost, e.g. when player was reset meanwhile.
+     */
+    static final long SEEK_TIMEOUT = 2000;
+
+    private static final int NONE = -1;
+
+    private final Handler mHandler;
+    private final PlaybackMetrics mMetrics;
+    private long mInterval = DEFAULT_INTERVAL;
+
+    private PlayerEngine mEngine;
+    private int mScheme = PlaybackMetrics.SCHEME_OTHER;
+    private boolean mIsScrubbing = false;
+    private int mPending = NONE;
+    private boolean mIsPendingPrecise;
+    private long mSeekTime = NONE;
+    private boolean mIsInFlightPrecise;
+    private long mLastSeekTime = NONE;
+
+    private final Runnable mFlushTask = new Runnable() {
+        @Override
+        public void run() {
+            flush();
+        }
+    };
+
+    SeekScrubber(Handler handler, PlaybackMetrics metrics) {
+        mHandler = handler;
+        mMetrics = metrics;
+    }
+
+    /**
+     * @param interval minimum time between preview seeks in ms
+     */
+    void setInterval(long interval) {
+        mInterval = interval;
+    }
+
+    boolean isScrubbing() {
+        return mIsScrubbing;
+    }
+
+    /**
+     * SeekBar touched.
+     *
+     * @param engine prepared engine to seek
+     * @param source data source of the engine, to group latencies by scheme
+     */
+    void start(PlayerEngine engine, Object source) {
+        if (engine != mEngine)
+            cancel();
+        mEngine = engine;
+        mScheme = PlaybackMetrics.getScheme(source);
+        mIsScrubbing = true;
+    }
+
+    /**
+     * Thumb moved while dragging.
+     */
+    void scrubTo(int position) {
+        if (!mIsScrubbing)
+            return;
+        mPending = position;
+        mIsPendingPrecise = false;
+        flush();
+    }
+
+    /**
+     * SeekBar released.
+     *
+     * @param position final position, negative to keep position reached by previews
+     */
+    void stop(int position) {
+        if (!mIsScrubbing)
+            return;
+        mIsScrubbing = false;
+        mHandler.removeCallbacks(mFlushTask);
+        if (position < 0) {
+            mPending = NONE;
+            return;
+        }
+
+        mPending = position;
+        mIsPendingPrecise = true;
+        flush();
+    }
+
+    /**
+     * Forget everything, e.g. before engine is reset or released.
+     */
+    void cancel() {
+        mHandler.removeCallbacks(mFlushTask);
+        mEngine = null;
+        mIsScrubbing = false;
+        mPending = NONE;
+        mSeekTime = NONE;
+        mLastSeekTime = NONE;
+    }
+
+    void onSeekComplete(PlayerEngine engine) {
+        if (engine != mEngine || mSeekTime == NONE)
+            return;
+
+        long latency = SystemClock.uptimeMillis() - mSeekTime;
+        mMetrics.record(mIsInFlightPrecise ? PlaybackMetrics.METRIC_SEEK : PlaybackMetrics.METRIC_SCRUB, mScheme, latency);
+        mSeekTime = NONE;
+        flush();
+    }
+
+    private void flush() {
+        if (mPending == NONE || mEngine == null)
+            return;
+
+        long now = SystemClock.uptimeMillis();
+        if (mSeekTime != NONE && now - mSeekTime < SEEK_TIMEOUT) {
+            // sent on completion, or once the seek in flight is considered lost
+            mHandler.removeCallbacks(mFlushTask);
+            mHandler.postAtTime(mFlushTask, mSeekTime + SEEK_TIMEOUT);
+            return;
+        }
+
+        if (!mIsPendingPrecise && mLastSeekTime != NONE && now < mLastSeekTime + mInterval) {
+            mHandler.removeCallbacks(mFlushTask);
+            mHandler.postAtTime(mFlushTask, mLastSeekTime + mInterval);
+            return;
+        }
+
+        mHandler.removeCallbacks(mFlushTask);
+        int position = mPending;
+        mPending = NONE;
+        mIsInFlightPrecise = mIsPendingPrecise;
+        mSeekTime = mLastSeekTime = now;
+        if (mIsInFlightPrecise)
+            mEngine.seekTo(position);
+        else
+            mEngine.fastSeekTo(position);
+    }
+}
@@ -0,0 +1,158 @@
+/*
+ *           Copyright © 2019 Stanislav Petriakov
+ *  Distributed under the Boost Software License, Version 1.0.
+ *     (See accompanying file LICENSE_1_0.txt or copy at
+ *           http://www.boost.org/LICENSE_1_0.txt)
+ */
+
+package com.keenfin.audioview;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Which fixed-size segments of a file are downloaded, one bit per segment. Persisted as a small
+ * binary file: magic, version, file length, segment size followed by bitmap words. Not
+ * thread-safe.
+ */
+final class SegmentBitmap {
+    static final int MAGIC = 0x41564442; // AVDB
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 20;
+
+    private final long mLength;
+    private final int mSegmentSize;
+    private final int mCount;
+    private final long[] mWords;
+    private int mSetCount = 0;
+
+    SegmentBitmap(long length, int segmentSize) {
+        mLength = length;
+        mSegmentSize = segmentSize;
+        mCount = (int) ((length + segmentSize - 1) / segmentSize);
+        mWords = new long[(mCount + 63) >> 6];
+    }
+
+    long getLength() {
+        return mLength;
+    }
+
+    int getSegmentSize() {
+        return mSegmentSize;
+    }
+
+    int getCount() {
+        return mCount;
+    }
+
+    long getStart(int segment) {
+        return (long) segment * mSegmentSize;
+    }
+
+    /**
+     * @return end of segment, exclusive
+     */
+    long getEnd(int segment) {
+        return Math.min(getStart(segment) + mSegmentSize, mLength);
+    }
+
+    boolean isSet(int segment) {
+        return (mWords[segment >> 6] & (1L << segment)) != 0;
+    }
+
+    void set(int segment) {
+        if (isSet(segment))
+            return;
+        mWords[segment >> 6] |= 1L << segment;
+        mSetCount++;
+    }
+
+    int getSetCount() {
+        return mSetCount;
+    }
+
+    long getSetBytes() {
+        long bytes = (long) mSetCount * mSegmentSize;
+        // last segment may be shorter
+        if (mCount > 0 && isSet(mCount - 1))
+            bytes -= getStart(mCount) - mLength;
+        return bytes;
+    }
+
+    boolean isComplete() {
+        return mSetCount == mCount;
+    }
+
+    void write(File file) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + mWords.length * 8);
+        buffer.putInt(MAGIC).putInt(VERSION).putLong(mLength).putInt(mSegmentSize);
+        for (long word : mWords)
+            buffer.putLong(word);
+
+        File temp = new File(file.getPath() + ".tmp");
+        RandomAccessFile output = null;
+        try {
+            output = new RandomAccessFile(temp, "rw");
+            output.setLength(0);
+            output.write(buffer.array());
+            output.close();
+            output = null;
+            if (!temp.renameTo(file))
+                throw new IOException("Can't write " + file);
+        } finally {
+            close(output);
+        }
+    }
+
+    /**
+     * @return persisted bitmap or null if there is none or it is broken
+     */
+    static SegmentBitmap read(File file) {
+        if (!file.exists())
+            return null;
+
+        RandomAccessFile input = null;
+        try {
+            input = new RandomAccessFile(file, "r");
+            FileChannel channel = input.getChannel();
+            if (channel.size() < HEADER_SIZE)
+                return null;
+
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION)
+                return null;
+
+            long length = buffer.getLong();
+            int segmentSize = buffer.getInt();
+            if (length <= 0 || segmentSize <= 0)
+                return null;
+
+            SegmentBitmap bitmap = new SegmentBitmap(length, segmentSize);
+            if (buffer.remaining() != bitmap.mWords.length * 8)
+                return null;
+            for (int i = 0; i < bitmap.mWords.length; i++) {
+                bitmap.mWords[i] = buffer.getLong();
+                bitmap.mSetCount += Long.bitCount(bitmap.mWords[i]);
+            }
+            return bitmap;
+        } catch (IOException | RuntimeException e) {
+            return null;
+        } finally {
+            close(input);
+        }
+    }
+
+    private static void close(Closeable closeable) {
+        if (closeable == null)
+            return;
+        try {
+            closeable.close();
+        } catch (IOException ignored) {
+        }
+    }
+}
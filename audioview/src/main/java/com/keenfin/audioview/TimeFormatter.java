@@ -0,0 +1,136 @@
+/*
+ *           Copyright © 2019 Stanislav Petriakov
+ *  Distributed under the Boost Software License, Version 1.0.
+ *     (See accompanying file LICENSE_1_0.txt or copy at
+ *           http://www.boost.org/LICENSE_1_0.txt)
+ */
+
+package com.keenfin.audioview;
+
+/**
+ * Formats playback time into a reusable char buffer, e.g. for
+ * {@link android.widget.TextView#setText(char[], int, int)}. Output matches
+ * {@link Util#formatTime(int)}: "mm:ss", "hh:mm:ss" and "∞" for negative time.
+ * Not thread-safe, use one instance per view.
+ */
+public final class TimeFormatter {
+    public static final char INFINITY = '∞';
+    static final String SEPARATOR = " / ";
+
+    private static final char[] TENS = new char[100];
+    private static final char[] ONES = new char[100];
+
+    static {
+        for (int i = 0; i < 100; i++) {
+            TENS[i] = (char) ('0' + i / 10);
+            ONES[i] = (char) ('0' + i % 10);
+        }
+    }
+
+    private final char[] mBuffer = new char[48];
+    private final char[] mTotal = new char[16];
+    private int mTotalLength = 0;
+    private int mTotalMillis = Integer.MIN_VALUE;
+    private int mLength = 0;
+
+    public char[] getBuffer() {
+        return mBuffer;
+    }
+
+    /**
+     * Length of the last formatted value in {@link #getBuffer()}.
+     */
+    public int length() {
+        return mLength;
+    }
+
+    /**
+     * Format current time only.
+     *
+     * @return length of formatted text in {@link #getBuffer()}
+     */
+    public int formatTime(int millis) {
+        mLength = format(millis, mBuffer, 0);
+        return mLength;
+    }
+
+    /**
+     * Format total duration, "∞" for unknown (not positive) duration.
+     *
+     * @return length of formatted text in {@link #getBuffer()}
+     */
+    public int formatDuration(int duration) {
+        mLength = duration > 0 ? format(duration, mBuffer, 0) : writeInfinity(mBuffer, 0);
+        return mLength;
+    }
+
+    /**
+     * Format "current / total". Total part is cached until duration changes.
+     *
+     * @return length of formatted text in {@link #getBuffer()}
+     */
+    public int formatTime(int millis, int total) {
+        if (total != mTotalMillis) {
+            mTotalMillis = total;
+            mTotalLength = format(total, mTotal, 0);
+        }
+
+        int length = format(millis, mBuffer, 0);
+        for (int i = 0; i < SEPARATOR.length(); i++)
+            mBuffer[length++] = SEPARATOR.charAt(i);
+        System.arraycopy(mTotal, 0, mBuffer, length, mTotalLength);
+        mLength = length + mTotalLength;
+        return mLength;
+    }
+
+    @Override
+    public String toString() {
+        return new String(mBuffer, 0, mLength);
+    }
+
+    /**
+     * Write time to buffer, which must have at least 14 chars left.
+     *
+     * @return number of chars written
+     */
+    static int format(int millis, char[] buffer, int offset) {
+        if (millis < 0)
+            return writeInfinity(buffer, offset);
+
+        int seconds = millis / 1000;
+        int min = seconds / 60;
+        int hour = min / 60;
+        seconds %= 60;
+        min %= 60;
+
+        int position = offset;
+        if (hour > 0) {
+            if (hour >= 100) {
+                int digits = 0;
+                for (int value = hour; value > 0; value /= 10)
+                    digits++;
+                for (int i = digits - 1, value = hour; i >= 0; i--, value /= 10)
+                    buffer[position + i] = (char) ('0' + value % 10);
+                position += digits;
+            } else
+                position = writeTwoDigits(hour, buffer, position);
+            buffer[position++] = ':';
+        }
+
+        position = writeTwoDigits(min, buffer, position);
+        buffer[position++] = ':';
+        position = writeTwoDigits(seconds, buffer, position);
+        return position - offset;
+    }
+
+    private static int writeTwoDigits(int value, char[] buffer, int position) {
+        buffer[position++] = TENS[value];
+        buffer[position++] = ONES[value];
+        return position;
+    }
+
+    private static int writeInfinity(char[] buffer, int offset) {
+        buffer[offset] = INFINITY;
+        return 1;
+    }
+}
@@ -0,0 +1,148 @@
+/*
+ *           Copyright © 2019 Stanislav Petriakov
+ *  Distributed under the Boost Software License, Version 1.0.
+ *     (See accompanying file LICENSE_1_0.txt or copy at
+ *           http://www.boost.org/LICENSE_1_0.txt)
+ */
+
+package com.keenfin.audioview;
+
+import android.net.Uri;
+
+import java.io.FileDescriptor;
+
+/**
+ * Immutable playlist entry: audio source with its kind, stable id and optional metadata known in
+ * advance, e.g. from MediaStore. Known title is shown as is, without reading file metadata.
+ */
+public final class Track {
+    public static final int TYPE_PATH = 0;
+    public static final int TYPE_URI = 1;
+    public static final int TYPE_FILE_DESCRIPTOR = 2;
+
+    public static final int UNKNOWN_DURATION = -1;
+
+    static final String UNSUPPORTED_SOURCE = "AudioView supports only String, Uri, FileDescriptor data sources now.";
+
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private final int mType;
+    private final Object mSource;
+    private final long mId;
+    private final String mTitle;
+    private final int mDuration;
+
+    public Track(String path) {
+        this(TYPE_PATH, path, hash(path), null, UNKNOWN_DURATION);
+    }
+
+    public Track(Uri uri) {
+        this(TYPE_URI, uri, hash(uri.toString()), null, UNKNOWN_DURATION);
+    }
+
+    public Track(FileDescriptor fd) {
+        this(TYPE_FILE_DESCRIPTOR, fd, System.identityHashCode(fd), null, UNKNOWN_DURATION);
+    }
+
+    /**
+     * @param id       stable id, e.g. MediaStore _ID
+     * @param source   String path or url, Uri or FileDescriptor
+     * @param title    known title or null to resolve it from metadata
+     * @param duration known duration in ms or {@link #UNKNOWN_DURATION}
+     */
+    public Track(long id, Object source, String title, int duration) {
+        this(getType(source), source, id, title, duration);
+    }
+
+    private Track(int type, Object source, long id, String title, int duration) {
+        if (source == null)
+            throw new IllegalArgumentException(UNSUPPORTED_SOURCE);
+        mType = type;
+        mSource = source;
+        mId = id;
+        mTitle = title;
+        mDuration = duration;
+    }
+
+    /**
+     * @return the track itself or a new track for String, Uri or FileDescriptor source
+     * @throws IllegalArgumentException for other sources
+     */
+    public static Track of(Object source) {
+        if (source instanceof Track)
+            return (Track) source;
+        if (source instanceof String)
+            return new Track((String) source);
+        if (source instanceof Uri)
+            return new Track((Uri) source);
+        if (source instanceof FileDescriptor)
+            return new Track((FileDescriptor) source);
+        throw new IllegalArgumentException(UNSUPPORTED_SOURCE);
+    }
+
+    private static int getType(Object source) {
+        if (source instanceof String)
+            return TYPE_PATH;
+        if (source instanceof Uri)
+            return TYPE_URI;
+        if (source instanceof FileDescriptor)
+            return TYPE_FILE_DESCRIPTOR;
+        throw new IllegalArgumentException(UNSUPPORTED_SOURCE);
+    }
+
+    private static long hash(String value) {
+        long hash = FNV_OFFSET;
+        for (int i = 0; i < value.length(); i++) {
+            hash ^= value.charAt(i);
+            hash *= FNV_PRIME;
+        }
+        return hash;
+    }
+
+    public int getType() {
+        return mType;
+    }
+
+    /**
+     * @return String, Uri or FileDescriptor depending on {@link #getType()}
+     */
+    public Object getSource() {
+        return mSource;
+    }
+
+    public long getId() {
+        return mId;
+    }
+
+    /**
+     * @return known title or null
+     */
+    public String getTitle() {
+        return mTitle;
+    }
+
+    public int getDuration() {
+        return mDuration;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o)
+            return true;
+        if (!(o instanceof Track))
+            return false;
+        Track track = (Track) o;
+        return mType == track.mType && mId == track.mId && mSource.equals(track.mSource);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * (int) (mId ^ (mId >>> 32)) + mType;
+    }
+
+    @Override
+    public String toString() {
+        return mTitle != null ? mTitle : mSource.toString();
+    }
+}
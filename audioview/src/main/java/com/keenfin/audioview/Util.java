@@ -7,17 +7,41 @@
 
 package com.keenfin.audioview;
 
-import android.annotation.SuppressLint;
 import android.content.Context;
 import android.media.MediaMetadataRetriever;
 import android.net.Uri;
 import android.text.TextUtils;
+import android.util.Log;
 
 import java.io.FileDescriptor;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
 
 public final class Util {
+    // String helpers may be called from any thread, each one reuses its own buffer
+    private static final ThreadLocal<TimeFormatter> TIME_FORMATTER = new ThreadLocal<TimeFormatter>() {
+        @Override
+        protected TimeFormatter initialValue() {
+            return new TimeFormatter();
+        }
+    };
+
     public static String getTrackTitle(Context context, Object source) {
+        try {
+            return readTrackTitle(context, source);
+        } catch (IllegalArgumentException ignored) {
+            return context.getString(R.string.no_title);
+        }
+    }
+
+    /**
+     * Same as {@link #getTrackTitle(Context, Object)}, but a source that can not be opened throws
+     * instead of resolving to no title.
+     */
+    static String readTrackTitle(Context context, Object source) {
         MediaMetadataRetriever metaRetriever = new MediaMetadataRetriever();
+        String artist;
+        String title;
         try {
             if (source instanceof String)
                 metaRetriever.setDataSource((String) source);
@@ -25,12 +49,12 @@ public final class Util {
                 metaRetriever.setDataSource(context, (Uri) source);
             if (source instanceof FileDescriptor)
                 metaRetriever.setDataSource((FileDescriptor) source);
-        } catch (IllegalArgumentException ignored) {
-        }
 
-        String artist = metaRetriever.extractMetadata(MediaMetadataRetriever.METADATA_KEY_ARTIST);
-        String title = metaRetriever.extractMetadata(MediaMetadataRetriever.METADATA_KEY_TITLE);
-        metaRetriever.release();
+            artist = metaRetriever.extractMetadata(MediaMetadataRetriever.METADATA_KEY_ARTIST);
+            title = metaRetriever.extractMetadata(MediaMetadataRetriever.METADATA_KEY_TITLE);
+        } finally {
+            metaRetriever.release();
+        }
 
         if (artist != null && !TextUtils.isEmpty(artist) && title != null && !TextUtils.isEmpty(title))
             return artist + " - " + title;
@@ -41,34 +65,81 @@ public final class Util {
         return artist;
     }
 
-    @SuppressLint("DefaultLocale")
     public static String formatTime(int millis) {
-        if (millis < 0)
-            return "∞";
+        TimeFormatter formatter = getTimeFormatter();
+        formatter.formatTime(millis);
+        return formatter.toString();
+    }
 
-        int hour, min;
-        hour = min = 0;
-        millis /= 1000;
+    /**
+     * @return formatter of the calling thread
+     */
+    static TimeFormatter getTimeFormatter() {
+        return TIME_FORMATTER.get();
+    }
 
-        if (millis >= 60) {
-            min = millis / 60;
-            millis %= 60;
-        }
+    public static String formatDuration(int duration) {
+        return duration > 0 ? formatTime(duration) : "∞";
+    }
+
+    /**
+     * @return downloaded file of the track if there is one, otherwise its source, proxied when
+     * {@link HttpCacheProxy} is enabled
+     */
+    static Object getPlaybackSource(Context context, Track track) {
+        String local = DownloadManager.getInstance(context).getLocalSource(track.getSource());
+        return local != null ? local : HttpCacheProxy.getInstance(context).rewrite(track.getSource());
+    }
 
-        if (min >= 60) {
-            hour = min / 60;
-            min %= 60;
+    /**
+     * @param className {@link PlayerEngine} implementation, null or empty for {@link MediaPlayerEngine}
+     */
+    public static PlayerEngine createPlayerEngine(Context context, String className) {
+        if (TextUtils.isEmpty(className) || MediaPlayerEngine.class.getName().equals(className))
+            return new MediaPlayerEngine();
+
+        try {
+            Class<?> engineClass = Class.forName(className);
+            try {
+                Constructor<?> constructor = engineClass.getConstructor(Context.class);
+                return (PlayerEngine) constructor.newInstance(context);
+            } catch (NoSuchMethodException e) {
+                return (PlayerEngine) engineClass.newInstance();
+            }
+        } catch (ClassNotFoundException | InstantiationException | IllegalAccessException | InvocationTargetException | ClassCastException e) {
+            throw new IllegalArgumentException("Can't create PlayerEngine " + className, e);
         }
+    }
 
-        String result = "";
-        if (hour > 0)
-            result += String.format("%02d:", hour);
-        result += String.format("%02d:%02d", min, millis);
+    /**
+     * Engine class comes from attributes or intent extras too, a bad one falls back to
+     * {@link MediaPlayerEngine} instead of failing on the player thread.
+     */
+    static PlayerEngine createPlayerEngineOrDefault(Context context, String className) {
+        try {
+            return createPlayerEngine(context, className);
+        } catch (IllegalArgumentException e) {
+            Log.w("AudioView", e.getMessage(), e.getCause());
+            return new MediaPlayerEngine();
+        }
+    }
 
-        return result;
+    /**
+     * @throws IllegalArgumentException if class is not found or is not a {@link PlayerEngine}
+     */
+    static void checkPlayerEngine(String className) {
+        if (TextUtils.isEmpty(className))
+            return;
+        try {
+            if (!PlayerEngine.class.isAssignableFrom(Class.forName(className)))
+                throw new IllegalArgumentException(className + " is not a PlayerEngine");
+        } catch (ClassNotFoundException e) {
+            throw new IllegalArgumentException("Can't find PlayerEngine " + className, e);
+        }
     }
 
-    public static String formatDuration(int duration) {
-        return duration > 0 ? formatTime(duration) : "∞";
+    static boolean isPlayerEngine(PlayerEngine engine, String className) {
+        String name = TextUtils.isEmpty(className) ? MediaPlayerEngine.class.getName() : className;
+        return engine != null && engine.getClass().getName().equals(name);
     }
 }
@@ -0,0 +1,166 @@
+/*
+ *           Copyright © 2019 Stanislav Petriakov
+ *  Distributed under the Boost Software License, Version 1.0.
+ *     (See accompanying file LICENSE_1_0.txt or copy at
+ *           http://www.boost.org/LICENSE_1_0.txt)
+ */
+
+package com.keenfin.audioview;
+
+import android.content.Context;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.Path;
+import android.graphics.drawable.ColorDrawable;
+import android.os.Looper;
+import android.util.AttributeSet;
+import android.widget.SeekBar;
+
+import java.nio.ByteBuffer;
+
+/**
+ * SeekBar drawing waveform peaks instead of progress line. Played part is drawn with primary
+ * color, the rest with secondary one. Waveform path is rebuilt only when peaks or size change.
+ */
+public class WaveformSeekBar extends SeekBar {
+    public static final int DEFAULT_BUCKETS = 200;
+
+    private final Paint mPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final Path mPath = new Path();
+    private ByteBuffer mPeaks;
+    private int mBuckets = DEFAULT_BUCKETS;
+    private int mPlayedColor = 0xFF808080;
+    private int mColor = 0x40808080;
+    private Object mSource;
+
+    private final PeakExtractor.OnPeaksListener mOnPeaksListener = new PeakExtractor.OnPeaksListener() {
+        @Override
+        public void onPeaks(Object source, ByteBuffer peaks, int buckets) {
+            if (source == mSource)
+                setPeaks(peaks, buckets);
+        }
+    };
+
+    public WaveformSeekBar(Context context) {
+        super(context);
+        init();
+    }
+
+    public WaveformSeekBar(Context context, AttributeSet attrs) {
+        super(context, attrs);
+        init();
+    }
+
+    public WaveformSeekBar(Context context, AttributeSet attrs, int defStyleAttr) {
+        super(context, attrs, defStyleAttr);
+        init();
+    }
+
+    private void init() {
+        setProgressDrawable(new ColorDrawable(Color.TRANSPARENT));
+        mPaint.setStyle(Paint.Style.FILL);
+    }
+
+    public void setWaveformColors(int playedColor, int color) {
+        mPlayedColor = playedColor;
+        mColor = color;
+        invalidate();
+    }
+
+    public void setBucketCount(int buckets) {
+        mBuckets = buckets;
+    }
+
+    /**
+     * Load peaks of the source in background, previous waveform is cleared.
+     */
+    public void setSource(Object source) {
+        if (source == mSource && mPeaks != null)
+            return;
+
+        mSource = source;
+        setPeaks(null, mBuckets);
+        if (source != null)
+            PeakExtractor.getInstance(getContext()).extract(source, mBuckets, mOnPeaksListener);
+    }
+
+    /**
+     * May be called from any thread, peaks are applied on the main thread.
+     *
+     * @param peaks min/max byte pairs for each bucket
+     */
+    public void setPeaks(final ByteBuffer peaks, final int buckets) {
+        if (Looper.myLooper() != Looper.getMainLooper()) {
+            post(new Runnable() {
+                @Override
+                public void run() {
+                    setPeaks(peaks, buckets);
+                }
+            });
+            return;
+        }
+
+        mPeaks = peaks;
+        mBuckets = buckets;
+        buildPath();
+        invalidate();
+    }
+
+    @Override
+    protected void onSizeChanged(int w, int h, int oldw, int oldh) {
+        super.onSizeChanged(w, h, oldw, oldh);
+        buildPath();
+    }
+
+    private void buildPath() {
+        mPath.rewind();
+        int left = getPaddingLeft();
+        int width = getWidth() - left - getPaddingRight();
+        int height = getHeight() - getPaddingTop() - getPaddingBottom();
+        if (width <= 0 || height <= 0)
+            return;
+
+        float center = getPaddingTop() + height / 2f;
+        if (mPeaks == null || mBuckets < 1) {
+            mPath.addRect(left, center - 0.5f, left + width, center + 0.5f, Path.Direction.CW);
+            return;
+        }
+
+        float step = (float) width / mBuckets;
+        float bar = Math.max(1f, step * 0.7f);
+        float scale = height / 256f;
+        for (int i = 0; i < mBuckets && i * 2 + 1 < mPeaks.limit(); i++) {
+            float min = mPeaks.get(i * 2) * scale;
+            float max = mPeaks.get(i * 2 + 1) * scale;
+            if (max - min < 1f) {
+                min -= 0.5f;
+                max += 0.5f;
+            }
+            float x = left + i * step;
+            mPath.addRect(x, center - max, x + bar, center - min, Path.Direction.CW);
+        }
+    }
+
+    @Override
+    protected void onDraw(Canvas canvas) {
+        int left = getPaddingLeft();
+        int right = getWidth() - getPaddingRight();
+        int max = getMax();
+        float x = max > 0 ? left + (right - left) * ((float) getProgress() / max) : left;
+
+        canvas.save();
+        canvas.clipRect(left, 0, x, getHeight());
+        mPaint.setColor(mPlayedColor);
+        canvas.drawPath(mPath, mPaint);
+        canvas.restore();
+
+        canvas.save();
+        canvas.clipRect(x, 0, right, getHeight());
+        mPaint.setColor(mColor);
+        canvas.drawPath(mPath, mPaint);
+        canvas.restore();
+
+        super.onDraw(canvas);
+    }
+}
@@ -0,0 +1,216 @@
+/*
+ *           Copyright © 2019 Stanislav Petriakov
+ *  Distributed under the Boost Software License, Version 1.0.
+ *     (See accompanying file LICENSE_1_0.txt or copy at
+ *           http://www.boost.org/LICENSE_1_0.txt)
+ */
+
+package com.keenfin.audioview;
+
+import android.app.Activity;
+import android.app.Application;
+import android.content.ComponentName;
+import android.support.v7.widget.LinearLayoutManager;
+import android.support.v7.widget.RecyclerView;
+import android.view.ViewGroup;
+
+import org.robolectric.RoboSettings;
+import org.robolectric.Robolectric;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.android.controller.ServiceController;
+import org.robolectric.shadows.ShadowApplication;
+
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.robolectric.Shadows.shadowOf;
+
+/**
+ * Drives a RecyclerView of AudioView2 rows backed by a real AudioService and
+ * {@link FakeMediaPlayer}, played with {@link CountingPlayerEngine}. Each scenario is measured between {@link #begin} and {@link #end}.
+ */
+final class AudioView2LoadHarness {
+    static final class Report {
+        final String scenario;
+        final int binds;
+        final int receivers;
+        final long broadcasts;
+        final int prepares;
+        // engine calls made by views on the main thread
+        final int mainThreadCalls;
+
+        Report(String scenario, int binds, int receivers, long broadcasts, int prepares, int mainThreadCalls) {
+            this.scenario = scenario;
+            this.binds = binds;
+            this.receivers = receivers;
+            this.broadcasts = broadcasts;
+            this.prepares = prepares;
+            this.mainThreadCalls = mainThreadCalls;
+        }
+
+        @Override
+        public String toString() {
+            return scenario + ": binds=" + binds + " receivers=" + receivers + " broadcasts=" + broadcasts
+                    + " prepares=" + prepares + " main=" + mainThreadCalls;
+        }
+    }
+
+    private final int mRows;
+    private final FakeMediaPlayer mPlayer = new FakeMediaPlayer();
+    private ServiceController<AudioService> mServiceController;
+    private RecyclerView mList;
+
+    private String mScenario;
+    private int mBinds;
+    private int mReceivers;
+    private long mBroadcasts;
+    private int mPrepares;
+    private int mMainThreadCalls;
+
+    AudioView2LoadHarness(int rows) {
+        mRows = rows;
+    }
+
+    FakeMediaPlayer getPlayer() {
+        return mPlayer;
+    }
+
+    AudioService getService() {
+        return mServiceController.get();
+    }
+
+    void setUp() throws ReflectiveOperationException {
+        resetSingletons();
+        // service player thread runs on the same virtual clock as main looper
+        RoboSettings.setUseGlobalScheduler(true);
+        mPlayer.install();
+
+        Application application = RuntimeEnvironment.application;
+        mServiceController = Robolectric.buildService(AudioService.class).create();
+        shadowOf(application).setComponentNameAndServiceForBindService(
+                new ComponentName(application, AudioService.class), getService().onBind(null));
+        getService().setPlayerEngine(CountingPlayerEngine.class.getName());
+
+        Activity activity = Robolectric.buildActivity(Activity.class).setup().get();
+        mList = new RecyclerView(activity);
+        mList.setLayoutManager(new LinearLayoutManager(activity));
+        mList.setAdapter(new RowAdapter());
+        activity.setContentView(mList);
+        FakeMediaPlayer.idle();
+    }
+
+    void tearDown() {
+        mServiceController.destroy();
+        FakeMediaPlayer.idle();
+        RoboSettings.setUseGlobalScheduler(false);
+    }
+
+    static String getTrack(int position, int index) {
+        return "http://audio.test/" + position + "/" + index + ".mp3";
+    }
+
+    static List<String> getPlaylist(int position, int size) {
+        List<String> tracks = new ArrayList<>(size);
+        for (int i = 0; i < size; i++)
+            tracks.add(getTrack(position, i));
+        return tracks;
+    }
+
+    void begin(String scenario) {
+        mScenario = scenario;
+        mBinds = AudioServiceConnection.getInstance(RuntimeEnvironment.application).getBindCount();
+        mReceivers = getShadowApplication().getRegisteredReceivers().size();
+        mBroadcasts = getBroadcastCount();
+        mPrepares = mPlayer.getPrepareCount();
+        mMainThreadCalls = CountingPlayerEngine.getMainThreadCalls();
+    }
+
+    Report end() {
+        FakeMediaPlayer.idle();
+        return new Report(mScenario,
+                AudioServiceConnection.getInstance(RuntimeEnvironment.application).getBindCount() - mBinds,
+                getShadowApplication().getRegisteredReceivers().size() - mReceivers,
+                getBroadcastCount() - mBroadcasts,
+                mPlayer.getPrepareCount() - mPrepares,
+                CountingPlayerEngine.getMainThreadCalls() - mMainThreadCalls);
+    }
+
+    /**
+     * Scroll through the whole list and back in steps of given pixels.
+     */
+    void scrollThrough(int step) {
+        while (mList.canScrollVertically(1)) {
+            mList.scrollBy(0, step);
+            FakeMediaPlayer.idle();
+        }
+        while (mList.canScrollVertically(-1)) {
+            mList.scrollBy(0, -step);
+            FakeMediaPlayer.idle();
+        }
+    }
+
+    AudioView2 getRow(int position) {
+        mList.scrollToPosition(position);
+        FakeMediaPlayer.idle();
+        RecyclerView.ViewHolder holder = mList.findViewHolderForAdapterPosition(position);
+        return holder == null ? null : (AudioView2) holder.itemView;
+    }
+
+    void tap(int position) {
+        getRow(position).mPlay.performClick();
+        FakeMediaPlayer.idle();
+    }
+
+    void playFor(long millis) {
+        FakeMediaPlayer.advance(millis);
+    }
+
+    private long getBroadcastCount() {
+        return AudioStatusBus.getInstance().getDeliveredCount() + getShadowApplication().getBroadcastIntents().size();
+    }
+
+    private static ShadowApplication getShadowApplication() {
+        return shadowOf(RuntimeEnvironment.application);
+    }
+
+    /**
+     * Process-wide helpers outlive Robolectric application, start every run from scratch.
+     */
+    static void resetSingletons() throws ReflectiveOperationException {
+        Class<?>[] singletons = {AudioStatusBus.class, AudioServiceConnection.class, MediaPlayerPool.class,
+                ProgressScheduler.class, MetadataResolver.class, PeakExtractor.class};
+        for (Class<?> singleton : singletons) {
+            Field instance = singleton.getDeclaredField("sInstance");
+            instance.setAccessible(true);
+            instance.set(null, null);
+        }
+        AudioService.SERVICE_RUNNING = false;
+    }
+
+    private class RowAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolder> {
+        @Override
+        public RecyclerView.ViewHolder onCreateViewHolder(ViewGroup parent, int viewType) {
+            AudioView2 row = new AudioView2(parent.getContext());
+            row.setLayoutParams(new RecyclerView.LayoutParams(ViewGroup.LayoutParams.MATCH_PARENT, ViewGroup.LayoutParams.WRAP_CONTENT));
+            return new RecyclerView.ViewHolder(row) {
+            };
+        }
+
+        @Override
+        public void onBindViewHolder(RecyclerView.ViewHolder holder, int position) {
+            AudioView2 row = (AudioView2) holder.itemView;
+            row.setTag(position);
+            try {
+                row.setDataSource(getTrack(position, 0));
+            } catch (IOException ignored) {
+            }
+        }
+
+        @Override
+        public int getItemCount() {
+            return mRows;
+        }
+    }
+}
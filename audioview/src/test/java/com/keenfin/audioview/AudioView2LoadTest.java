@@ -0,0 +1,196 @@
+/*
+ *           Copyright © 2019 Stanislav Petriakov
+ *  Distributed under the Boost Software License, Version 1.0.
+ *     (See accompanying file LICENSE_1_0.txt or copy at
+ *           http://www.boost.org/LICENSE_1_0.txt)
+ */
+
+package com.keenfin.audioview;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Budgets for AudioView2 lists. A failure here means a change made rows more expensive, raise a
+ * budget only together with the reason why.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+public class AudioView2LoadTest {
+    private static final int ROWS = 300;
+
+    private AudioView2LoadHarness mHarness;
+
+    @Before
+    public void setUp() throws ReflectiveOperationException {
+        mHarness = new AudioView2LoadHarness(ROWS);
+        mHarness.setUp();
+    }
+
+    @After
+    public void tearDown() {
+        mHarness.tearDown();
+    }
+
+    @Test
+    public void scroll() {
+        mHarness.begin("scroll");
+        mHarness.scrollThrough(200);
+        AudioView2LoadHarness.Report report = mHarness.end();
+
+        assertTrue(report.toString(), report.binds <= 1);
+        assertEquals(report.toString(), 0, report.receivers);
+        assertEquals(report.toString(), 0, report.broadcasts);
+        assertEquals(report.toString(), 0, report.prepares);
+        assertEquals(report.toString(), 0, report.mainThreadCalls);
+    }
+
+    @Test
+    public void scrollWhilePlaying() {
+        mHarness.tap(0);
+        mHarness.playFor(1000);
+        assertTrue(mHarness.getService().isPlaying());
+
+        mHarness.begin("scroll while playing");
+        mHarness.scrollThrough(200);
+        mHarness.playFor(5000);
+        AudioView2LoadHarness.Report report = mHarness.end();
+
+        // only the playing row observes progress, once per tick at most
+        assertEquals(report.toString(), 0, report.binds);
+        assertEquals(report.toString(), 0, report.receivers);
+        assertTrue(report.toString(), report.broadcasts <= 5000 / AudioService.MIN_PROGRESS_DELAY);
+        assertEquals(report.toString(), 0, report.prepares);
+        // position and duration per progress status, playing state when the row comes back
+        assertTrue(report.toString(), report.mainThreadCalls <= 2 * report.broadcasts + 2);
+    }
+
+    @Test
+    public void tap() {
+        mHarness.begin("tap");
+        mHarness.tap(10);
+        mHarness.playFor(FakeMediaPlayer.DEFAULT_PREPARE_DELAY);
+        AudioView2LoadHarness.Report report = mHarness.end();
+
+        assertTrue(mHarness.getService().isPlaying());
+        assertEquals(10, mHarness.getService().getAttachedTag());
+        assertEquals(report.toString(), 0, report.receivers);
+        assertTrue(report.toString(), report.broadcasts <= 10);
+        assertEquals(report.toString(), 1, report.prepares);
+        assertTrue(report.toString(), report.mainThreadCalls <= 2 * report.broadcasts + 2);
+    }
+
+    @Test
+    public void tapAnotherRow() {
+        mHarness.tap(1);
+        mHarness.playFor(1000);
+
+        mHarness.begin("tap another row");
+        mHarness.tap(ROWS / 2);
+        mHarness.playFor(FakeMediaPlayer.DEFAULT_PREPARE_DELAY);
+        AudioView2LoadHarness.Report report = mHarness.end();
+
+        assertEquals(ROWS / 2, mHarness.getService().getAttachedTag());
+        assertEquals(report.toString(), 0, report.receivers);
+        assertTrue(report.toString(), report.broadcasts <= 10);
+        assertEquals(report.toString(), 1, report.prepares);
+    }
+
+    @Test
+    public void nextPrevious() {
+        mHarness.tap(3);
+        mHarness.playFor(FakeMediaPlayer.DEFAULT_PREPARE_DELAY);
+        AudioView2 row = mHarness.getRow(3);
+        row.setDataSource(AudioView2LoadHarness.getPlaylist(3, 5));
+        mHarness.playFor(FakeMediaPlayer.DEFAULT_PREPARE_DELAY);
+
+        mHarness.begin("next/previous");
+        for (int i = 0; i < 4; i++) {
+            row.nextTrack();
+            mHarness.playFor(AudioService.DEFAULT_SKIP_DELAY + FakeMediaPlayer.DEFAULT_PREPARE_DELAY);
+        }
+        for (int i = 0; i < 4; i++) {
+            row.previousTrack();
+            mHarness.playFor(AudioService.DEFAULT_SKIP_DELAY + FakeMediaPlayer.DEFAULT_PREPARE_DELAY);
+        }
+        AudioView2LoadHarness.Report report = mHarness.end();
+
+        assertEquals(AudioView2LoadHarness.getTrack(3, 0), mHarness.getService().getCurrentSource());
+        assertEquals(report.toString(), 0, report.binds);
+        assertEquals(report.toString(), 8, report.prepares);
+        assertTrue(report.toString(), report.broadcasts <= 8 * 6);
+    }
+
+    @Test
+    public void rapidSkips() {
+        mHarness.tap(3);
+        mHarness.playFor(FakeMediaPlayer.DEFAULT_PREPARE_DELAY);
+        AudioView2 row = mHarness.getRow(3);
+        row.setDataSource(AudioView2LoadHarness.getPlaylist(3, 5));
+        mHarness.playFor(FakeMediaPlayer.DEFAULT_PREPARE_DELAY);
+
+        mHarness.begin("rapid skips");
+        for (int i = 0; i < 4; i++) {
+            row.nextTrack();
+            mHarness.playFor(FakeMediaPlayer.DEFAULT_PREPARE_DELAY);
+        }
+        for (int i = 0; i < 3; i++) {
+            row.previousTrack();
+            mHarness.playFor(FakeMediaPlayer.DEFAULT_PREPARE_DELAY);
+        }
+        assertEquals(AudioView2LoadHarness.getTrack(3, 1), mHarness.getService().getCurrentSource());
+        mHarness.playFor(AudioService.DEFAULT_SKIP_DELAY + FakeMediaPlayer.DEFAULT_PREPARE_DELAY);
+        AudioView2LoadHarness.Report report = mHarness.end();
+
+        assertEquals(AudioView2LoadHarness.getTrack(3, 1), mHarness.getService().getCurrentSource());
+        assertEquals(report.toString(), 1, report.prepares);
+    }
+
+    @Test
+    public void seek() {
+        mHarness.tap(0);
+        mHarness.playFor(FakeMediaPlayer.DEFAULT_PREPARE_DELAY);
+
+        mHarness.begin("seek");
+        for (int position = 0; position < FakeMediaPlayer.DEFAULT_DURATION; position += 10000) {
+            mHarness.getService().seekTo(position);
+            mHarness.playFor(100);
+        }
+        AudioView2LoadHarness.Report report = mHarness.end();
+
+        assertTrue(mHarness.getService().isPlaying());
+        assertEquals(report.toString(), 0, report.prepares);
+        assertEquals(report.toString(), 0, report.receivers);
+        assertTrue(report.toString(), report.mainThreadCalls <= 2 * report.broadcasts);
+    }
+
+    @Test
+    public void completionAndError() {
+        FakeMediaPlayer player = mHarness.getPlayer();
+        player.addSource(AudioView2LoadHarness.getTrack(0, 0), 2000, 300);
+        player.addError(AudioView2LoadHarness.getTrack(1, 0), 500);
+
+        mHarness.tap(0);
+        mHarness.playFor(299);
+        assertTrue(!mHarness.getService().isPrepared());
+        mHarness.playFor(1);
+        assertTrue(mHarness.getService().isPlaying());
+        mHarness.playFor(2000);
+        assertTrue(!mHarness.getService().isPlaying());
+
+        mHarness.begin("error");
+        mHarness.tap(1);
+        mHarness.playFor(1000);
+        AudioView2LoadHarness.Report report = mHarness.end();
+
+        assertTrue(!mHarness.getService().isPlaying());
+        assertEquals(report.toString(), 1, report.prepares);
+    }
+}
@@ -0,0 +1,147 @@
+/*
+ *           Copyright © 2019 Stanislav Petriakov
+ *  Distributed under the Boost Software License, Version 1.0.
+ *     (See accompanying file LICENSE_1_0.txt or copy at
+ *           http://www.boost.org/LICENSE_1_0.txt)
+ */
+
+package com.keenfin.audioview;
+
+import android.app.Activity;
+import android.os.SystemClock;
+import android.view.MotionEvent;
+import android.view.View;
+import android.view.ViewGroup;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+public class AudioViewLiteTest {
+    private static final String TRACK = "/sdcard/voice.m4a";
+    private static final int DURATION = 10000;
+    private static final int WIDTH = 480;
+    private static final int HEIGHT = 96;
+
+    private final FakeMediaPlayer mPlayer = new FakeMediaPlayer();
+    private AudioViewLite mView;
+    private int mPrepared;
+
+    @Before
+    public void setUp() throws ReflectiveOperationException {
+        AudioView2LoadHarness.resetSingletons();
+        mPlayer.install();
+        mPlayer.setDefaults(DURATION, FakeMediaPlayer.DEFAULT_PREPARE_DELAY);
+        Activity activity = Robolectric.buildActivity(Activity.class).setup().get();
+        mView = new AudioViewLite(activity);
+        activity.setContentView(mView, new ViewGroup.LayoutParams(WIDTH, HEIGHT));
+        mView.measure(View.MeasureSpec.makeMeasureSpec(WIDTH, View.MeasureSpec.EXACTLY),
+                View.MeasureSpec.makeMeasureSpec(HEIGHT, View.MeasureSpec.EXACTLY));
+        mView.layout(0, 0, WIDTH, HEIGHT);
+        mView.setOnAudioViewListener(new AudioViewListener() {
+            @Override
+            public void onPrepared() {
+                mPrepared++;
+            }
+
+            @Override
+            public void onCompletion() {
+            }
+        });
+        FakeMediaPlayer.idle();
+    }
+
+    @After
+    public void tearDown() {
+        ((ViewGroup) mView.getParent()).removeView(mView);
+        FakeMediaPlayer.idle();
+    }
+
+    @Test
+    public void preparesOnlyWhenPlayed() {
+        mView.setDataSource(Playlist.EMPTY.add(new Track(1, TRACK, "Voice", DURATION)));
+        FakeMediaPlayer.advance(1000);
+        assertEquals(0, mPlayer.getPrepareCount());
+        assertEquals(DURATION, mView.getTotalDuration());
+        assertFalse(mView.isPlaying());
+
+        mView.start();
+        FakeMediaPlayer.advance(FakeMediaPlayer.DEFAULT_PREPARE_DELAY);
+        assertEquals(1, mPlayer.getPrepareCount());
+        assertEquals(1, mPrepared);
+        assertTrue(mView.isPlaying());
+    }
+
+    @Test
+    public void tapOnButtonPlaysAndPauses() throws IOException {
+        mView.setDataSource(TRACK);
+        tap(HEIGHT / 2);
+        FakeMediaPlayer.advance(FakeMediaPlayer.DEFAULT_PREPARE_DELAY);
+        assertTrue(mView.isPlaying());
+        assertEquals(DURATION, mView.getTotalDuration());
+
+        tap(HEIGHT / 2);
+        assertFalse(mView.isPlaying());
+        assertEquals(1, mPlayer.getPrepareCount());
+    }
+
+    @Test
+    public void tapOnTrackSeeks() throws IOException {
+        mView.setDataSource(TRACK);
+        tap(HEIGHT / 2);
+        FakeMediaPlayer.advance(FakeMediaPlayer.DEFAULT_PREPARE_DELAY + 100);
+        assertTrue(mView.getCurrentPosition() < 1000);
+
+        // track lies between the button and time text
+        tap(WIDTH * 2 / 3);
+        FakeMediaPlayer.idle();
+        int position = mView.getCurrentPosition();
+        assertTrue(String.valueOf(position), position > 3000 && position < 9000);
+        assertTrue(mView.isPlaying());
+    }
+
+    @Test
+    public void dragFromButtonDoesNotSeek() throws IOException {
+        mView.setDataSource(TRACK);
+        tap(HEIGHT / 2);
+        FakeMediaPlayer.advance(FakeMediaPlayer.DEFAULT_PREPARE_DELAY + 100);
+
+        // press starts on the button and ends over the track
+        long time = SystemClock.uptimeMillis();
+        MotionEvent down = MotionEvent.obtain(time, time, MotionEvent.ACTION_DOWN, HEIGHT / 2, HEIGHT / 2, 0);
+        MotionEvent move = MotionEvent.obtain(time, time + 50, MotionEvent.ACTION_MOVE, WIDTH * 2 / 3, HEIGHT / 2, 0);
+        MotionEvent up = MotionEvent.obtain(time, time + 100, MotionEvent.ACTION_UP, WIDTH * 2 / 3, HEIGHT / 2, 0);
+        mView.dispatchTouchEvent(down);
+        mView.dispatchTouchEvent(move);
+        mView.dispatchTouchEvent(up);
+        down.recycle();
+        move.recycle();
+        up.recycle();
+        FakeMediaPlayer.idle();
+
+        assertTrue(mView.isPlaying());
+        assertTrue(String.valueOf(mView.getCurrentPosition()), mView.getCurrentPosition() < 1000);
+    }
+
+    private void tap(float x) {
+        long time = SystemClock.uptimeMillis();
+        MotionEvent down = MotionEvent.obtain(time, time, MotionEvent.ACTION_DOWN, x, HEIGHT / 2, 0);
+        MotionEvent up = MotionEvent.obtain(time, time + 50, MotionEvent.ACTION_UP, x, HEIGHT / 2, 0);
+        mView.dispatchTouchEvent(down);
+        mView.dispatchTouchEvent(up);
+        down.recycle();
+        up.recycle();
+    }
+}
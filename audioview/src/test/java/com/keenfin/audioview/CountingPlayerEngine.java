@@ -0,0 +1,117 @@
+/*
+ *           Copyright © 2019 Stanislav Petriakov
+ *  Distributed under the Boost Software License, Version 1.0.
+ *     (See accompanying file LICENSE_1_0.txt or copy at
+ *           http://www.boost.org/LICENSE_1_0.txt)
+ */
+
+package com.keenfin.audioview;
+
+import android.content.Context;
+
+import java.io.IOException;
+
+/**
+ * MediaPlayerEngine counting calls made synchronously from main thread view code, i.e. calls
+ * reached from a view without going through a Handler first. Robolectric runs the player thread
+ * on the test thread too, so the call stack tells them apart instead of the thread.
+ */
+public class CountingPlayerEngine extends MediaPlayerEngine {
+    private static int sMainThreadCalls = 0;
+
+    public CountingPlayerEngine(Context context) {
+        super(context);
+    }
+
+    static int getMainThreadCalls() {
+        return sMainThreadCalls;
+    }
+
+    private static void count() {
+        for (StackTraceElement frame : new Throwable().getStackTrace()) {
+            String name = frame.getClassName();
+            if (name.equals("android.os.Handler") && frame.getMethodName().equals("dispatchMessage"))
+                return;
+            int inner = name.indexOf('$');
+            if (inner > 0)
+                name = name.substring(0, inner);
+            if (name.startsWith("android.view.") || name.equals(AudioView2.class.getName())
+                    || name.equals(BaseAudioView.class.getName())) {
+                sMainThreadCalls++;
+                return;
+            }
+        }
+    }
+
+    @Override
+    public void setDataSource(Context context, Object source) throws IOException {
+        count();
+        super.setDataSource(context, source);
+    }
+
+    @Override
+    public void prepareAsync() {
+        count();
+        super.prepareAsync();
+    }
+
+    @Override
+    public void start() {
+        count();
+        super.start();
+    }
+
+    @Override
+    public void pause() {
+        count();
+        super.pause();
+    }
+
+    @Override
+    public void stop() {
+        count();
+        super.stop();
+    }
+
+    @Override
+    public void seekTo(int position) {
+        count();
+        super.seekTo(position);
+    }
+
+    @Override
+    public void fastSeekTo(int position) {
+        count();
+        super.fastSeekTo(position);
+    }
+
+    @Override
+    public void reset() {
+        count();
+        super.reset();
+    }
+
+    @Override
+    public void release() {
+        count();
+        super.release();
+    }
+
+    @Override
+    public boolean isPlaying() {
+        count();
+        return super.isPlaying();
+    }
+
+    @Override
+    public int getCurrentPosition() {
+        count();
+        return super.getCurrentPosition();
+    }
+
+    @Override
+    public int getDuration() {
+        count();
+        return super.getDuration();
+    }
+}
@@ -0,0 +1,192 @@
+/*
+ *           Copyright © 2019 Stanislav Petriakov
+ *  Distributed under the Boost Software License, Version 1.0.
+ *     (See accompanying file LICENSE_1_0.txt or copy at
+ *           http://www.boost.org/LICENSE_1_0.txt)
+ */
+
+package com.keenfin.audioview;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class DownloadManagerTest {
+    private static final int SIZE = 100000;
+    private static final int SEGMENT_SIZE = 10000;
+
+    private final byte[] mContent = new byte[SIZE];
+    private File mDir;
+    private LocalHttpServer mOrigin;
+
+    @Before
+    public void setUp() throws IOException {
+        new Random(5).nextBytes(mContent);
+        mDir = File.createTempFile("audioview", "downloads");
+        mDir.delete();
+        mOrigin = new LocalHttpServer(mContent);
+    }
+
+    @After
+    public void tearDown() {
+        mOrigin.stop();
+        File[] files = mDir.listFiles();
+        if (files != null)
+            for (File file : files)
+                file.delete();
+        mDir.delete();
+    }
+
+    @Test
+    public void downloadsSegmentsInParallel() throws Exception {
+        DownloadManager manager = new DownloadManager(mDir, 3, SEGMENT_SIZE);
+        Track track = new Track(7, mOrigin.getUrl("episode.mp3"), "Episode", Track.UNKNOWN_DURATION);
+        Download download = await(manager, track, true);
+
+        assertEquals(Download.STATE_COMPLETED, download.getState());
+        assertEquals(10, mOrigin.requests.get());
+        assertEquals(SIZE, mOrigin.sent.get());
+        assertEquals(SIZE, download.getDownloadedBytes());
+        assertEquals(10, download.getCompletedSegmentCount());
+        assertEquals(1f, download.getProgress(), 0);
+        assertTrue(download.getThroughput() > 0);
+        assertArrayEquals(mContent, read(download.getFile()));
+
+        Track offline = manager.getOfflineTrack(track);
+        assertEquals(download.getFile().getPath(), offline.getSource());
+        assertEquals(track.getId(), offline.getId());
+        assertEquals("Episode", offline.getTitle());
+        assertSame(download, manager.enqueue(track));
+
+        // new manager lists completed downloads, deleted ones are dropped
+        DownloadManager restarted = new DownloadManager(mDir, 3, SEGMENT_SIZE);
+        assertTrue(restarted.isDownloaded(track));
+        restarted.delete(track);
+        assertFalse(restarted.isDownloaded(track));
+    }
+
+    @Test
+    public void resumesMissingSegmentsOnly() throws Exception {
+        Track track = new Track(mOrigin.getUrl("episode.mp3"));
+        mOrigin.setFailAfter(4);
+        Download failed = await(new DownloadManager(mDir, 3, SEGMENT_SIZE), track, false);
+        assertEquals(Download.STATE_FAILED, failed.getState());
+        assertTrue(failed.getCompletedSegmentCount() >= 4);
+
+        // new manager as after process restart reads persisted bitmap
+        mOrigin.setFailAfter(Integer.MAX_VALUE);
+        DownloadManager manager = new DownloadManager(mDir, 3, SEGMENT_SIZE);
+        Download download = await(manager, track, true);
+        assertEquals(Download.STATE_COMPLETED, download.getState());
+        assertEquals(SIZE, mOrigin.sent.get());
+        assertTrue(download.getThroughput() > 0);
+        assertArrayEquals(mContent, read(download.getFile()));
+        assertTrue(manager.isDownloaded(track));
+    }
+
+    @Test
+    public void restartDropsQueuedSegmentsOfPreviousStart() throws Exception {
+        final DownloadManager manager = new DownloadManager(mDir, 3, SEGMENT_SIZE);
+        final AtomicBoolean restarted = new AtomicBoolean();
+        manager.addListener(new DownloadManager.OnDownloadListener() {
+            @Override
+            public void onDownloadProgress(Download download) {
+                // probe fetched first segment, the rest is not submitted yet
+                if (restarted.compareAndSet(false, true)) {
+                    manager.pause(download);
+                    manager.enqueue(download.getTrack());
+                }
+            }
+
+            @Override
+            public void onDownloadCompleted(Download download) {
+            }
+
+            @Override
+            public void onDownloadFailed(Download download, IOException error) {
+            }
+        });
+        Download download = await(manager, new Track(mOrigin.getUrl("episode.mp3")), true);
+
+        assertTrue(restarted.get());
+        assertEquals(10, mOrigin.requests.get());
+        assertEquals(SIZE, mOrigin.sent.get());
+        assertEquals(SIZE, download.getDownloadedBytes());
+        assertEquals(1f, download.getProgress(), 0);
+        assertArrayEquals(mContent, read(download.getFile()));
+    }
+
+    @Test
+    public void downloadsWholeFileWithoutRanges() throws Exception {
+        mOrigin.setRangeSupported(false);
+        DownloadManager manager = new DownloadManager(mDir, 3, SEGMENT_SIZE);
+        Download download = await(manager, new Track(mOrigin.getUrl("episode.mp3")), true);
+
+        assertEquals(Download.STATE_COMPLETED, download.getState());
+        assertEquals(1, mOrigin.requests.get());
+        assertEquals(SIZE, download.getLength());
+        assertArrayEquals(mContent, read(download.getFile()));
+    }
+
+    @Test
+    public void onlyRemoteTracksAreDownloaded() {
+        DownloadManager manager = new DownloadManager(mDir, 3, SEGMENT_SIZE);
+        Playlist playlist = Playlist.of(Arrays.asList("/sdcard/local.mp3", mOrigin.getUrl("remote.mp3")));
+        assertEquals(1, manager.enqueue(playlist).size());
+        Track local = playlist.get(0);
+        assertSame(local, manager.getOfflineTrack(local));
+    }
+
+    private static Download await(DownloadManager manager, Track track, final boolean completed) throws InterruptedException {
+        final CountDownLatch latch = new CountDownLatch(1);
+        manager.addListener(new DownloadManager.OnDownloadListener() {
+            @Override
+            public void onDownloadProgress(Download download) {
+            }
+
+            @Override
+            public void onDownloadCompleted(Download download) {
+                if (completed)
+                    latch.countDown();
+            }
+
+            @Override
+            public void onDownloadFailed(Download download, IOException error) {
+                if (!completed)
+                    latch.countDown();
+            }
+        });
+        Download download = manager.enqueue(track);
+        assertTrue(latch.await(10, TimeUnit.SECONDS));
+        // let segments already in flight settle
+        while (download.getActiveConnections() > 0)
+            Thread.sleep(10);
+        return download;
+    }
+
+    private static byte[] read(File file) throws IOException {
+        RandomAccessFile input = new RandomAccessFile(file, "r");
+        try {
+            byte[] bytes = new byte[(int) input.length()];
+            input.readFully(bytes);
+            return bytes;
+        } finally {
+            input.close();
+        }
+    }
+}
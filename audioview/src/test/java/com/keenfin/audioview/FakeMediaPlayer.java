@@ -0,0 +1,99 @@
+/*
+ *           Copyright © 2019 Stanislav Petriakov
+ *  Distributed under the Boost Software License, Version 1.0.
+ *     (See accompanying file LICENSE_1_0.txt or copy at
+ *           http://www.boost.org/LICENSE_1_0.txt)
+ */
+
+package com.keenfin.audioview;
+
+import android.media.MediaPlayer;
+
+import org.robolectric.Robolectric;
+import org.robolectric.shadows.ShadowMediaPlayer;
+import org.robolectric.shadows.util.DataSource;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Deterministic MediaPlayer backend for JVM tests. Every data source gets a duration and prepare
+ * latency, errors may be scheduled at any playback offset. Time only moves with {@link #advance},
+ * so prepare and completion callbacks fire exactly when the virtual clock reaches them.
+ */
+final class FakeMediaPlayer {
+    static final int DEFAULT_DURATION = 180000;
+    static final int DEFAULT_PREPARE_DELAY = 50;
+
+    private final Map<DataSource, ShadowMediaPlayer.MediaInfo> mMediaInfo = new HashMap<>();
+    private int mDuration = DEFAULT_DURATION;
+    private int mPrepareDelay = DEFAULT_PREPARE_DELAY;
+    private int mDataSourceCount = 0;
+
+    private final ShadowMediaPlayer.MediaInfoProvider mProvider = new ShadowMediaPlayer.MediaInfoProvider() {
+        @Override
+        public ShadowMediaPlayer.MediaInfo get(DataSource dataSource) {
+            mDataSourceCount++;
+            ShadowMediaPlayer.MediaInfo info = mMediaInfo.get(dataSource);
+            return info != null ? info : new ShadowMediaPlayer.MediaInfo(mDuration, mPrepareDelay);
+        }
+    };
+
+    /**
+     * Route all MediaPlayer instances created from now on to this engine.
+     */
+    void install() {
+        ShadowMediaPlayer.setMediaInfoProvider(mProvider);
+    }
+
+    /**
+     * Defaults for sources without explicit setup.
+     */
+    void setDefaults(int duration, int prepareDelay) {
+        mDuration = duration;
+        mPrepareDelay = prepareDelay;
+    }
+
+    /**
+     * @param prepareDelay latency of prepareAsync in ms, -1 never completes
+     */
+    void addSource(String path, int duration, int prepareDelay) {
+        mMediaInfo.put(DataSource.toDataSource(path), new ShadowMediaPlayer.MediaInfo(duration, prepareDelay));
+    }
+
+    /**
+     * Report MediaPlayer error when playback of the source reaches offset.
+     */
+    void addError(String path, int offset) {
+        DataSource source = DataSource.toDataSource(path);
+        ShadowMediaPlayer.MediaInfo info = mMediaInfo.get(source);
+        if (info == null) {
+            info = new ShadowMediaPlayer.MediaInfo(mDuration, mPrepareDelay);
+            mMediaInfo.put(source, info);
+        }
+        info.scheduleErrorAtOffset(offset, MediaPlayer.MEDIA_ERROR_UNKNOWN, MediaPlayer.MEDIA_ERROR_IO);
+    }
+
+    /**
+     * Number of setDataSource calls, each of them is followed by a prepare.
+     */
+    int getPrepareCount() {
+        return mDataSourceCount;
+    }
+
+    /**
+     * Move virtual clock forward running everything scheduled on the main looper meanwhile, and
+     * on other loopers when they share global scheduler.
+     */
+    static void advance(long millis) {
+        Robolectric.getForegroundThreadScheduler().advanceBy(millis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Run everything due on the main looper without moving the clock.
+     */
+    static void idle() {
+        Robolectric.getForegroundThreadScheduler().advanceBy(0, TimeUnit.MILLISECONDS);
+    }
+}
@@ -0,0 +1,167 @@
+/*
+ *           Copyright © 2019 Stanislav Petriakov
+ *  Distributed under the Boost Software License, Version 1.0.
+ *     (See accompanying file LICENSE_1_0.txt or copy at
+ *           http://www.boost.org/LICENSE_1_0.txt)
+ */
+
+package com.keenfin.audioview;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.Socket;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class HttpCacheProxyTest {
+    private static final int SIZE = 100000;
+
+    private final byte[] mContent = new byte[SIZE];
+    private File mDir;
+    private LocalHttpServer mOrigin;
+    private HttpCacheProxy mProxy;
+
+    @Before
+    public void setUp() throws IOException {
+        new Random(3).nextBytes(mContent);
+        mDir = File.createTempFile("audioview", "cache");
+        mDir.delete();
+        mOrigin = new LocalHttpServer(mContent);
+        mProxy = new HttpCacheProxy(mDir, HttpCacheProxy.DEFAULT_MAX_CACHE_SIZE);
+    }
+
+    @After
+    public void tearDown() {
+        mProxy.stop();
+        mOrigin.stop();
+        File[] files = mDir.listFiles();
+        if (files != null)
+            for (File file : files)
+                file.delete();
+        mDir.delete();
+    }
+
+    @Test
+    public void replayIsServedFromCache() throws IOException {
+        String url = mProxy.getProxyUrl(mOrigin.getUrl("track.mp3"));
+        assertArrayEquals(mContent, get(url, null, 200));
+        assertEquals(SIZE, mOrigin.sent.get());
+
+        assertArrayEquals(mContent, get(url, null, 200));
+        assertEquals(SIZE, mOrigin.sent.get());
+        assertEquals(1, mOrigin.requests.get());
+        assertEquals(SIZE, mProxy.getCacheSize());
+    }
+
+    @Test
+    public void rangeFetchesOnlyMissingBytes() throws IOException {
+        String url = mProxy.getProxyUrl(mOrigin.getUrl("track.mp3"));
+        assertArrayEquals(Arrays.copyOfRange(mContent, 1000, 2000), get(url, "bytes=1000-1999", 206));
+        assertEquals(1000, mOrigin.sent.get());
+
+        assertArrayEquals(Arrays.copyOfRange(mContent, 500, SIZE), get(url, "bytes=500-", 206));
+        assertEquals(SIZE - 500, mOrigin.sent.get());
+
+        assertArrayEquals(mContent, get(url, "bytes=0-", 206));
+        assertEquals(SIZE, mOrigin.sent.get());
+        assertArrayEquals(Arrays.copyOfRange(mContent, SIZE - 10, SIZE), get(url, "bytes=-10", 206));
+        assertEquals(SIZE, mOrigin.sent.get());
+    }
+
+    @Test
+    public void cacheSurvivesRestart() throws IOException {
+        String track = mOrigin.getUrl("track.mp3");
+        get(mProxy.getProxyUrl(track), "bytes=0-4999", 206);
+        mProxy.stop();
+
+        mProxy = new HttpCacheProxy(mDir, HttpCacheProxy.DEFAULT_MAX_CACHE_SIZE);
+        assertEquals(5000, mProxy.getCacheSize());
+        assertArrayEquals(mContent, get(mProxy.getProxyUrl(track), null, 200));
+        assertEquals(SIZE, mOrigin.sent.get());
+    }
+
+    @Test
+    public void evictsLeastRecentlyUsed() throws IOException {
+        mProxy.setMaxCacheSize(SIZE * 3 / 2);
+        String first = mProxy.getProxyUrl(mOrigin.getUrl("first.mp3"));
+        String second = mProxy.getProxyUrl(mOrigin.getUrl("second.mp3"));
+        get(first, null, 200);
+        get(second, null, 200);
+        assertEquals(SIZE, mProxy.getCacheSize());
+
+        get(second, null, 200);
+        assertEquals(2, mOrigin.requests.get());
+        get(first, null, 200);
+        assertEquals(3, mOrigin.requests.get());
+        assertTrue(mProxy.getCacheSize() <= SIZE * 3 / 2);
+    }
+
+    @Test
+    public void originErrorIsPassedThrough() throws IOException {
+        String url = mProxy.getProxyUrl(mOrigin.getUrl("missing.mp3"));
+        get(url, null, 404);
+        assertEquals(0, mProxy.getCacheSize());
+    }
+
+    @Test
+    public void onlyRemoteFilesAreProxied() {
+        assertEquals("/sdcard/track.mp3", mProxy.getProxyUrl("/sdcard/track.mp3"));
+        assertEquals("https://host/live.m3u8", mProxy.getProxyUrl("https://host/live.m3u8"));
+        assertTrue(mProxy.getProxyUrl("https://host/track.mp3").startsWith("http://127.0.0.1:"));
+    }
+
+    @Test
+    public void requestWithoutTokenIsRejected() throws IOException {
+        URL proxied = new URL(mProxy.getProxyUrl(mOrigin.getUrl("track.mp3")));
+        String base = "http://127.0.0.1:" + proxied.getPort();
+        String origin = URLEncoder.encode(mOrigin.getUrl("track.mp3"), "UTF-8");
+
+        get(base + "/a/" + origin, null, 403);
+        get(base + "/" + origin, null, 403);
+        assertEquals(0, mOrigin.sent.get());
+    }
+
+    /**
+     * Reads response until proxy closes connection, so entry is closed and cache trimmed then.
+     */
+    private static byte[] get(String url, String range, int status) throws IOException {
+        URL target = new URL(url);
+        Socket socket = new Socket(target.getHost(), target.getPort());
+        try {
+            String request = "GET " + target.getFile() + " HTTP/1.1\r\nHost: " + target.getHost() + "\r\n"
+                    + (range != null ? "Range: " + range + "\r\n" : "") + "\r\n";
+            socket.getOutputStream().write(request.getBytes("US-ASCII"));
+            byte[] response = readAll(socket.getInputStream());
+
+            int headerEnd = 0;
+            while (!(response[headerEnd] == '\r' && response[headerEnd + 1] == '\n' && response[headerEnd + 2] == '\r' && response[headerEnd + 3] == '\n'))
+                headerEnd++;
+            String statusLine = new String(response, 0, headerEnd, "US-ASCII").split("\r\n")[0];
+            assertEquals(status, Integer.parseInt(statusLine.split(" ")[1]));
+            return Arrays.copyOfRange(response, headerEnd + 4, response.length);
+        } finally {
+            socket.close();
+        }
+    }
+
+    private static byte[] readAll(InputStream input) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int read;
+        while ((read = input.read(buffer)) >= 0)
+            output.write(buffer, 0, read);
+        return output.toByteArray();
+    }
+}
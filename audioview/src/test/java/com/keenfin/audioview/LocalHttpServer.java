@@ -0,0 +1,134 @@
+/*
+ *           Copyright © 2019 Stanislav Petriakov
+ *  Distributed under the Boost Software License, Version 1.0.
+ *     (See accompanying file LICENSE_1_0.txt or copy at
+ *           http://www.boost.org/LICENSE_1_0.txt)
+ */
+
+package com.keenfin.audioview;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Stand-in http origin on loopback serving the same content at any path except missing.mp3.
+ * Honours single ranges unless disabled, may start failing after a number of requests, counts
+ * requests and body bytes sent.
+ */
+final class LocalHttpServer implements Runnable {
+    final AtomicInteger requests = new AtomicInteger();
+    final AtomicLong sent = new AtomicLong();
+
+    private final byte[] mContent;
+    private final ServerSocket mServer;
+    private volatile boolean mIsRangeSupported = true;
+    private volatile int mFailAfter = Integer.MAX_VALUE;
+
+    LocalHttpServer(byte[] content) throws IOException {
+        mContent = content;
+        mServer = new ServerSocket(0, 16, InetAddress.getByName("127.0.0.1"));
+        Thread thread = new Thread(this, "LocalHttpServer");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    String getUrl(String name) {
+        return "http://127.0.0.1:" + mServer.getLocalPort() + "/" + name;
+    }
+
+    void setRangeSupported(boolean supported) {
+        mIsRangeSupported = supported;
+    }
+
+    /**
+     * Respond 500 to requests after given number of them.
+     */
+    void setFailAfter(int requests) {
+        mFailAfter = requests;
+    }
+
+    void stop() {
+        try {
+            mServer.close();
+        } catch (IOException ignored) {
+        }
+    }
+
+    @Override
+    public void run() {
+        while (!mServer.isClosed()) {
+            try {
+                final Socket socket = mServer.accept();
+                new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        serve(socket);
+                    }
+                }).start();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    private void serve(Socket socket) {
+        try {
+            InputStream input = socket.getInputStream();
+            StringBuilder head = new StringBuilder();
+            while (!head.toString().endsWith("\r\n\r\n")) {
+                int value = input.read();
+                if (value < 0)
+                    return;
+                head.append((char) value);
+            }
+
+            int request = requests.incrementAndGet();
+            String[] lines = head.toString().split("\r\n");
+            OutputStream output = socket.getOutputStream();
+            if (request > mFailAfter) {
+                output.write("HTTP/1.1 500 Internal Server Error\r\nContent-Length: 0\r\nConnection: close\r\n\r\n".getBytes("US-ASCII"));
+                return;
+            }
+            if (lines[0].contains("missing")) {
+                output.write("HTTP/1.1 404 Not Found\r\nContent-Length: 0\r\nConnection: close\r\n\r\n".getBytes("US-ASCII"));
+                return;
+            }
+
+            int start = 0, end = mContent.length;
+            boolean partial = false;
+            for (String line : lines)
+                if (mIsRangeSupported && line.toLowerCase(Locale.US).startsWith("range: bytes=")) {
+                    String[] bounds = line.substring("range: bytes=".length()).split("-", -1);
+                    start = Integer.parseInt(bounds[0]);
+                    if (!bounds[1].isEmpty())
+                        end = Math.min(end, Integer.parseInt(bounds[1]) + 1);
+                    partial = true;
+                }
+
+            String headers = partial
+                    ? "HTTP/1.1 206 Partial Content\r\nContent-Range: bytes " + start + "-" + (end - 1) + "/" + mContent.length + "\r\n"
+                    : "HTTP/1.1 200 OK\r\n";
+            headers += "Content-Type: audio/mpeg\r\nContent-Length: " + (end - start) + "\r\nConnection: close\r\n\r\n";
+            output.write(headers.getBytes("US-ASCII"));
+            for (int position = start; position < end; position += 4096) {
+                int count = Math.min(4096, end - position);
+                sent.addAndGet(count);
+                output.write(mContent, position, count);
+            }
+            output.flush();
+        } catch (IOException ignored) {
+            // client dropped connection
+        } finally {
+            try {
+                socket.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+}
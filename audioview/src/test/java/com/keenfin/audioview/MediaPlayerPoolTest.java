@@ -0,0 +1,80 @@
+/*
+ *           Copyright © 2019 Stanislav Petriakov
+ *  Distributed under the Boost Software License, Version 1.0.
+ *     (See accompanying file LICENSE_1_0.txt or copy at
+ *           http://www.boost.org/LICENSE_1_0.txt)
+ */
+
+package com.keenfin.audioview;
+
+import android.content.Context;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+public class MediaPlayerPoolTest {
+    private static final String OTHER_ENGINE = CountingPlayerEngine.class.getName();
+
+    private final Context mContext = RuntimeEnvironment.application;
+    private MediaPlayerPool mPool;
+
+    @Before
+    public void setUp() {
+        mPool = new MediaPlayerPool();
+        mPool.setMaxSize(2);
+    }
+
+    @Test
+    public void releasesIdleOfOtherClassBeforeReclaiming() {
+        Owner other = new Owner();
+        mPool.release(mPool.acquire(mContext, OTHER_ENGINE, other));
+        assertEquals(1, mPool.getIdleCount());
+
+        Owner parked = new Owner();
+        PlayerEngine prepared = mPool.acquire(mContext, null, parked);
+        mPool.park(prepared);
+        assertEquals(2, mPool.getSize());
+
+        PlayerEngine player = mPool.acquire(mContext, null, new Owner());
+        assertNotSame(prepared, player);
+        assertNull(parked.reclaimed);
+        assertEquals(0, mPool.getIdleCount());
+        assertEquals(1, mPool.getParkedCount());
+        assertEquals(2, mPool.getSize());
+        assertEquals(3, mPool.getCreatedCount());
+    }
+
+    @Test
+    public void reclaimsParkedWhenNothingIsIdle() {
+        Owner parked = new Owner();
+        PlayerEngine prepared = mPool.acquire(mContext, null, parked);
+        mPool.park(prepared);
+        mPool.acquire(mContext, OTHER_ENGINE, new Owner());
+
+        PlayerEngine player = mPool.acquire(mContext, null, new Owner());
+        assertSame(prepared, player);
+        assertSame(prepared, parked.reclaimed);
+        assertEquals(0, mPool.getParkedCount());
+        assertEquals(2, mPool.getCreatedCount());
+    }
+
+    private static class Owner implements MediaPlayerPool.OnReclaimListener {
+        PlayerEngine reclaimed;
+
+        @Override
+        public void onReclaim(PlayerEngine player) {
+            reclaimed = player;
+        }
+    }
+}
@@ -0,0 +1,73 @@
+/*
+ *           Copyright © 2019 Stanislav Petriakov
+ *  Distributed under the Boost Software License, Version 1.0.
+ *     (See accompanying file LICENSE_1_0.txt or copy at
+ *           http://www.boost.org/LICENSE_1_0.txt)
+ */
+
+package com.keenfin.audioview;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+public class PeakCacheTest {
+    private static final int BUCKETS = 100;
+    private static final int ENTRY_SIZE = PeakCache.HEADER_SIZE + BUCKETS * 2;
+
+    private final byte[] mPeaks = new byte[BUCKETS * 2];
+    private File mDir;
+
+    @Before
+    public void setUp() throws IOException {
+        mDir = File.createTempFile("audioview", "peaks");
+        mDir.delete();
+    }
+
+    @After
+    public void tearDown() {
+        File[] files = mDir.listFiles();
+        if (files != null)
+            for (File file : files)
+                file.delete();
+        mDir.delete();
+    }
+
+    @Test
+    public void evictsLeastRecentlyRead() {
+        PeakCache cache = new PeakCache(mDir, ENTRY_SIZE * 2);
+        cache.write("a", BUCKETS, mPeaks);
+        cache.write("b", BUCKETS, mPeaks);
+        assertNotNull(cache.read("a", BUCKETS));
+
+        cache.write("c", BUCKETS, mPeaks);
+        assertEquals(ENTRY_SIZE * 2, cache.getSize());
+        assertNotNull(cache.read("a", BUCKETS));
+        assertNull(cache.read("b", BUCKETS));
+        assertNotNull(cache.read("c", BUCKETS));
+        assertEquals(2, mDir.listFiles().length);
+    }
+
+    @Test
+    public void trimsEntriesOfPreviousProcess() {
+        PeakCache cache = new PeakCache(mDir, ENTRY_SIZE * 3);
+        cache.write("a", BUCKETS, mPeaks);
+        cache.write("b", BUCKETS, mPeaks);
+        cache.write("c", BUCKETS, mPeaks);
+        cache.getFile("a", BUCKETS).setLastModified(1000);
+        cache.getFile("b", BUCKETS).setLastModified(3000);
+        cache.getFile("c", BUCKETS).setLastModified(2000);
+
+        cache = new PeakCache(mDir, ENTRY_SIZE);
+        assertEquals(ENTRY_SIZE, cache.getSize());
+        assertNotNull(cache.read("b", BUCKETS));
+        assertNull(cache.read("a", BUCKETS));
+    }
+}
@@ -0,0 +1,77 @@
+/*
+ *           Copyright © 2019 Stanislav Petriakov
+ *  Distributed under the Boost Software License, Version 1.0.
+ *     (See accompanying file LICENSE_1_0.txt or copy at
+ *           http://www.boost.org/LICENSE_1_0.txt)
+ */
+
+package com.keenfin.audioview;
+
+import org.junit.Test;
+
+import java.nio.ShortBuffer;
+
+import static org.junit.Assert.assertEquals;
+
+public class PeakReducerTest {
+    @Test
+    public void reduce_monoRamp() {
+        // 4 buckets of 100 frames, each bucket is a ramp from -k to +k
+        short[] pcm = new short[400];
+        for (int i = 0; i < pcm.length; i++) {
+            int bucket = i / 100;
+            int amplitude = (bucket + 1) * 4096;
+            pcm[i] = (short) (-amplitude + 2 * amplitude * (i % 100) / 99);
+        }
+
+        PeakReducer reducer = new PeakReducer(4, 400, 1);
+        reducer.feed(pcm, 0, pcm.length);
+        byte[] peaks = reducer.getPeaks();
+        assertEquals(8, peaks.length);
+        for (int bucket = 0; bucket < 4; bucket++) {
+            int amplitude = (bucket + 1) * 4096;
+            assertEquals((byte) (-amplitude >> 8), peaks[bucket * 2]);
+            assertEquals((byte) (amplitude >> 8), peaks[bucket * 2 + 1]);
+        }
+    }
+
+    @Test
+    public void reduce_chunkedStereoMatchesWhole() {
+        short[] pcm = new short[2 * 1000];
+        for (int i = 0; i < pcm.length; i++)
+            pcm[i] = (short) (Math.sin(i * 0.01) * (i % 2 == 0 ? 20000 : 10000));
+
+        PeakReducer whole = new PeakReducer(10, 1000, 2);
+        whole.feed(pcm, 0, pcm.length);
+
+        PeakReducer chunked = new PeakReducer(10, 1000, 2);
+        for (int offset = 0; offset < pcm.length; offset += 77)
+            chunked.feed(ShortBuffer.wrap(pcm, offset, Math.min(77, pcm.length - offset)));
+
+        assertEquals(1000, chunked.getFrameCount());
+        byte[] expected = whole.getPeaks();
+        byte[] actual = chunked.getPeaks();
+        for (int i = 0; i < expected.length; i++)
+            assertEquals(expected[i], actual[i]);
+    }
+
+    @Test
+    public void reduce_extraFramesGoToLastBucket() {
+        PeakReducer reducer = new PeakReducer(2, 2, 1);
+        reducer.feed(new short[]{0, 0, 0, 32767}, 0, 4);
+        byte[] peaks = reducer.getPeaks();
+        assertEquals(0, peaks[0]);
+        assertEquals(0, peaks[1]);
+        assertEquals(0, peaks[2]);
+        assertEquals(127, peaks[3]);
+    }
+
+    @Test
+    public void reduce_emptyBucketsAreSilent() {
+        PeakReducer reducer = new PeakReducer(3, 300, 1);
+        reducer.feed(new short[]{1000, -1000}, 0, 2);
+        byte[] peaks = reducer.getPeaks();
+        assertEquals(0, peaks[4]);
+        assertEquals(0, peaks[5]);
+    }
+}
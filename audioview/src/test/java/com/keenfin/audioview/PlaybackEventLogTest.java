@@ -0,0 +1,88 @@
+/*
+ *           Copyright © 2019 Stanislav Petriakov
+ *  Distributed under the Boost Software License, Version 1.0.
+ *     (See accompanying file LICENSE_1_0.txt or copy at
+ *           http://www.boost.org/LICENSE_1_0.txt)
+ */
+
+package com.keenfin.audioview;
+
+import org.junit.Test;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class PlaybackEventLogTest {
+    @Test
+    public void capacityIsPowerOfTwo() {
+        assertEquals(2, new PlaybackEventLog(1).getCapacity());
+        assertEquals(64, new PlaybackEventLog(64).getCapacity());
+        assertEquals(128, new PlaybackEventLog(65).getCapacity());
+    }
+
+    @Test
+    public void keepsLatestEvents() {
+        PlaybackEventLog log = new PlaybackEventLog(8);
+        assertEquals("no events", dump(log)[0].trim());
+
+        Object player = new Object();
+        for (int i = 0; i < 20; i++)
+            log.record(PlaybackEventLog.EVENT_SEEK, player, i, 0);
+
+        String[] lines = dump(log);
+        assertEquals(20, log.getCount());
+        assertEquals(8, lines.length);
+        assertTrue(lines[0].startsWith("  #12 "));
+        assertTrue(lines[0].contains(" seek player=" + Integer.toHexString(System.identityHashCode(player)) + " 12 0"));
+        assertTrue(lines[7].startsWith("  #19 "));
+
+        log.clear();
+        assertEquals("no events", dump(log)[0].trim());
+        log.record(PlaybackEventLog.EVENT_ERROR, player, 1, -1004);
+        assertTrue(dump(log)[0].endsWith(" error player=" + Integer.toHexString(System.identityHashCode(player)) + " 1 -1004"));
+    }
+
+    @Test
+    public void concurrentWritersDoNotTearEvents() throws InterruptedException {
+        final PlaybackEventLog log = new PlaybackEventLog(64);
+        Thread[] writers = new Thread[4];
+        for (int t = 0; t < writers.length; t++) {
+            final int id = t;
+            writers[t] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < 100000; i++)
+                        log.record(PlaybackEventLog.EVENT_START, this, id * 1000000 + i, id * 1000000 + i);
+                }
+            });
+            writers[t].start();
+        }
+
+        int checked = 0;
+        while (writers[0].isAlive())
+            for (String line : dump(log)) {
+                String[] fields = line.trim().split(" ");
+                if (fields.length == 6) {
+                    assertEquals(line, fields[4], fields[5]);
+                    checked++;
+                }
+            }
+        for (Thread writer : writers)
+            writer.join();
+
+        assertTrue(checked > 0);
+        assertEquals(400000, log.getCount());
+        assertEquals(64, dump(log).length);
+    }
+
+    private static String[] dump(PlaybackEventLog log) {
+        StringWriter writer = new StringWriter();
+        PrintWriter printer = new PrintWriter(writer);
+        log.dump(printer);
+        printer.flush();
+        return writer.toString().split("\n");
+    }
+}
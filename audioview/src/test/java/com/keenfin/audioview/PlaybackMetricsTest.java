@@ -0,0 +1,124 @@
+/*
+ *           Copyright © 2019 Stanislav Petriakov
+ *  Distributed under the Boost Software License, Version 1.0.
+ *     (See accompanying file LICENSE_1_0.txt or copy at
+ *           http://www.boost.org/LICENSE_1_0.txt)
+ */
+
+package com.keenfin.audioview;
+
+import org.junit.Test;
+
+import java.io.FileDescriptor;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class PlaybackMetricsTest {
+    @Test
+    public void histogramBuckets() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(0, histogram.getPercentile(0.5));
+
+        for (int i = 0; i < 90; i++)
+            histogram.record(3);
+        for (int i = 0; i < 9; i++)
+            histogram.record(200);
+        histogram.record(20000);
+
+        assertEquals(100, histogram.getCount());
+        assertEquals((90 * 3 + 9 * 200 + 20000) / 100, histogram.getMean());
+        assertEquals(20000, histogram.getMax());
+        assertEquals(90, histogram.getBucketSamples(0));
+        assertEquals(9, histogram.getBucketSamples(5));
+        assertEquals(1, histogram.getBucketSamples(LatencyHistogram.getBucketCount() - 1));
+        assertEquals(Long.MAX_VALUE, LatencyHistogram.getBucketBound(LatencyHistogram.getBucketCount() - 1));
+        assertEquals(5, histogram.getPercentile(0.5));
+        assertEquals(250, histogram.getPercentile(0.95));
+        assertEquals(20000, histogram.getPercentile(1));
+
+        histogram.reset();
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getMax());
+    }
+
+    @Test
+    public void schemes() {
+        assertEquals(PlaybackMetrics.SCHEME_FILE, PlaybackMetrics.getScheme("/sdcard/a.mp3"));
+        assertEquals(PlaybackMetrics.SCHEME_FILE, PlaybackMetrics.getScheme("file:///sdcard/a.mp3"));
+        assertEquals(PlaybackMetrics.SCHEME_FILE, PlaybackMetrics.getScheme(new FileDescriptor()));
+        assertEquals(PlaybackMetrics.SCHEME_CONTENT, PlaybackMetrics.getScheme("content://media/audio/1"));
+        assertEquals(PlaybackMetrics.SCHEME_HTTP, PlaybackMetrics.getScheme("HTTPS://example.com/a.mp3"));
+        assertEquals(PlaybackMetrics.SCHEME_OTHER, PlaybackMetrics.getScheme("rtsp://example.com/a"));
+        assertEquals(PlaybackMetrics.SCHEME_OTHER, PlaybackMetrics.getScheme(null));
+    }
+
+    @Test
+    public void timerRecordsIntervals() {
+        PlaybackMetrics metrics = new PlaybackMetrics();
+        PlaybackTimer timer = new PlaybackTimer(metrics);
+        String source = "http://example.com/a.mp3";
+
+        timer.onDataSource(source, true);
+        timer.onPrepared();
+        timer.onStarted();
+        assertEquals(1, count(metrics, PlaybackMetrics.METRIC_PREPARE));
+        assertEquals(1, count(metrics, PlaybackMetrics.METRIC_TIME_TO_FIRST_AUDIO));
+
+        // consecutive seeks are one wait, buffering end without start is ignored
+        timer.onSeekRequested();
+        timer.onSeekRequested();
+        timer.onSeekComplete();
+        timer.onSeekComplete();
+        timer.onBuffering(false);
+        timer.onBuffering(true);
+        timer.onBuffering(true);
+        timer.onBuffering(false);
+        assertEquals(1, count(metrics, PlaybackMetrics.METRIC_SEEK));
+        assertEquals(1, count(metrics, PlaybackMetrics.METRIC_STALL));
+
+        // prepared without play, then play requested and cancelled
+        timer.onDataSource(source, false);
+        timer.onPrepared();
+        timer.onPlayRequested();
+        timer.onPlayCancelled();
+        timer.onStarted();
+        assertEquals(2, count(metrics, PlaybackMetrics.METRIC_PREPARE));
+        assertEquals(1, count(metrics, PlaybackMetrics.METRIC_TIME_TO_FIRST_AUDIO));
+
+        // gapless switch has nothing to wait for
+        timer.onSwitched("/sdcard/b.mp3");
+        timer.onPrepared();
+        timer.onStarted();
+        assertEquals(2, count(metrics, PlaybackMetrics.METRIC_PREPARE));
+        assertEquals(0, metrics.getHistogram(PlaybackMetrics.METRIC_PREPARE, PlaybackMetrics.SCHEME_FILE).getCount());
+    }
+
+    @Test
+    public void dumpsNonEmptyHistograms() {
+        PlaybackMetrics metrics = new PlaybackMetrics();
+        assertEquals("no samples", dump(metrics).trim());
+
+        metrics.record(PlaybackMetrics.METRIC_SEEK, PlaybackMetrics.SCHEME_CONTENT, 42);
+        String dump = dump(metrics);
+        assertTrue(dump.contains("seek [content]: count=1"));
+        assertTrue(dump.contains("<=50:1"));
+
+        metrics.reset();
+        assertEquals(0, metrics.getHistogram(PlaybackMetrics.METRIC_SEEK, PlaybackMetrics.SCHEME_CONTENT).getCount());
+    }
+
+    private static long count(PlaybackMetrics metrics, int metric) {
+        return metrics.getHistogram(metric, PlaybackMetrics.SCHEME_HTTP).getCount();
+    }
+
+    private static String dump(PlaybackMetrics metrics) {
+        StringWriter writer = new StringWriter();
+        PrintWriter printer = new PrintWriter(writer);
+        metrics.dump(printer);
+        printer.flush();
+        return writer.toString();
+    }
+}
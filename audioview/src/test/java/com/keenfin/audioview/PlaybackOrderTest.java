@@ -0,0 +1,113 @@
+/*
+ *           Copyright © 2019 Stanislav Petriakov
+ *  Distributed under the Boost Software License, Version 1.0.
+ *     (See accompanying file LICENSE_1_0.txt or copy at
+ *           http://www.boost.org/LICENSE_1_0.txt)
+ */
+
+package com.keenfin.audioview;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class PlaybackOrderTest {
+    @Test
+    public void linear() {
+        PlaybackOrder order = new PlaybackOrder();
+        order.reset(3);
+        assertEquals(1, order.next(false));
+        assertEquals(2, order.next(false));
+        assertEquals(-1, order.next(false));
+        assertEquals(2, order.getCurrent());
+        assertEquals(1, order.previous());
+
+        order.setRepeatMode(PlaybackOrder.REPEAT_ALL);
+        order.next(false);
+        assertEquals(0, order.next(false));
+        assertEquals(2, order.previous());
+
+        order.setRepeatMode(PlaybackOrder.REPEAT_ONE);
+        assertEquals(2, order.next(false));
+        assertEquals(0, order.next(true));
+    }
+
+    @Test
+    public void singleSourceLoops() {
+        // source opened without playlist leaves the order empty
+        PlaybackOrder order = new PlaybackOrder();
+        assertEquals(-1, order.next(false));
+
+        order.setRepeatMode(PlaybackOrder.REPEAT_ALL);
+        assertEquals(0, order.peekNext(false));
+        assertEquals(0, order.next(false));
+        assertEquals(0, order.getCurrent());
+        assertEquals(-1, order.next(true));
+        assertEquals(-1, order.previous());
+
+        order.setRepeatMode(PlaybackOrder.REPEAT_ONE);
+        order.setShuffle(true);
+        assertEquals(0, order.next(false));
+    }
+
+    @Test
+    public void shufflePlaysEveryTrackOncePerRound() {
+        int count = 100000;
+        PlaybackOrder order = new PlaybackOrder(new Random(42));
+        order.setShuffle(true);
+        order.setRepeatMode(PlaybackOrder.REPEAT_ALL);
+        order.reset(count);
+
+        for (int round = 0; round < 2; round++) {
+            boolean[] played = new boolean[count];
+            int last = -1;
+            for (int i = 0; i < count; i++) {
+                int current = order.getCurrent();
+                assertTrue(!played[current]);
+                assertTrue(current != last);
+                played[current] = true;
+                last = current;
+                assertEquals(order.peekNext(false), order.next(false));
+            }
+        }
+    }
+
+    @Test
+    public void shuffleGoesBackThroughHistory() {
+        PlaybackOrder order = new PlaybackOrder(new Random(7));
+        order.reset(1000);
+        order.setCurrent(500);
+        order.setShuffle(true);
+
+        int[] played = new int[10];
+        for (int i = 0; i < played.length; i++) {
+            played[i] = order.getCurrent();
+            order.next(true);
+        }
+        int last = order.getCurrent();
+        for (int i = played.length - 1; i >= 0; i--)
+            assertEquals(played[i], order.previous());
+        assertEquals(500, order.getCurrent());
+        for (int i = 1; i < played.length; i++)
+            assertEquals(played[i], order.next(true));
+        assertEquals(last, order.next(true));
+    }
+
+    @Test
+    public void addedTracksJoinRound() {
+        PlaybackOrder order = new PlaybackOrder(new Random(1));
+        order.setShuffle(true);
+        order.reset(2);
+        order.next(false);
+        assertEquals(-1, order.peekNext(false));
+
+        order.setCount(4);
+        int first = order.next(false);
+        int second = order.next(false);
+        assertTrue(first >= 2 && second >= 2 && first != second);
+        assertEquals(-1, order.next(false));
+    }
+}
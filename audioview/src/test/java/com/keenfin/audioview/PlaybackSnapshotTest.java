@@ -0,0 +1,125 @@
+/*
+ *           Copyright © 2019 Stanislav Petriakov
+ *  Distributed under the Boost Software License, Version 1.0.
+ *     (See accompanying file LICENSE_1_0.txt or copy at
+ *           http://www.boost.org/LICENSE_1_0.txt)
+ */
+
+package com.keenfin.audioview;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class PlaybackSnapshotTest {
+    @Test
+    public void restoresState() throws IOException {
+        File file = File.createTempFile("audioview", ".state");
+        Playlist playlist = Playlist.EMPTY.add("/a.mp3").add(new Track(7, "http://host/b.mp3", "Title", 1000));
+
+        new PlaybackSnapshot(file).write(new PlaybackSnapshot.State(3, 1, 12345, PlaybackOrder.REPEAT_ALL, true, playlist));
+        PlaybackSnapshot.State state = new PlaybackSnapshot(file).read();
+
+        assertEquals(3, state.tag);
+        assertEquals(1, state.current);
+        assertEquals(12345, state.position);
+        assertEquals(PlaybackOrder.REPEAT_ALL, state.repeatMode);
+        assertTrue(state.shuffle);
+        assertEquals(2, state.playlist.size());
+        assertEquals(new Track("/a.mp3"), state.playlist.get(0));
+        assertEquals("Title", state.playlist.get(1).getTitle());
+        assertEquals(1000, state.playlist.get(1).getDuration());
+        assertEquals(7, state.playlist.get(1).getId());
+        file.delete();
+    }
+
+    @Test
+    public void appendsTracks() throws IOException {
+        File file = File.createTempFile("audioview", ".state");
+        List<String> paths = new ArrayList<>();
+        for (int i = 0; i < 1000; i++)
+            paths.add("/music/" + i + ".mp3");
+
+        PlaybackSnapshot snapshot = new PlaybackSnapshot(file);
+        Playlist playlist = Playlist.of(paths);
+        snapshot.write(new PlaybackSnapshot.State(0, 0, 0, PlaybackOrder.REPEAT_OFF, false, playlist));
+        long length = file.length();
+
+        // header only rewrite keeps file as is
+        snapshot.write(new PlaybackSnapshot.State(0, 500, 100, PlaybackOrder.REPEAT_OFF, false, playlist));
+        assertEquals(length, file.length());
+
+        playlist = playlist.add("/music/extra.mp3");
+        snapshot.write(new PlaybackSnapshot.State(0, 1000, 0, PlaybackOrder.REPEAT_OFF, false, playlist));
+        assertTrue(file.length() > length);
+        PlaybackSnapshot.State state = new PlaybackSnapshot(file).read();
+        assertEquals(1001, state.playlist.size());
+        assertEquals("/music/extra.mp3", state.playlist.get(1000).getSource());
+        assertEquals(1000, state.current);
+
+        // replaced playlist is written from scratch
+        snapshot.write(new PlaybackSnapshot.State(0, 0, 0, PlaybackOrder.REPEAT_OFF, false, Playlist.EMPTY.add("/other.mp3")));
+        assertEquals(1, new PlaybackSnapshot(file).read().playlist.size());
+        file.delete();
+    }
+
+    @Test
+    public void rewritesReorderedTracks() throws IOException {
+        File file = File.createTempFile("audioview", ".state");
+        Track a = new Track("/a"), b = new Track("/b"), c = new Track("/c"), d = new Track("/d");
+        PlaybackSnapshot snapshot = new PlaybackSnapshot(file);
+        snapshot.write(new PlaybackSnapshot.State(0, 0, 0, PlaybackOrder.REPEAT_OFF, false, Playlist.of(Arrays.asList(a, b, c))));
+
+        // same tracks in another order are not appended to the written ones
+        snapshot.write(new PlaybackSnapshot.State(0, 0, 0, PlaybackOrder.REPEAT_OFF, false, Playlist.of(Arrays.asList(b, a, c, d))));
+        Playlist playlist = new PlaybackSnapshot(file).read().playlist;
+        assertEquals(4, playlist.size());
+        assertEquals("/b", playlist.get(0).getSource());
+        assertEquals("/a", playlist.get(1).getSource());
+        assertEquals("/d", playlist.get(3).getSource());
+        file.delete();
+    }
+
+    @Test
+    public void corruptTrackCountIsNotRestored() throws IOException {
+        File file = File.createTempFile("audioview", ".state");
+        new PlaybackSnapshot(file).write(new PlaybackSnapshot.State(0, 0, 0, PlaybackOrder.REPEAT_OFF, false, Playlist.EMPTY.add("/a.mp3")));
+
+        RandomAccessFile output = new RandomAccessFile(file, "rw");
+        output.seek(PlaybackSnapshot.HEADER_SIZE - 4);
+        output.writeInt(Integer.MAX_VALUE);
+        output.close();
+        assertNull(new PlaybackSnapshot(file).read());
+        file.delete();
+    }
+
+    @Test
+    public void failedRewriteKeepsPreviousState() throws IOException {
+        File file = File.createTempFile("audioview", ".state");
+        PlaybackSnapshot snapshot = new PlaybackSnapshot(file);
+        snapshot.write(new PlaybackSnapshot.State(0, 1, 500, PlaybackOrder.REPEAT_OFF, false, Playlist.EMPTY.add("/a.mp3").add("/b.mp3")));
+
+        // temporary file can't be created, replaced playlist is not written
+        File temp = new File(file.getPath() + ".tmp");
+        assertTrue(temp.mkdir());
+        snapshot.write(new PlaybackSnapshot.State(0, 0, 0, PlaybackOrder.REPEAT_OFF, false, Playlist.EMPTY.add("/other.mp3")));
+        PlaybackSnapshot.State state = new PlaybackSnapshot(file).read();
+        assertEquals(2, state.playlist.size());
+        assertEquals(1, state.current);
+        assertEquals(500, state.position);
+
+        assertTrue(temp.delete());
+        snapshot.write(new PlaybackSnapshot.State(0, 0, 0, PlaybackOrder.REPEAT_OFF, false, Playlist.EMPTY.add("/other.mp3")));
+        assertEquals(1, new PlaybackSnapshot(file).read().playlist.size());
+        file.delete();
+    }
+}
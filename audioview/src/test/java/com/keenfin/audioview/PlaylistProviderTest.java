@@ -0,0 +1,84 @@
+/*
+ *           Copyright © 2019 Stanislav Petriakov
+ *  Distributed under the Boost Software License, Version 1.0.
+ *     (See accompanying file LICENSE_1_0.txt or copy at
+ *           http://www.boost.org/LICENSE_1_0.txt)
+ */
+
+package com.keenfin.audioview;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class PlaylistProviderTest {
+    private static class CountingProvider extends PagedPlaylistProvider {
+        private final int mCount;
+        private int mLoads = 0;
+
+        CountingProvider(int count) {
+            super(10, 2);
+            mCount = count;
+        }
+
+        @Override
+        protected List<Track> loadPage(int offset, int count) {
+            mLoads++;
+            List<Track> tracks = new ArrayList<>(count);
+            for (int i = offset; i < Math.min(offset + count, mCount); i++)
+                tracks.add(new Track("/music/" + i + ".mp3"));
+            return tracks;
+        }
+
+        @Override
+        public int getCount() {
+            return mCount;
+        }
+    }
+
+    @Test
+    public void pagesAreLoadedOnce() {
+        CountingProvider provider = new CountingProvider(50000);
+        for (int i = 100; i < 120; i++)
+            assertEquals("/music/" + i + ".mp3", provider.getTrack(i).getSource());
+        provider.getTrack(105);
+        assertEquals(2, provider.mLoads);
+
+        // page of 105 was used last, so page of 110..119 is evicted
+        provider.getTrack(49999);
+        provider.getTrack(100);
+        assertEquals(3, provider.mLoads);
+        provider.getTrack(115);
+        assertEquals(4, provider.mLoads);
+    }
+
+    @Test
+    public void outOfRange() {
+        CountingProvider provider = new CountingProvider(5);
+        try {
+            provider.getTrack(5);
+            fail();
+        } catch (IndexOutOfBoundsException ignored) {
+        }
+        assertEquals(0, provider.mLoads);
+    }
+
+    @Test
+    public void composite() {
+        Playlist pinned = Playlist.of(Arrays.asList("/pinned.mp3"));
+        PlaylistProvider playlist = new CompositePlaylistProvider(pinned, new CountingProvider(3), Playlist.EMPTY);
+        assertEquals(4, playlist.getCount());
+        assertEquals("/pinned.mp3", playlist.getTrack(0).getSource());
+        assertEquals("/music/2.mp3", playlist.getTrack(3).getSource());
+        try {
+            playlist.getTrack(4);
+            fail();
+        } catch (IndexOutOfBoundsException ignored) {
+        }
+    }
+}
@@ -0,0 +1,70 @@
+/*
+ *           Copyright © 2019 Stanislav Petriakov
+ *  Distributed under the Boost Software License, Version 1.0.
+ *     (See accompanying file LICENSE_1_0.txt or copy at
+ *           http://www.boost.org/LICENSE_1_0.txt)
+ */
+
+package com.keenfin.audioview;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class PlaylistTest {
+    @Test
+    public void addAll() {
+        List<String> paths = new ArrayList<>();
+        for (int i = 0; i < 10000; i++)
+            paths.add("/music/" + i + ".mp3");
+
+        Playlist playlist = Playlist.of(paths);
+        assertEquals(10000, playlist.size());
+        assertEquals("/music/9999.mp3", playlist.get(9999).getSource());
+        assertEquals(Track.TYPE_PATH, playlist.get(0).getType());
+    }
+
+    @Test
+    public void validatesEveryItem() {
+        Playlist playlist = Playlist.of(Arrays.asList("/a.mp3", "/b.mp3"));
+        try {
+            playlist.addAll(Arrays.asList("/c.mp3", 42, "/d.mp3"));
+            fail();
+        } catch (IllegalArgumentException e) {
+            assertTrue(e.getMessage().contains("Item 1"));
+        }
+        assertEquals(2, playlist.size());
+    }
+
+    @Test
+    public void derivedPlaylistsAreIndependent() {
+        Playlist base = Playlist.EMPTY.add("/a.mp3").add("/b.mp3");
+        Playlist first = base.add("/c.mp3");
+        Playlist second = base.add("/d.mp3");
+
+        assertEquals(2, base.size());
+        assertEquals("/c.mp3", first.get(2).getSource());
+        assertEquals("/d.mp3", second.get(2).getSource());
+        try {
+            base.get(2);
+            fail();
+        } catch (IndexOutOfBoundsException ignored) {
+        }
+    }
+
+    @Test
+    public void sharesTracks() {
+        Track track = new Track(7, "/a.mp3", "Title", 1000);
+        Playlist playlist = Playlist.EMPTY.add(track);
+        assertSame(track, playlist.get(0));
+        assertSame(playlist, Playlist.EMPTY.addAll(playlist));
+        assertEquals(new Track("/a.mp3"), Playlist.of(Arrays.asList("/a.mp3")).get(0));
+    }
+}
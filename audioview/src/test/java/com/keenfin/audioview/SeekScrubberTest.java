@@ -0,0 +1,204 @@
+/*
+ *           Copyright © 2019 Stanislav Petriakov
+ *  Distributed under the Boost Software License, Version 1.0.
+ *     (See accompanying file LICENSE_1_0.txt or copy at
+ *           http://www.boost.org/LICENSE_1_0.txt)
+ */
+
+package com.keenfin.audioview;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+public class SeekScrubberTest {
+    private static final String SOURCE = "http://example.com/a.mp3";
+
+    private PlaybackMetrics mMetrics;
+    private SeekScrubber mScrubber;
+    private SeekEngine mEngine;
+
+    @Before
+    public void setUp() {
+        mMetrics = new PlaybackMetrics();
+        mScrubber = new SeekScrubber(new Handler(Looper.getMainLooper()), mMetrics);
+        mEngine = new SeekEngine();
+    }
+
+    @Test
+    public void coalescesPreviewSeeks() {
+        mScrubber.start(mEngine, SOURCE);
+        assertTrue(mScrubber.isScrubbing());
+        mScrubber.scrubTo(1000);
+        mScrubber.scrubTo(2000);
+        mScrubber.scrubTo(3000);
+        assertEquals(Arrays.asList("fast 1000"), mEngine.seeks);
+
+        // completed quickly, next preview waits for the interval
+        advance(30);
+        mScrubber.onSeekComplete(mEngine);
+        assertEquals(1, mEngine.seeks.size());
+        advance(SeekScrubber.DEFAULT_INTERVAL);
+        assertEquals(Arrays.asList("fast 1000", "fast 3000"), mEngine.seeks);
+
+        // slow seek, positions chosen meanwhile go right after it
+        mScrubber.scrubTo(4000);
+        mScrubber.scrubTo(5000);
+        advance(SeekScrubber.DEFAULT_INTERVAL * 3);
+        assertEquals(2, mEngine.seeks.size());
+        mScrubber.onSeekComplete(mEngine);
+        assertEquals(Arrays.asList("fast 1000", "fast 3000", "fast 5000"), mEngine.seeks);
+        assertEquals(2, mMetrics.getHistogram(PlaybackMetrics.METRIC_SCRUB, PlaybackMetrics.SCHEME_HTTP).getCount());
+    }
+
+    @Test
+    public void preciseSeekOnRelease() {
+        mScrubber.start(mEngine, SOURCE);
+        mScrubber.scrubTo(1000);
+        mScrubber.stop(1500);
+        assertFalse(mScrubber.isScrubbing());
+        assertEquals(Arrays.asList("fast 1000"), mEngine.seeks);
+
+        mScrubber.onSeekComplete(mEngine);
+        assertEquals(Arrays.asList("fast 1000", "precise 1500"), mEngine.seeks);
+        mScrubber.onSeekComplete(mEngine);
+        assertEquals(1, mMetrics.getHistogram(PlaybackMetrics.METRIC_SCRUB, PlaybackMetrics.SCHEME_HTTP).getCount());
+        assertEquals(1, mMetrics.getHistogram(PlaybackMetrics.METRIC_SEEK, PlaybackMetrics.SCHEME_HTTP).getCount());
+
+        // scrubbing is over, nothing else is sent
+        mScrubber.scrubTo(2000);
+        advance(SeekScrubber.DEFAULT_INTERVAL);
+        assertEquals(2, mEngine.seeks.size());
+    }
+
+    @Test
+    public void releaseWithoutPositionKeepsPreview() {
+        mScrubber.start(mEngine, SOURCE);
+        mScrubber.scrubTo(1000);
+        mScrubber.onSeekComplete(mEngine);
+        mScrubber.scrubTo(2000);
+        mScrubber.stop(-1);
+        advance(SeekScrubber.DEFAULT_INTERVAL);
+        assertEquals(Arrays.asList("fast 1000"), mEngine.seeks);
+    }
+
+    @Test
+    public void lostSeekDoesNotBlockScrubbing() {
+        mScrubber.start(mEngine, SOURCE);
+        mScrubber.scrubTo(1000);
+        mScrubber.onSeekComplete(new SeekEngine());
+        advance(SeekScrubber.SEEK_TIMEOUT);
+        mScrubber.scrubTo(2000);
+        assertEquals(Arrays.asList("fast 1000", "fast 2000"), mEngine.seeks);
+
+        mScrubber.cancel();
+        mScrubber.onSeekComplete(mEngine);
+        mScrubber.scrubTo(3000);
+        assertEquals(2, mEngine.seeks.size());
+        assertEquals(0, mMetrics.getHistogram(PlaybackMetrics.METRIC_SCRUB, PlaybackMetrics.SCHEME_HTTP).getCount());
+    }
+
+    @Test
+    public void releaseAfterLostSeekIsSent() {
+        mScrubber.start(mEngine, SOURCE);
+        mScrubber.scrubTo(1000);
+        mScrubber.stop(1500);
+        advance(SeekScrubber.SEEK_TIMEOUT - 1);
+        assertEquals(Arrays.asList("fast 1000"), mEngine.seeks);
+
+        // completion of the preview never comes
+        advance(1);
+        assertEquals(Arrays.asList("fast 1000", "precise 1500"), mEngine.seeks);
+    }
+
+    /**
+     * Move virtual clock forward running tasks posted to main looper meanwhile.
+     */
+    private static void advance(long millis) {
+        Robolectric.getForegroundThreadScheduler().advanceBy(millis, TimeUnit.MILLISECONDS);
+    }
+
+    private static class SeekEngine implements PlayerEngine {
+        final List<String> seeks = new ArrayList<>();
+
+        @Override
+        public void seekTo(int position) {
+            seeks.add("precise " + position);
+        }
+
+        @Override
+        public void fastSeekTo(int position) {
+            seeks.add("fast " + position);
+        }
+
+        @Override
+        public void setListener(Listener listener) {
+        }
+
+        @Override
+        public void setDataSource(Context context, Object source) {
+        }
+
+        @Override
+        public void prepareAsync() {
+        }
+
+        @Override
+        public void start() {
+        }
+
+        @Override
+        public void pause() {
+        }
+
+        @Override
+        public void stop() {
+        }
+
+        @Override
+        public void reset() {
+        }
+
+        @Override
+        public void release() {
+        }
+
+        @Override
+        public boolean isPlaying() {
+            return true;
+        }
+
+        @Override
+        public int getCurrentPosition() {
+            return 0;
+        }
+
+        @Override
+        public int getDuration() {
+            return 0;
+        }
+
+        @Override
+        public boolean setNextEngine(PlayerEngine next) {
+            return false;
+        }
+    }
+}
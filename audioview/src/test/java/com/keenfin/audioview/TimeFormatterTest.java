@@ -0,0 +1,76 @@
+/*
+ *           Copyright © 2019 Stanislav Petriakov
+ *  Distributed under the Boost Software License, Version 1.0.
+ *     (See accompanying file LICENSE_1_0.txt or copy at
+ *           http://www.boost.org/LICENSE_1_0.txt)
+ */
+
+package com.keenfin.audioview;
+
+import org.junit.Test;
+
+import java.util.Locale;
+
+import static org.junit.Assert.assertEquals;
+
+public class TimeFormatterTest {
+    private static String legacyFormatTime(int millis) {
+        if (millis < 0)
+            return "∞";
+
+        int hour, min;
+        hour = min = 0;
+        millis /= 1000;
+
+        if (millis >= 60) {
+            min = millis / 60;
+            millis %= 60;
+        }
+
+        if (min >= 60) {
+            hour = min / 60;
+            min %= 60;
+        }
+
+        String result = "";
+        if (hour > 0)
+            result += String.format(Locale.US, "%02d:", hour);
+        result += String.format(Locale.US, "%02d:%02d", min, millis);
+        return result;
+    }
+
+    @Test
+    public void formatTime_matchesLegacy() {
+        TimeFormatter formatter = new TimeFormatter();
+        int[] values = {-1, 0, 999, 1000, 59999, 60000, 3599999, 3600000, 36000000, 359999999, 360000000, Integer.MAX_VALUE};
+        for (int value : values) {
+            int length = formatter.formatTime(value);
+            assertEquals(legacyFormatTime(value), new String(formatter.getBuffer(), 0, length));
+        }
+
+        for (int value = 0; value < 4 * 3600 * 1000; value += 997)
+            assertEquals(legacyFormatTime(value), new String(formatter.getBuffer(), 0, formatter.formatTime(value)));
+    }
+
+    @Test
+    public void formatTime_withTotal() {
+        TimeFormatter formatter = new TimeFormatter();
+        formatter.formatTime(61000, 3723000);
+        assertEquals("01:01 / 01:02:03", formatter.toString());
+        formatter.formatTime(62000, 3723000);
+        assertEquals("01:02 / 01:02:03", formatter.toString());
+        formatter.formatTime(1000, -1);
+        assertEquals("00:01 / ∞", formatter.toString());
+    }
+
+    @Test
+    public void formatDuration() {
+        TimeFormatter formatter = new TimeFormatter();
+        formatter.formatDuration(0);
+        assertEquals("∞", formatter.toString());
+        formatter.formatDuration(-5);
+        assertEquals("∞", formatter.toString());
+        formatter.formatDuration(5000);
+        assertEquals("00:05", formatter.toString());
+    }
+}
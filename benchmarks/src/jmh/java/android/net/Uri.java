@@ -0,0 +1,22 @@
+/*
+ *           Copyright © 2019 Stanislav Petriakov
+ *  Distributed under the Boost Software License, Version 1.0.
+ *     (See accompanying file LICENSE_1_0.txt or copy at
+ *           http://www.boost.org/LICENSE_1_0.txt)
+ */
+
+package android.net;
+
+/**
+ * JVM stand-in for the framework class, keeps the string form only.
+ */
+public abstract class Uri {
+    public static Uri parse(final String uriString) {
+        return new Uri() {
+            @Override
+            public String toString() {
+                return uriString;
+            }
+        };
+    }
+}
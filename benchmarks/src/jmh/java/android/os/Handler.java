@@ -0,0 +1,43 @@
+/*
+ *           Copyright © 2019 Stanislav Petriakov
+ *  Distributed under the Boost Software License, Version 1.0.
+ *     (See accompanying file LICENSE_1_0.txt or copy at
+ *           http://www.boost.org/LICENSE_1_0.txt)
+ */
+
+package android.os;
+
+/**
+ * JVM stand-in for the framework class. Messages are handled synchronously on the sending
+ * thread, so benchmarks measure dispatch without a queue and thread hop.
+ */
+public class Handler {
+    public interface Callback {
+        boolean handleMessage(Message msg);
+    }
+
+    private final Callback mCallback;
+
+    public Handler(Looper looper, Callback callback) {
+        mCallback = callback;
+    }
+
+    public final Message obtainMessage(int what, int arg1, int arg2) {
+        Message message = Message.obtain();
+        message.target = this;
+        message.what = what;
+        message.arg1 = arg1;
+        message.arg2 = arg2;
+        return message;
+    }
+
+    public final boolean sendMessage(Message msg) {
+        if (mCallback == null || !mCallback.handleMessage(msg))
+            handleMessage(msg);
+        msg.recycle();
+        return true;
+    }
+
+    public void handleMessage(Message msg) {
+    }
+}
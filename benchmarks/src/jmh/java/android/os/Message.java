@@ -0,0 +1,50 @@
+/*
+ *           Copyright © 2019 Stanislav Petriakov
+ *  Distributed under the Boost Software License, Version 1.0.
+ *     (See accompanying file LICENSE_1_0.txt or copy at
+ *           http://www.boost.org/LICENSE_1_0.txt)
+ */
+
+package android.os;
+
+/**
+ * JVM stand-in for the framework class. Messages are pooled like in the framework, so
+ * benchmarks see the allocations of library code only.
+ */
+public final class Message {
+    private static final int MAX_POOL_SIZE = 50;
+    private static Message sPool;
+    private static int sPoolSize = 0;
+
+    public int what;
+    public int arg1;
+    public int arg2;
+    public Object obj;
+    Handler target;
+    private Message mNext;
+
+    public static Message obtain() {
+        if (sPool == null)
+            return new Message();
+        Message message = sPool;
+        sPool = message.mNext;
+        message.mNext = null;
+        sPoolSize--;
+        return message;
+    }
+
+    public void sendToTarget() {
+        target.sendMessage(this);
+    }
+
+    public void recycle() {
+        what = arg1 = arg2 = 0;
+        obj = null;
+        target = null;
+        if (sPoolSize < MAX_POOL_SIZE) {
+            mNext = sPool;
+            sPool = this;
+            sPoolSize++;
+        }
+    }
+}
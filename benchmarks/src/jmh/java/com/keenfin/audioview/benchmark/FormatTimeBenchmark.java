@@ -0,0 +1,50 @@
+/*
+ *           Copyright © 2019 Stanislav Petriakov
+ *  Distributed under the Boost Software License, Version 1.0.
+ *     (See accompanying file LICENSE_1_0.txt or copy at
+ *           http://www.boost.org/LICENSE_1_0.txt)
+ */
+
+package com.keenfin.audioview.benchmark;
+
+import com.keenfin.audioview.TimeFormatter;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Progress label formatting, runs on every progress tick of every visible view.
+ */
+@State(Scope.Thread)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class FormatTimeBenchmark {
+    @Param({"59000", "3599000", "7322000"})
+    public int millis;
+
+    private final TimeFormatter mFormatter = new TimeFormatter();
+    private final int mTotal = 3 * 3600 * 1000;
+
+    @Benchmark
+    public int formatTime() {
+        return mFormatter.formatTime(millis);
+    }
+
+    @Benchmark
+    public int formatTimeWithTotal() {
+        return mFormatter.formatTime(millis, mTotal);
+    }
+
+    @Benchmark
+    public int formatDuration() {
+        return mFormatter.formatDuration(millis);
+    }
+
+    /**
+     * Util.formatTime, which still has to return a String.
+     */
+    @Benchmark
+    public String formatTimeString() {
+        mFormatter.formatTime(millis);
+        return mFormatter.toString();
+    }
+}
@@ -0,0 +1,57 @@
+/*
+ *           Copyright © 2019 Stanislav Petriakov
+ *  Distributed under the Boost Software License, Version 1.0.
+ *     (See accompanying file LICENSE_1_0.txt or copy at
+ *           http://www.boost.org/LICENSE_1_0.txt)
+ */
+
+package com.keenfin.audioview.benchmark;
+
+import com.keenfin.audioview.PeakReducer;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.ShortBuffer;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Waveform reduction of one second of 44.1 kHz stereo PCM, fed as PeakExtractor gets it from
+ * decoder output buffers.
+ */
+@State(Scope.Thread)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class PeakReducerBenchmark {
+    private static final int CHANNELS = 2;
+    private static final int FRAMES = 44100;
+    // typical MediaCodec output buffer
+    private static final int BUFFER_SAMPLES = 4096;
+
+    @Param({"100", "1000"})
+    public int buckets;
+
+    private short[] mSamples;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        mSamples = new short[FRAMES * CHANNELS];
+        for (int i = 0; i < mSamples.length; i++)
+            mSamples[i] = (short) random.nextInt();
+    }
+
+    @Benchmark
+    public byte[] feedArray() {
+        PeakReducer reducer = new PeakReducer(buckets, FRAMES, CHANNELS);
+        for (int offset = 0; offset < mSamples.length; offset += BUFFER_SAMPLES)
+            reducer.feed(mSamples, offset, Math.min(BUFFER_SAMPLES, mSamples.length - offset));
+        return reducer.getPeaks();
+    }
+
+    @Benchmark
+    public byte[] feedBuffer() {
+        PeakReducer reducer = new PeakReducer(buckets, FRAMES, CHANNELS);
+        for (int offset = 0; offset < mSamples.length; offset += BUFFER_SAMPLES)
+            reducer.feed(ShortBuffer.wrap(mSamples, offset, Math.min(BUFFER_SAMPLES, mSamples.length - offset)));
+        return reducer.getPeaks();
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ *           Copyright © 2019 Stanislav Petriakov
+ *  Distributed under the Boost Software License, Version 1.0.
+ *     (See accompanying file LICENSE_1_0.txt or copy at
+ *           http://www.boost.org/LICENSE_1_0.txt)
+ */
+
+package com.keenfin.audioview.benchmark;
+
+import android.net.Uri;
+
+import com.keenfin.audioview.PlaybackOrder;
+import com.keenfin.audioview.Playlist;
+import com.keenfin.audioview.PlaylistProvider;
+import com.keenfin.audioview.Track;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.FileDescriptor;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Building a {@link Playlist} from mixed String, Uri and FileDescriptor sources and walking it
+ * through {@link PlaylistProvider} in {@link PlaybackOrder} order the way AudioService selects
+ * tracks.
+ */
+@State(Scope.Thread)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class PlaylistBenchmark {
+    @Param({"1000", "10000", "100000"})
+    public int size;
+
+    @Param({"false", "true"})
+    public boolean shuffle;
+
+    private List<Object> mSources;
+    private PlaylistProvider mPlaylist;
+    private PlaybackOrder mOrder;
+
+    @Setup
+    public void setUp() {
+        mSources = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            switch (i % 3) {
+                case 0:
+                    mSources.add("/sdcard/Music/track" + i + ".mp3");
+                    break;
+                case 1:
+                    mSources.add(Uri.parse("content://media/external/audio/media/" + i));
+                    break;
+                default:
+                    mSources.add(new FileDescriptor());
+                    break;
+            }
+        }
+        mPlaylist = Playlist.of(mSources);
+        mOrder = new PlaybackOrder();
+        mOrder.reset(size);
+        mOrder.setRepeatMode(PlaybackOrder.REPEAT_ALL);
+        mOrder.setShuffle(shuffle);
+    }
+
+    /**
+     * ListActivity pushing a whole library one item at a time.
+     */
+    @Benchmark
+    public Playlist addOneByOne() {
+        Playlist playlist = Playlist.EMPTY;
+        for (Object source : mSources)
+            playlist = playlist.add(source);
+        return playlist;
+    }
+
+    /**
+     * setDataSource(List), all items validated in one pass.
+     */
+    @Benchmark
+    public Playlist of() {
+        return Playlist.of(mSources);
+    }
+
+    /**
+     * nextTrack over the whole playlist: {@link PlaybackOrder} picks the position, the track is
+     * resolved from the playlist and its source handed over, as the player thread does before
+     * opening it. Only the engine call is left out.
+     */
+    @Benchmark
+    @OperationsPerInvocation(1000)
+    public void selectTrack(Blackhole blackhole) {
+        for (int i = 0; i < 1000; i++) {
+            int next = mOrder.next(true);
+            Track track = mPlaylist.getTrack(next);
+            blackhole.consume(track.getSource());
+        }
+    }
+}
@@ -0,0 +1,72 @@
+/*
+ *           Copyright © 2019 Stanislav Petriakov
+ *  Distributed under the Boost Software License, Version 1.0.
+ *     (See accompanying file LICENSE_1_0.txt or copy at
+ *           http://www.boost.org/LICENSE_1_0.txt)
+ */
+
+package com.keenfin.audioview.benchmark;
+
+import com.keenfin.audioview.AudioStatusBus;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-tick {@link AudioStatusBus} dispatch with one subscribed AudioView2 row per tag. The
+ * framework Handler is replaced by a synchronous stand-in, so the numbers cover the bus itself
+ * without the main thread hop.
+ */
+@State(Scope.Thread)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class StatusDispatchBenchmark {
+    static final class Row implements AudioStatusBus.OnAudioStatusListener {
+        int mCalls;
+
+        @Override
+        public void onAudioStatus(int status, int tag) {
+            mCalls++;
+        }
+    }
+
+    @Param({"10", "100", "500"})
+    public int receivers;
+
+    private final AudioStatusBus mBus = AudioStatusBus.getInstance();
+    private Row[] mRows;
+    private int mAttachedTag;
+
+    @Setup
+    public void setUp() {
+        mRows = new Row[receivers];
+        for (int i = 0; i < receivers; i++) {
+            mRows[i] = new Row();
+            mBus.subscribe(i, mRows[i]);
+        }
+        mAttachedTag = receivers / 2;
+    }
+
+    @TearDown
+    public void tearDown() {
+        for (int i = 0; i < receivers; i++)
+            mBus.unsubscribe(i, mRows[i]);
+    }
+
+    /**
+     * Progress tick, only the attached row is called.
+     */
+    @Benchmark
+    public int post() {
+        mBus.post(AudioStatusBus.AUDIO_PROGRESS_UPDATED, mAttachedTag);
+        return mRows[mAttachedTag].mCalls;
+    }
+
+    /**
+     * Service started or stopped, every row is called.
+     */
+    @Benchmark
+    public int postAll() {
+        mBus.postAll(AudioStatusBus.AUDIO_SERVICE_STOPPED, mAttachedTag);
+        return mRows[0].mCalls;
+    }
+}